@@ -0,0 +1,82 @@
+package soot.jimple.infoflow.android.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import soot.jimple.infoflow.android.axml.AXmlHandler;
+import soot.jimple.infoflow.android.axml.AXmlNode;
+import soot.jimple.infoflow.android.axml.parsers.AXML20Parser;
+import soot.jimple.infoflow.android.axml.parsers.AXMLPrinter2Parser;
+
+/**
+ * Compares the two binary XML parsers on the manifests of the APK files in
+ * the repository. The manifest is read from the APK once, so only the
+ * parsing itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class BinaryXmlBenchmark {
+
+	@Param({ "insecureBank/InsecureBank.apk", "testAPKs/enriched1.apk",
+			"testAPKs/9458cfb51c90130938abcef7173c3f6d44a02720.apk" })
+	public String apk;
+
+	private byte[] manifest;
+
+	@Setup
+	public void setup() throws IOException {
+		ZipFile zip = new ZipFile(apk);
+		try {
+			ZipEntry entry = zip.getEntry("AndroidManifest.xml");
+			if (entry == null)
+				throw new IOException("No manifest in " + apk);
+			manifest = new byte[(int) entry.getSize()];
+			InputStream is = zip.getInputStream(entry);
+			try {
+				int read = 0;
+				while (read < manifest.length) {
+					int len = is.read(manifest, read, manifest.length - read);
+					if (len < 0)
+						throw new IOException("Unexpected end of manifest in " + apk);
+					read += len;
+				}
+			}
+			finally {
+				is.close();
+			}
+		}
+		finally {
+			zip.close();
+		}
+	}
+
+	@Benchmark
+	public AXmlNode parseAXML20() throws IOException {
+		return new AXmlHandler(manifest, new AXML20Parser()).getDocument().getRootNode();
+	}
+
+	@Benchmark
+	public AXmlNode parseAXMLPrinter2() throws IOException {
+		return new AXmlHandler(manifest, new AXMLPrinter2Parser()).getDocument().getRootNode();
+	}
+
+}
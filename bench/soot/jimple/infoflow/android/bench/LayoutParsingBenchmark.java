@@ -0,0 +1,87 @@
+package soot.jimple.infoflow.android.bench;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+
+import soot.jimple.infoflow.android.SetupApplication;
+import soot.jimple.infoflow.android.axml.ApkArchive;
+import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.android.resources.LayoutControl;
+import soot.jimple.infoflow.android.resources.LayoutFileParser;
+
+/**
+ * Measures the parsing of all layout XML files of the APK files in the
+ * repository. The layout parser resolves the classes of the controls in the
+ * Soot scene, so Soot is loaded once for every APK file. The Android
+ * platforms directory must be given in the system property ANDROID_JARS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LayoutParsingBenchmark {
+
+	@Param({ "insecureBank/InsecureBank.apk", "testAPKs/enriched1.apk",
+			"testAPKs/9458cfb51c90130938abcef7173c3f6d44a02720.apk" })
+	public String apk;
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private String packageName;
+	private ARSCFileParser resParser;
+
+	@Setup
+	public void setup() throws IOException, XmlPullParserException {
+		String androidJars = System.getProperty("ANDROID_JARS");
+		if (androidJars == null || androidJars.isEmpty())
+			throw new RuntimeException("Android platforms not set, use -DANDROID_JARS=<dir>");
+
+		ProcessManifest manifest = new ProcessManifest(apk);
+		try {
+			packageName = manifest.getPackageName();
+		}
+		finally {
+			manifest.close();
+		}
+		resParser = new ARSCFileParser();
+		resParser.parse(apk);
+
+		soot.G.reset();
+		new SetupApplication(androidJars, apk).initializeSoot(false);
+	}
+
+	@TearDown
+	public void tearDown() {
+		soot.G.reset();
+		ApkArchive.closeAll();
+	}
+
+	@Benchmark
+	public Map<String, Set<LayoutControl>> parseLayoutFiles() {
+		LayoutFileParser lfp = new LayoutFileParser(packageName, resParser);
+		lfp.setThreads(threads);
+		lfp.parseLayoutFileDirect(apk);
+		return lfp.getUserControls();
+	}
+
+}
@@ -0,0 +1,65 @@
+package soot.jimple.infoflow.android.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlpull.v1.XmlPullParserException;
+
+import soot.jimple.infoflow.android.axml.ApkArchive;
+import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResPackage;
+
+/**
+ * Measures the parsing of the resource table and the manifest of the APK
+ * files in the repository. Both are parsed from scratch in every invocation,
+ * only the opened APK archive is shared, just like during the analysis.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ResourceParsingBenchmark {
+
+	@Param({ "insecureBank/InsecureBank.apk", "testAPKs/enriched1.apk",
+			"testAPKs/9458cfb51c90130938abcef7173c3f6d44a02720.apk" })
+	public String apk;
+
+	@TearDown
+	public void tearDown() {
+		ApkArchive.closeAll();
+	}
+
+	@Benchmark
+	public List<ResPackage> parseARSC() throws IOException {
+		ARSCFileParser parser = new ARSCFileParser();
+		parser.parse(apk);
+		return parser.getPackages();
+	}
+
+	@Benchmark
+	public String parseManifest() throws IOException, XmlPullParserException {
+		ProcessManifest manifest = new ProcessManifest(apk);
+		try {
+			return manifest.getPackageName();
+		}
+		finally {
+			manifest.close();
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+package soot.jimple.infoflow.android.bench;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import soot.jimple.infoflow.android.data.parsers.PermissionMethodParser;
+import soot.jimple.infoflow.source.data.SourceSinkDefinition;
+
+/**
+ * Measures reading and parsing the source and sink definition files in the
+ * repository. The parser only parses the definitions when they are first
+ * requested, so the benchmark asks for all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SourceSinkParsingBenchmark {
+
+	@Param({ "SourcesAndSinks.txt", "SourcesAndSinksWithPermission.txt" })
+	public String definitionFile;
+
+	@Benchmark
+	public void parsePermissionMethods(Blackhole bh) throws IOException {
+		PermissionMethodParser parser = PermissionMethodParser.fromFile(definitionFile);
+		Set<SourceSinkDefinition> sources = parser.getSources();
+		Set<SourceSinkDefinition> sinks = parser.getSinks();
+		bh.consume(sources);
+		bh.consume(sinks);
+	}
+
+}
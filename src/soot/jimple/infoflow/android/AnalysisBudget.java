@@ -0,0 +1,147 @@
+package soot.jimple.infoflow.android;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Wall-clock and heap budget for analyzing a single APK file. The budget is
+ * created once per app and handed down to all stages of the analysis, which
+ * regularly check it in their main loops and stop early once it has been
+ * exhausted. The analysis then continues with the partial results computed
+ * so far instead of running forever on pathological apps.
+ *
+ * The heap limit is compared against the heap usage after the last garbage
+ * collection of each memory pool, so that garbage which has not been
+ * collected yet does not count against the limit.
+ */
+public class AnalysisBudget {
+
+	private final long deadline;
+	private final long maxHeapBytes;
+	private final AnalysisBudget parent;
+	private volatile String exhaustedReason = null;
+
+	/**
+	 * Creates a new budget
+	 * @param timeoutSeconds The maximum wall-clock time in seconds, starting
+	 * now, or a value smaller than or equal to zero for no time limit
+	 * @param maxHeapMB The maximum amount of heap memory in megabytes the
+	 * analysis may use, or a value smaller than or equal to zero for no
+	 * memory limit
+	 */
+	public AnalysisBudget(long timeoutSeconds, long maxHeapMB) {
+		this.deadline = timeoutSeconds > 0
+				? System.currentTimeMillis() + timeoutSeconds * 1000 : Long.MAX_VALUE;
+		this.maxHeapBytes = maxHeapMB > 0 ? maxHeapMB * 1024 * 1024 : Long.MAX_VALUE;
+		this.parent = null;
+	}
+
+	private AnalysisBudget(long deadline, AnalysisBudget parent) {
+		this.deadline = deadline;
+		this.maxHeapBytes = Long.MAX_VALUE;
+		this.parent = parent;
+	}
+
+	/**
+	 * Creates a budget for a single stage that is exhausted once this budget
+	 * is exhausted or the given time has passed, whichever comes first
+	 * @param timeoutSeconds The maximum wall-clock time of the stage in
+	 * seconds, starting now
+	 * @return The budget of the stage
+	 */
+	public AnalysisBudget withTimeLimit(long timeoutSeconds) {
+		return new AnalysisBudget(Math.min(deadline,
+				System.currentTimeMillis() + timeoutSeconds * 1000), this);
+	}
+
+	/**
+	 * Creates a budget without any time or memory limits
+	 * @return A budget that is never exhausted unless it is cancelled
+	 */
+	public static AnalysisBudget unlimited() {
+		return new AnalysisBudget(-1, -1);
+	}
+
+	/**
+	 * Checks whether this budget has a time or memory limit at all
+	 * @return True if this budget can run out on its own, false if it can
+	 * only be cancelled explicitly
+	 */
+	public boolean hasLimits() {
+		return deadline != Long.MAX_VALUE || maxHeapBytes != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Checks whether the budget has been used up. Once this method has
+	 * returned true, it will always return true for this budget.
+	 * @return True if the analysis shall stop as soon as possible, otherwise
+	 * false
+	 */
+	public boolean isExhausted() {
+		if (exhaustedReason != null)
+			return true;
+		if (parent != null && parent.isExhausted()) {
+			exhaustedReason = parent.getExhaustedReason();
+			return true;
+		}
+		if (System.currentTimeMillis() > deadline) {
+			exhaustedReason = "time limit reached";
+			return true;
+		}
+		if (maxHeapBytes != Long.MAX_VALUE && getHeapUsageAfterGC() > maxHeapBytes) {
+			exhaustedReason = "memory limit reached";
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the heap usage after the last garbage collection, summed over all
+	 * heap memory pools. Pools that have not been collected yet do not
+	 * count.
+	 * @return The heap usage after the last garbage collection in bytes
+	 */
+	private static long getHeapUsageAfterGC() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP || !pool.isValid())
+				continue;
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (usage != null)
+				used += usage.getUsed();
+		}
+		return used;
+	}
+
+	/**
+	 * Marks this budget as exhausted, e.g., when the analysis is to be
+	 * aborted from the outside
+	 * @param reason The reason why the analysis is aborted
+	 */
+	public void cancel(String reason) {
+		this.exhaustedReason = reason;
+	}
+
+	/**
+	 * Gets the number of milliseconds left until the deadline
+	 * @return The number of milliseconds left, 0 if the deadline has already
+	 * passed, or Long.MAX_VALUE if there is no time limit
+	 */
+	public long getRemainingMillis() {
+		if (deadline == Long.MAX_VALUE)
+			return Long.MAX_VALUE;
+		return Math.max(0, deadline - System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the reason why this budget has been exhausted
+	 * @return The reason why this budget has been exhausted, or null if it
+	 * is still available
+	 */
+	public String getExhaustedReason() {
+		return exhaustedReason;
+	}
+
+}
@@ -0,0 +1,442 @@
+package soot.jimple.infoflow.android;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Registry for the wall time, CPU time, allocated bytes and peak heap usage
+ * of the phases of the analysis of a single APK file. Every stage of the
+ * analysis wraps its work in a phase:
+ *
+ * <pre>
+ * AnalysisMetrics.Phase phase = AnalysisMetrics.getInstance().startPhase(AnalysisMetrics.ARSC);
+ * try {
+ *     ...
+ * }
+ * finally {
+ *     phase.stop();
+ * }
+ * </pre>
+ *
+ * Phases with the same name are aggregated, e.g., the iterations of the
+ * callback analysis. Phases may be nested, in which case the time of the
+ * inner phase is contained in the time of the outer one.
+ *
+ * The CPU time is the CPU time of the whole process, so that phases running
+ * on several threads are accounted correctly. The allocated bytes are summed
+ * over all threads that are alive at the end of the phase, i.e., allocations
+ * of worker threads that have already terminated are missed. The peak heap
+ * usage is the highest heap usage seen while the phase is running. Since the
+ * heap only shrinks during garbage collections, the registry listens for the
+ * notifications of the garbage collectors and takes the heap usage right
+ * before every collection. In addition, the heap usage is sampled whenever a
+ * phase starts or stops. The peak usage of the memory pools is global to the
+ * JVM and is thus neither read nor reset. The registry must be reset for
+ * every APK file.
+ */
+public class AnalysisMetrics {
+
+	public static final String MANIFEST = "manifest";
+	public static final String ARSC = "arsc";
+	public static final String LAYOUT = "layout";
+	public static final String CALLBACK_ITERATION = "callback_iteration";
+	public static final String CALLGRAPH = "callgraph";
+	public static final String PARAMETER_SEARCH = "parameter_search";
+	public static final String TAINT_ROUND_1 = "taint_round_1";
+	public static final String TAINT_ROUND_2 = "taint_round_2";
+	public static final String DISPLAY_FLOW_VIEW_INFO = "display_flow_view_info";
+
+	/**
+	 * The aggregated measurements of all phases with the same name
+	 */
+	public static class PhaseStatistics {
+		private final String name;
+		private int count = 0;
+		private long wallNanos = 0;
+		private long cpuNanos = 0;
+		private long allocatedBytes = 0;
+		private long peakHeapBytes = 0;
+
+		private PhaseStatistics(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public int getCount() {
+			return this.count;
+		}
+
+		public long getWallNanos() {
+			return this.wallNanos;
+		}
+
+		public long getCpuNanos() {
+			return this.cpuNanos;
+		}
+
+		public long getAllocatedBytes() {
+			return this.allocatedBytes;
+		}
+
+		public long getPeakHeapBytes() {
+			return this.peakHeapBytes;
+		}
+	}
+
+	/**
+	 * A single running phase
+	 */
+	public class Phase {
+		private final String name;
+		private final long startWall;
+		private final long startCpu;
+		private final Map<Long, Long> startAllocated;
+		private long peakHeap = 0;
+
+		private Phase(String name) {
+			this.name = name;
+			this.startAllocated = getAllocatedBytesByThread();
+			this.startCpu = getCpuTime();
+			this.startWall = System.nanoTime();
+		}
+
+		/**
+		 * Stops this phase and records its measurements. Stopping a phase
+		 * more than once, or after the registry has been reset, has no
+		 * effect.
+		 */
+		public void stop() {
+			long wall = System.nanoTime() - startWall;
+			long cpu = getCpuTime() - startCpu;
+			long allocated = 0;
+			for (Map.Entry<Long, Long> entry : getAllocatedBytesByThread().entrySet()) {
+				Long before = startAllocated.get(entry.getKey());
+				allocated += entry.getValue() - (before == null ? 0 : before);
+			}
+			phaseStopped(this, wall, cpu, Math.max(0, allocated));
+		}
+	}
+
+	private static AnalysisMetrics instance = null;
+
+	public static synchronized AnalysisMetrics getInstance() {
+		if (instance == null)
+			instance = new AnalysisMetrics();
+		return instance;
+	}
+
+	private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+	private final List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+
+	private String apkName = "";
+	private final Map<String, PhaseStatistics> phases = new LinkedHashMap<String, PhaseStatistics>();
+	private final List<Phase> runningPhases = new ArrayList<Phase>();
+
+	AnalysisMetrics() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				heapPools.add(pool);
+		registerGCListener();
+		if (threadBean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+			if (sunBean.isThreadAllocatedMemorySupported())
+				sunBean.setThreadAllocatedMemoryEnabled(true);
+		}
+	}
+
+	/**
+	 * Discards all measurements and starts recording the phases of the given
+	 * APK file
+	 * @param apkName The name of the APK file that is analyzed next
+	 */
+	public synchronized void reset(String apkName) {
+		this.apkName = apkName;
+		this.phases.clear();
+		this.runningPhases.clear();
+	}
+
+	/**
+	 * Starts a new phase
+	 * @param name The name of the phase
+	 * @return The running phase. The caller must stop it once the phase is
+	 * done.
+	 */
+	public synchronized Phase startPhase(String name) {
+		Phase phase = new Phase(name);
+		runningPhases.add(phase);
+		sampleHeapUsage();
+		return phase;
+	}
+
+	private synchronized void phaseStopped(Phase phase, long wall, long cpu, long allocated) {
+		if (!runningPhases.contains(phase))
+			return;
+		sampleHeapUsage();
+		runningPhases.remove(phase);
+
+		PhaseStatistics stats = phases.get(phase.name);
+		if (stats == null) {
+			stats = new PhaseStatistics(phase.name);
+			phases.put(phase.name, stats);
+		}
+		stats.count++;
+		stats.wallNanos += wall;
+		stats.cpuNanos += cpu;
+		stats.allocatedBytes += allocated;
+		stats.peakHeapBytes = Math.max(stats.peakHeapBytes, phase.peakHeap);
+	}
+
+	private void sampleHeapUsage() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : heapPools)
+			used += pool.getUsage().getUsed();
+		recordHeapUsage(used);
+	}
+
+	private synchronized void recordHeapUsage(long used) {
+		for (Phase phase : runningPhases)
+			phase.peakHeap = Math.max(phase.peakHeap, used);
+	}
+
+	/**
+	 * Registers a listener with all garbage collectors that records the heap
+	 * usage before every collection for the running phases. If the JVM does
+	 * not send these notifications, the peaks are only sampled when phases
+	 * start or stop.
+	 */
+	private void registerGCListener() {
+		final Set<String> heapPoolNames = new HashSet<String>();
+		for (MemoryPoolMXBean pool : heapPools)
+			heapPoolNames.add(pool.getName());
+
+		try {
+			NotificationListener listener = new NotificationListener() {
+
+				@Override
+				public void handleNotification(Notification notification, Object handback) {
+					if (!notification.getType().equals(
+							GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+						return;
+					GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+							(CompositeData) notification.getUserData());
+					long used = 0;
+					for (Map.Entry<String, MemoryUsage> entry : info.getGcInfo().getMemoryUsageBeforeGc().entrySet())
+						if (heapPoolNames.contains(entry.getKey()))
+							used += entry.getValue().getUsed();
+					recordHeapUsage(used);
+				}
+
+			};
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+				if (gc instanceof NotificationEmitter)
+					((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+		}
+		catch (NoClassDefFoundError e) {
+			System.err.println("Garbage collection notifications are not supported, "
+					+ "sampling the peak heap usage at phase boundaries only");
+		}
+	}
+
+	private long getCpuTime() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			long cpu = ((com.sun.management.OperatingSystemMXBean) osBean).getProcessCpuTime();
+			if (cpu >= 0)
+				return cpu;
+		}
+		return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : 0;
+	}
+
+	private Map<Long, Long> getAllocatedBytesByThread() {
+		Map<Long, Long> allocated = new HashMap<Long, Long>();
+		if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+			return allocated;
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+		if (!sunBean.isThreadAllocatedMemoryEnabled())
+			return allocated;
+
+		long[] threadIds = sunBean.getAllThreadIds();
+		long[] bytes = sunBean.getThreadAllocatedBytes(threadIds);
+		for (int i = 0; i < threadIds.length; i++)
+			if (bytes[i] >= 0)
+				allocated.put(threadIds[i], bytes[i]);
+		return allocated;
+	}
+
+	/**
+	 * Gets the name of the APK file whose phases are recorded
+	 * @return The name of the current APK file
+	 */
+	public synchronized String getApkName() {
+		return this.apkName;
+	}
+
+	/**
+	 * Gets the measurements of the phases that have been completed so far
+	 * @return The measurements of the completed phases in the order in which
+	 * the phases were first stopped
+	 */
+	public synchronized List<PhaseStatistics> getPhases() {
+		return new ArrayList<PhaseStatistics>(phases.values());
+	}
+
+	/**
+	 * Gets the measurements of the phases with the given name
+	 * @param name The name of the phase
+	 * @return The measurements of the phases with the given name, or null if
+	 * no such phase has been completed
+	 */
+	public synchronized PhaseStatistics getPhase(String name) {
+		return phases.get(name);
+	}
+
+	/**
+	 * Renders the measurements as a JSON document
+	 * @return The measurements of the current APK file as JSON
+	 */
+	public synchronized String toJSON() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"apk\": \"").append(escapeJSON(apkName)).append("\",\n  \"phases\": [");
+		boolean first = true;
+		for (PhaseStatistics stats : phases.values()) {
+			sb.append(first ? "\n" : ",\n");
+			first = false;
+			sb.append("    {\"name\": \"").append(escapeJSON(stats.name)).append("\"");
+			sb.append(", \"count\": ").append(stats.count);
+			sb.append(", \"wallSeconds\": ").append(stats.wallNanos / 1E9);
+			sb.append(", \"cpuSeconds\": ").append(stats.cpuNanos / 1E9);
+			sb.append(", \"allocatedBytes\": ").append(stats.allocatedBytes);
+			sb.append(", \"peakHeapBytes\": ").append(stats.peakHeapBytes);
+			sb.append("}");
+		}
+		sb.append(first ? "]\n}\n" : "\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Renders the measurements in the Prometheus text exposition format,
+	 * e.g., for the textfile collector of the node exporter
+	 * @return The measurements of the current APK file in the Prometheus
+	 * text format
+	 */
+	public synchronized String toPrometheus() {
+		StringBuilder sb = new StringBuilder();
+		appendPrometheusMetric(sb, "flowcog_phase_count", "Number of times the phase was run", "counter", 0);
+		appendPrometheusMetric(sb, "flowcog_phase_wall_seconds", "Wall-clock time spent in the phase", "gauge", 1);
+		appendPrometheusMetric(sb, "flowcog_phase_cpu_seconds", "CPU time of the process spent in the phase", "gauge", 2);
+		appendPrometheusMetric(sb, "flowcog_phase_allocated_bytes", "Bytes allocated during the phase", "gauge", 3);
+		appendPrometheusMetric(sb, "flowcog_phase_peak_heap_bytes", "Peak heap usage during the phase", "gauge", 4);
+		return sb.toString();
+	}
+
+	private void appendPrometheusMetric(StringBuilder sb, String metric, String help, String type, int field) {
+		sb.append("# HELP ").append(metric).append(" ").append(help).append("\n");
+		sb.append("# TYPE ").append(metric).append(" ").append(type).append("\n");
+		for (PhaseStatistics stats : phases.values()) {
+			sb.append(metric).append("{apk=\"").append(escapePrometheus(apkName))
+					.append("\",phase=\"").append(escapePrometheus(stats.name)).append("\"} ");
+			switch (field) {
+			case 0:
+				sb.append(stats.count);
+				break;
+			case 1:
+				sb.append(stats.wallNanos / 1E9);
+				break;
+			case 2:
+				sb.append(stats.cpuNanos / 1E9);
+				break;
+			case 3:
+				sb.append(stats.allocatedBytes);
+				break;
+			default:
+				sb.append(stats.peakHeapBytes);
+				break;
+			}
+			sb.append("\n");
+		}
+	}
+
+	private static String escapeJSON(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\')
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private static String escapePrometheus(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Writes the measurements of the current APK file into the given
+	 * directory, as JSON into &lt;apk&gt;.metrics.json and in the Prometheus
+	 * text format into &lt;apk&gt;.prom. The files are replaced atomically, so
+	 * that a collector never reads a partially written file.
+	 * @param dir The directory into which to write the files
+	 * @throws IOException Thrown if the files could not be written
+	 */
+	public synchronized void writeReports(File dir) throws IOException {
+		if (!dir.exists() && !dir.mkdirs())
+			throw new IOException("Could not create metrics directory " + dir);
+		String baseName = new File(apkName).getName();
+		writeAtomically(new File(dir, baseName + ".metrics.json"), toJSON());
+		writeAtomically(new File(dir, baseName + ".prom"), toPrometheus());
+	}
+
+	private static void writeAtomically(File file, String contents) throws IOException {
+		File tmpFile = new File(file.getParentFile(), file.getName() + "." + System.nanoTime() + ".tmp");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), Charset.forName("UTF-8"));
+		try {
+			writer.write(contents);
+		}
+		finally {
+			writer.close();
+		}
+		try {
+			Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e) {
+			tmpFile.delete();
+			throw e;
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+package soot.jimple.infoflow.android;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import soot.jimple.infoflow.android.axml.ApkArchive;
+import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.android.nu.ResourceModelCache;
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.ipc.IIPCManager;
+import soot.jimple.infoflow.taintWrappers.ITaintPropagationWrapper;
+
+/**
+ * Everything the stages of the analysis of a single app have in common. The
+ * constant propagation, the taint analysis and the view-flow correlation all
+ * need the manifest, the resources, the entry points and callbacks and the
+ * taint wrapper of the same app. Instead of deriving these inputs again, the
+ * stages borrow them from the session, which parses the manifest and the
+ * resource file only once and keeps the results of the first callback
+ * analysis for all further stages.
+ *
+ * The Soot scene itself is not part of the session, since every stage
+ * resets it to load the app with its own options.
+ */
+public class AnalysisSession {
+
+	private final String apkFileLocation;
+	private final String androidJar;
+	private final InfoflowAndroidConfiguration config;
+	private final IIPCManager ipcManager;
+
+	private AnalysisBudget budget = AnalysisBudget.unlimited();
+	private ResourceModelCache resourceCache = null;
+
+	private ProcessManifest manifest = null;
+	private ARSCFileParser resourceParser = null;
+	private EntryPointAnalysisResult entryPointResult = null;
+	private ITaintPropagationWrapper taintWrapper = null;
+
+	/**
+	 * Creates a new session for analyzing the given app
+	 * @param apkFileLocation The path to the APK file to be analyzed
+	 * @param androidJar The path to the Android SDK's "platforms" directory
+	 * or to a single JAR file to force one
+	 * @param config The configuration shared by all stages
+	 * @param ipcManager The IPC manager to use for modelling inter-component
+	 * data flows, or null
+	 */
+	public AnalysisSession(String apkFileLocation, String androidJar,
+			InfoflowAndroidConfiguration config, IIPCManager ipcManager) {
+		this.apkFileLocation = apkFileLocation;
+		this.androidJar = androidJar;
+		this.config = config;
+		this.ipcManager = ipcManager;
+	}
+
+	/**
+	 * Creates a new {@link SetupApplication} for a stage of the analysis. The
+	 * application uses the configuration, the budget and the resource cache
+	 * of this session and takes the manifest, the resources and the entry
+	 * points and callbacks from it. The entry points and callbacks do not
+	 * depend on the Soot scene, since every stage resets the scene after the
+	 * callback analysis anyway, and they refer to classes by name only, so
+	 * they are always reused.
+	 * @return The new application
+	 */
+	public SetupApplication createSetupApplication() {
+		SetupApplication app = new SetupApplication(androidJar, apkFileLocation, ipcManager);
+		app.setConfig(config);
+		app.setBudget(budget);
+		app.setResourceModelCache(resourceCache);
+		app.setAnalysisSession(this);
+		app.setEntryPointResult(entryPointResult);
+		return app;
+	}
+
+	public String getApkFileLocation() {
+		return this.apkFileLocation;
+	}
+
+	public String getAndroidJar() {
+		return this.androidJar;
+	}
+
+	public InfoflowAndroidConfiguration getConfig() {
+		return this.config;
+	}
+
+	/**
+	 * Sets the time and memory budget for analyzing the app. The budget is
+	 * handed to all applications created afterwards.
+	 * @param budget The budget for analyzing the app
+	 */
+	public void setBudget(AnalysisBudget budget) {
+		this.budget = budget;
+	}
+
+	public AnalysisBudget getBudget() {
+		return this.budget;
+	}
+
+	/**
+	 * Sets the on-disk cache for the results of the callback analysis
+	 * @param resourceCache The cache to use, or null to disable caching
+	 */
+	public void setResourceModelCache(ResourceModelCache resourceCache) {
+		this.resourceCache = resourceCache;
+	}
+
+	public ResourceModelCache getResourceModelCache() {
+		return this.resourceCache;
+	}
+
+	/**
+	 * Gets the manifest of the app. The manifest is parsed on the first call.
+	 * @return The manifest of the app
+	 * @throws IOException Thrown if the APK file cannot be read
+	 * @throws XmlPullParserException Thrown if the manifest is malformed
+	 */
+	public ProcessManifest getManifest() throws IOException, XmlPullParserException {
+		if (manifest == null) {
+			AnalysisMetrics.Phase phase = AnalysisMetrics.getInstance().startPhase(
+					AnalysisMetrics.MANIFEST);
+			try {
+				manifest = new ProcessManifest(apkFileLocation);
+			}
+			finally {
+				phase.stop();
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * Gets the package name declared in the manifest of the app
+	 * @return The package name of the app
+	 * @throws IOException Thrown if the APK file cannot be read
+	 * @throws XmlPullParserException Thrown if the manifest is malformed
+	 */
+	public String getAppPackageName() throws IOException, XmlPullParserException {
+		return getManifest().getPackageName();
+	}
+
+	/**
+	 * Gets the parser holding the resources of the app. The resource file is
+	 * parsed on the first call.
+	 * @return The parser holding the resources of the app
+	 * @throws IOException Thrown if the APK file cannot be read
+	 */
+	public ARSCFileParser getResourceParser() throws IOException {
+		if (resourceParser == null) {
+			ARSCFileParser parser = new ARSCFileParser();
+			AnalysisMetrics.Phase phase = AnalysisMetrics.getInstance().startPhase(
+					AnalysisMetrics.ARSC);
+			try {
+				parser.parse(apkFileLocation);
+			}
+			finally {
+				phase.stop();
+			}
+			resourceParser = parser;
+		}
+		return resourceParser;
+	}
+
+	/**
+	 * Gets the resource packages of the app
+	 * @return The resource packages of the app
+	 * @throws IOException Thrown if the APK file cannot be read
+	 */
+	public List<ARSCFileParser.ResPackage> getResourcePackages() throws IOException {
+		return getResourceParser().getPackages();
+	}
+
+	/**
+	 * Sets the results of the entry point and callback analysis, including
+	 * the user controls found in the layout files
+	 * @param entryPointResult The results of the entry point and callback
+	 * analysis
+	 */
+	public void setEntryPointResult(EntryPointAnalysisResult entryPointResult) {
+		this.entryPointResult = entryPointResult;
+	}
+
+	/**
+	 * Gets the results of the entry point and callback analysis
+	 * @return The results of the entry point and callback analysis, or null
+	 * if no stage has computed them yet
+	 */
+	public EntryPointAnalysisResult getEntryPointResult() {
+		return this.entryPointResult;
+	}
+
+	/**
+	 * Sets the taint wrapper shared by all stages. The data flow analysis
+	 * initializes the wrapper again for every run.
+	 * @param taintWrapper The taint wrapper
+	 */
+	public void setTaintWrapper(ITaintPropagationWrapper taintWrapper) {
+		this.taintWrapper = taintWrapper;
+	}
+
+	/**
+	 * Gets the taint wrapper shared by all stages
+	 * @return The taint wrapper, or null if none has been created yet
+	 */
+	public ITaintPropagationWrapper getTaintWrapper() {
+		return this.taintWrapper;
+	}
+
+	/**
+	 * Closes the shared archive of the APK file and releases all results of
+	 * this session
+	 */
+	public void close() {
+		ApkArchive.close(new File(apkFileLocation));
+		manifest = null;
+		resourceParser = null;
+		entryPointResult = null;
+		taintWrapper = null;
+	}
+
+}
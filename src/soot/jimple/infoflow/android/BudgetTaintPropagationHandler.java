@@ -0,0 +1,61 @@
+package soot.jimple.infoflow.android;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import soot.Unit;
+import soot.jimple.infoflow.InfoflowManager;
+import soot.jimple.infoflow.data.Abstraction;
+import soot.jimple.infoflow.handlers.TaintPropagationHandler;
+
+/**
+ * Taint propagation handler that stops the data flow solver once the
+ * analysis budget of the current app is exhausted. From that point on, no
+ * new abstractions are propagated, so the solver drains its work list
+ * quickly and the results found so far are reported as usual.
+ *
+ * Since the handler is called for every flow function, the budget is only
+ * checked every {@link #CHECK_INTERVAL} calls.
+ */
+public class BudgetTaintPropagationHandler implements TaintPropagationHandler {
+
+	/**
+	 * The number of flow functions after which the budget is checked again.
+	 * Must be a power of two.
+	 */
+	static final int CHECK_INTERVAL = 1024;
+
+	private final AnalysisBudget budget;
+	private final AtomicInteger calls = new AtomicInteger();
+	private volatile boolean exhausted = false;
+	private volatile boolean reported = false;
+
+	public BudgetTaintPropagationHandler(AnalysisBudget budget) {
+		this.budget = budget;
+	}
+
+	@Override
+	public void notifyFlowIn(Unit stmt, Abstraction taint,
+			InfoflowManager manager, FlowFunctionType type) {
+		// nothing to do here
+	}
+
+	@Override
+	public Set<Abstraction> notifyFlowOut(Unit stmt, Abstraction d1,
+			Abstraction incoming, Set<Abstraction> outgoing,
+			InfoflowManager manager, FlowFunctionType type) {
+		if (!exhausted) {
+			if ((calls.incrementAndGet() & (CHECK_INTERVAL - 1)) != 0 || !budget.isExhausted())
+				return outgoing;
+			exhausted = true;
+		}
+		if (!reported) {
+			reported = true;
+			System.err.println("Analysis budget exhausted (" + budget.getExhaustedReason()
+					+ "), stopping taint propagation with partial results");
+		}
+		return Collections.emptySet();
+	}
+
+}
@@ -0,0 +1,65 @@
+package soot.jimple.infoflow.android;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.android.resources.LayoutControl;
+import soot.jimple.infoflow.data.SootMethodAndClass;
+
+/**
+ * Results of the entry point and callback analysis for a single app. The
+ * callback analysis is the most expensive part of setting up an analysis
+ * round, because it loads the app and builds a callgraph several times.
+ * Since the results only depend on the app and the configuration, they can
+ * be computed once and then be handed to every further {@link SetupApplication}
+ * for the same app. The results refer to classes and methods by name only,
+ * so they do not keep the Soot scene of the analysis round alive in which
+ * they were computed.
+ */
+public class EntryPointAnalysisResult {
+
+	private final String appPackageName;
+	private final Set<String> entrypoints;
+	private final List<ARSCFileParser.ResPackage> resourcePackages;
+	private final Map<String, Set<SootMethodAndClass>> callbackMethods;
+	private final Map<Integer, LayoutControl> userControlsByID;
+
+	EntryPointAnalysisResult(String appPackageName, Set<String> entrypoints,
+			List<ARSCFileParser.ResPackage> resourcePackages,
+			Map<String, Set<SootMethodAndClass>> callbackMethods,
+			Map<Integer, LayoutControl> userControlsByID) {
+		this.appPackageName = appPackageName;
+		this.entrypoints = Collections.unmodifiableSet(entrypoints);
+		this.resourcePackages = resourcePackages;
+		this.callbackMethods = Collections.unmodifiableMap(callbackMethods);
+		this.userControlsByID = userControlsByID;
+	}
+
+	public String getAppPackageName() {
+		return this.appPackageName;
+	}
+
+	public Set<String> getEntrypoints() {
+		return this.entrypoints;
+	}
+
+	public List<ARSCFileParser.ResPackage> getResourcePackages() {
+		return this.resourcePackages;
+	}
+
+	public Map<String, Set<SootMethodAndClass>> getCallbackMethods() {
+		return this.callbackMethods;
+	}
+
+	/**
+	 * Gets the user controls found in the layout XML files
+	 * @return The user controls by ID, or null if callbacks were disabled
+	 */
+	public Map<Integer, LayoutControl> getUserControlsByID() {
+		return this.userControlsByID;
+	}
+
+}
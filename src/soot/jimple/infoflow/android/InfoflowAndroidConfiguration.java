@@ -32,6 +32,14 @@ public class InfoflowAndroidConfiguration extends InfoflowConfiguration {
 	private boolean enableCallbacks = true;
 	private boolean enableCallbackSources = true;
 	private CallbackAnalyzer callbackAnalyzer = CallbackAnalyzer.Default;
+	private boolean reuseSootInstance = false;
+	private boolean incrementalCallbackAnalysis = false;
+	private int layoutParserThreads = 1;
+	private int callbackAnalysisThreads = 1;
+	private boolean useSourceSinkBundles = false;
+	private boolean eagerSourceSinkClassification = false;
+	private boolean resolveReturnedResourceIDs = false;
+	private boolean resourceConstantPropagation = false;
 	
 	private LayoutMatchingMode layoutMatchingMode = LayoutMatchingMode.MatchSensitiveOnly;
 	
@@ -53,6 +61,14 @@ public class InfoflowAndroidConfiguration extends InfoflowConfiguration {
 			this.enableCallbacks = androidConfig.enableCallbacks;
 			this.enableCallbackSources = androidConfig.enableCallbackSources;
 			this.layoutMatchingMode = androidConfig.layoutMatchingMode;
+			this.reuseSootInstance = androidConfig.reuseSootInstance;
+			this.incrementalCallbackAnalysis = androidConfig.incrementalCallbackAnalysis;
+			this.layoutParserThreads = androidConfig.layoutParserThreads;
+			this.callbackAnalysisThreads = androidConfig.callbackAnalysisThreads;
+			this.useSourceSinkBundles = androidConfig.useSourceSinkBundles;
+			this.eagerSourceSinkClassification = androidConfig.eagerSourceSinkClassification;
+			this.resolveReturnedResourceIDs = androidConfig.resolveReturnedResourceIDs;
+			this.resourceConstantPropagation = androidConfig.resourceConstantPropagation;
 		}
 	}
 	
@@ -173,4 +189,178 @@ public class InfoflowAndroidConfiguration extends InfoflowConfiguration {
 		return this.callbackAnalyzer;
 	}
 
+	/**
+	 * Sets whether the loaded Soot instance shall be kept between the
+	 * iterations of the callback analysis. If this option is disabled, the
+	 * app is loaded from scratch in every iteration. The entry points and
+	 * callbacks are shared between the rounds on the same app through the
+	 * {@link AnalysisSession} regardless of this option.
+	 * @param reuseSootInstance True if Soot instances shall be reused,
+	 * otherwise false
+	 */
+	public void setReuseSootInstance(boolean reuseSootInstance) {
+		this.reuseSootInstance = reuseSootInstance;
+	}
+	
+	/**
+	 * Gets whether the loaded Soot instance shall be kept between the
+	 * iterations of the callback analysis
+	 * @return True if Soot instances shall be reused, otherwise false
+	 */
+	public boolean getReuseSootInstance() {
+		return this.reuseSootInstance;
+	}
+	
+	/**
+	 * Sets whether the iterations of the callback analysis after the first
+	 * one shall extend the existing callgraph instead of building a new one.
+	 * The Soot instance and the main method are then kept, and only the
+	 * methods reachable from the newly found callbacks are added to the
+	 * callgraph using CHA. This is much faster for apps that need many
+	 * iterations, but may find more callbacks than a full rebuild with a
+	 * more precise callgraph algorithm.
+	 * @param incrementalCallbackAnalysis True to extend the callgraph in the
+	 * later iterations of the callback analysis, false to rebuild it
+	 */
+	public void setIncrementalCallbackAnalysis(boolean incrementalCallbackAnalysis) {
+		this.incrementalCallbackAnalysis = incrementalCallbackAnalysis;
+	}
+	
+	/**
+	 * Gets whether the iterations of the callback analysis after the first
+	 * one shall extend the existing callgraph instead of building a new one
+	 * @return True if the callgraph is extended in the later iterations of
+	 * the callback analysis, false if it is rebuilt
+	 */
+	public boolean getIncrementalCallbackAnalysis() {
+		return this.incrementalCallbackAnalysis;
+	}
+	
+	/**
+	 * Sets the number of threads to use for parsing the layout XML files
+	 * @param layoutParserThreads The number of threads to use for parsing the
+	 * layout XML files. Values smaller than or equal to one parse all files
+	 * sequentially.
+	 */
+	public void setLayoutParserThreads(int layoutParserThreads) {
+		this.layoutParserThreads = layoutParserThreads;
+	}
+	
+	/**
+	 * Gets the number of threads to use for parsing the layout XML files
+	 * @return The number of threads to use for parsing the layout XML files
+	 */
+	public int getLayoutParserThreads() {
+		return this.layoutParserThreads;
+	}
+	
+	/**
+	 * Sets the number of threads to use for finding the callbacks registered
+	 * in the code of the app. With more than one thread, every method
+	 * reachable from a component is analyzed only once, no matter how many
+	 * components reach it. Only the default callback analyzer supports this.
+	 * @param callbackAnalysisThreads The number of threads to use for the
+	 * callback analysis. Values smaller than or equal to one analyze the
+	 * components one after the other.
+	 */
+	public void setCallbackAnalysisThreads(int callbackAnalysisThreads) {
+		this.callbackAnalysisThreads = callbackAnalysisThreads;
+	}
+	
+	/**
+	 * Gets the number of threads to use for finding the callbacks registered
+	 * in the code of the app
+	 * @return The number of threads to use for the callback analysis
+	 */
+	public int getCallbackAnalysisThreads() {
+		return this.callbackAnalysisThreads;
+	}
+
+	/**
+	 * Sets whether the source and sink definition files shall be compiled
+	 * into binary bundles. If enabled, a bundle is written next to every
+	 * definition file on first use and loaded instead of the definition file
+	 * afterwards as long as the definition file has not been modified.
+	 * @param useSourceSinkBundles True to compile and use source/sink
+	 * bundles, otherwise false
+	 */
+	public void setUseSourceSinkBundles(boolean useSourceSinkBundles) {
+		this.useSourceSinkBundles = useSourceSinkBundles;
+	}
+	
+	/**
+	 * Gets whether the source and sink definition files shall be compiled
+	 * into binary bundles
+	 * @return True if source/sink bundles are compiled and used, otherwise
+	 * false
+	 */
+	public boolean getUseSourceSinkBundles() {
+		return this.useSourceSinkBundles;
+	}
+
+	/**
+	 * Sets whether all reachable call sites shall be classified as sources
+	 * and sinks in parallel before the data flow analysis starts, instead of
+	 * classifying every call site when the data flow solver first asks for
+	 * it. The classification uses as many threads as the data flow analysis.
+	 * @param eagerSourceSinkClassification True to classify all call sites
+	 * before the data flow analysis, false to classify them lazily
+	 */
+	public void setEagerSourceSinkClassification(boolean eagerSourceSinkClassification) {
+		this.eagerSourceSinkClassification = eagerSourceSinkClassification;
+	}
+	
+	/**
+	 * Gets whether all reachable call sites shall be classified as sources
+	 * and sinks before the data flow analysis starts
+	 * @return True if all call sites are classified before the data flow
+	 * analysis, false if they are classified lazily
+	 */
+	public boolean getEagerSourceSinkClassification() {
+		return this.eagerSourceSinkClassification;
+	}
+
+	/**
+	 * Sets whether the resource IDs of UI sources shall also be resolved if
+	 * they are returned by another method of the app, e.g. a helper that
+	 * always returns the same R.id constant. The summaries of these methods
+	 * are computed once and shared between all call sites.
+	 * @param resolveReturnedResourceIDs True to resolve resource IDs returned
+	 * by other methods, otherwise false
+	 */
+	public void setResolveReturnedResourceIDs(boolean resolveReturnedResourceIDs) {
+		this.resolveReturnedResourceIDs = resolveReturnedResourceIDs;
+	}
+	
+	/**
+	 * Gets whether the resource IDs of UI sources shall also be resolved if
+	 * they are returned by another method of the app
+	 * @return True if resource IDs returned by other methods are resolved,
+	 * otherwise false
+	 */
+	public boolean getResolveReturnedResourceIDs() {
+		return this.resolveReturnedResourceIDs;
+	}
+	
+	/**
+	 * Sets whether the resource IDs and texts of the key invocations, e.g.
+	 * findViewById, shall be resolved with the sparse constant propagation if
+	 * they are not assigned directly. The propagation replaces the much slower
+	 * IFDS-based constant propagation.
+	 * @param resourceConstantPropagation True to resolve the resource IDs
+	 * with the sparse constant propagation, otherwise false
+	 */
+	public void setResourceConstantPropagation(boolean resourceConstantPropagation) {
+		this.resourceConstantPropagation = resourceConstantPropagation;
+	}
+	
+	/**
+	 * Gets whether the resource IDs and texts of the key invocations shall be
+	 * resolved with the sparse constant propagation
+	 * @return True if the sparse constant propagation is used, otherwise false
+	 */
+	public boolean getResourceConstantPropagation() {
+		return this.resourceConstantPropagation;
+	}
+
 }
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import javax.activation.UnsupportedDataTypeException;
 
@@ -33,6 +34,7 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import soot.Main;
 import soot.MethodOrMethodContext;
+import soot.Pack;
 import soot.PackManager;
 import soot.Scene;
 import soot.SootClass;
@@ -50,12 +52,16 @@ import soot.jimple.infoflow.android.callbacks.FastCallbackAnalyzer;
 import soot.jimple.infoflow.android.config.SootConfigForAndroid;
 import soot.jimple.infoflow.android.data.AndroidMethod;
 import soot.jimple.infoflow.android.data.parsers.PermissionMethodParser;
+import soot.jimple.infoflow.android.data.parsers.SourceSinkBundle;
 import soot.jimple.infoflow.android.manifest.ProcessManifest;
 import soot.jimple.infoflow.android.nu.FlowClassifier;
 import soot.jimple.infoflow.android.nu.InfoflowResultsWithFlowPathSet;
 import soot.jimple.infoflow.android.nu.LayoutFileParserForTextExtraction;
 import soot.jimple.infoflow.android.nu.LayoutTextTreeNode;
+import soot.jimple.infoflow.android.nu.MethodGraphCache;
 import soot.jimple.infoflow.android.nu.ParameterSearch;
+import soot.jimple.infoflow.android.nu.ResourceModelCache;
+import soot.jimple.infoflow.android.nu.ResourceModelCache.EntryPointSnapshot;
 import soot.jimple.infoflow.android.nu.ResourceManager;
 import soot.jimple.infoflow.android.nu.ViewFlowRelateSourceSinkManager;
 import soot.jimple.infoflow.android.resources.ARSCFileParser;
@@ -87,6 +93,9 @@ import soot.jimple.infoflow.source.data.ISourceSinkDefinitionProvider;
 import soot.jimple.infoflow.source.data.SourceSinkDefinition;
 import soot.jimple.infoflow.taintWrappers.ITaintPropagationWrapper;
 import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.CallGraphBuilder;
+import soot.jimple.toolkits.callgraph.Edge;
+import soot.jimple.toolkits.pointer.DumbPointerAnalysis;
 import soot.options.Options;
 import soot.tagkit.Tag;
 import soot.toolkits.graph.ExceptionalUnitGraph;
@@ -134,9 +143,74 @@ public class SetupApplication {
 	
 	private FlowPathSet fps = null;
 	
+	private AnalysisBudget budget = AnalysisBudget.unlimited();
+	private EntryPointAnalysisResult entryPointResult = null;
+	private ResourceModelCache resourceCache = null;
+	private AnalysisSession session = null;
+	
 	public void setFlowPathSet(FlowPathSet fps){
 		this.fps = fps;
 	}
+	
+	/**
+	 * Sets the time and memory budget for analyzing the current app. All
+	 * stages stop early once the budget is exhausted and continue with their
+	 * partial results.
+	 * @param budget The budget for analyzing the current app
+	 */
+	public void setBudget(AnalysisBudget budget) {
+		this.budget = budget;
+	}
+	
+	/**
+	 * Sets the results of the entry point and callback analysis from a
+	 * previous analysis round on the same app. If set, the callback analysis
+	 * is not run again.
+	 * @param entryPointResult The results of a previous analysis round, or
+	 * null to compute the entry points and callbacks from scratch
+	 */
+	public void setEntryPointResult(EntryPointAnalysisResult entryPointResult) {
+		this.entryPointResult = entryPointResult;
+	}
+	
+	/**
+	 * Sets the on-disk cache for the results of the callback analysis. If
+	 * the same app has already been analyzed with the same callback
+	 * configuration, the callbacks are taken from the cache.
+	 * @param resourceCache The cache to use, or null to disable caching
+	 */
+	public void setResourceModelCache(ResourceModelCache resourceCache) {
+		this.resourceCache = resourceCache;
+	}
+	
+	/**
+	 * Sets the session of the app. If set, the manifest and the resources are
+	 * taken from the session instead of being parsed again, and the results
+	 * of the entry point and callback analysis are stored in the session.
+	 * @param session The session of the app, or null to parse everything
+	 * from scratch
+	 */
+	public void setAnalysisSession(AnalysisSession session) {
+		this.session = session;
+	}
+	
+	/**
+	 * Gets the results of the entry point and callback analysis. Make sure
+	 * to call calculateSourcesSinksEntryPoints() first, or you will get a
+	 * null result.
+	 * @return The results of the entry point and callback analysis
+	 */
+	public EntryPointAnalysisResult getEntryPointResult() {
+		return this.entryPointResult;
+	}
+	
+	/**
+	 * Gets the time and memory budget for analyzing the current app
+	 * @return The budget for analyzing the current app
+	 */
+	public AnalysisBudget getBudget() {
+		return this.budget;
+	}
 	/**
 	 * Creates a new instance of the {@link SetupApplication} class
 	 * 
@@ -387,45 +461,11 @@ public class SetupApplication {
 		// To look for callbacks, we need to start somewhere. We use the Android
 		// lifecycle methods for this purpose.
 		this.sourceSinkProvider = sourcesAndSinks;
-		ProcessManifest processMan = new ProcessManifest(apkFileLocation);
-		this.appPackageName = processMan.getPackageName();
-		this.entrypoints = processMan.getEntryPointClasses();
-
-		// Parse the resource file
-		long beforeARSC = System.nanoTime();
-		ARSCFileParser resParser = new ARSCFileParser();
-		resParser.parse(apkFileLocation);
-		logger.info("ARSC file parsing took " + (System.nanoTime() - beforeARSC) / 1E9 + " seconds");
-		this.resourcePackages = resParser.getPackages();
-
-		// Add the callback methods
-		LayoutFileParser lfp = null;
-		if (config.getEnableCallbacks()) {
-			if (callbackClasses != null && callbackClasses.isEmpty()) {
-				logger.warn("Callback definition file is empty, disabling callbacks");
-			}
-			else {
-				lfp = new LayoutFileParser(this.appPackageName, resParser);
-				switch (config.getCallbackAnalyzer()) {
-				case Fast:
-					calculateCallbackMethodsFast(resParser, lfp);
-					break;
-				case Default:
-					calculateCallbackMethods(resParser, lfp);
-					break;
-				default:
-					throw new RuntimeException("Unknown callback analyzer");
-				}
-				
-				// Some informational output
-				System.out.println("Found " + lfp.getUserControls() + " layout controls");
-			}
-		}
-		
-		System.out.println("Entry point calculation done.");
+		Map<Integer, LayoutControl> userControls = calculateEntrypointsAndCallbacks();
 
 		// Clean up everything we no longer need
 		soot.G.reset();
+		MethodGraphCache.getInstance().clear();
 
 		// Create the SourceSinkManager
 		{
@@ -438,34 +478,49 @@ public class SetupApplication {
 					this.sourceSinkProvider.getSinks(),
 					callbacks,
 					config.getLayoutMatchingMode(),
-					lfp == null ? null : lfp.getUserControlsByID());
+					userControls);
 
 			sourceSinkManager.setAppPackageName(this.appPackageName);
 			sourceSinkManager.setResourcePackages(this.resourcePackages);
 			sourceSinkManager.setEnableCallbackSources(this.config.getEnableCallbackSources());
+			configureSourceSinkClassification();
 		}
 
 		entryPointCreator = createEntryPointCreator();
 	}
-	
+
 	/**
-	 * Calculates the sets of sources, sinks, entry points, and callback methods
-	 * for the given APK file.
-	 * 
+	 * Creates the provider for the source and sink definitions in the given
+	 * file. If source/sink bundles are enabled, definition files are compiled
+	 * into a bundle next to the original file on first use, and the bundle is
+	 * loaded instead of the original file as long as it is up to date.
+	 *
 	 * @param sourceSinkFile
 	 *            The full path and file name of the file containing the sources and sinks
+	 * @return The provider for the definitions in the given file
 	 * @throws IOException
 	 *             Thrown if the given source/sink file could not be read.
-	 * @throws XmlPullParserException
-	 *             Thrown if the Android manifest file could not be read.
 	 */
-	public void calculateSourcesSinksEntrypoints(String sourceSinkFile)
-			throws IOException, XmlPullParserException {
-		ISourceSinkDefinitionProvider parser = null;
-		
+	private ISourceSinkDefinitionProvider createSourceSinkProvider(String sourceSinkFile)
+			throws IOException {
 		String fileExtension = sourceSinkFile.substring(sourceSinkFile.lastIndexOf("."));
 		fileExtension = fileExtension.toLowerCase();
-		
+		if (fileExtension.equals(SourceSinkBundle.FILE_EXTENSION))
+			return SourceSinkBundle.fromFile(sourceSinkFile);
+
+		File bundleFile = new File(sourceSinkFile + SourceSinkBundle.FILE_EXTENSION);
+		if (config.getUseSourceSinkBundles()
+				&& SourceSinkBundle.isUpToDate(bundleFile, new File(sourceSinkFile))) {
+			try {
+				return SourceSinkBundle.fromFile(bundleFile.getPath());
+			}
+			catch (IOException ex) {
+				System.err.println("Could not load source/sink bundle " + bundleFile
+						+ ", falling back to " + sourceSinkFile + ": " + ex.getMessage());
+			}
+		}
+
+		ISourceSinkDefinitionProvider parser = null;
 		try {
 			if (fileExtension.equals(".xml"))
 				parser = XMLSourceSinkParser.fromFile(sourceSinkFile);
@@ -474,38 +529,57 @@ public class SetupApplication {
 			else if (fileExtension.equals(".rifl"))
 				parser = new RIFLSourceSinkDefinitionProvider(sourceSinkFile);
 			else
-				throw new UnsupportedDataTypeException("The Inputfile isn't a .txt or .xml file.");
-			
-			calculateSourcesSinksEntrypoints(parser);
+				throw new UnsupportedDataTypeException("The Inputfile isn't a .txt, .xml or "
+						+ SourceSinkBundle.FILE_EXTENSION + " file.");
 		}
 		catch (SAXException ex) {
 			throw new IOException("Could not read XML file", ex);
 		}
+
+		if (config.getUseSourceSinkBundles()) {
+			try {
+				SourceSinkBundle.compile(parser, bundleFile);
+			}
+			catch (IOException ex) {
+				System.err.println("Could not compile source/sink bundle " + bundleFile
+						+ ": " + ex.getMessage());
+			}
+		}
+		return parser;
+	}
+
+	/**
+	 * Configures whether the source/sink manager classifies all call sites
+	 * before the data flow analysis, and how it resolves the resource IDs of
+	 * UI sources
+	 */
+	private void configureSourceSinkClassification() {
+		if (config.getEagerSourceSinkClassification())
+			sourceSinkManager.setEagerClassificationThreads(config.getMaxThreadNum() > 0
+					? config.getMaxThreadNum() : Runtime.getRuntime().availableProcessors());
+		sourceSinkManager.setResolveReturnedResourceIDs(config.getResolveReturnedResourceIDs());
+	}
+
+	/**
+	 * Calculates the sets of sources, sinks, entry points, and callback methods
+	 * for the given APK file.
+	 *
+	 * @param sourceSinkFile
+	 *            The full path and file name of the file containing the sources and sinks
+	 * @throws IOException
+	 *             Thrown if the given source/sink file could not be read.
+	 * @throws XmlPullParserException
+	 *             Thrown if the Android manifest file could not be read.
+	 */
+	public void calculateSourcesSinksEntrypoints(String sourceSinkFile)
+			throws IOException, XmlPullParserException {
+		calculateSourcesSinksEntrypoints(createSourceSinkProvider(sourceSinkFile));
 	}
 	
 	//Added by XIANG
 	public void calculateSourcesSinksEntrypointsForConstantPropogation(String sourceSinkFile)
 			throws IOException, XmlPullParserException {
-		ISourceSinkDefinitionProvider parser = null;
-		
-		String fileExtension = sourceSinkFile.substring(sourceSinkFile.lastIndexOf("."));
-		fileExtension = fileExtension.toLowerCase();
-		
-		try {
-			if (fileExtension.equals(".xml"))
-				parser = XMLSourceSinkParser.fromFile(sourceSinkFile);
-			else if (fileExtension.equals(".txt"))
-				parser = PermissionMethodParser.fromFile(sourceSinkFile);
-			else if (fileExtension.equals(".rifl"))
-				parser = new RIFLSourceSinkDefinitionProvider(sourceSinkFile);
-			else
-				throw new UnsupportedDataTypeException("The Inputfile isn't a .txt or .xml file.");
-			
-			calculateSourcesSinksEntrypointsForConstantPropogation(parser);
-		}
-		catch (SAXException ex) {
-			throw new IOException("Could not read XML file", ex);
-		}
+		calculateSourcesSinksEntrypointsForConstantPropogation(createSourceSinkProvider(sourceSinkFile));
 	}
 	//Added by XIANG
 	public void calculateSourcesSinksEntrypointsForConstantPropogation(ISourceSinkDefinitionProvider sourcesAndSinks)
@@ -513,38 +587,11 @@ public class SetupApplication {
 		// To look for callbacks, we need to start somewhere. We use the Android
 		// lifecycle methods for this purpose.
 		this.sourceSinkProvider = sourcesAndSinks;
-		ProcessManifest processMan = new ProcessManifest(apkFileLocation);
-		this.appPackageName = processMan.getPackageName();
-		this.entrypoints = processMan.getEntryPointClasses();
-
-		// Parse the resource file
-		long beforeARSC = System.nanoTime();
-		ARSCFileParser resParser = new ARSCFileParser();
-		resParser.parse(apkFileLocation);
-		this.resourcePackages = resParser.getPackages();
+		Map<Integer, LayoutControl> userControls = calculateEntrypointsAndCallbacks();
 
-		// Add the callback methods
-		LayoutFileParser lfp = null;
-		if (config.getEnableCallbacks()) {
-			if (callbackClasses != null && callbackClasses.isEmpty()) {
-				logger.warn("Callback definition file is empty, disabling callbacks");
-			}
-			else {
-				lfp = new LayoutFileParser(this.appPackageName, resParser);
-				switch (config.getCallbackAnalyzer()) {
-				case Fast:
-					calculateCallbackMethodsFast(resParser, lfp);
-					break;
-				case Default:
-					calculateCallbackMethods(resParser, lfp);
-					break;
-				default:
-					throw new RuntimeException("Unknown callback analyzer");
-				}
-			}
-		}
 		// Clean up everything we no longer need
 		soot.G.reset();
+		MethodGraphCache.getInstance().clear();
 
 		// Create the SourceSinkManager
 		{
@@ -557,11 +604,12 @@ public class SetupApplication {
 					this.sourceSinkProvider.getSinks(),
 					callbacks,
 					config.getLayoutMatchingMode(),
-					lfp == null ? null : lfp.getUserControlsByID());
+					userControls);
 
 			sourceSinkManager.setAppPackageName(this.appPackageName);
 			sourceSinkManager.setResourcePackages(this.resourcePackages);
 			sourceSinkManager.setEnableCallbackSources(false);
+			configureSourceSinkClassification();
 		}
 
 		entryPointCreator = createEntryPointCreator();
@@ -570,65 +618,17 @@ public class SetupApplication {
 	//Added by XIANG
 	public void calculateSourcesSinksEntrypointsForViewFlowCorrelation(String sourceSinkFile, FlowPathSet fps)
 			throws IOException, XmlPullParserException {
-		ISourceSinkDefinitionProvider parser = null;
-		
-		String fileExtension = sourceSinkFile.substring(sourceSinkFile.lastIndexOf("."));
-		fileExtension = fileExtension.toLowerCase();
-		
-		try {
-			if (fileExtension.equals(".xml"))
-				parser = XMLSourceSinkParser.fromFile(sourceSinkFile);
-			else if (fileExtension.equals(".txt"))
-				parser = PermissionMethodParser.fromFile(sourceSinkFile);
-			else if (fileExtension.equals(".rifl"))
-				parser = new RIFLSourceSinkDefinitionProvider(sourceSinkFile);
-			else
-				throw new UnsupportedDataTypeException("The Inputfile isn't a .txt or .xml file.");
-			
-			calculateSourcesSinksEntrypointsForViewFlowCorrelation(parser, fps);
-		}
-		catch (SAXException ex) {
-			throw new IOException("Could not read XML file", ex);
-		}
+		calculateSourcesSinksEntrypointsForViewFlowCorrelation(createSourceSinkProvider(sourceSinkFile), fps);
 	}
 	//Added by XIANG
 	public void calculateSourcesSinksEntrypointsForViewFlowCorrelation(ISourceSinkDefinitionProvider sourcesAndSinks, FlowPathSet fps)
 			throws IOException, XmlPullParserException {
 		this.sourceSinkProvider = sourcesAndSinks;
-		ProcessManifest processMan = new ProcessManifest(apkFileLocation);
-		this.appPackageName = processMan.getPackageName();
-		this.entrypoints = processMan.getEntryPointClasses();
-
-		// Parse the resource file
-		long beforeARSC = System.nanoTime();
-		ARSCFileParser resParser = new ARSCFileParser();
-		resParser.parse(apkFileLocation);
-		logger.info("ARSC file parsing took " + (System.nanoTime() - beforeARSC) / 1E9 + " seconds");
-		this.resourcePackages = resParser.getPackages();
-
-		// Add the callback methods
-		LayoutFileParser lfp = null;
-		if (config.getEnableCallbacks()) {
-			if (callbackClasses != null && callbackClasses.isEmpty()) {
-				logger.warn("Callback definition file is empty, disabling callbacks");
-			}
-			else {
-				lfp = new LayoutFileParser(this.appPackageName, resParser);
-				switch (config.getCallbackAnalyzer()) {
-				case Fast:
-					calculateCallbackMethodsFast(resParser, lfp);
-					break;
-				case Default:
-					calculateCallbackMethods(resParser, lfp);
-					break;
-				default:
-					throw new RuntimeException("Unknown callback analyzer");
-				}
-			}
-		}
+		Map<Integer, LayoutControl> userControls = calculateEntrypointsAndCallbacks();
 
 		// Clean up everything we no longer need
 		soot.G.reset();
+		MethodGraphCache.getInstance().clear();
 
 		// Create the SourceSinkManager
 		{
@@ -641,11 +641,12 @@ public class SetupApplication {
 					this.sourceSinkProvider.getSinks(),
 					callbacks,
 					config.getLayoutMatchingMode(),
-					lfp == null ? null : lfp.getUserControlsByID(), fps);
+					userControls, fps);
 
 			sourceSinkManager.setAppPackageName(this.appPackageName);
 			sourceSinkManager.setResourcePackages(this.resourcePackages);
 			sourceSinkManager.setEnableCallbackSources(this.config.getEnableCallbackSources());
+			configureSourceSinkClassification();
 			fps.setSourceSinkMgr(sourceSinkManager);
 		}
 
@@ -656,6 +657,170 @@ public class SetupApplication {
 	
 	
 
+	/**
+	 * Computes the entry points and callback methods of the app. If the
+	 * results of a previous analysis round have been set, these results are
+	 * reused instead of running the callback analysis again.
+	 * 
+	 * @return The user controls found in the layout XML files, or null if
+	 *         callbacks are disabled
+	 * @throws IOException
+	 *             Thrown if the APK file or a required configuration cannot be read
+	 * @throws XmlPullParserException
+	 *             Thrown if the Android manifest file could not be read.
+	 */
+	private Map<Integer, LayoutControl> calculateEntrypointsAndCallbacks()
+			throws IOException, XmlPullParserException {
+		if (entryPointResult != null) {
+			logger.info("Reusing entry points and callbacks from previous analysis round");
+			this.appPackageName = entryPointResult.getAppPackageName();
+			this.entrypoints = new HashSet<String>(entryPointResult.getEntrypoints());
+			this.resourcePackages = entryPointResult.getResourcePackages();
+			this.callbackMethods.clear();
+			for (Entry<String, Set<SootMethodAndClass>> entry : entryPointResult.getCallbackMethods().entrySet())
+				this.callbackMethods.put(entry.getKey(), new HashSet<SootMethodAndClass>(entry.getValue()));
+			return entryPointResult.getUserControlsByID();
+		}
+		
+		ProcessManifest processMan;
+		ARSCFileParser resParser;
+		if (session != null) {
+			processMan = session.getManifest();
+			resParser = session.getResourceParser();
+		}
+		else {
+			AnalysisMetrics metrics = AnalysisMetrics.getInstance();
+			AnalysisMetrics.Phase manifestPhase = metrics.startPhase(AnalysisMetrics.MANIFEST);
+			try {
+				processMan = new ProcessManifest(apkFileLocation);
+			}
+			finally {
+				manifestPhase.stop();
+			}
+			
+			// Parse the resource file
+			long beforeARSC = System.nanoTime();
+			resParser = new ARSCFileParser();
+			AnalysisMetrics.Phase arscPhase = metrics.startPhase(AnalysisMetrics.ARSC);
+			try {
+				resParser.parse(apkFileLocation);
+			}
+			finally {
+				arscPhase.stop();
+			}
+			logger.info("ARSC file parsing took " + (System.nanoTime() - beforeARSC) / 1E9 + " seconds");
+		}
+		this.appPackageName = processMan.getPackageName();
+		this.entrypoints = processMan.getEntryPointClasses();
+		this.resourcePackages = resParser.getPackages();
+
+		// Add the callback methods
+		Map<Integer, LayoutControl> userControls = null;
+		if (config.getEnableCallbacks()) {
+			if (callbackClasses != null && callbackClasses.isEmpty()) {
+				logger.warn("Callback definition file is empty, disabling callbacks");
+			}
+			else {
+				userControls = loadCallbackMethodsFromCache();
+				if (userControls == null) {
+					LayoutFileParser lfp = new LayoutFileParser(this.appPackageName, resParser);
+					lfp.setThreads(config.getLayoutParserThreads());
+					switch (config.getCallbackAnalyzer()) {
+					case Fast:
+						calculateCallbackMethodsFast(resParser, lfp);
+						break;
+					case Default:
+						calculateCallbackMethods(resParser, lfp);
+						break;
+					default:
+						throw new RuntimeException("Unknown callback analyzer");
+					}
+					userControls = lfp.getUserControlsByID();
+					storeCallbackMethodsInCache(userControls);
+				}
+				
+				// Some informational output
+				System.out.println("Found " + userControls.size() + " layout controls");
+			}
+		}
+		
+		System.out.println("Entry point calculation done.");
+		
+		// Remember the results for later analysis rounds on the same app
+		Map<String, Set<SootMethodAndClass>> callbacks = new HashMap<String, Set<SootMethodAndClass>>();
+		for (Entry<String, Set<SootMethodAndClass>> entry : this.callbackMethods.entrySet())
+			callbacks.put(entry.getKey(), new HashSet<SootMethodAndClass>(entry.getValue()));
+		this.entryPointResult = new EntryPointAnalysisResult(this.appPackageName,
+				new HashSet<String>(this.entrypoints), this.resourcePackages, callbacks, userControls);
+		if (session != null)
+			session.setEntryPointResult(this.entryPointResult);
+		return userControls;
+	}
+
+	/**
+	 * Tries to load the callback methods and the layout controls of the app
+	 * from the on-disk cache. On a hit, neither Soot nor the layout files
+	 * need to be loaded.
+	 * @return The user controls found in the layout XML files if the
+	 * callbacks have been loaded from the cache, or null if they need to be
+	 * computed
+	 */
+	private Map<Integer, LayoutControl> loadCallbackMethodsFromCache() throws IOException {
+		if (resourceCache == null)
+			return null;
+		String digest = resourceCache.getDigest(apkFileLocation);
+		EntryPointSnapshot snapshot = resourceCache.loadEntryPoints(digest, getCallbackConfigKey());
+		if (snapshot == null)
+			return null;
+		
+		logger.info("Loaded callbacks of " + apkFileLocation + " from cache " + digest);
+		this.entrypoints = snapshot.entrypoints;
+		this.callbackMethods.clear();
+		this.callbackMethods.putAll(snapshot.callbackMethods);
+		return snapshot.userControls;
+	}
+	
+	/**
+	 * Stores the callback methods and the layout controls of the app in the
+	 * on-disk cache unless the analysis has been cut short
+	 * @param userControls The user controls found in the layout XML files
+	 */
+	private void storeCallbackMethodsInCache(Map<Integer, LayoutControl> userControls) throws IOException {
+		if (resourceCache == null)
+			return;
+		if (budget.isExhausted()) {
+			logger.warn("Callback analysis was incomplete, not caching the results");
+			return;
+		}
+		EntryPointSnapshot snapshot = new EntryPointSnapshot();
+		snapshot.appPackageName = this.appPackageName;
+		snapshot.entrypoints.addAll(this.entrypoints);
+		snapshot.callbackMethods.putAll(this.callbackMethods);
+		snapshot.userControls.putAll(userControls);
+		resourceCache.storeEntryPoints(resourceCache.getDigest(apkFileLocation),
+				getCallbackConfigKey(), snapshot);
+	}
+	
+	/**
+	 * Builds a key for all options that influence the callback analysis
+	 * @return The key for the current callback configuration
+	 */
+	private String getCallbackConfigKey() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(config.getCallbackAnalyzer());
+		if (config.getIncrementalCallbackAnalysis())
+			sb.append("|incremental");
+		if (callbackClasses != null)
+			sb.append("|classes:").append(new TreeSet<String>(callbackClasses));
+		else {
+			sb.append("|file:").append(callbackFile);
+			File f = new File(callbackFile);
+			if (f.exists())
+				sb.append(":").append(resourceCache.getDigest(callbackFile));
+		}
+		return ResourceModelCache.digestOf(sb.toString()).substring(0, 16);
+	}
+	
 	/**
 	 * Adds a method to the set of callback method
 	 * 
@@ -685,15 +850,47 @@ public class SetupApplication {
 	 */
 	private void calculateCallbackMethods(ARSCFileParser resParser, LayoutFileParser lfp) throws IOException {
 		AbstractCallbackAnalyzer jimpleClass = null;
+		Set<SootMethodAndClass> newCallbacks = new HashSet<SootMethodAndClass>();
+		boolean entryPointsChanged = false;
 
 		boolean hasChanged = true;
 		while (hasChanged) {
 			hasChanged = false;
 
-			// Create the new iteration of the main method
-			soot.G.reset();
-			initializeSoot(true);
-			createMainMethod();
+			// Stop refining the callbacks if we are running out of time
+			if (budget.isExhausted()) {
+				logger.warn("Analysis budget exhausted (" + budget.getExhaustedReason()
+						+ "), using the callbacks found so far");
+				break;
+			}
+
+			AnalysisMetrics.Phase iterationPhase = AnalysisMetrics.getInstance().startPhase(
+					AnalysisMetrics.CALLBACK_ITERATION);
+
+			// Create the new iteration of the main method. If we may reuse the
+			// Soot instance, we only need to throw away the callgraph. In
+			// incremental mode, we even keep the callgraph and the main
+			// method, and only extend the callgraph by the new callbacks.
+			// Components registered dynamically in the last iteration are not
+			// part of the main method yet, so their lifecycle methods would
+			// never be reachable in the extended callgraph. We then fall back
+			// to building the main method and the callgraph from scratch.
+			boolean incrementalRound = jimpleClass != null
+					&& config.getIncrementalCallbackAnalysis()
+					&& !entryPointsChanged;
+			if (incrementalRound)
+				removeCallbackTransformers();
+			else {
+				if (jimpleClass == null || !(config.getReuseSootInstance()
+						|| config.getIncrementalCallbackAnalysis())) {
+					soot.G.reset();
+					MethodGraphCache.getInstance().clear();
+					initializeSoot(true);
+				}
+				else
+					releaseCallgraph();
+				createMainMethod();
+			}
 
 			if (jimpleClass == null) {
 				// Collect the callback interfaces implemented in the app's
@@ -714,29 +911,117 @@ public class SetupApplication {
 			}
 
 			// Run the soot-based operations
-			PackManager.v().getPack("wjpp").apply();
-			PackManager.v().getPack("cg").apply();
+			AnalysisMetrics.Phase callgraphPhase = AnalysisMetrics.getInstance().startPhase(
+					AnalysisMetrics.CALLGRAPH);
+			try {
+				if (incrementalRound)
+					extendCallgraph(newCallbacks);
+				else {
+					PackManager.v().getPack("wjpp").apply();
+					PackManager.v().getPack("cg").apply();
+				}
+			}
+			finally {
+				callgraphPhase.stop();
+			}
 			PackManager.v().getPack("wjtp").apply();
 
 			// Collect the results of the soot-based phases
+			newCallbacks = new HashSet<SootMethodAndClass>();
 			for (Entry<String, Set<SootMethodAndClass>> entry : jimpleClass.getCallbackMethods().entrySet()) {
 				Set<SootMethodAndClass> curCallbacks = this.callbackMethods.get(entry.getKey());
-				if (curCallbacks != null) {
-					if (curCallbacks.addAll(entry.getValue()))
-						hasChanged = true;
-				} else {
-					this.callbackMethods.put(entry.getKey(), new HashSet<>(entry.getValue()));
+				if (curCallbacks == null) {
+					curCallbacks = new HashSet<>();
+					this.callbackMethods.put(entry.getKey(), curCallbacks);
 					//System.out.println("XPAN:"+entry.getKey()+" -> "+entry.getValue());
-					hasChanged = true;
 				}
+				for (SootMethodAndClass callback : entry.getValue())
+					if (curCallbacks.add(callback)) {
+						newCallbacks.add(callback);
+						hasChanged = true;
+					}
 			}
 			
-			if (entrypoints.addAll(jimpleClass.getDynamicManifestComponents()))
+			entryPointsChanged = entrypoints.addAll(jimpleClass.getDynamicManifestComponents());
+			if (entryPointsChanged)
 				hasChanged = true;
+			iterationPhase.stop();
 		}
 
 		// Collect the XML-based callback methods
-		collectXmlBasedCallbackMethods(resParser, lfp, jimpleClass);
+		if (jimpleClass != null)
+			collectXmlBasedCallbackMethods(resParser, lfp, jimpleClass);
+	}
+
+	/**
+	 * Prepares the current Soot instance for another iteration of the
+	 * callback analysis. The classes, bodies and the class hierarchy are
+	 * kept, only the callgraph-related data and the transformers of the
+	 * previous iteration are removed.
+	 */
+	private void releaseCallgraph() {
+		Scene.v().releaseCallGraph();
+		Scene.v().releasePointsToAnalysis();
+		Scene.v().releaseReachableMethods();
+		removeCallbackTransformers();
+	}
+	
+	/**
+	 * Removes the transformers of the previous iteration of the callback
+	 * analysis from the Soot packs
+	 */
+	private void removeCallbackTransformers() {
+		// The layout files only need to be parsed once, and the callback
+		// analyzer registers a new transformer for each iteration
+		Pack wjtp = PackManager.v().getPack("wjtp");
+		wjtp.remove("wjtp.lfp");
+		wjtp.remove("wjtp.ajc");
+	}
+	
+	/**
+	 * Extends the current callgraph by the edges reachable from the given
+	 * callback methods. This replaces the construction of a new callgraph in
+	 * the incremental iterations of the callback analysis. The callback
+	 * analyzer only searches the methods reachable from the new callbacks in
+	 * these iterations, so the main method need not be regenerated. This is
+	 * only valid as long as the set of entry points has not changed, since
+	 * the lifecycle methods of new components are not reachable from the
+	 * new callbacks. The new
+	 * edges are computed with CHA, since the points-to sets of the existing
+	 * callgraph cannot be extended.
+	 * @param newCallbacks The callback methods found in the last iteration
+	 */
+	private void extendCallgraph(Set<SootMethodAndClass> newCallbacks) {
+		long beforeCallgraph = System.nanoTime();
+		CallGraph callgraph = Scene.v().getCallGraph();
+		List<SootMethod> oldEntryPoints = Scene.v().getEntryPoints();
+		
+		List<SootMethod> callbackEntryPoints = new ArrayList<SootMethod>(newCallbacks.size());
+		for (SootMethodAndClass callback : newCallbacks) {
+			SootMethod sm = Scene.v().grabMethod(callback.getSignature());
+			if (sm != null && sm.isConcrete())
+				callbackEntryPoints.add(sm);
+		}
+		
+		// Build the callgraph for the new callbacks on its own, and merge it
+		// into the existing one. The builder registers its callgraph with the
+		// scene, so we need to restore the old one afterwards.
+		int newEdges = 0;
+		try {
+			Scene.v().setEntryPoints(callbackEntryPoints);
+			Scene.v().releaseReachableMethods();
+			new CallGraphBuilder(DumbPointerAnalysis.v()).build();
+			for (Edge edge : Scene.v().getCallGraph())
+				if (callgraph.addEdge(new Edge(edge.getSrc(), edge.srcStmt(), edge.getTgt(), edge.kind())))
+					newEdges++;
+		}
+		finally {
+			Scene.v().setCallGraph(callgraph);
+			Scene.v().setEntryPoints(oldEntryPoints);
+			Scene.v().releaseReachableMethods();
+		}
+		logger.info("Extended the callgraph by " + newEdges + " edges for " + callbackEntryPoints.size()
+				+ " new callbacks in " + (System.nanoTime() - beforeCallgraph) / 1E9 + " seconds");
 	}
 
 	/**
@@ -821,6 +1106,7 @@ public class SetupApplication {
 			LayoutFileParser lfp) throws IOException {
 		// We need a running Soot instance
 		soot.G.reset();
+		MethodGraphCache.getInstance().clear();
 		initializeSoot(false);
 		
 		// Collect the callback interfaces implemented in the app's
@@ -828,7 +1114,14 @@ public class SetupApplication {
 		AbstractCallbackAnalyzer jimpleClass = callbackClasses == null
 				? new FastCallbackAnalyzer(config, entrypoints, callbackFile)
 				: new FastCallbackAnalyzer(config, entrypoints, callbackClasses);
-		jimpleClass.collectCallbackMethods();
+		AnalysisMetrics.Phase iterationPhase = AnalysisMetrics.getInstance().startPhase(
+				AnalysisMetrics.CALLBACK_ITERATION);
+		try {
+			jimpleClass.collectCallbackMethods();
+		}
+		finally {
+			iterationPhase.stop();
+		}
 		
 		// Collect the results
 		Set<SootMethodAndClass> callbacks = jimpleClass.getCallbackMethods().get("");
@@ -857,12 +1150,15 @@ public class SetupApplication {
 		// Ignore system classes
 		if (callbackClass.getName().startsWith("android."))
 			return;
-		if (lc.getViewClass().getName().startsWith("android."))
+		if (lc.getViewClassName().startsWith("android."))
+			return;
+		SootClass viewClass = lc.getViewClass();
+		if (viewClass == null)
 			return;
 		
 		// Check whether the current class is actually a view
 		{
-			SootClass sc = lc.getViewClass();
+			SootClass sc = viewClass;
 			boolean isView = false;
 			while (sc.hasSuperclass()) {
 				if (sc.getName().equals("android.view.View")) {
@@ -879,7 +1175,7 @@ public class SetupApplication {
 		// methods.
 		// We model this as follows: Whenever the user overwrites a method in an
 		// Android OS class, we treat it as a potential callback.
-		SootClass sc = lc.getViewClass();
+		SootClass sc = viewClass;
 		Set<String> systemMethods = new HashSet<String>(10000);
 		for (SootClass parentClass : Scene.v().getActiveHierarchy().getSuperclassesOf(sc)) {
 			if (parentClass.getName().startsWith("android."))
@@ -1038,6 +1334,8 @@ public class SetupApplication {
 		info.setTaintWrapper(taintWrapper);
 		if (onResultsAvailable != null)
 			info.addResultsAvailableHandler(onResultsAvailable);
+		if (budget.hasLimits())
+			info.setTaintPropagationHandler(new BudgetTaintPropagationHandler(budget));
 
 		System.out.println("Starting infoflow computation...");
 		info.setConfig(config);
@@ -1109,12 +1407,9 @@ public class SetupApplication {
 		info.initializeSootWithoutPerformingInfoflow(apkFileLocation, path, entryPointCreator);
 		
 		ParameterSearch ps = new ParameterSearch( this.resourcePackages, this.appPackageName, info.getICFG());
-		ps.setBackgroundResourceProcessing();
-		Set<Stmt> rs = ps.findViewByIdParamSearch();
-		ps.setContentViewSearch();
-		ps.debugFunctionCall();
-		ps.extractURLAddress();
-		ps.extractDynamicTextsFast();
+		ps.setBudget(budget);
+		ps.setUseConstantPropagation(config.getResourceConstantPropagation());
+		Set<Stmt> rs = ps.keyInvokeExprSearch();
 		//ps.extractDynamicTexts();
 		//GraphTool.displayAllMethodGraph();
 		ResourceManager resMgr = ResourceManager.getInstance();
@@ -1125,6 +1420,7 @@ public class SetupApplication {
 //			NUDisplay.debug("ExtractedStrs: "+str, null);
 //		
 		soot.G.reset();
+		MethodGraphCache.getInstance().clear();
 		return rs;
 	}
 	
@@ -1154,6 +1450,8 @@ public class SetupApplication {
 		info.setTaintWrapper(taintWrapper);
 		if (onResultsAvailable != null)
 			info.addResultsAvailableHandler(onResultsAvailable);
+		if (budget.hasLimits())
+			info.setTaintPropagationHandler(new BudgetTaintPropagationHandler(budget));
 
 		System.out.println("Starting infoflow computation...");
 		info.setConfig(config);
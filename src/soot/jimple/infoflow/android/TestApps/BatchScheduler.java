@@ -0,0 +1,318 @@
+package soot.jimple.infoflow.android.TestApps;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import soot.jimple.infoflow.android.TestApps.JobJournal.JobState;
+
+/**
+ * Scheduler that analyzes a batch of APK files in a bounded pool of forked
+ * worker JVMs. Soot keeps its state in global singletons, so the only way to
+ * analyze several apps at the same time is to give every app its own
+ * process. Each worker runs the normal single-APK pipeline of {@link Test}.
+ * Workers that crash or run out of memory are re-queued until the maximum
+ * number of attempts is reached. All state changes are written to a
+ * {@link JobJournal}.
+ */
+public class BatchScheduler {
+
+	/**
+	 * Exit code of a worker that killed itself because it reached its hard
+	 * time limit
+	 */
+	public static final int EXIT_CODE_TIMEOUT = 124;
+
+	/**
+	 * Additional time a worker gets on top of its hard time limit before the
+	 * scheduler kills it. Workers normally terminate themselves.
+	 */
+	private static final int KILL_GRACE_SECONDS = 60;
+
+	/**
+	 * Outcome of a single worker run
+	 */
+	private static class WorkerResult {
+		private final String apkPath;
+		private final JobState state;
+		private final int heapMB;
+
+		private WorkerResult(String apkPath, JobState state, int heapMB) {
+			this.apkPath = apkPath;
+			this.state = state;
+			this.heapMB = heapMB;
+		}
+	}
+
+	private final JobJournal journal;
+	private final int workers;
+	private final int maxAttempts;
+	private final int maxHeapMB;
+	private final File logDir;
+	private final List<String> workerArgs;
+
+	private int initialHeapMB = -1;
+	private int hardTimeoutSeconds = -1;
+	private final Timer killTimer = new Timer(true);
+
+	/**
+	 * Creates a new batch scheduler
+	 * @param journal The journal in which to record the job states
+	 * @param workers The maximum number of worker processes to run at the
+	 * same time
+	 * @param maxAttempts The maximum number of times an APK is handed to a
+	 * worker before it is given up
+	 * @param logDir The directory into which the console output of the
+	 * workers is written, one file per APK
+	 * @param workerArgs The arguments to pass to every worker after the APK
+	 * file name. The first element must be the Android platform directory.
+	 */
+	public BatchScheduler(JobJournal journal, int workers, int maxAttempts,
+			File logDir, List<String> workerArgs) {
+		this.journal = journal;
+		this.workers = Math.max(1, workers);
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.maxHeapMB = (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024)) * 4;
+		this.logDir = logDir;
+		this.workerArgs = workerArgs;
+	}
+
+	/**
+	 * Sets the initial heap size for the worker JVMs. Workers that run out of
+	 * memory are retried with twice the heap size.
+	 * @param heapMB The initial heap size in megabytes, or -1 to use the JVM
+	 * default
+	 */
+	public void setInitialHeapMB(int heapMB) {
+		this.initialHeapMB = heapMB;
+	}
+
+	/**
+	 * Sets the hard time limit for a single worker. Workers that do not
+	 * terminate in time are killed and their APK files are not retried,
+	 * because another attempt would most likely run into the same limit.
+	 * @param seconds The maximum run time of a worker in seconds, or -1 for
+	 * no limit
+	 */
+	public void setHardTimeout(int seconds) {
+		this.hardTimeoutSeconds = seconds;
+	}
+
+	/**
+	 * Analyzes all given APK files that have not yet been finished according
+	 * to the journal
+	 * @param apkPaths The full paths of the APK files to analyze
+	 * @throws InterruptedException Thrown if the scheduler was interrupted
+	 * while waiting for the workers
+	 */
+	public void run(List<String> apkPaths) throws InterruptedException {
+		Queue<String> pending = new LinkedList<String>();
+		for (String apkPath : apkPaths) {
+			if (journal.isFinished(apkPath))
+				System.out.println("Skipping " + apkPath + ", already finished according to journal");
+			else
+				pending.add(apkPath);
+		}
+
+		if (!logDir.exists() && !logDir.mkdirs())
+			System.err.println("Could not create worker log directory " + logDir);
+
+		System.out.println("Scheduling " + pending.size() + " APK files on "
+				+ workers + " workers");
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		CompletionService<WorkerResult> completionService =
+				new ExecutorCompletionService<WorkerResult>(executor);
+
+		// Heap size to use for the next attempt of a job that ran out of memory
+		Map<String, Integer> heapSizes = new HashMap<String, Integer>();
+		int running = 0;
+		int finished = 0;
+		int failed = 0;
+		try {
+			while (!pending.isEmpty() || running > 0) {
+				// Keep all workers busy
+				while (running < workers && !pending.isEmpty()) {
+					final String apkPath = pending.poll();
+					final int attempt = journal.getAttempts(apkPath) + 1;
+					final int heapMB = heapSizes.containsKey(apkPath)
+							? heapSizes.get(apkPath) : initialHeapMB;
+					journal.record(apkPath, JobState.STARTED, attempt);
+					completionService.submit(new Callable<WorkerResult>() {
+
+						@Override
+						public WorkerResult call() throws Exception {
+							return runWorker(apkPath, attempt, heapMB);
+						}
+
+					});
+					running++;
+				}
+
+				WorkerResult result;
+				try {
+					result = completionService.take().get();
+				}
+				catch (ExecutionException ex) {
+					// runWorker handles its own errors, this should not happen
+					System.err.println("Worker thread failed: " + ex.getMessage());
+					ex.printStackTrace();
+					running--;
+					continue;
+				}
+				running--;
+
+				int attempt = journal.getAttempts(result.apkPath);
+				if (result.state == JobState.DONE) {
+					journal.record(result.apkPath, JobState.DONE, attempt);
+					finished++;
+					continue;
+				}
+
+				journal.record(result.apkPath, result.state, attempt);
+				if (attempt >= maxAttempts || result.state == JobState.TIMEOUT) {
+					System.err.println("Giving up on " + result.apkPath + " after "
+							+ attempt + " attempts");
+					journal.record(result.apkPath, JobState.GAVEUP, attempt);
+					failed++;
+					continue;
+				}
+
+				// Give workers that ran out of memory more space next time
+				if (result.state == JobState.OOM) {
+					int heapMB = result.heapMB > 0 ? result.heapMB
+							: (int) (Runtime.getRuntime().maxMemory() / (1024 * 1024));
+					heapSizes.put(result.apkPath, Math.min(heapMB * 2, Math.max(heapMB, maxHeapMB)));
+				}
+				System.out.println("Re-queueing " + result.apkPath + " after " + result.state);
+				pending.add(result.apkPath);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+			killTimer.cancel();
+		}
+
+		System.out.println("Batch finished: " + finished + " APK files analyzed, "
+				+ failed + " given up");
+	}
+
+	/**
+	 * Runs the analysis for a single APK file in a new JVM and waits for it
+	 * to terminate
+	 * @param apkPath The full path of the APK file to analyze
+	 * @param attempt The number of the current attempt
+	 * @param heapMB The maximum heap size of the worker JVM in megabytes, or
+	 * -1 to use the JVM default
+	 * @return The outcome of the worker run
+	 */
+	private WorkerResult runWorker(String apkPath, int attempt, int heapMB) {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin"
+				+ File.separator + "java");
+		if (heapMB > 0)
+			command.add("-Xmx" + heapMB + "m");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Test.class.getName());
+		command.add(apkPath);
+		command.addAll(workerArgs);
+
+		File logFile = new File(logDir, new File(apkPath).getName() + "." + attempt + ".log");
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(logFile);
+
+		System.out.println("Starting worker for " + apkPath + " (attempt " + attempt
+				+ (heapMB > 0 ? ", heap " + heapMB + " MB" : "") + ")");
+		long beforeRun = System.nanoTime();
+		Process process = null;
+		TimerTask killTask = null;
+		try {
+			process = pb.start();
+			final AtomicBoolean killed = new AtomicBoolean(false);
+			if (hardTimeoutSeconds > 0) {
+				final Process workerProcess = process;
+				killTask = new TimerTask() {
+
+					@Override
+					public void run() {
+						killed.set(true);
+						workerProcess.destroy();
+					}
+
+				};
+				killTimer.schedule(killTask, (hardTimeoutSeconds + KILL_GRACE_SECONDS) * 1000L);
+			}
+			int exitCode = process.waitFor();
+			System.out.println("Worker for " + apkPath + " exited with code " + exitCode
+					+ " after " + (System.nanoTime() - beforeRun) / 1E9 + " seconds");
+			if (exitCode == 0)
+				return new WorkerResult(apkPath, JobState.DONE, heapMB);
+			if (killed.get() || exitCode == EXIT_CODE_TIMEOUT)
+				return new WorkerResult(apkPath, JobState.TIMEOUT, heapMB);
+			return new WorkerResult(apkPath, isOutOfMemory(logFile)
+					? JobState.OOM : JobState.FAILED, heapMB);
+		}
+		catch (IOException ex) {
+			System.err.println("Could not start worker for " + apkPath + ": " + ex.getMessage());
+			return new WorkerResult(apkPath, JobState.FAILED, heapMB);
+		}
+		catch (InterruptedException ex) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			return new WorkerResult(apkPath, JobState.FAILED, heapMB);
+		}
+		finally {
+			if (killTask != null)
+				killTask.cancel();
+		}
+	}
+
+	/**
+	 * Checks whether the worker that wrote the given log file ran out of
+	 * memory
+	 * @param logFile The console output of the worker
+	 * @return True if the log contains an OutOfMemoryError, otherwise false
+	 */
+	private boolean isOutOfMemory(File logFile) {
+		BufferedReader rdr = null;
+		try {
+			rdr = new BufferedReader(new FileReader(logFile));
+			String line;
+			while ((line = rdr.readLine()) != null)
+				if (line.contains("java.lang.OutOfMemoryError"))
+					return true;
+		}
+		catch (IOException ex) {
+			System.err.println("Could not read worker log " + logFile + ": " + ex.getMessage());
+		}
+		finally {
+			if (rdr != null)
+				try {
+					rdr.close();
+				}
+				catch (IOException ex) {
+					// ignore
+				}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,170 @@
+package soot.jimple.infoflow.android.TestApps;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent, append-only journal recording the state of every APK that has
+ * been handed to the analysis. It replaces the old "_Run_&lt;name&gt;" flag
+ * files: one line is written per state change and the last line for an APK
+ * wins when the journal is loaded again, so an interrupted batch can simply
+ * be restarted with the same journal.
+ *
+ * Line format: STATE \t attempt \t timestamp \t apk path
+ */
+public class JobJournal {
+
+	/**
+	 * The states a job can be in
+	 */
+	public enum JobState {
+		/** The job has been handed to a worker */
+		STARTED,
+		/** The analysis finished normally */
+		DONE,
+		/** The worker crashed or exited with an error */
+		FAILED,
+		/** The worker ran out of memory */
+		OOM,
+		/** The worker exceeded its hard time limit */
+		TIMEOUT,
+		/** The job ran out of retries and will not be scheduled again */
+		GAVEUP
+	}
+
+	/**
+	 * Last known state of a single APK
+	 */
+	public static class JobEntry {
+		private final JobState state;
+		private final int attempt;
+
+		JobEntry(JobState state, int attempt) {
+			this.state = state;
+			this.attempt = attempt;
+		}
+
+		public JobState getState() {
+			return this.state;
+		}
+
+		public int getAttempt() {
+			return this.attempt;
+		}
+
+		/**
+		 * Checks whether this job must not be scheduled again
+		 * @return True if the job has either finished or was given up,
+		 * otherwise false
+		 */
+		public boolean isFinal() {
+			return state == JobState.DONE || state == JobState.GAVEUP;
+		}
+	}
+
+	private final File journalFile;
+	private final Map<String, JobEntry> entries = new HashMap<String, JobEntry>();
+
+	/**
+	 * Opens the journal in the given file. If the file already exists, its
+	 * contents are loaded so that finished jobs are not scheduled again.
+	 * @param journalFile The file in which to keep the journal
+	 * @throws IOException Thrown if the existing journal could not be read
+	 */
+	public JobJournal(File journalFile) throws IOException {
+		this.journalFile = journalFile;
+		if (journalFile.exists())
+			load();
+	}
+
+	private void load() throws IOException {
+		BufferedReader rdr = new BufferedReader(new FileReader(journalFile));
+		try {
+			String line;
+			while ((line = rdr.readLine()) != null) {
+				// A crash while writing may leave a truncated last line
+				String[] parts = line.split("\t", 4);
+				if (parts.length < 4)
+					continue;
+				try {
+					entries.put(parts[3], new JobEntry(JobState.valueOf(parts[0]),
+							Integer.parseInt(parts[1])));
+				}
+				catch (IllegalArgumentException ex) {
+					System.err.println("Skipping malformed journal line: " + line);
+				}
+			}
+		}
+		finally {
+			rdr.close();
+		}
+	}
+
+	/**
+	 * Gets the last recorded entry for the given APK
+	 * @param apkPath The path of the APK file
+	 * @return The last recorded entry for the given APK, or null if the APK
+	 * has never been scheduled before
+	 */
+	public synchronized JobEntry getEntry(String apkPath) {
+		return entries.get(apkPath);
+	}
+
+	/**
+	 * Checks whether the given APK must not be scheduled again
+	 * @param apkPath The path of the APK file
+	 * @return True if the APK has either been analyzed or was given up,
+	 * otherwise false
+	 */
+	public synchronized boolean isFinished(String apkPath) {
+		JobEntry entry = entries.get(apkPath);
+		return entry != null && entry.isFinal();
+	}
+
+	/**
+	 * Gets the number of attempts that have already been made for the given
+	 * APK
+	 * @param apkPath The path of the APK file
+	 * @return The number of previous attempts for the given APK
+	 */
+	public synchronized int getAttempts(String apkPath) {
+		JobEntry entry = entries.get(apkPath);
+		return entry == null ? 0 : entry.getAttempt();
+	}
+
+	/**
+	 * Records a state change for the given APK. The line is flushed to disk
+	 * immediately so that it survives a crash of the scheduler.
+	 * @param apkPath The path of the APK file
+	 * @param state The new state of the job
+	 * @param attempt The number of the current attempt, starting at 1
+	 */
+	public synchronized void record(String apkPath, JobState state, int attempt) {
+		entries.put(apkPath, new JobEntry(state, attempt));
+		BufferedWriter wr = null;
+		try {
+			wr = new BufferedWriter(new FileWriter(journalFile, true));
+			wr.write(state.name() + "\t" + attempt + "\t" + System.currentTimeMillis()
+					+ "\t" + apkPath + "\n");
+		}
+		catch (IOException ex) {
+			System.err.println("Could not write job journal " + journalFile + ": " + ex.getMessage());
+		}
+		finally {
+			if (wr != null)
+				try {
+					wr.close();
+				}
+				catch (IOException ex) {
+					// ignore
+				}
+		}
+	}
+
+}
@@ -31,6 +31,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -71,17 +73,23 @@ import soot.jimple.StringConstant;
 import soot.jimple.UnopExpr;
 import soot.jimple.infoflow.InfoflowConfiguration.CallgraphAlgorithm;
 import soot.jimple.infoflow.InfoflowManager;
+import soot.jimple.infoflow.android.AnalysisBudget;
+import soot.jimple.infoflow.android.AnalysisMetrics;
+import soot.jimple.infoflow.android.AnalysisSession;
 import soot.jimple.infoflow.android.InfoflowAndroidConfiguration;
 import soot.jimple.infoflow.android.InfoflowAndroidConfiguration.CallbackAnalyzer;
-import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.android.axml.ApkArchive;
 import soot.jimple.infoflow.android.SetupApplication;
 import soot.jimple.infoflow.android.nu.FlowClassifier;
 import soot.jimple.infoflow.android.nu.InfoflowResultsWithFlowPathSet;
 import soot.jimple.infoflow.android.nu.LayoutFileParserForTextExtraction;
 import soot.jimple.infoflow.android.nu.LayoutTextTreeNode;
+import soot.jimple.infoflow.android.nu.MethodGraphCache;
+import soot.jimple.infoflow.android.nu.MethodGraphCache.MethodGraph;
 import soot.jimple.infoflow.android.nu.ParameterSearch;
 import soot.jimple.infoflow.android.nu.ResolvedConstantTag;
 import soot.jimple.infoflow.android.nu.ResourceManager;
+import soot.jimple.infoflow.android.nu.ResourceModelCache;
 import soot.jimple.infoflow.android.resources.ARSCFileParser;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
 import soot.jimple.infoflow.android.source.AndroidSourceSinkManager.LayoutMatchingMode;
@@ -108,9 +116,6 @@ import soot.jimple.infoflow.util.SystemClassHandler;
 import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.options.Options;
 import soot.tagkit.Tag;
-import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.graph.Orderer;
-import soot.toolkits.graph.PseudoTopologicalOrderer;
 import soot.toolkits.graph.UnitGraph;
 import soot.util.queue.QueueReader;
 
@@ -317,9 +322,9 @@ public class Test {
 											SootMethod sm = cfg.getMethodOf(stmt);
 											if(!sm.hasActiveBody()) continue;
 											
-											UnitGraph g = new ExceptionalUnitGraph(sm.getActiveBody());
-										    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-										    for (Unit u : orderer.newList(g, false)) {
+											MethodGraph mg = MethodGraphCache.getInstance().getMethodGraph(sm);
+											UnitGraph g = mg.getGraph();
+										    for (Unit u : mg.getTopologicalOrder()) {
 										    	Stmt s = (Stmt)u;
 										    	if(! (s instanceof AssignStmt && 
 										    		 ((AssignStmt) s).getLeftOp() instanceof ArrayRef))
@@ -425,6 +430,11 @@ public class Test {
 	private static int repeatCount = 1;
 	private static int timeout = -1;
 	private static int sysTimeout = -1;
+	private static int heapBudgetMB = -1;
+	private static AnalysisBudget budget = AnalysisBudget.unlimited();
+	private static AnalysisSession session = null;
+	private static ResourceModelCache resourceCache = null;
+	private static File metricsDir = null;
 	private static String apktoolPath = "apktool";
 
 	private static String tmpDirPath = "/tmp/";
@@ -436,6 +446,15 @@ public class Test {
 	
 	private static boolean DEBUG = false;
 	
+	// Batch mode settings for analyzing multiple APK files
+	private static int workers = 0;
+	private static int maxRetries = 2;
+	private static int workerHeapMB = -1;
+	private static String journalPath = "flowcog.journal";
+	private static String workerLogDir = "workerlogs";
+	private static final Set<String> BATCH_OPTIONS = new HashSet<String>(Arrays.asList(
+			"--workers", "--maxretries", "--workerheap", "--journal", "--workerlogdir"));
+	
 
 	private static IIPCManager ipcManager = null;
 	public static void setIPCManager(IIPCManager ipcManager)
@@ -523,32 +542,75 @@ public class Test {
 		nuConfig.setApkToolPath(apktoolPath);
 		nuConfig.setDecompiledAPKOutputPath(tmpDirPath);
 		
+		// Multiple APK files are tracked in a journal, so that an interrupted
+		// batch can be restarted without analyzing the same apps again
+		JobJournal journal = null;
+		if (apkFiles.size() > 1) {
+			journal = new JobJournal(new File(journalPath));
+			
+			List<String> fullFilePaths = new ArrayList<String>(apkFiles.size());
+			for (String fileName : apkFiles) {
+				if (apkFile.isDirectory())
+					fullFilePaths.add(args[0] + File.separator + fileName);
+				else
+					fullFilePaths.add(fileName);
+			}
+			apkFiles = fullFilePaths;
+			
+			// Analyze the apps in parallel worker processes if requested
+			if (workers > 0) {
+				BatchScheduler scheduler = new BatchScheduler(journal, workers, maxRetries + 1,
+						new File(workerLogDir), getWorkerArguments(args));
+				scheduler.setInitialHeapMB(workerHeapMB);
+				if (sysTimeout > 0)
+					scheduler.setHardTimeout(sysTimeout);
+				else if (timeout > 0)
+					scheduler.setHardTimeout(timeout * 2);
+				scheduler.run(apkFiles);
+				return;
+			}
+		}
+		
 		int oldRepeatCount = repeatCount;
-		for (final String fileName : apkFiles) {
+		for (final String fullFilePath : apkFiles) {
 			repeatCount = oldRepeatCount;
-			final String fullFilePath;
 			System.gc();
 			
 			// Directory handling
-			if (apkFiles.size() > 1) {
-				if (apkFile.isDirectory())
-					fullFilePath = args[0] + File.separator + fileName;
-				else
-					fullFilePath = fileName;
+			if (journal != null) {
 				System.out.println("Analyzing file " + fullFilePath + "...");
-				File flagFile = new File("_Run_" + new File(fileName).getName());
-				if (flagFile.exists())
+				if (journal.isFinished(fullFilePath))
 					continue;
-				flagFile.createNewFile();
+				journal.record(fullFilePath, JobJournal.JobState.STARTED,
+						journal.getAttempts(fullFilePath) + 1);
 			}
-			else
-				fullFilePath = fileName;
 			nuConfig.setFullAPKFilePath(fullFilePath);
 			
-			// Run the analysis
-			//Xiang: remove the timeout version because they are not implemented properly.
+			// Run the analysis. The soft timeout is checked cooperatively by
+			// all stages, the hard timeout kills the process.
+			Timer killTimer = null;
+			if (sysTimeout > 0) {
+				killTimer = new Timer(true);
+				killTimer.schedule(new TimerTask() {
+					
+					@Override
+					public void run() {
+						System.err.println("Hard timeout of " + sysTimeout + " seconds reached for "
+								+ fullFilePath + ", killing analysis");
+						Runtime.getRuntime().halt(BatchScheduler.EXIT_CODE_TIMEOUT);
+					}
+					
+				}, sysTimeout * 1000L);
+			}
 			while (repeatCount > 0) {
 				System.gc();
+				budget = new AnalysisBudget(timeout, heapBudgetMB);
+				session = new AnalysisSession(fullFilePath, androidJarPath, config, ipcManager);
+				session.setBudget(budget);
+				session.setResourceModelCache(resourceCache);
+				ResourceManager.setAnalysisSession(session);
+				AnalysisMetrics.getInstance().reset(fullFilePath);
+				MethodGraphCache.getInstance().resetStatistics();
 				//initialize soot path is necessary to initialize ResourceManager
 				initializeSootConfigAndClassPath(fullFilePath, androidJarPath);
 				//extract key values from program.
@@ -561,22 +623,52 @@ public class Test {
 					return ;
 				}
 				//start taint analysis
-				runNUDataFlowAnalysis(fullFilePath, androidJarPath);	
+				if (budget.isExhausted())
+					NUDisplay.alert("analysis budget exhausted (" + budget.getExhaustedReason()
+							+ "), skipping information leakage analysis", "main");
+				else
+					runNUDataFlowAnalysis(fullFilePath, androidJarPath);	
+				NUDisplay.info(MethodGraphCache.getInstance().getStatistics(), "main");
+				writeMetrics();
+				session.close();
 				
 				repeatCount--;
 			}
+			if (killTimer != null)
+				killTimer.cancel();
+			ApkArchive.closeAll();
 			
+			if (journal != null)
+				journal.record(fullFilePath, JobJournal.JobState.DONE,
+						journal.getAttempts(fullFilePath));
 			System.gc();
 		}
 	}
 	
+	/**
+	 * Builds the command-line arguments for a worker process in batch mode.
+	 * These are the original arguments without the input file and without
+	 * the options that only concern the batch scheduler.
+	 * @param args The original command-line arguments
+	 * @return The arguments to pass to every worker after the APK file name
+	 */
+	private static List<String> getWorkerArguments(String[] args) {
+		List<String> workerArgs = new ArrayList<String>();
+		workerArgs.add(args[1]);
+		int i = 2;
+		while (i < args.length) {
+			if (BATCH_OPTIONS.contains(args[i].toLowerCase()))
+				i += 2;
+			else
+				workerArgs.add(args[i++]);
+		}
+		return workerArgs;
+	}
+	
 	//Added by XIANG
 	static private void initializeSootConfigAndClassPath(String fileName, String androidJar){
 		
-		SetupApplication app;
-		if (null == ipcManager)  app = new SetupApplication(androidJar, fileName);
-		else app = new SetupApplication(androidJar, fileName, ipcManager);
-		app.setConfig(config);
+		SetupApplication app = session.createSetupApplication();
 		app.initializeSoot(true);
 		ResourceManager resMgr = ResourceManager.getInstance();
 		ToolSet.setResourceManager(resMgr);
@@ -602,7 +694,15 @@ public class Test {
 		}
 		//first round data flow analysis to find flows.
 		NUDisplay.info("Start information leakage analysis.", null);
-		FlowPathSet fps = runAnalysis(fullFilePath, androidJar);
+		FlowPathSet fps;
+		AnalysisMetrics.Phase taintPhase = AnalysisMetrics.getInstance().startPhase(
+				AnalysisMetrics.TAINT_ROUND_1);
+		try {
+			fps = runAnalysis(fullFilePath, androidJar);
+		}
+		finally {
+			taintPhase.stop();
+		}
 		
 		NUDisplay.info("Done information leakage analysis. Found "+fps.getLst().size()+" flows", null);
 		if(fps.getLst().size() == 0){
@@ -610,18 +710,57 @@ public class Test {
 			return ;
 		}
 		//second round data flow analysis to correlate flows and views.
+		if(budget.isExhausted()){
+			NUDisplay.alert("analysis budget exhausted ("+budget.getExhaustedReason()
+					+"), skipping View-Flow correlation analysis", "runNUDataFlowAnalysis");
+			displayFlowViewInfo(fps, resMgr);
+			return ;
+		}
 		NUDisplay.info("Start View-Flow correlation analysis.", null);
 		soot.G.reset();
+		MethodGraphCache.getInstance().clear();
 		globalData.setAllowSensitiveUISourceUpdate(false);
 		config.setGraphEnhanceEnabled(true);
-		runAnalysisForFlowViewCorrelation(fullFilePath, androidJar, fps);
+		taintPhase = AnalysisMetrics.getInstance().startPhase(AnalysisMetrics.TAINT_ROUND_2);
+		try {
+			runAnalysisForFlowViewCorrelation(fullFilePath, androidJar, fps);
+		}
+		finally {
+			taintPhase.stop();
+		}
 				
 		//display for debug
 		displayFlowViewInfo(fps, resMgr);
 	}
 	
+	/**
+	 * Writes the phase metrics of the current APK file into the metrics
+	 * directory, if one has been configured
+	 */
+	private static void writeMetrics() {
+		if (metricsDir == null)
+			return;
+		try {
+			AnalysisMetrics.getInstance().writeReports(metricsDir);
+		}
+		catch (IOException ex) {
+			System.err.println("Could not write metrics: " + ex.getMessage());
+		}
+	}
+	
 	//Added by XIANG
 	public static void displayFlowViewInfo(FlowPathSet fps, ResourceManager resMgr){
+		AnalysisMetrics.Phase phase = AnalysisMetrics.getInstance().startPhase(
+				AnalysisMetrics.DISPLAY_FLOW_VIEW_INFO);
+		try {
+			printFlowViewInfo(fps, resMgr);
+		}
+		finally {
+			phase.stop();
+		}
+	}
+	
+	private static void printFlowViewInfo(FlowPathSet fps, ResourceManager resMgr){
 		URLHostExtractor extractor = new URLHostExtractor();
 		extractor.installTLDs("tlds.txt");
 		System.out.println("NULIST: Display Flow Index");
@@ -807,6 +946,61 @@ public class Test {
 				sysTimeout = Integer.valueOf(args[i+1]);
 				i += 2;
 			}
+			else if (args[i].equalsIgnoreCase("--heapbudget")) {
+				heapBudgetMB = Integer.valueOf(args[i+1]);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--rescache")) {
+				resourceCache = new ResourceModelCache(new File(args[i+1]));
+				ResourceManager.setResourceModelCache(resourceCache);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--metricsdir")) {
+				metricsDir = new File(args[i+1]);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--graphcache")) {
+				MethodGraphCache.getInstance().setMaxWeight(Integer.valueOf(args[i+1]));
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--layoutthreads")) {
+				int layoutThreads = Integer.valueOf(args[i+1]);
+				config.setLayoutParserThreads(layoutThreads);
+				ResourceManager.setLayoutParserThreads(layoutThreads);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--callbackthreads")) {
+				config.setCallbackAnalysisThreads(Integer.valueOf(args[i+1]));
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--mmapresources")) {
+				ARSCFileParser.setMemoryMappedByDefault(true);
+				i++;
+			}
+			else if (args[i].equalsIgnoreCase("--sourcesinkbundles")) {
+				config.setUseSourceSinkBundles(true);
+				i++;
+			}
+			else if (args[i].equalsIgnoreCase("--eagersourcesinks")) {
+				config.setEagerSourceSinkClassification(true);
+				i++;
+			}
+			else if (args[i].equalsIgnoreCase("--residsummaries")) {
+				config.setResolveReturnedResourceIDs(true);
+				i++;
+			}
+			else if (args[i].equalsIgnoreCase("--constprop")) {
+				config.setResourceConstantPropagation(true);
+				i++;
+			}
+			else if (args[i].equalsIgnoreCase("--incrementalcallbacks")) {
+				config.setIncrementalCallbackAnalysis(true);
+				i++;
+			}
+			else if (args[i].equalsIgnoreCase("--reusescene")) {
+				config.setReuseSootInstance(true);
+				i++;
+			}
 			else if (args[i].equalsIgnoreCase("--singleflow")) {
 				config.setStopAfterFirstFlow(true);
 				i++;
@@ -955,6 +1149,26 @@ public class Test {
 				config.setMaxThreadNum(Integer.valueOf(args[i+1]));
 				i += 2;
 			}
+			else if (args[i].equalsIgnoreCase("--workers")) {
+				workers = Integer.valueOf(args[i+1]);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--maxretries")) {
+				maxRetries = Integer.valueOf(args[i+1]);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--workerheap")) {
+				workerHeapMB = Integer.valueOf(args[i+1]);
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--journal")) {
+				journalPath = args[i+1];
+				i += 2;
+			}
+			else if (args[i].equalsIgnoreCase("--workerlogdir")) {
+				workerLogDir = args[i+1];
+				i += 2;
+			}
 			else if (args[i].equalsIgnoreCase("--arraysizetainting")) {
 				config.setEnableArraySizeTainting(true);
 				i++;
@@ -966,7 +1180,8 @@ public class Test {
 	}
 	
 	private static boolean validateAdditionalOptions() {
-		if (timeout > 0 && sysTimeout > 0) {
+		if (timeout > 0 && sysTimeout > 0 && sysTimeout <= timeout) {
+			System.err.println("The hard timeout must be larger than the soft timeout");
 			return false;
 		}
 		if (!config.getFlowSensitiveAliasing()
@@ -1039,18 +1254,8 @@ public class Test {
 		try {
 			final long beforeRun = System.nanoTime();
 
-			final SetupApplication app;
-			if (null == ipcManager)
-			{
-				app = new SetupApplication(androidJar, fileName);
-			}
-			else
-			{
-				app = new SetupApplication(androidJar, fileName, ipcManager);
-			}
-			
-			// Set configuration object
-			app.setConfig(config);
+			// The configuration is taken from the session
+			final SetupApplication app = session.createSetupApplication();
 			if (noTaintWrapper)
 				app.setSootConfig(new IInfoflowConfig() {
 					
@@ -1061,36 +1266,8 @@ public class Test {
 					
 				});
 			
-			final ITaintPropagationWrapper taintWrapper;
-			if (noTaintWrapper)
-				taintWrapper = null;
-			else if (summaryPath != null && !summaryPath.isEmpty()) {
-				System.out.println("Using the StubDroid taint wrapper");
-				taintWrapper = createLibrarySummaryTW();
-				if (taintWrapper == null) {
-					System.err.println("Could not initialize StubDroid");
-					return null;
-				}
-			}
-			else {
-				final EasyTaintWrapper easyTaintWrapper;
-				File twSourceFile = new File("../soot-infoflow/EasyTaintWrapperSource.txt");
-				if (twSourceFile.exists())
-					easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-				else {
-					twSourceFile = new File("EasyTaintWrapperSource.txt");
-					if (twSourceFile.exists())
-						easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-					else {
-						System.err.println("Taint wrapper definition file not found at "
-								+ twSourceFile.getAbsolutePath());
-						return null;
-					}
-				}
-				easyTaintWrapper.setAggressiveMode(aggressiveTaintWrapper);
-				taintWrapper = easyTaintWrapper;
-			}
-			app.setTaintWrapper(taintWrapper);
+			if (!setTaintWrapper(app))
+				return null;
 			app.calculateSourcesSinksEntrypoints("SourcesAndSinks.txt");
 			
 			if (DEBUG) {
@@ -1135,19 +1312,9 @@ public class Test {
 		try {
 			final long beforeRun = System.nanoTime();
 
-			final SetupApplication app;
-			if (null == ipcManager)
-			{
-				app = new SetupApplication(androidJar, fileName);
-			}
-			else
-			{
-				app = new SetupApplication(androidJar, fileName, ipcManager);
-			}
+			// The configuration is taken from the session
+			final SetupApplication app = session.createSetupApplication();
 			app.setFlowPathSet(fps);
-			
-			// Set configuration object
-			app.setConfig(config);
 			if (noTaintWrapper)
 				app.setSootConfig(new IInfoflowConfig() {
 					
@@ -1158,37 +1325,8 @@ public class Test {
 					
 				});
 			
-			final ITaintPropagationWrapper taintWrapper;
-			if (noTaintWrapper)
-				taintWrapper = null;
-			else if (summaryPath != null && !summaryPath.isEmpty()) {
-				System.out.println("Using the StubDroid taint wrapper");
-				taintWrapper = createLibrarySummaryTW();
-				if (taintWrapper == null) {
-					System.err.println("Could not initialize StubDroid");
-					return null;
-				}
-			}
-			else {
-				final EasyTaintWrapper easyTaintWrapper;
-				File twSourceFile = new File("../soot-infoflow/EasyTaintWrapperSource.txt");
-				
-				if (twSourceFile.exists())
-					easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-				else {
-					twSourceFile = new File("EasyTaintWrapperSource.txt");
-					if (twSourceFile.exists())
-						easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-					else {
-						System.err.println("Taint wrapper definition file not found at "
-								+ twSourceFile.getAbsolutePath());
-						return null;
-					}
-				}
-				easyTaintWrapper.setAggressiveMode(aggressiveTaintWrapper);
-				taintWrapper = easyTaintWrapper;
-			}
-			app.setTaintWrapper(taintWrapper);
+			if (!setTaintWrapper(app))
+				return null;
 			app.calculateSourcesSinksEntrypointsForViewFlowCorrelation("SourceAndSinksForFlowViewCorrelation.txt", fps);
 			app.printEntrypoints();
 			app.printSinks();
@@ -1234,11 +1372,7 @@ public class Test {
 			NUDisplay.debug("start analysis for constant propogation", null);
 			
 			final long beforeRun = System.nanoTime();
-			SetupApplication appFast;
-			if (null == ipcManager) appFast = new SetupApplication(androidJar, fileName);
-			else appFast = new SetupApplication(androidJar, fileName, ipcManager);
-			
-			appFast.setConfig(config);
+			SetupApplication appFast = session.createSetupApplication();
 			if (noTaintWrapper)
 				appFast.setSootConfig(new IInfoflowConfig() {
 					@Override
@@ -1248,36 +1382,8 @@ public class Test {
 				});
 			appFast.initializeSoot(true);
 			
-			final ITaintPropagationWrapper taintWrapper1;
-			if (noTaintWrapper) taintWrapper1 = null;
-			else if (summaryPath != null && !summaryPath.isEmpty()) {
-				System.out.println("Using the StubDroid taint wrapper");
-				taintWrapper1 = createLibrarySummaryTW();
-				if (taintWrapper1 == null) {
-					NUDisplay.error("Could not initialize StubDroid", "runAnalysisForConstantPropogation");
-					return null;
-				}
-			}
-			else {
-				final EasyTaintWrapper easyTaintWrapper;
-				File twSourceFile = new File("../soot-infoflow/EasyTaintWrapperSource.txt");
-				if (twSourceFile.exists())
-					easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-				else {
-					twSourceFile = new File("EasyTaintWrapperSource.txt");
-					if (twSourceFile.exists())
-						easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-					else {
-						NUDisplay.error("Taint wrapper definition file not found at "
-								+ twSourceFile.getAbsolutePath(), 
-								"runAnalysisForConstantPropogation");
-						return null;
-					}
-				}
-				easyTaintWrapper.setAggressiveMode(aggressiveTaintWrapper);
-				taintWrapper1 = easyTaintWrapper;
-			}
-			appFast.setTaintWrapper(taintWrapper1);
+			if (!setTaintWrapper(appFast))
+				return null;
 			appFast.calculateSourcesSinksEntrypointsForConstantPropogation("SourceAndSinksForFlowViewCorrelation.txt");
 			
 			
@@ -1292,19 +1398,14 @@ public class Test {
 				NUDisplay.debug("fast constant propogation analysis finished in "+time+" s.", null);
 				return null;
 			}
+			if(config.getResourceConstantPropagation()){
+				NUDisplay.debug("sparse constant propogation analysis finished in "+time+" ms.", null);
+				return null;
+			}
 			
 			//TODO: Disabled for now because it's very slow. 
 			//Optimization is required
-			final SetupApplication app;
-			if (null == ipcManager)
-			{
-				app = new SetupApplication(androidJar, fileName);
-			}
-			else
-			{
-				app = new SetupApplication(androidJar, fileName, ipcManager);
-			}
-			app.setConfig(config);
+			final SetupApplication app = session.createSetupApplication();
 			if (noTaintWrapper)
 				app.setSootConfig(new IInfoflowConfig() {
 					
@@ -1315,36 +1416,8 @@ public class Test {
 					
 				});
 			
-			final ITaintPropagationWrapper taintWrapper;
-			if (noTaintWrapper)
-				taintWrapper = null;
-			else if (summaryPath != null && !summaryPath.isEmpty()) {
-				taintWrapper = createLibrarySummaryTW();
-				if (taintWrapper == null) {
-					return null;
-				}
-			}
-			else {
-				final EasyTaintWrapper easyTaintWrapper;
-				//TODO: what's this.
-				File twSourceFile = new File("../soot-infoflow/EasyTaintWrapperSource.txt");
-				
-				if (twSourceFile.exists())
-					easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-				else {
-					twSourceFile = new File("EasyTaintWrapperSource.txt");
-					if (twSourceFile.exists())
-						easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
-					else {
-						System.err.println("Taint wrapper definition file not found at "
-								+ twSourceFile.getAbsolutePath());
-						return null;
-					}
-				}
-				easyTaintWrapper.setAggressiveMode(aggressiveTaintWrapper);
-				taintWrapper = easyTaintWrapper;
-			}
-			app.setTaintWrapper(taintWrapper);
+			if (!setTaintWrapper(app))
+				return null;
 			app.calculateSourcesSinksEntrypointsForConstantPropogation("Test.txt");
 			app.printEntrypoints();
 			app.printSinks();
@@ -1377,11 +1450,8 @@ public class Test {
 			}
 			
 			//Test
-			ARSCFileParser resParser = new ARSCFileParser();
-			resParser.parse(fileName);
-			ProcessManifest processMan = new ProcessManifest(fileName);
-			//this.appPackageName = processMan.getPackageName();
-			ParameterSearch ps = new ParameterSearch(resParser.getPackages(),  processMan.getPackageName(),null);
+			ParameterSearch ps = new ParameterSearch(session.getResourcePackages(), session.getAppPackageName(), null);
+			ps.setBudget(budget);
 			ps.searchMethodCall("findViewById", null);
 			
 			return res;
@@ -1396,6 +1466,55 @@ public class Test {
 		}
 	}
 	
+	/**
+	 * Sets the taint wrapper of the current app on the given application.
+	 * The wrapper is created by the first stage and then shared with all
+	 * further stages through the analysis session.
+	 * @param app The application on which to set the taint wrapper
+	 * @return True if the taint wrapper has been set, false if it could not
+	 * be created
+	 * @throws IOException Thrown if one of the required files could not be read
+	 */
+	private static boolean setTaintWrapper(SetupApplication app) throws IOException {
+		if (noTaintWrapper) {
+			app.setTaintWrapper(null);
+			return true;
+		}
+		
+		ITaintPropagationWrapper taintWrapper = session.getTaintWrapper();
+		if (taintWrapper == null) {
+			if (summaryPath != null && !summaryPath.isEmpty()) {
+				System.out.println("Using the StubDroid taint wrapper");
+				taintWrapper = createLibrarySummaryTW();
+				if (taintWrapper == null) {
+					System.err.println("Could not initialize StubDroid");
+					return false;
+				}
+			}
+			else {
+				final EasyTaintWrapper easyTaintWrapper;
+				File twSourceFile = new File("../soot-infoflow/EasyTaintWrapperSource.txt");
+				if (twSourceFile.exists())
+					easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
+				else {
+					twSourceFile = new File("EasyTaintWrapperSource.txt");
+					if (twSourceFile.exists())
+						easyTaintWrapper = new EasyTaintWrapper(twSourceFile);
+					else {
+						System.err.println("Taint wrapper definition file not found at "
+								+ twSourceFile.getAbsolutePath());
+						return false;
+					}
+				}
+				easyTaintWrapper.setAggressiveMode(aggressiveTaintWrapper);
+				taintWrapper = easyTaintWrapper;
+			}
+			session.setTaintWrapper(taintWrapper);
+		}
+		app.setTaintWrapper(taintWrapper);
+		return true;
+	}
+	
 	/**
 	 * Creates the taint wrapper for using library summaries
 	 * @return The taint wrapper for using library summaries
@@ -1502,9 +1621,22 @@ public class Test {
 		System.out.println();
 		System.out.println("Incorrect arguments: [0] = apk-file, [1] = android-jar-directory");
 		System.out.println("Optional further parameters:");
-		System.out.println("\t--TIMEOUT n Time out after n seconds");
-		System.out.println("\t--SYSTIMEOUT n Hard time out (kill process) after n seconds, Unix only");
+		System.out.println("\t--TIMEOUT n Stop all analysis stages after n seconds and report partial results");
+		System.out.println("\t--SYSTIMEOUT n Hard time out (kill process) after n seconds");
+		System.out.println("\t--HEAPBUDGET n Stop all analysis stages once more than n MB of heap remain in use after garbage collection");
 		System.out.println("\t--SINGLEFLOW Stop after finding first leak");
+		System.out.println("\t--RESCACHE x Cache the resources and callbacks of every APK file in directory x");
+		System.out.println("\t--METRICSDIR x Write the time and memory consumption of every analysis phase per APK file into directory x");
+		System.out.println("\t--GRAPHCACHE n Cache the unit graphs of at most n units in total, 0 disables the cache");
+		System.out.println("\t--LAYOUTTHREADS n Parse the layout XML files with n threads");
+		System.out.println("\t--CALLBACKTHREADS n Find the callbacks registered in the code with n threads, analyzing each method once");
+		System.out.println("\t--MMAPRESOURCES Map the resources.arsc file into memory instead of loading it onto the heap");
+		System.out.println("\t--SOURCESINKBUNDLES Compile the source/sink files into binary bundles once and load the bundles afterwards");
+		System.out.println("\t--EAGERSOURCESINKS Classify all call sites as sources and sinks in parallel before the data flow analysis");
+		System.out.println("\t--RESIDSUMMARIES Resolve the resource IDs of UI sources that are returned by other methods");
+		System.out.println("\t--CONSTPROP Resolve indirect resource IDs with the sparse constant propagation");
+		System.out.println("\t--REUSESCENE Keep Soot loaded between the iterations of the callback analysis");
+		System.out.println("\t--INCREMENTALCALLBACKS Extend the callgraph with the new callbacks instead of rebuilding it in every callback iteration");
 		System.out.println("\t--IMPLICIT Enable implicit flows");
 		System.out.println("\t--NOSTATIC Disable static field tracking");
 		System.out.println("\t--NOEXCEPTIONS Disable exception tracking");
@@ -1524,6 +1656,11 @@ public class Test {
 		System.out.println("\t--LOGSOURCESANDSINKS Print out concrete source/sink instances");
 		System.out.println("\t--CALLBACKANALYZER x Uses callback analysis algorithm x");
 		System.out.println("\t--MAXTHREADNUM x Sets the maximum number of threads to be used by the analysis to x");
+		System.out.println("\t--WORKERS n Analyze multiple APK files in n parallel worker processes");
+		System.out.println("\t--MAXRETRIES n Retry crashed or out-of-memory workers up to n times");
+		System.out.println("\t--WORKERHEAP n Start worker processes with a heap of n MB");
+		System.out.println("\t--JOURNAL x Record the batch progress in journal file x");
+		System.out.println("\t--WORKERLOGDIR x Write the worker output to directory x");
 		System.out.println();
 		System.out.println("Supported callgraph algorithms: AUTO, CHA, RTA, VTA, SPARK, GEOM");
 		System.out.println("Supported layout mode algorithms: NONE, PWD, ALL");
@@ -1,9 +1,8 @@
 package soot.jimple.infoflow.android.axml;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import pxb.android.axml.AxmlWriter;
@@ -52,38 +51,73 @@ public class AXmlHandler {
 	 * @throws	IOException				if an I/O error occurs.
 	 */
 	public AXmlHandler(InputStream aXmlIs, IBinaryXMLFileParser parser) throws IOException {
-		if (aXmlIs == null)
+		this(aXmlIs, -1, parser);
+	}
+	
+	/**
+	 * Creates a new {@link AXmlHandler} which parses the {@link InputStream}.
+	 * 
+	 * @param	aXmlIs					InputStream reading a byte compressed android xml file
+	 * @param	size					The size of the uncompressed file, e.g. taken from
+	 * 									{@link java.util.zip.ZipEntry#getSize()}, or -1 if unknown
+	 * @param	parser					The parser implementation to be used
+	 * @throws	IOException				if an I/O error occurs.
+	 */
+	public AXmlHandler(InputStream aXmlIs, long size, IBinaryXMLFileParser parser) throws IOException {
+		this(readFully(aXmlIs, size), parser);
+	}
+	
+	/**
+	 * Creates a new {@link AXmlHandler} which parses the given byte array. The
+	 * array is used as is and must not be modified afterwards.
+	 * 
+	 * @param	aXml					the byte compressed android xml file
+	 * @param	parser					The parser implementation to be used
+	 * @throws	IOException				if an I/O error occurs.
+	 */
+	public AXmlHandler(byte[] aXml, IBinaryXMLFileParser parser) throws IOException {
+		if (aXml == null)
+			throw new RuntimeException("NULL input buffer for AXmlHandler");
+		
+		this.xml = aXml;
+		parser.parseFile(this.xml);
+		this.parser = parser;
+	}
+	
+	/**
+	 * Reads the given stream in a single pass. If the size is not known, the
+	 * number of available bytes is used as the initial capacity, which is
+	 * exact for streams from a {@link java.util.zip.ZipFile}. The end of the
+	 * stream is always determined by reading, never by available().
+	 * 
+	 * @param	is						the stream to read
+	 * @param	size					the expected number of bytes, or -1 if unknown
+	 * @return	the contents of the stream
+	 * @throws	IOException				if an I/O error occurs.
+	 */
+	private static byte[] readFully(InputStream is, long size) throws IOException {
+		if (is == null)
 			throw new RuntimeException("NULL input stream for AXmlHandler");
-
-		// wrap the InputStream within a BufferedInputStream
-		// to have mark() and reset() methods
-		BufferedInputStream buffer = new BufferedInputStream(aXmlIs);
 		
-		// read xml one time for writing the output later on
-		{
-			List<byte[]> chunks = new ArrayList<byte[]>();
-			int bytesRead = 0;
-			while (aXmlIs.available() > 0) {
-				byte[] nextChunk = new byte[aXmlIs.available()];
-				int chunkSize = buffer.read(nextChunk);
-				if (chunkSize < 0)
+		int capacity = size >= 0 && size < Integer.MAX_VALUE ? (int) size : is.available();
+		byte[] data = new byte[capacity > 0 ? capacity : 8192];
+		int bytesRead = 0;
+		while (true) {
+			if (bytesRead == data.length) {
+				// The size was wrong or unknown, probe before growing so that
+				// an exact guess does not cost another copy
+				int next = is.read();
+				if (next < 0)
 					break;
-				chunks.add(nextChunk);
-				bytesRead += chunkSize;
-			}
-			
-			// Create the full array
-			this.xml = new byte[bytesRead];
-			int bytesCopied = 0;
-			for (byte[] chunk : chunks) {
-				int toCopy = Math.min(chunk.length, bytesRead - bytesCopied);
-				System.arraycopy(chunk, 0, this.xml, bytesCopied, toCopy);
-				bytesCopied += toCopy;
+				data = Arrays.copyOf(data, Math.max(data.length * 2, 8192));
+				data[bytesRead++] = (byte) next;
 			}
+			int len = is.read(data, bytesRead, data.length - bytesRead);
+			if (len < 0)
+				break;
+			bytesRead += len;
 		}
-		
-		parser.parseFile(this.xml);
-		this.parser = parser;
+		return bytesRead == data.length ? data : Arrays.copyOf(data, bytesRead);
 	}
 	
 	/**
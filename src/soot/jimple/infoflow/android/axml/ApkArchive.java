@@ -0,0 +1,204 @@
+package soot.jimple.infoflow.android.axml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Shared, indexed access to the entries of an APK file. The manifest parser
+ * and the various resource parsers all need different files from the same
+ * APK. Instead of opening the archive and walking over all of its entries
+ * for every parser, the archive is opened once and the entries are indexed
+ * by name. Callers can then ask for single entries or for all entries below
+ * a common prefix such as <code>res/layout/</code>.
+ *
+ * Archives stay open until they are closed explicitly using
+ * {@link #close(File)} or {@link #closeAll()}. Since an archive is shared by
+ * all parsers of the app, only the owner of the analysis closes it, usually
+ * with closeAll() once the app is done. If the APK file is modified on disk,
+ * the next call to {@link #getArchive(File)} opens it again.
+ *
+ * Lists of entries are returned in the order of the central directory, the
+ * same order in which the old linear searches found them.
+ */
+public class ApkArchive {
+
+	private static final Map<String, ApkArchive> archives = new HashMap<String, ApkArchive>();
+
+	private final File apk;
+	private final long lastModified;
+	private final long length;
+	private final ZipFile zip;
+	// The entries in the order of the central directory
+	private final List<ZipEntry> entries = new ArrayList<ZipEntry>();
+	// The position of every entry in the central directory, sorted by name
+	// for prefix lookups
+	private final TreeMap<String, Integer> index = new TreeMap<String, Integer>();
+
+	private ApkArchive(File apk) throws IOException {
+		this.apk = apk;
+		this.lastModified = apk.lastModified();
+		this.length = apk.length();
+		this.zip = new ZipFile(apk);
+
+		Enumeration<? extends ZipEntry> zipEntries = this.zip.entries();
+		while (zipEntries.hasMoreElements()) {
+			ZipEntry entry = zipEntries.nextElement();
+			// Keep the first entry if an APK contains duplicate names, just
+			// like the old linear searches did
+			if (!index.containsKey(entry.getName())) {
+				index.put(entry.getName(), entries.size());
+				entries.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Gets the shared archive for the given APK file. If the archive has not
+	 * been opened yet or the file has changed since, it is opened and indexed.
+	 * @param apkPath The path of the APK file
+	 * @return The archive for the given APK file
+	 * @throws IOException Thrown if the APK file cannot be opened
+	 */
+	public static ApkArchive getArchive(String apkPath) throws IOException {
+		return getArchive(new File(apkPath));
+	}
+
+	/**
+	 * Gets the shared archive for the given APK file. If the archive has not
+	 * been opened yet or the file has changed since, it is opened and indexed.
+	 * @param apk The APK file
+	 * @return The archive for the given APK file
+	 * @throws IOException Thrown if the APK file cannot be opened
+	 */
+	public static synchronized ApkArchive getArchive(File apk) throws IOException {
+		String key = apk.getCanonicalPath();
+		ApkArchive archive = archives.get(key);
+		if (archive != null) {
+			if (archive.lastModified == apk.lastModified() && archive.length == apk.length())
+				return archive;
+			archive.closeZip();
+		}
+
+		archive = new ApkArchive(apk);
+		archives.put(key, archive);
+		return archive;
+	}
+
+	/**
+	 * Closes the shared archive for the given APK file if it is open
+	 * @param apk The APK file
+	 */
+	public static synchronized void close(File apk) {
+		try {
+			ApkArchive archive = archives.remove(apk.getCanonicalPath());
+			if (archive != null)
+				archive.closeZip();
+		}
+		catch (IOException e) {
+			System.err.println("Could not close apk file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes all shared archives. This should be called once the analysis of
+	 * an app is done.
+	 */
+	public static synchronized void closeAll() {
+		for (ApkArchive archive : archives.values())
+			archive.closeZip();
+		archives.clear();
+	}
+
+	private void closeZip() {
+		try {
+			this.zip.close();
+		}
+		catch (IOException e) {
+			System.err.println("Could not close apk file: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	public File getFile() {
+		return this.apk;
+	}
+
+	/**
+	 * Gets the entry with the given name
+	 * @param name The full name of the entry inside the APK, e.g.
+	 * <code>res/menu/main.xml</code>
+	 * @return The entry with the given name, or null if no such entry exists
+	 */
+	public ZipEntry getEntry(String name) {
+		Integer position = this.index.get(name);
+		return position == null ? null : this.entries.get(position);
+	}
+
+	/**
+	 * Gets all entries whose names start with the given prefix, in the order
+	 * of the central directory
+	 * @param prefix The prefix, e.g. <code>res/layout</code>
+	 * @return All entries whose names start with the given prefix
+	 */
+	public List<ZipEntry> getEntries(String prefix) {
+		if (prefix == null || prefix.isEmpty())
+			return new ArrayList<ZipEntry>(this.entries);
+		Collection<Integer> matches = this.index.subMap(prefix,
+				prefix + Character.MAX_VALUE).values();
+		int[] positions = new int[matches.size()];
+		int i = 0;
+		for (Integer position : matches)
+			positions[i++] = position;
+		Arrays.sort(positions);
+
+		List<ZipEntry> result = new ArrayList<ZipEntry>(positions.length);
+		for (int position : positions)
+			result.add(this.entries.get(position));
+		return result;
+	}
+
+	/**
+	 * Gets all entries in the APK file, in the order of the central directory
+	 * @return All entries in the APK file
+	 */
+	public Collection<ZipEntry> getEntries() {
+		return Collections.unmodifiableCollection(this.entries);
+	}
+
+	/**
+	 * Opens a stream for reading the given entry
+	 * @param entry The entry to read
+	 * @return The stream for reading the entry
+	 * @throws IOException Thrown if the entry cannot be read
+	 */
+	public InputStream getInputStream(ZipEntry entry) throws IOException {
+		return this.zip.getInputStream(entry);
+	}
+
+	/**
+	 * Opens a stream for reading the entry with the given name
+	 * @param name The full name of the entry inside the APK
+	 * @return The stream for reading the entry, or null if no such entry
+	 * exists
+	 * @throws IOException Thrown if the entry cannot be read
+	 */
+	public InputStream getInputStream(String name) throws IOException {
+		ZipEntry entry = getEntry(name);
+		if (entry == null)
+			return null;
+		return this.zip.getInputStream(entry);
+	}
+
+}
@@ -5,13 +5,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -23,17 +23,18 @@ import com.google.common.io.Files;
  * @author Stefan Haas, Mario Schlipf
  */
 public class ApkHandler {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
 	/**
 	 * The handled APK file.
 	 */
 	protected File apk;
 	
 	/**
-	 * Pointer to the ZipFile. If an InputStream for a file within
-	 * the ZipFile is returned by {@link ApkHandler#getInputStream(String)} the
-	 * ZipFile object has to remain available in order to read the InputStream.
+	 * Whether unchanged entries are copied as raw compressed bytes when
+	 * files are added to the APK.
 	 */
-	protected ZipFile zip;
+	protected boolean rawCopy = true;
 	
 	/**
 	 * @param	path			the APK's path
@@ -92,24 +93,43 @@ public class ApkHandler {
 	 * @throws	IOException		if an I/O error occurs.
 	 */
 	public InputStream getInputStream(String filename) throws IOException {
-		InputStream is = null;
-		
-		// check if zip file is already opened
-		if(this.zip == null)
-			this.zip = new ZipFile(this.apk);
-		
-		// search for file with given filename
-		Enumeration<?> entries = this.zip.entries();
-		while (entries.hasMoreElements()) {
-			ZipEntry entry = (ZipEntry) entries.nextElement();
-			String entryName = entry.getName();
-			if (entryName.equals(filename)) {
-				is = this.zip.getInputStream(entry);
-				break;
-			}
-		}
-		
-		return is;
+		// The archive is shared with the resource parsers, which can thus
+		// reuse the entry index
+		return ApkArchive.getArchive(this.apk).getInputStream(filename);
+	}
+	
+	/**
+	 * Returns the uncompressed size of a file within the APK.
+	 * 
+	 * @param	filename		the file's path
+	 * @return	the size of the file in bytes, or -1 if the file was not found or the size is unknown
+	 * @throws	IOException		if an I/O error occurs.
+	 */
+	public long getSize(String filename) throws IOException {
+		ZipEntry entry = ApkArchive.getArchive(this.apk).getEntry(filename);
+		return entry == null ? -1 : entry.getSize();
+	}
+	
+	/**
+	 * Sets whether the unchanged entries of the APK are copied as raw
+	 * compressed bytes when files are added. If disabled, or if the APK uses
+	 * ZIP features the raw copy does not support, all entries are inflated
+	 * and compressed again.
+	 * 
+	 * @param	rawCopy			true to copy unchanged entries without recompressing them
+	 */
+	public void setRawCopy(boolean rawCopy) {
+		this.rawCopy = rawCopy;
+	}
+	
+	/**
+	 * Returns whether the unchanged entries of the APK are copied as raw
+	 * compressed bytes when files are added.
+	 * 
+	 * @see		ApkHandler#setRawCopy(boolean)
+	 */
+	public boolean isRawCopy() {
+		return this.rawCopy;
 	}
 	
 	/**
@@ -130,16 +150,14 @@ public class ApkHandler {
 	 */
 	public void addFilesToApk(List<File> files, Map<String, String> paths) throws IOException {
 		// close zip file to rename apk
-		if(this.zip != null) {
-			this.zip.close();
-			this.zip = null;
-		}
+		ApkArchive.close(this.apk);
 		
 		// add missing paths to directories parameter
 		for(File file : files) {
 			if(!paths.containsKey(file.getPath()))
 				paths.put(file.getPath(), file.getName());
 		}
+		Set<String> replaced = new HashSet<String>(paths.values());
 		
 		// get a temp file
 		File tempFile = File.createTempFile(this.apk.getName(), null);
@@ -159,26 +177,46 @@ public class ApkHandler {
 			}
 		}
 		
+		try {
+			if (!this.rawCopy || !RawZipRewriter.rewrite(tempFile, this.apk, replaced, files, paths))
+				this.recompressFiles(tempFile, replaced, files, paths);
+		}
+		finally {
+			// Delete the tmeporary file
+			if (tempFile.exists())
+				tempFile.delete();
+		}
+	}
+	
+	/**
+	 * Writes the APK by inflating every entry of the original APK and
+	 * compressing it again.
+	 * 
+	 * @param	original		the original APK
+	 * @param	replaced		the paths of the entries which are replaced
+	 * @param	files			the files to be added to the APK
+	 * @param	paths			the paths where to put the files, keyed by the file's path
+	 * @throws	IOException		if an I/O error occurs.
+	 */
+	private void recompressFiles(File original, Set<String> replaced, List<File> files,
+			Map<String, String> paths) throws IOException {
 		ZipInputStream zin = null;
 		ZipOutputStream out = null;
-		byte[] buf = new byte[1024];
+		byte[] buf = new byte[BUFFER_SIZE];
 		
 		try {
-			zin = new ZipInputStream(new FileInputStream(tempFile));
+			zin = new ZipInputStream(new FileInputStream(original));
 			out = new ZipOutputStream(new FileOutputStream(this.apk));
 			ZipEntry entry;
 			
-			nextEntry:
 			while ((entry = zin.getNextEntry()) != null) {
 				// skip replaced entries
-				for(String path : paths.values())
-					if(entry.getName().equals(path))
-						continue nextEntry;
+				if (replaced.contains(entry.getName()))
+					continue;
 				
 				// Since we are modifying an APK file, the old signature becomes
 				// invalid and we thus need to remove it.
-				if (entry.getName().startsWith("META-INF/")
-						&& (entry.getName().endsWith(".RSA") || entry.getName().endsWith(".SF")))
+				if (isSignatureFile(entry.getName()))
 					continue;
 				
 				// if not replaced add the zip entry to the output stream
@@ -232,26 +270,27 @@ public class ApkHandler {
 				out.flush();
 				out.close();
 			}
-			
-			// Delete the tmeporary file
-			if (tempFile != null && tempFile.exists())
-				tempFile.delete();
 		}
 	}
 	
 	/**
-	 * Closes this apk file
+	 * Checks whether the given entry belongs to the APK's signature, which
+	 * becomes invalid when the APK is modified.
+	 * 
+	 * @param	name			the entry's path within the APK
+	 * @return	true if the entry is a signature file, otherwise false
+	 */
+	static boolean isSignatureFile(String name) {
+		return name.startsWith("META-INF/") && (name.endsWith(".RSA") || name.endsWith(".SF"));
+	}
+	
+	/**
+	 * Closes this apk file. The archive is shared with all other parsers of
+	 * the app, which may still be reading from it, so it is not closed here.
+	 * The owner of the analysis closes it using {@link ApkArchive#closeAll()}
+	 * once the app is done.
 	 */
 	public void close() {
-		if (this.zip != null) {
-			try {
-				this.zip.close();
-			} catch (IOException e) {
-				System.err.println("Could not close apk file: " + e.getMessage());
-				e.printStackTrace();
-			}
-			this.zip = null;
-		}
 	}
 	
 }
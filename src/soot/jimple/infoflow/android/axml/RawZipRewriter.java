@@ -0,0 +1,399 @@
+package soot.jimple.infoflow.android.axml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Rewrites ZIP archives without decompressing the entries that are kept. The
+ * local header and the compressed data of every kept entry are copied over
+ * as raw bytes, only the entry offsets in the central directory are
+ * adjusted. New entries are deflated while they are written. Archives which
+ * use ZIP64 extensions or span multiple disks are not supported, the caller
+ * has to fall back to a full rewrite for them.
+ *
+ * Everything between the entries and the central directory of the original
+ * archive, e.g. an APK signing block, is dropped.
+ */
+class RawZipRewriter {
+
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+	private static final int END_SIG = 0x06054b50;
+	private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+	private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+
+	private static final int LOCAL_HEADER_LEN = 30;
+	private static final int CENTRAL_HEADER_LEN = 46;
+	private static final int END_LEN = 22;
+	private static final int ZIP64_LOCATOR_LEN = 20;
+	private static final int MAX_COMMENT_LEN = 0xFFFF;
+
+	private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+	private static final int FLAG_UTF8 = 1 << 11;
+	private static final int VERSION_DEFLATE = 20;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final long MAX_U32 = 0xFFFFFFFFL;
+	private static final int MAX_U16 = 0xFFFF;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * An entry in the central directory of the original archive
+	 */
+	private static class CentralEntry {
+		private final String name;
+		private final int flags;
+		private final long compressedSize;
+		private final long localOffset;
+		private final byte[] record;
+
+		private CentralEntry(String name, int flags, long compressedSize,
+				long localOffset, byte[] record) {
+			this.name = name;
+			this.flags = flags;
+			this.compressedSize = compressedSize;
+			this.localOffset = localOffset;
+			this.record = record;
+		}
+	}
+
+	private RawZipRewriter() {
+	}
+
+	/**
+	 * Copies the source archive to the target file, removing the entries in
+	 * the given set and appending the given files.
+	 *
+	 * @param	source			the original archive
+	 * @param	target			the file to write the new archive to
+	 * @param	removed			the names of the entries not to copy
+	 * @param	files			the files to append to the archive
+	 * @param	paths			the entry names of the files, keyed by file path
+	 * @return	true if the archive has been rewritten, false if its format is
+	 * 			not supported. In the latter case, the target file has not been
+	 * 			touched.
+	 * @throws	IOException		if an I/O error occurs or the archive is invalid.
+	 */
+	static boolean rewrite(File source, File target, Set<String> removed,
+			List<File> files, Map<String, String> paths) throws IOException {
+		FileInputStream fis = new FileInputStream(source);
+		try {
+			FileChannel in = fis.getChannel();
+			List<CentralEntry> entries = readCentralDirectory(in);
+			if (entries == null)
+				return false;
+
+			FileOutputStream fos = new FileOutputStream(target);
+			try {
+				FileChannel out = fos.getChannel();
+				ByteArrayOutputStream central = new ByteArrayOutputStream();
+				int count = 0;
+
+				for (CentralEntry entry : entries) {
+					if (removed.contains(entry.name) || ApkHandler.isSignatureFile(entry.name))
+						continue;
+					long newOffset = copyEntry(in, entry, out);
+
+					ByteBuffer.wrap(entry.record).order(ByteOrder.LITTLE_ENDIAN).putInt(42, (int) newOffset);
+					central.write(entry.record);
+					count++;
+				}
+
+				for (File file : files) {
+					central.write(addEntry(file, paths.get(file.getPath()), out));
+					count++;
+				}
+
+				long centralOffset = out.position();
+				if (count > MAX_U16 || centralOffset > MAX_U32 || central.size() > MAX_U32)
+					throw new ZipException("Archive too large without ZIP64: " + target);
+				writeFully(out, ByteBuffer.wrap(central.toByteArray()));
+
+				ByteBuffer end = ByteBuffer.allocate(END_LEN).order(ByteOrder.LITTLE_ENDIAN);
+				end.putInt(END_SIG);
+				end.putShort((short) 0);
+				end.putShort((short) 0);
+				end.putShort((short) count);
+				end.putShort((short) count);
+				end.putInt(central.size());
+				end.putInt((int) centralOffset);
+				end.putShort((short) 0);
+				end.flip();
+				writeFully(out, end);
+			}
+			finally {
+				fos.close();
+			}
+			return true;
+		}
+		finally {
+			fis.close();
+		}
+	}
+
+	/**
+	 * Finds and reads the central directory of the given archive
+	 * @param in The archive
+	 * @return The entries in the order of the central directory, or null if
+	 * the archive format is not supported
+	 * @throws IOException Thrown if the archive cannot be read or is invalid
+	 */
+	private static List<CentralEntry> readCentralDirectory(FileChannel in) throws IOException {
+		long size = in.size();
+		if (size < END_LEN)
+			throw new ZipException("Not a ZIP archive");
+
+		// The end record is followed by a comment of variable length
+		int tailLength = (int) Math.min(size, END_LEN + MAX_COMMENT_LEN);
+		ByteBuffer tail = read(in, size - tailLength, tailLength);
+		int endPos = -1;
+		for (int i = tailLength - END_LEN; i >= 0; i--)
+			if (tail.getInt(i) == END_SIG
+					&& i + END_LEN + (tail.getShort(i + 20) & MAX_U16) <= tailLength) {
+				endPos = i;
+				break;
+			}
+		if (endPos < 0)
+			throw new ZipException("End of central directory not found");
+
+		int disk = tail.getShort(endPos + 4) & MAX_U16;
+		int centralDisk = tail.getShort(endPos + 6) & MAX_U16;
+		int diskEntries = tail.getShort(endPos + 8) & MAX_U16;
+		int totalEntries = tail.getShort(endPos + 10) & MAX_U16;
+		long centralSize = tail.getInt(endPos + 12) & MAX_U32;
+		long centralOffset = tail.getInt(endPos + 16) & MAX_U32;
+		if (disk != 0 || centralDisk != 0 || diskEntries != totalEntries
+				|| totalEntries == MAX_U16 || centralSize == MAX_U32
+				|| centralOffset == MAX_U32)
+			return null;
+
+		long endOffset = size - tailLength + endPos;
+		if (endOffset >= ZIP64_LOCATOR_LEN
+				&& read(in, endOffset - ZIP64_LOCATOR_LEN, 4).getInt(0) == ZIP64_LOCATOR_SIG)
+			return null;
+		if (centralOffset + centralSize > endOffset)
+			throw new ZipException("Invalid central directory");
+
+		return parseCentralDirectory(read(in, centralOffset, (int) centralSize), totalEntries);
+	}
+
+	/**
+	 * Parses the records in the central directory
+	 * @param centralDirectory The central directory
+	 * @param totalEntries The number of entries in the central directory
+	 * @return The entries in the order of the central directory, or null if
+	 * the archive format is not supported
+	 * @throws ZipException Thrown if the central directory is invalid
+	 */
+	private static List<CentralEntry> parseCentralDirectory(ByteBuffer centralDirectory,
+			int totalEntries) throws ZipException {
+		List<CentralEntry> entries = new ArrayList<CentralEntry>(totalEntries);
+		int pos = 0;
+		for (int i = 0; i < totalEntries; i++) {
+			if (pos + CENTRAL_HEADER_LEN > centralDirectory.limit()
+					|| centralDirectory.getInt(pos) != CENTRAL_HEADER_SIG)
+				throw new ZipException("Invalid central directory record");
+
+			int flags = centralDirectory.getShort(pos + 8) & MAX_U16;
+			long compressedSize = centralDirectory.getInt(pos + 20) & MAX_U32;
+			long size = centralDirectory.getInt(pos + 24) & MAX_U32;
+			int nameLength = centralDirectory.getShort(pos + 28) & MAX_U16;
+			int extraLength = centralDirectory.getShort(pos + 30) & MAX_U16;
+			int commentLength = centralDirectory.getShort(pos + 32) & MAX_U16;
+			int startDisk = centralDirectory.getShort(pos + 34) & MAX_U16;
+			long localOffset = centralDirectory.getInt(pos + 42) & MAX_U32;
+			if (compressedSize == MAX_U32 || size == MAX_U32
+					|| localOffset == MAX_U32 || startDisk != 0)
+				return null;
+
+			int recordLength = CENTRAL_HEADER_LEN + nameLength + extraLength + commentLength;
+			if (pos + recordLength > centralDirectory.limit())
+				throw new ZipException("Invalid central directory record");
+			String name = new String(centralDirectory.array(), pos + CENTRAL_HEADER_LEN,
+					nameLength, UTF8);
+			byte[] record = new byte[recordLength];
+			System.arraycopy(centralDirectory.array(), pos, record, 0, recordLength);
+			entries.add(new CentralEntry(name, flags, compressedSize, localOffset, record));
+			pos += recordLength;
+		}
+		return entries;
+	}
+
+	/**
+	 * Copies the local header, the compressed data and the data descriptor of
+	 * the given entry to the end of the output archive
+	 * @param in The original archive
+	 * @param entry The entry to copy
+	 * @param out The new archive
+	 * @return The offset of the entry in the new archive
+	 * @throws IOException Thrown if the entry cannot be copied
+	 */
+	private static long copyEntry(FileChannel in, CentralEntry entry, FileChannel out)
+			throws IOException {
+		ByteBuffer localHeader = read(in, entry.localOffset, LOCAL_HEADER_LEN);
+		if (localHeader.getInt(0) != LOCAL_HEADER_SIG)
+			throw new ZipException("Invalid local header for " + entry.name);
+
+		long end = entry.localOffset + LOCAL_HEADER_LEN
+				+ (localHeader.getShort(26) & MAX_U16)
+				+ (localHeader.getShort(28) & MAX_U16)
+				+ entry.compressedSize;
+		if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0)
+			end += read(in, end, 4).getInt(0) == DATA_DESCRIPTOR_SIG ? 16 : 12;
+
+		long newOffset = out.position();
+		long position = entry.localOffset;
+		while (position < end) {
+			long len = in.transferTo(position, end - position, out);
+			if (len <= 0)
+				throw new ZipException("Unexpected end of data for " + entry.name);
+			position += len;
+		}
+		return newOffset;
+	}
+
+	/**
+	 * Deflates the given file into a new entry at the end of the output
+	 * archive. The local header is written first and patched once the sizes
+	 * and the checksum are known.
+	 * @param file The file to add
+	 * @param name The name of the new entry
+	 * @param out The new archive
+	 * @return The central directory record for the new entry
+	 * @throws IOException Thrown if the file cannot be added
+	 */
+	private static byte[] addEntry(File file, String name, FileChannel out) throws IOException {
+		long offset = out.position();
+		byte[] nameBytes = name.getBytes(UTF8);
+		int time = toDosTime(System.currentTimeMillis());
+
+		ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_LEN + nameBytes.length)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		localHeader.putInt(LOCAL_HEADER_SIG);
+		localHeader.putShort((short) VERSION_DEFLATE);
+		localHeader.putShort((short) FLAG_UTF8);
+		localHeader.putShort((short) METHOD_DEFLATED);
+		localHeader.putInt(time);
+		localHeader.putInt(0);
+		localHeader.putInt(0);
+		localHeader.putInt(0);
+		localHeader.putShort((short) nameBytes.length);
+		localHeader.putShort((short) 0);
+		localHeader.put(nameBytes);
+		localHeader.flip();
+		writeFully(out, localHeader);
+
+		CRC32 crc = new CRC32();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		long compressedSize;
+		long size;
+		try {
+			byte[] input = new byte[BUFFER_SIZE];
+			byte[] output = new byte[BUFFER_SIZE];
+			InputStream is = new FileInputStream(file);
+			try {
+				int len;
+				while ((len = is.read(input)) > 0) {
+					crc.update(input, 0, len);
+					deflater.setInput(input, 0, len);
+					while (!deflater.needsInput())
+						writeFully(out, ByteBuffer.wrap(output, 0, deflater.deflate(output)));
+				}
+			}
+			finally {
+				is.close();
+			}
+			deflater.finish();
+			while (!deflater.finished())
+				writeFully(out, ByteBuffer.wrap(output, 0, deflater.deflate(output)));
+			compressedSize = deflater.getBytesWritten();
+			size = deflater.getBytesRead();
+		}
+		finally {
+			deflater.end();
+		}
+		if (compressedSize > MAX_U32 || size > MAX_U32)
+			throw new ZipException("File too large without ZIP64: " + file);
+
+		ByteBuffer sizes = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+		sizes.putInt((int) crc.getValue());
+		sizes.putInt((int) compressedSize);
+		sizes.putInt((int) size);
+		sizes.flip();
+		while (sizes.hasRemaining())
+			out.write(sizes, offset + 14 + sizes.position());
+
+		ByteBuffer record = ByteBuffer.allocate(CENTRAL_HEADER_LEN + nameBytes.length)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		record.putInt(CENTRAL_HEADER_SIG);
+		record.putShort((short) VERSION_DEFLATE);
+		record.putShort((short) VERSION_DEFLATE);
+		record.putShort((short) FLAG_UTF8);
+		record.putShort((short) METHOD_DEFLATED);
+		record.putInt(time);
+		record.putInt((int) crc.getValue());
+		record.putInt((int) compressedSize);
+		record.putInt((int) size);
+		record.putShort((short) nameBytes.length);
+		record.putShort((short) 0);
+		record.putShort((short) 0);
+		record.putShort((short) 0);
+		record.putShort((short) 0);
+		record.putInt(0);
+		record.putInt((int) offset);
+		record.put(nameBytes);
+		return record.array();
+	}
+
+	/**
+	 * Converts a Java timestamp into the MS-DOS format used in ZIP headers
+	 * @param time The timestamp in milliseconds
+	 * @return The MS-DOS date and time
+	 */
+	private static int toDosTime(long time) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(time);
+		int year = cal.get(Calendar.YEAR);
+		if (year < 1980)
+			return (1 << 21) | (1 << 16);
+		return ((year - 1980) << 25)
+				| ((cal.get(Calendar.MONTH) + 1) << 21)
+				| (cal.get(Calendar.DAY_OF_MONTH) << 16)
+				| (cal.get(Calendar.HOUR_OF_DAY) << 11)
+				| (cal.get(Calendar.MINUTE) << 5)
+				| (cal.get(Calendar.SECOND) >> 1);
+	}
+
+	private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buf.hasRemaining())
+			if (in.read(buf, position + buf.position()) < 0)
+				throw new ZipException("Unexpected end of archive");
+		buf.flip();
+		return buf;
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining())
+			out.write(buf);
+	}
+
+}
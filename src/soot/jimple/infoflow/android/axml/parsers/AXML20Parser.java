@@ -50,20 +50,24 @@ public class AXML20Parser extends AbstractBinaryXMLFileParser {
 			if (tname == null || tname.isEmpty()) {
 				tname = idToNameMap.get(resourceId);
 				if (tname == null) {
-					SootClass rClass = Scene.v().forceResolve("android.R$attr", SootClass.BODIES);
-					outer : for (SootField sf : rClass.getFields())
-						for (Tag t : sf.getTags())
-							if (t instanceof IntegerConstantValueTag) {
-								IntegerConstantValueTag cvt = (IntegerConstantValueTag) t;
-								if (cvt.getIntValue() == resourceId) {
-									tname = sf.getName();
-									idToNameMap.put(resourceId, tname);
-									// fake the Android namespace
-									ns = "http://schemas.android.com/apk/res/android";
-									break outer;
+					// Layout files may be parsed concurrently, but the scene
+					// is not thread-safe
+					synchronized (Scene.v()) {
+						SootClass rClass = Scene.v().forceResolve("android.R$attr", SootClass.BODIES);
+						outer : for (SootField sf : rClass.getFields())
+							for (Tag t : sf.getTags())
+								if (t instanceof IntegerConstantValueTag) {
+									IntegerConstantValueTag cvt = (IntegerConstantValueTag) t;
+									if (cvt.getIntValue() == resourceId) {
+										tname = sf.getName();
+										idToNameMap.put(resourceId, tname);
+										// fake the Android namespace
+										ns = "http://schemas.android.com/apk/res/android";
+										break outer;
+									}
+									break;
 								}
-								break;
-							}
+					}
 				}
 			}
 			else
@@ -40,13 +40,12 @@ import soot.jimple.ReturnVoidStmt;
 import soot.jimple.Stmt;
 import soot.jimple.infoflow.android.InfoflowAndroidConfiguration;
 import soot.jimple.infoflow.android.data.AndroidMethod;
+import soot.jimple.infoflow.android.nu.MethodGraphCache;
 import soot.jimple.infoflow.data.SootMethodAndClass;
 import soot.jimple.infoflow.util.SootMethodRepresentationParser;
 import soot.jimple.infoflow.util.SystemClassHandler;
 import soot.jimple.toolkits.callgraph.Edge;
-import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.scalar.SimpleLiveLocals;
-import soot.toolkits.scalar.SmartLocalDefs;
+import soot.toolkits.scalar.LocalDefs;
 
 /**
  * Analyzes the classes in the APK file to find custom implementations of the
@@ -148,12 +147,38 @@ public abstract class AbstractCallbackAnalyzer {
 		if (!method.isConcrete())
 			return;
 		
-		ExceptionalUnitGraph graph = new ExceptionalUnitGraph(method.retrieveActiveBody());
-		SmartLocalDefs smd = new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
-
+		method.retrieveActiveBody();
+		analyzeCallbackTypes(lifecycleElement, findCallbackTypes(method));
+	}
+	
+	/**
+	 * Finds the types of the objects that are passed to callback registration
+	 * methods in the given method. This only depends on the method itself,
+	 * not on the lifecycle element through which it is reached. The method
+	 * must already have an active body.
+	 * @param method The method in which to look for callback registrations
+	 * @return The declared types of the objects registered as callbacks in the
+	 * given method
+	 */
+	protected Set<SootClass> findCallbackTypes(SootMethod method) {
+		return findCallbackTypes(method, MethodGraphCache.getInstance().getMethodGraph(method).getLocalDefs());
+	}
+	
+	/**
+	 * Finds the types of the objects that are passed to callback registration
+	 * methods in the given method using prebuilt local definitions. This only
+	 * reads the body of the method and the given definitions and does not
+	 * modify the state of the analyzer, so it may be called concurrently for
+	 * different methods.
+	 * @param method The method in which to look for callback registrations
+	 * @param smd The local definitions of the method's active body
+	 * @return The declared types of the objects registered as callbacks in the
+	 * given method
+	 */
+	protected Set<SootClass> findCallbackTypes(SootMethod method, LocalDefs smd) {
 		// Iterate over all statement and find callback registration methods
-		Set<SootClass> callbackClasses = new HashSet<SootClass>();
-		for (Unit u : method.retrieveActiveBody().getUnits()) {
+		Set<SootClass> callbackTypes = new HashSet<SootClass>();
+		for (Unit u : method.getActiveBody().getUnits()) {
 			Stmt stmt = (Stmt) u;
 			// Callback registrations are always instance invoke expressions
 			if (stmt.containsInvokeExpr() && stmt.getInvokeExpr() instanceof InstanceInvokeExpr) {
@@ -174,20 +199,39 @@ public abstract class AbstractCallbackAnalyzer {
 								assert def instanceof DefinitionStmt; 
 								Type tp = ((DefinitionStmt) def).getRightOp().getType();
 								if (tp instanceof RefType) {
-									SootClass callbackClass = ((RefType) tp).getSootClass();
-									if (callbackClass.isInterface())
-										for (SootClass impl : Scene.v().getActiveHierarchy().getImplementersOf(callbackClass))
-											for (SootClass c : Scene.v().getActiveHierarchy().getSubclassesOfIncluding(impl))
-												callbackClasses.add(c);
-									else
-										for (SootClass c : Scene.v().getActiveHierarchy().getSubclassesOfIncluding(callbackClass))
-											callbackClasses.add(c);
+									// Resolving the class may add a phantom class
+									// to the scene
+									synchronized (Scene.v()) {
+										callbackTypes.add(((RefType) tp).getSootClass());
+									}
 								}
 							}
 					}
 				}
 			}
 		}
+		return callbackTypes;
+	}
+	
+	/**
+	 * Analyzes the implementations of the given callback types and associates
+	 * the callback methods with the given lifecycle element
+	 * @param lifecycleElement The lifecycle element (activity, etc.) with which
+	 * to associate the found callbacks
+	 * @param callbackTypes The declared types of the objects registered as
+	 * callbacks, as returned by {@link #findCallbackTypes(SootMethod)}
+	 */
+	protected void analyzeCallbackTypes(SootClass lifecycleElement, Set<SootClass> callbackTypes) {
+		Set<SootClass> callbackClasses = new HashSet<SootClass>();
+		for (SootClass callbackClass : callbackTypes) {
+			if (callbackClass.isInterface())
+				for (SootClass impl : Scene.v().getActiveHierarchy().getImplementersOf(callbackClass))
+					for (SootClass c : Scene.v().getActiveHierarchy().getSubclassesOfIncluding(impl))
+						callbackClasses.add(c);
+			else
+				for (SootClass c : Scene.v().getActiveHierarchy().getSubclassesOfIncluding(callbackClass))
+					callbackClasses.add(c);
+		}
 		
 		// Analyze all found callback classes
 		for (SootClass callbackClass : callbackClasses)
@@ -2,13 +2,20 @@ package soot.jimple.infoflow.android.callbacks;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import soot.MethodOrMethodContext;
 import soot.PackManager;
@@ -24,8 +31,13 @@ import soot.jimple.InvokeExpr;
 import soot.jimple.Stmt;
 import soot.jimple.infoflow.android.InfoflowAndroidConfiguration;
 import soot.jimple.infoflow.android.data.AndroidMethod;
+import soot.jimple.infoflow.android.data.IntSet;
+import soot.jimple.infoflow.android.nu.MethodGraphCache;
 import soot.jimple.infoflow.data.SootMethodAndClass;
+import soot.jimple.toolkits.callgraph.CallGraph;
+import soot.jimple.toolkits.callgraph.Edge;
 import soot.jimple.toolkits.callgraph.ReachableMethods;
+import soot.toolkits.scalar.LocalDefs;
 import soot.util.HashMultiMap;
 import soot.util.MultiMap;
 
@@ -77,17 +89,33 @@ public class DefaultCallbackAnalyzer extends AbstractCallbackAnalyzer {
 
 				// Process the callback classes directly reachable from the
 				// entry points
-				for (String className : entryPointClasses) {
-					SootClass sc = Scene.v().getSootClass(className);
-					List<MethodOrMethodContext> methods = new ArrayList<MethodOrMethodContext>();
-					methods.addAll(sc.getMethods());
+				if (config.getCallbackAnalysisThreads() > 1) {
+					Map<SootClass, List<MethodOrMethodContext>> components =
+							new LinkedHashMap<SootClass, List<MethodOrMethodContext>>();
+					for (String className : entryPointClasses) {
+						SootClass sc = Scene.v().getSootClass(className);
+						components.put(sc, new ArrayList<MethodOrMethodContext>(sc.getMethods()));
+					}
 					
 					// Check for callbacks registered in the code
-					analyzeRechableMethods(sc, methods);
-
+					analyzeReachableMethodsParallel(components);
+					
 					// Check for method overrides
-					analyzeMethodOverrideCallbacks(sc);
+					for (SootClass sc : components.keySet())
+						analyzeMethodOverrideCallbacks(sc);
 				}
+				else
+					for (String className : entryPointClasses) {
+						SootClass sc = Scene.v().getSootClass(className);
+						List<MethodOrMethodContext> methods = new ArrayList<MethodOrMethodContext>();
+						methods.addAll(sc.getMethods());
+						
+						// Check for callbacks registered in the code
+						analyzeRechableMethods(sc, methods);
+
+						// Check for method overrides
+						analyzeMethodOverrideCallbacks(sc);
+					}
 				System.out.println("Callback analysis done.");
 			}
 		});
@@ -109,13 +137,31 @@ public class DefaultCallbackAnalyzer extends AbstractCallbackAnalyzer {
 						+ " components...");
 				MultiMap<String, SootMethodAndClass> workListCopy =
 						new HashMultiMap<String, SootMethodAndClass>(callbackWorklist);
-				for (String className : workListCopy.keySet()) {
-					List<MethodOrMethodContext> entryClasses = new LinkedList<MethodOrMethodContext>();
-					for (SootMethodAndClass am : workListCopy.get(className))
-						entryClasses.add(Scene.v().getMethod(am.getSignature()));
-					analyzeRechableMethods(Scene.v().getSootClass(className), entryClasses);
-					callbackWorklist.remove(className);
+				if (config.getCallbackAnalysisThreads() > 1) {
+					Map<SootClass, List<MethodOrMethodContext>> components =
+							new LinkedHashMap<SootClass, List<MethodOrMethodContext>>();
+					for (String className : workListCopy.keySet()) {
+						List<MethodOrMethodContext> entryClasses = new ArrayList<MethodOrMethodContext>();
+						for (SootMethodAndClass am : workListCopy.get(className))
+							entryClasses.add(Scene.v().getMethod(am.getSignature()));
+						components.put(Scene.v().getSootClass(className), entryClasses);
+					}
+					analyzeReachableMethodsParallel(components);
+					
+					// Like in the sequential analysis, the components are
+					// only removed from the worklist once they have been
+					// analyzed
+					for (String className : workListCopy.keySet())
+						callbackWorklist.remove(className);
 				}
+				else
+					for (String className : workListCopy.keySet()) {
+						List<MethodOrMethodContext> entryClasses = new LinkedList<MethodOrMethodContext>();
+						for (SootMethodAndClass am : workListCopy.get(className))
+							entryClasses.add(Scene.v().getMethod(am.getSignature()));
+						analyzeRechableMethods(Scene.v().getSootClass(className), entryClasses);
+						callbackWorklist.remove(className);
+					}
 				System.out.println("Incremental callback analysis done.");
 			}
 		});
@@ -135,6 +181,193 @@ public class DefaultCallbackAnalyzer extends AbstractCallbackAnalyzer {
 		}
 	}
 	
+	/**
+	 * Analyzes the methods reachable from the given components for callback
+	 * registrations. Instead of walking the reachable methods once per
+	 * component, every reachable method is analyzed exactly once on a pool of
+	 * worker threads. The results are then attributed to all components that
+	 * reach the respective method. This gives the same callbacks as calling
+	 * analyzeRechableMethods() for every component.
+	 * @param components The components (activities, etc.) mapped to the
+	 * methods from which to start the search for reachable methods
+	 */
+	private void analyzeReachableMethodsParallel(Map<SootClass, List<MethodOrMethodContext>> components) {
+		long beforeAnalysis = System.nanoTime();
+		
+		// Find the components that reach each method
+		List<SootClass> componentList = new ArrayList<SootClass>(components.keySet());
+		Map<SootMethod, BitSet> reachingComponents = findReachingComponents(componentList, components);
+		
+		// Method bodies and their local definitions must not be created
+		// concurrently, so we create them upfront. The workers only read the
+		// prebuilt data. System classes are not analyzed for callback
+		// registrations.
+		Map<SootMethod, LocalDefs> methods = new LinkedHashMap<SootMethod, LocalDefs>();
+		for (SootMethod method : reachingComponents.keySet()) {
+			if (method.getDeclaringClass().getName().startsWith("android.")
+					|| method.getDeclaringClass().getName().startsWith("java."))
+				continue;
+			if (!method.isConcrete())
+				continue;
+			method.retrieveActiveBody();
+			methods.put(method, MethodGraphCache.getInstance().getMethodGraph(method).getLocalDefs());
+		}
+		
+		Map<SootMethod, Set<SootClass>> callbackTypes = findCallbackTypesParallel(methods,
+				config.getCallbackAnalysisThreads());
+		
+		// Collect the callback types per component, so that the class
+		// hierarchy is only walked once for each component
+		Map<SootClass, Set<SootClass>> componentTypes = new LinkedHashMap<SootClass, Set<SootClass>>();
+		for (Entry<SootMethod, BitSet> entry : reachingComponents.entrySet()) {
+			Set<SootClass> types = callbackTypes.get(entry.getKey());
+			if (types != null && !types.isEmpty()) {
+				BitSet reaching = entry.getValue();
+				for (int i = reaching.nextSetBit(0); i >= 0; i = reaching.nextSetBit(i + 1)) {
+					SootClass component = componentList.get(i);
+					Set<SootClass> allTypes = componentTypes.get(component);
+					if (allTypes == null) {
+						allTypes = new HashSet<SootClass>();
+						componentTypes.put(component, allTypes);
+					}
+					allTypes.addAll(types);
+				}
+			}
+		}
+		
+		// Attribute the callbacks to the components. This modifies the state
+		// of the analyzer and is thus done sequentially.
+		for (Entry<SootClass, Set<SootClass>> entry : componentTypes.entrySet())
+			analyzeCallbackTypes(entry.getKey(), entry.getValue());
+		for (SootMethod method : reachingComponents.keySet())
+			analyzeMethodForDynamicBroadcastReceiver(method);
+		
+		logger.info("Analyzed " + methods.size() + " methods reachable from " + components.size()
+				+ " components with " + config.getCallbackAnalysisThreads() + " threads in "
+				+ (System.nanoTime() - beforeAnalysis) / 1E9 + " seconds");
+	}
+	
+	/**
+	 * Finds the components from which each method is reachable. Instead of
+	 * computing the reachable methods for every component on its own, the
+	 * sets of reaching components are spread along the edges of the callgraph
+	 * in a single worklist pass. A method is only visited again if its set
+	 * has grown.
+	 * @param componentList The components. The bits in the returned sets are
+	 * the indices into this list.
+	 * @param components The components mapped to the methods from which to
+	 * start the search for reachable methods
+	 * @return A mapping from the reachable methods to the set of components
+	 * that reach them, in the order in which the methods were discovered
+	 */
+	private Map<SootMethod, BitSet> findReachingComponents(List<SootClass> componentList,
+			Map<SootClass, List<MethodOrMethodContext>> components) {
+		Map<SootMethod, BitSet> reachingComponents = new LinkedHashMap<SootMethod, BitSet>();
+		Set<SootMethod> queued = new HashSet<SootMethod>();
+		LinkedList<SootMethod> worklist = new LinkedList<SootMethod>();
+		for (int i = 0; i < componentList.size(); i++)
+			for (MethodOrMethodContext momc : components.get(componentList.get(i))) {
+				SootMethod method = momc.method();
+				BitSet reaching = reachingComponents.get(method);
+				if (reaching == null) {
+					reaching = new BitSet(componentList.size());
+					reachingComponents.put(method, reaching);
+				}
+				reaching.set(i);
+				if (queued.add(method))
+					worklist.add(method);
+			}
+		
+		CallGraph cg = Scene.v().getCallGraph();
+		while (!worklist.isEmpty()) {
+			SootMethod method = worklist.removeFirst();
+			queued.remove(method);
+			BitSet reaching = reachingComponents.get(method);
+			
+			Iterator<Edge> edges = cg.edgesOutOf(method);
+			while (edges.hasNext()) {
+				SootMethod target = edges.next().tgt();
+				BitSet targetReaching = reachingComponents.get(target);
+				if (targetReaching == null) {
+					targetReaching = new BitSet(componentList.size());
+					reachingComponents.put(target, targetReaching);
+				}
+				else {
+					BitSet added = (BitSet) reaching.clone();
+					added.andNot(targetReaching);
+					if (added.isEmpty())
+						continue;
+				}
+				targetReaching.or(reaching);
+				if (queued.add(target))
+					worklist.add(target);
+			}
+		}
+		return reachingComponents;
+	}
+	
+	/**
+	 * Finds the callback types registered in the given methods on a pool of
+	 * worker threads
+	 * @param methods The methods to analyze, mapped to their local
+	 * definitions. All methods must have active bodies. The workers only read
+	 * the bodies and the local definitions.
+	 * @param threads The number of threads to use
+	 * @return A mapping from the methods to the types of the objects they
+	 * register as callbacks
+	 */
+	private Map<SootMethod, Set<SootClass>> findCallbackTypesParallel(final Map<SootMethod, LocalDefs> methods,
+			int threads) {
+		Map<SootMethod, Set<SootClass>> callbackTypes = new HashMap<SootMethod, Set<SootClass>>(methods.size());
+		threads = Math.min(threads, methods.size());
+		if (threads <= 1) {
+			for (Entry<SootMethod, LocalDefs> entry : methods.entrySet())
+				callbackTypes.put(entry.getKey(), findCallbackTypes(entry.getKey(), entry.getValue()));
+			return callbackTypes;
+		}
+		
+		// Split the methods into one chunk per thread. The chunks are
+		// interleaved, since the methods of the same class tend to be of
+		// similar size.
+		List<SootMethod> methodList = new ArrayList<SootMethod>(methods.keySet());
+		List<Future<Map<SootMethod, Set<SootClass>>>> futures =
+				new ArrayList<Future<Map<SootMethod, Set<SootClass>>>>(threads);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (int i = 0; i < threads; i++) {
+				final List<SootMethod> chunkMethods = new ArrayList<SootMethod>();
+				for (int j = i; j < methodList.size(); j += threads)
+					chunkMethods.add(methodList.get(j));
+				futures.add(pool.submit(new Callable<Map<SootMethod, Set<SootClass>>>() {
+
+					@Override
+					public Map<SootMethod, Set<SootClass>> call() throws Exception {
+						Map<SootMethod, Set<SootClass>> types = new HashMap<SootMethod, Set<SootClass>>();
+						for (SootMethod method : chunkMethods)
+							types.put(method, findCallbackTypes(method, methods.get(method)));
+						return types;
+					}
+
+				}));
+			}
+			for (Future<Map<SootMethod, Set<SootClass>>> future : futures)
+				callbackTypes.putAll(future.get());
+		}
+		catch (InterruptedException e) {
+			throw new RuntimeException("Callback analysis was interrupted", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		return callbackTypes;
+	}
+	
 	@Override
 	protected boolean checkAndAddMethod(SootMethod method, SootClass baseClass) {
 		if (super.checkAndAddMethod(method, baseClass)) {
@@ -172,7 +405,7 @@ public class DefaultCallbackAnalyzer extends AbstractCallbackAnalyzer {
 									IntConstant constVal = (IntConstant) val;
 									Set<Integer> layoutIDs = this.layoutClasses.get(sm.getDeclaringClass().getName());
 									if (layoutIDs == null) {
-										layoutIDs = new HashSet<Integer>();
+										layoutIDs = new IntSet();
 										this.layoutClasses.put(sm.getDeclaringClass().getName(), layoutIDs);
 									}
 									layoutIDs.add(constVal.value);
@@ -1,7 +1,6 @@
 package soot.jimple.infoflow.android.callbacks;
 
 import java.io.IOException;
-import java.util.HashSet;
 import java.util.Set;
 
 import soot.Scene;
@@ -13,6 +12,7 @@ import soot.jimple.IntConstant;
 import soot.jimple.InvokeExpr;
 import soot.jimple.Stmt;
 import soot.jimple.infoflow.android.InfoflowAndroidConfiguration;
+import soot.jimple.infoflow.android.data.IntSet;
 
 /**
  * A callback analyzer that favors performance over precision.
@@ -87,7 +87,7 @@ public class FastCallbackAnalyzer extends AbstractCallbackAnalyzer {
 											IntConstant constVal = (IntConstant) val;
 											Set<Integer> layoutIDs = this.layoutClasses.get(sm.getDeclaringClass().getName());
 											if (layoutIDs == null) {
-												layoutIDs = new HashSet<Integer>();
+												layoutIDs = new IntSet();
 												this.layoutClasses.put(sm.getDeclaringClass().getName(), layoutIDs);
 											}
 											layoutIDs.add(constVal.value);
@@ -0,0 +1,379 @@
+package soot.jimple.infoflow.android.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map with primitive int keys, e.g. for maps indexed by resource IDs.
+ * The keys are kept in an int array using open addressing with linear
+ * probing, so neither the keys nor the entries are stored as objects. The
+ * map can be used wherever a Map<Integer, V> is expected. The methods taking
+ * an int key do not box at all, the generic Map methods only box the keys
+ * they return.
+ *
+ * Like {@link java.util.HashMap}, this map is not thread-safe and permits
+ * null values.
+ *
+ * @param <V> The type of the values
+ */
+public class IntMap<V> extends AbstractMap<Integer, V> {
+
+	private static final int MIN_CAPACITY = 4;
+
+	/**
+	 * Marks a slot whose entry has been removed. Lookups have to probe past
+	 * such slots, insertions may reuse them.
+	 */
+	private static final Object REMOVED = new Object();
+
+	/**
+	 * Stands in for null values, since null marks a free slot
+	 */
+	private static final Object NULL_VALUE = new Object();
+
+	private int[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int usedSlots = 0;
+	private int threshold;
+	private int modCount = 0;
+
+	private Set<Entry<Integer, V>> entrySet = null;
+
+	public IntMap() {
+		this(0);
+	}
+
+	/**
+	 * Creates a new map which can hold the given number of entries without
+	 * being resized
+	 * @param expectedSize The expected number of entries
+	 */
+	public IntMap(int expectedSize) {
+		allocate(capacityFor(expectedSize));
+	}
+
+	public IntMap(Map<Integer, ? extends V> map) {
+		this(map.size());
+		putAll(map);
+	}
+
+	private static int capacityFor(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity - (capacity >>> 2) <= expectedSize) {
+			if (capacity >= 1 << 30)
+				throw new IllegalStateException("Map too large");
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new Object[capacity];
+		threshold = capacity - (capacity >>> 2);
+		usedSlots = 0;
+	}
+
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (keys.length - 1);
+	}
+
+	/**
+	 * Gets the slot of the given key
+	 * @param key The key to look for
+	 * @return The slot of the key, or -1 if the key is not in the map
+	 */
+	private int find(int key) {
+		int mask = keys.length - 1;
+		for (int i = slot(key); ; i = (i + 1) & mask) {
+			Object value = values[i];
+			if (value == null)
+				return -1;
+			if (value != REMOVED && keys[i] == key)
+				return i;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> V unmask(Object value) {
+		return value == NULL_VALUE ? null : (V) value;
+	}
+
+	private static Object mask(Object value) {
+		return value == null ? NULL_VALUE : value;
+	}
+
+	/**
+	 * Gets the value for the given key
+	 * @param key The key to look up
+	 * @return The value for the given key, or null if the key is not in the
+	 * map
+	 */
+	public V get(int key) {
+		int i = find(key);
+		return i < 0 ? null : IntMap.<V>unmask(values[i]);
+	}
+
+	/**
+	 * Checks whether the given key is in the map
+	 * @param key The key to look for
+	 * @return True if the key is in the map, otherwise false
+	 */
+	public boolean containsKey(int key) {
+		return find(key) >= 0;
+	}
+
+	/**
+	 * Associates the given value with the given key
+	 * @param key The key
+	 * @param value The value
+	 * @return The previous value for the given key, or null if there was none
+	 */
+	public V put(int key, V value) {
+		int mask = keys.length - 1;
+		int removedSlot = -1;
+		int i = slot(key);
+		for (; ; i = (i + 1) & mask) {
+			Object old = values[i];
+			if (old == null)
+				break;
+			if (old == REMOVED) {
+				if (removedSlot < 0)
+					removedSlot = i;
+			}
+			else if (keys[i] == key) {
+				values[i] = mask(value);
+				return unmask(old);
+			}
+		}
+
+		if (removedSlot >= 0)
+			i = removedSlot;
+		else
+			usedSlots++;
+		keys[i] = key;
+		values[i] = mask(value);
+		size++;
+		modCount++;
+		if (usedSlots >= threshold)
+			rehash(size >= threshold / 2 ? keys.length << 1 : keys.length);
+		return null;
+	}
+
+	/**
+	 * Removes the given key from the map
+	 * @param key The key to remove
+	 * @return The value of the removed key, or null if the key was not in the
+	 * map
+	 */
+	public V remove(int key) {
+		int i = find(key);
+		if (i < 0)
+			return null;
+		Object old = values[i];
+		removeSlot(i);
+		return unmask(old);
+	}
+
+	private void removeSlot(int i) {
+		// A slot directly before a free one is not needed for probing
+		if (values[(i + 1) & (keys.length - 1)] == null) {
+			values[i] = null;
+			usedSlots--;
+		}
+		else
+			values[i] = REMOVED;
+		size--;
+		modCount++;
+	}
+
+	/**
+	 * Copies all entries into new arrays of the given capacity, dropping the
+	 * slots of removed entries
+	 */
+	private void rehash(int capacity) {
+		int[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			Object value = oldValues[j];
+			if (value == null || value == REMOVED)
+				continue;
+			int i = slot(oldKeys[j]);
+			while (values[i] != null)
+				i = (i + 1) & mask;
+			keys[i] = oldKeys[j];
+			values[i] = value;
+			usedSlots++;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && containsKey(((Integer) key).intValue());
+	}
+
+	@Override
+	public V put(Integer key, V value) {
+		return put(key.intValue(), value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+	}
+
+	@Override
+	public void clear() {
+		if (size == 0 && usedSlots == 0)
+			return;
+		Arrays.fill(values, null);
+		size = 0;
+		usedSlots = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Entry<Integer, V>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<Entry<Integer, V>>() {
+
+				@Override
+				public Iterator<Entry<Integer, V>> iterator() {
+					return new EntryIterator();
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+
+				@Override
+				public void clear() {
+					IntMap.this.clear();
+				}
+
+			};
+		return entrySet;
+	}
+
+	private class EntryIterator implements Iterator<Entry<Integer, V>> {
+		private int next = -1;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		private EntryIterator() {
+			advance();
+		}
+
+		private void advance() {
+			do
+				next++;
+			while (next < values.length && (values[next] == null || values[next] == REMOVED));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < values.length;
+		}
+
+		@Override
+		public Entry<Integer, V> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next >= values.length)
+				throw new NoSuchElementException();
+			last = next;
+			advance();
+			return new SlotEntry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			// Keep the marker so that slots after this one stay reachable
+			// for the rest of the iteration
+			values[last] = REMOVED;
+			size--;
+			modCount++;
+			expectedModCount = modCount;
+			last = -1;
+		}
+	}
+
+	private class SlotEntry implements Entry<Integer, V> {
+		private final int slot;
+		private final int key;
+
+		private SlotEntry(int slot) {
+			this.slot = slot;
+			this.key = keys[slot];
+		}
+
+		@Override
+		public Integer getKey() {
+			return key;
+		}
+
+		@Override
+		public V getValue() {
+			return unmask(values[slot]);
+		}
+
+		@Override
+		public V setValue(V value) {
+			V old = getValue();
+			values[slot] = mask(value);
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry))
+				return false;
+			Entry<?, ?> e = (Entry<?, ?>) o;
+			Object value = getValue();
+			return Integer.valueOf(key).equals(e.getKey())
+					&& (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object value = getValue();
+			return key ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + getValue();
+		}
+	}
+
+}
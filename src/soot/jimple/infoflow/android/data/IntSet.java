@@ -0,0 +1,92 @@
+package soot.jimple.infoflow.android.data;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A hash set of primitive ints, e.g. for sets of resource IDs. The set is
+ * backed by an {@link IntMap}, so the elements are not stored as objects. It
+ * can be used wherever a Set<Integer> is expected.
+ */
+public class IntSet extends AbstractSet<Integer> {
+
+	private final IntMap<Boolean> map;
+
+	public IntSet() {
+		this.map = new IntMap<Boolean>();
+	}
+
+	/**
+	 * Creates a new set which can hold the given number of elements without
+	 * being resized
+	 * @param expectedSize The expected number of elements
+	 */
+	public IntSet(int expectedSize) {
+		this.map = new IntMap<Boolean>(expectedSize);
+	}
+
+	public IntSet(Collection<Integer> elements) {
+		this(elements.size());
+		addAll(elements);
+	}
+
+	/**
+	 * Adds the given element to the set
+	 * @param element The element to add
+	 * @return True if the element has not been in the set before, otherwise
+	 * false
+	 */
+	public boolean add(int element) {
+		return map.put(element, Boolean.TRUE) == null;
+	}
+
+	/**
+	 * Checks whether the given element is in the set
+	 * @param element The element to look for
+	 * @return True if the element is in the set, otherwise false
+	 */
+	public boolean contains(int element) {
+		return map.containsKey(element);
+	}
+
+	/**
+	 * Removes the given element from the set
+	 * @param element The element to remove
+	 * @return True if the element has been in the set, otherwise false
+	 */
+	public boolean remove(int element) {
+		return map.remove(element) != null;
+	}
+
+	@Override
+	public boolean add(Integer element) {
+		return add(element.intValue());
+	}
+
+	@Override
+	public boolean contains(Object element) {
+		return map.containsKey(element);
+	}
+
+	@Override
+	public boolean remove(Object element) {
+		return map.remove(element) != null;
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return map.keySet().iterator();
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+	}
+
+}
@@ -0,0 +1,454 @@
+package soot.jimple.infoflow.android.data.parsers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.jimple.infoflow.android.data.AndroidMethod;
+import soot.jimple.infoflow.android.data.AndroidMethod.CATEGORY;
+import soot.jimple.infoflow.data.SootMethodAndClass;
+import soot.jimple.infoflow.source.data.AccessPathTuple;
+import soot.jimple.infoflow.source.data.ISourceSinkDefinitionProvider;
+import soot.jimple.infoflow.source.data.SourceSinkDefinition;
+
+/**
+ * Precompiled, binary form of a set of source and sink definitions. The text,
+ * CSV and XML parsers run regular expressions or a validating SAX parser over
+ * the whole definition file for every analyzed app. A bundle is compiled once
+ * from any {@link ISourceSinkDefinitionProvider} and can then be loaded by
+ * mapping it into memory.
+ *
+ * The file starts with a header (magic number, version, number of strings and
+ * the offsets of the three definition sections), followed by a table of all
+ * interned strings (class names, method names, types, permissions, categories
+ * and fields) and the sections for the sources, the sinks, and the
+ * definitions that are neither. Definitions only refer to strings by their
+ * index in the table. The strings and the sections are decoded on first use.
+ *
+ * Loaded bundles are shared within the same JVM, so analyzing many apps with
+ * the same definitions only loads the bundle once.
+ */
+public class SourceSinkBundle implements ISourceSinkDefinitionProvider {
+
+	/**
+	 * The file extension of compiled source/sink bundles
+	 */
+	public static final String FILE_EXTENSION = ".ssb";
+
+	private static final int MAGIC = 0x46435342; // "FCSB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 6 * 4;
+
+	private static final int FLAG_ANDROID_METHOD = 0x01;
+	private static final int FLAG_SOURCE = 0x02;
+	private static final int FLAG_SINK = 0x04;
+	private static final int FLAG_NEITHER = 0x08;
+
+	private static final int SECTION_SOURCES = 0;
+	private static final int SECTION_SINKS = 1;
+	private static final int SECTION_OTHERS = 2;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Map<String, SourceSinkBundle> bundles = new HashMap<String, SourceSinkBundle>();
+
+	private final File file;
+	private final long lastModified;
+	private final long length;
+
+	private final ByteBuffer data;
+	private final int[] stringOffsets;
+	private final String[] strings;
+	private final int[] sectionOffsets = new int[3];
+
+	private Set<SourceSinkDefinition> sourceList = null;
+	private Set<SourceSinkDefinition> sinkList = null;
+	private Set<SourceSinkDefinition> neitherList = null;
+
+	private SourceSinkBundle(File file) throws IOException {
+		this.file = file;
+		this.lastModified = file.lastModified();
+		this.length = file.length();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			raf.close();
+		}
+
+		if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC)
+			throw new IOException("Not a source/sink bundle: " + file);
+		if (data.getInt(4) != VERSION)
+			throw new IOException("Unsupported source/sink bundle version "
+					+ data.getInt(4) + " in " + file);
+
+		int stringCount = data.getInt(8);
+		for (int i = 0; i < sectionOffsets.length; i++)
+			sectionOffsets[i] = data.getInt(12 + 4 * i);
+
+		// Index the string table, the strings themselves are decoded on demand
+		this.stringOffsets = new int[stringCount];
+		this.strings = new String[stringCount];
+		int pos = HEADER_SIZE;
+		for (int i = 0; i < stringCount; i++) {
+			stringOffsets[i] = pos;
+			pos += 4 + data.getInt(pos);
+		}
+	}
+
+	/**
+	 * Loads the source/sink bundle from the given file. If the same file has
+	 * already been loaded and has not been modified since, the existing
+	 * bundle is returned.
+	 * @param fileName The full path and file name of the bundle
+	 * @return The bundle loaded from the given file
+	 * @throws IOException Thrown if the file cannot be read or is no valid
+	 * bundle
+	 */
+	public static synchronized SourceSinkBundle fromFile(String fileName) throws IOException {
+		File file = new File(fileName);
+		String key = file.getCanonicalPath();
+		SourceSinkBundle bundle = bundles.get(key);
+		if (bundle != null && bundle.lastModified == file.lastModified()
+				&& bundle.length == file.length())
+			return bundle;
+
+		bundle = new SourceSinkBundle(file);
+		bundles.put(key, bundle);
+		return bundle;
+	}
+
+	/**
+	 * Checks whether the given bundle exists and has been compiled after the
+	 * last modification of the definition file it was compiled from
+	 * @param bundleFile The compiled bundle
+	 * @param definitionFile The source/sink definition file
+	 * @return True if the bundle can be used instead of the definition file,
+	 * otherwise false
+	 */
+	public static boolean isUpToDate(File bundleFile, File definitionFile) {
+		return bundleFile.exists()
+				&& bundleFile.lastModified() >= definitionFile.lastModified();
+	}
+
+	/**
+	 * Compiles the definitions of the given provider into a bundle. The bundle
+	 * is written to a temporary file first and then moved to its final name,
+	 * so concurrent analyses never see a partially written bundle.
+	 * @param provider The provider that supplies the definitions
+	 * @param bundleFile The file to which to write the bundle
+	 * @throws IOException Thrown if the bundle cannot be written
+	 */
+	public static void compile(ISourceSinkDefinitionProvider provider, File bundleFile)
+			throws IOException {
+		Set<SourceSinkDefinition> others = new HashSet<SourceSinkDefinition>(provider.getAllMethods());
+		others.removeAll(provider.getSources());
+		others.removeAll(provider.getSinks());
+
+		StringTable stringTable = new StringTable();
+		ByteArrayOutputStream sections = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(sections);
+		int[] offsets = new int[3];
+		offsets[SECTION_SOURCES] = out.size();
+		writeSection(out, provider.getSources(), stringTable);
+		offsets[SECTION_SINKS] = out.size();
+		writeSection(out, provider.getSinks(), stringTable);
+		offsets[SECTION_OTHERS] = out.size();
+		writeSection(out, others, stringTable);
+		out.flush();
+
+		ByteArrayOutputStream table = new ByteArrayOutputStream();
+		DataOutputStream tableOut = new DataOutputStream(table);
+		for (String s : stringTable.strings) {
+			byte[] bytes = s.getBytes(UTF8);
+			tableOut.writeInt(bytes.length);
+			tableOut.write(bytes);
+		}
+		tableOut.flush();
+
+		int sectionBase = HEADER_SIZE + table.size();
+		File parent = bundleFile.getAbsoluteFile().getParentFile();
+		File tmpFile = new File(parent, bundleFile.getName() + "." + System.nanoTime() + ".tmp");
+		DataOutputStream fileOut = null;
+		try {
+			fileOut = new DataOutputStream(new FileOutputStream(tmpFile));
+			fileOut.writeInt(MAGIC);
+			fileOut.writeInt(VERSION);
+			fileOut.writeInt(stringTable.strings.size());
+			for (int offset : offsets)
+				fileOut.writeInt(sectionBase + offset);
+			table.writeTo(fileOut);
+			sections.writeTo(fileOut);
+			fileOut.close();
+			fileOut = null;
+
+			// Readers must never see a partially written bundle
+			Files.move(tmpFile.toPath(), bundleFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally {
+			if (fileOut != null)
+				fileOut.close();
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Table that assigns every distinct string a consecutive index
+	 */
+	private static class StringTable {
+
+		private final Map<String, Integer> indices = new HashMap<String, Integer>();
+		private final List<String> strings = new ArrayList<String>();
+
+		public int intern(String s) {
+			if (s == null)
+				return -1;
+			Integer idx = indices.get(s);
+			if (idx == null) {
+				idx = strings.size();
+				indices.put(s, idx);
+				strings.add(s);
+			}
+			return idx;
+		}
+
+	}
+
+	private static void writeSection(DataOutputStream out, Set<SourceSinkDefinition> defs,
+			StringTable stringTable) throws IOException {
+		if (defs == null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(defs.size());
+		for (SourceSinkDefinition def : defs)
+			writeDefinition(out, def, stringTable);
+	}
+
+	private static void writeDefinition(DataOutputStream out, SourceSinkDefinition def,
+			StringTable stringTable) throws IOException {
+		SootMethodAndClass method = def.getMethod();
+		int flags = 0;
+		String category = null;
+		Set<String> permissions = null;
+		if (method instanceof AndroidMethod) {
+			AndroidMethod am = (AndroidMethod) method;
+			flags |= FLAG_ANDROID_METHOD;
+			if (am.isSource())
+				flags |= FLAG_SOURCE;
+			if (am.isSink())
+				flags |= FLAG_SINK;
+			if (am.isNeitherNor())
+				flags |= FLAG_NEITHER;
+			if (am.getCategory() != null)
+				category = am.getCategory().name();
+			permissions = am.getPermissions();
+		}
+		out.writeByte(flags);
+		out.writeInt(stringTable.intern(method.getClassName()));
+		out.writeInt(stringTable.intern(method.getMethodName()));
+		out.writeInt(stringTable.intern(method.getReturnType()));
+		writeStrings(out, method.getParameters(), stringTable);
+		out.writeInt(stringTable.intern(category));
+		writeStrings(out, permissions, stringTable);
+
+		writeTuples(out, def.getBaseObjects(), stringTable);
+		Set<AccessPathTuple>[] params = def.getParameters();
+		if (params == null)
+			out.writeInt(-1);
+		else {
+			out.writeInt(params.length);
+			for (Set<AccessPathTuple> param : params)
+				writeTuples(out, param, stringTable);
+		}
+		writeTuples(out, def.getReturnValues(), stringTable);
+	}
+
+	private static void writeStrings(DataOutputStream out, Iterable<String> values,
+			StringTable stringTable) throws IOException {
+		List<Integer> indices = new ArrayList<Integer>();
+		if (values != null)
+			for (String value : values)
+				indices.add(stringTable.intern(value));
+		out.writeInt(indices.size());
+		for (int idx : indices)
+			out.writeInt(idx);
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] values,
+			StringTable stringTable) throws IOException {
+		if (values == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for (String value : values)
+			out.writeInt(stringTable.intern(value));
+	}
+
+	private static void writeTuples(DataOutputStream out, Set<AccessPathTuple> tuples,
+			StringTable stringTable) throws IOException {
+		if (tuples == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(tuples.size());
+		for (AccessPathTuple apt : tuples) {
+			int flags = 0;
+			if (apt.isSource())
+				flags |= FLAG_SOURCE;
+			if (apt.isSink())
+				flags |= FLAG_SINK;
+			out.writeByte(flags);
+			writeStrings(out, apt.getFields(), stringTable);
+			writeStrings(out, apt.getFieldTypes(), stringTable);
+		}
+	}
+
+	private String getString(int idx) {
+		if (idx < 0)
+			return null;
+		String s = strings[idx];
+		if (s == null) {
+			int pos = stringOffsets[idx];
+			int len = data.getInt(pos);
+			byte[] bytes = new byte[len];
+			ByteBuffer buf = data.duplicate();
+			buf.position(pos + 4);
+			buf.get(bytes);
+			s = new String(bytes, UTF8);
+			strings[idx] = s;
+		}
+		return s;
+	}
+
+	private Set<SourceSinkDefinition> readSection(int section) {
+		ByteBuffer buf = data.duplicate();
+		buf.position(sectionOffsets[section]);
+		int count = buf.getInt();
+		Set<SourceSinkDefinition> defs = new HashSet<SourceSinkDefinition>(count);
+		for (int i = 0; i < count; i++)
+			defs.add(readDefinition(buf));
+		return defs;
+	}
+
+	@SuppressWarnings("unchecked")
+	private SourceSinkDefinition readDefinition(ByteBuffer buf) {
+		int flags = buf.get();
+		String className = getString(buf.getInt());
+		String methodName = getString(buf.getInt());
+		String returnType = getString(buf.getInt());
+		List<String> parameters = readStringList(buf);
+		String category = getString(buf.getInt());
+		List<String> permissions = readStringList(buf);
+
+		SootMethodAndClass method;
+		if ((flags & FLAG_ANDROID_METHOD) != 0) {
+			// The text parsers always attach a (possibly empty) permission set
+			AndroidMethod am = new AndroidMethod(methodName, parameters, returnType,
+					className, new HashSet<String>(permissions));
+			am.setSource((flags & FLAG_SOURCE) != 0);
+			am.setSink((flags & FLAG_SINK) != 0);
+			am.setNeitherNor((flags & FLAG_NEITHER) != 0);
+			if (category != null)
+				am.setCategory(CATEGORY.valueOf(category));
+			method = am;
+		}
+		else
+			method = new SootMethodAndClass(methodName, className, returnType, parameters);
+
+		Set<AccessPathTuple> baseAPs = readTuples(buf);
+		Set<AccessPathTuple>[] paramAPs = null;
+		int paramCount = buf.getInt();
+		if (paramCount >= 0) {
+			paramAPs = new Set[paramCount];
+			for (int i = 0; i < paramCount; i++)
+				paramAPs[i] = readTuples(buf);
+		}
+		Set<AccessPathTuple> returnAPs = readTuples(buf);
+		return new SourceSinkDefinition(method, baseAPs, paramAPs, returnAPs);
+	}
+
+	private List<String> readStringList(ByteBuffer buf) {
+		int count = buf.getInt();
+		List<String> values = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+			values.add(getString(buf.getInt()));
+		return values;
+	}
+
+	private String[] readStringArray(ByteBuffer buf) {
+		int count = buf.getInt();
+		if (count < 0)
+			return null;
+		String[] values = new String[count];
+		for (int i = 0; i < count; i++)
+			values[i] = getString(buf.getInt());
+		return values;
+	}
+
+	private Set<AccessPathTuple> readTuples(ByteBuffer buf) {
+		int count = buf.getInt();
+		if (count < 0)
+			return null;
+		Set<AccessPathTuple> tuples = new HashSet<AccessPathTuple>(count);
+		for (int i = 0; i < count; i++) {
+			int flags = buf.get();
+			String[] fields = readStringArray(buf);
+			String[] fieldTypes = readStringArray(buf);
+			tuples.add(AccessPathTuple.fromPathElements(fields, fieldTypes,
+					(flags & FLAG_SOURCE) != 0, (flags & FLAG_SINK) != 0));
+		}
+		return tuples;
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	@Override
+	public synchronized Set<SourceSinkDefinition> getSources() {
+		if (sourceList == null)
+			sourceList = readSection(SECTION_SOURCES);
+		return this.sourceList;
+	}
+
+	@Override
+	public synchronized Set<SourceSinkDefinition> getSinks() {
+		if (sinkList == null)
+			sinkList = readSection(SECTION_SINKS);
+		return this.sinkList;
+	}
+
+	@Override
+	public synchronized Set<SourceSinkDefinition> getAllMethods() {
+		if (neitherList == null)
+			neitherList = readSection(SECTION_OTHERS);
+
+		Set<SourceSinkDefinition> sourcesSinks = new HashSet<>(getSources().size()
+				+ getSinks().size() + neitherList.size());
+		sourcesSinks.addAll(sourceList);
+		sourcesSinks.addAll(sinkList);
+		sourcesSinks.addAll(neitherList);
+		return sourcesSinks;
+	}
+
+}
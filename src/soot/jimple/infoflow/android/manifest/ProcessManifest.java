@@ -17,6 +17,7 @@ import soot.jimple.infoflow.android.axml.AXmlAttribute;
 import soot.jimple.infoflow.android.axml.AXmlHandler;
 import soot.jimple.infoflow.android.axml.AXmlNode;
 import soot.jimple.infoflow.android.axml.ApkHandler;
+import soot.jimple.infoflow.android.axml.parsers.AXML20Parser;
 
 /**
  * This class provides easy access to all data of an AppManifest.<br />
@@ -83,7 +84,7 @@ public class ProcessManifest {
 		InputStream is = null;
 		try {
 			is = this.apk.getInputStream("AndroidManifest.xml");
-			this.handle(is);
+			this.handle(is, this.apk.getSize("AndroidManifest.xml"));
 		}
 		finally {
 			if (is != null)
@@ -110,7 +111,19 @@ public class ProcessManifest {
 	 * @throws	XmlPullParserException	can occur due to a malformed manifest.
 	 */
 	protected void handle(InputStream manifestIS) throws IOException, XmlPullParserException {
-		this.axml = new AXmlHandler(manifestIS);
+		this.handle(manifestIS, -1);
+	}
+	
+	/**
+	 * Initialises the {@link ProcessManifest} by parsing the manifest provided by the given {@link InputStream}.
+	 * 
+	 * @param	manifestIS				InputStream for an AppManifest.
+	 * @param	size					the size of the manifest in bytes, or -1 if unknown.
+	 * @throws	IOException				if an I/O error occurs.
+	 * @throws	XmlPullParserException	can occur due to a malformed manifest.
+	 */
+	protected void handle(InputStream manifestIS, long size) throws IOException, XmlPullParserException {
+		this.axml = new AXmlHandler(manifestIS, size, new AXML20Parser());
 		
 		// get manifest node
 		List<AXmlNode> manifests = this.axml.getNodesWithTag("manifest");
@@ -0,0 +1,29 @@
+package soot.jimple.infoflow.android.nu;
+
+import soot.SootMethod;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Handler that is notified by the {@link InvokeStmtScanner} about the
+ * statements containing method invocations in the reachable code
+ */
+public interface IInvokeStmtHandler {
+
+	/**
+	 * Called for every statement that contains an invocation of a method
+	 * this handler has been registered for
+	 * @param method The method containing the statement
+	 * @param graph The unit graph of the method
+	 * @param stmt The statement containing the invocation
+	 * @param position The position of the statement in the pseudo-topological
+	 * order of the method, starting at 1
+	 */
+	public void handleInvokeStmt(SootMethod method, UnitGraph graph, Stmt stmt, int position);
+
+	/**
+	 * Called once after all reachable methods have been scanned
+	 */
+	public void finish();
+
+}
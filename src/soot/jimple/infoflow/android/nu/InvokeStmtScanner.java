@@ -0,0 +1,129 @@
+package soot.jimple.infoflow.android.nu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nu.NUDisplay;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.jimple.infoflow.android.AnalysisBudget;
+import soot.jimple.infoflow.android.AnalysisMetrics;
+import soot.jimple.infoflow.android.nu.MethodGraphCache.MethodGraph;
+import soot.toolkits.graph.UnitGraph;
+import soot.util.queue.QueueReader;
+
+/**
+ * Scans the bodies of all reachable methods exactly once and hands every
+ * statement containing an invocation to the registered handlers. Handlers
+ * are either registered for the name of the callee, which makes dispatching
+ * a single map lookup, or for all invocations.
+ * 
+ * Once the scan is complete, the handlers are finished in the order in which
+ * they have been registered.
+ */
+public class InvokeStmtScanner {
+
+	private final Map<String, List<IInvokeStmtHandler>> handlersByName =
+			new HashMap<String, List<IInvokeStmtHandler>>();
+	private final List<IInvokeStmtHandler> genericHandlers = new ArrayList<IInvokeStmtHandler>();
+	private final Set<IInvokeStmtHandler> allHandlers = new LinkedHashSet<IInvokeStmtHandler>();
+	private final AnalysisBudget budget;
+	private final MethodGraphCache graphCache = MethodGraphCache.getInstance();
+
+	/**
+	 * Creates a new scanner
+	 * @param budget The budget of the current app. The scan stops early
+	 * once the budget is exhausted.
+	 */
+	public InvokeStmtScanner(AnalysisBudget budget) {
+		this.budget = budget;
+	}
+
+	/**
+	 * Registers a handler for all invocations of methods with the given name
+	 * @param calleeName The name of the callee, e.g. "findViewById"
+	 * @param handler The handler to notify
+	 */
+	public void addHandler(String calleeName, IInvokeStmtHandler handler) {
+		List<IInvokeStmtHandler> handlers = handlersByName.get(calleeName);
+		if (handlers == null) {
+			handlers = new ArrayList<IInvokeStmtHandler>();
+			handlersByName.put(calleeName, handlers);
+		}
+		handlers.add(handler);
+		allHandlers.add(handler);
+	}
+
+	/**
+	 * Registers a handler that is notified about all invocations
+	 * @param handler The handler to notify
+	 */
+	public void addHandler(IInvokeStmtHandler handler) {
+		genericHandlers.add(handler);
+		allHandlers.add(handler);
+	}
+
+	/**
+	 * Scans all reachable methods and finishes all handlers afterwards
+	 */
+	public void scan() {
+		AnalysisMetrics.Phase phase = AnalysisMetrics.getInstance().startPhase(
+				AnalysisMetrics.PARAMETER_SEARCH);
+		try {
+			scanReachableMethods();
+		}
+		finally {
+			phase.stop();
+		}
+	}
+	
+	private void scanReachableMethods() {
+		long beforeScan = System.nanoTime();
+		int methodCnt = 0;
+		for (QueueReader<MethodOrMethodContext> rdr =
+				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
+			if (budget.isExhausted()) {
+				NUDisplay.alert("analysis budget exhausted (" + budget.getExhaustedReason()
+						+ "), stop scanning reachable methods", "InvokeStmtScanner");
+				break;
+			}
+			SootMethod m = rdr.next().method();
+			if (!m.hasActiveBody())
+				continue;
+			methodCnt++;
+			
+			MethodGraph mg = graphCache.getMethodGraph(m);
+			UnitGraph g = mg.getGraph();
+			int position = 0;
+			for (Unit u : mg.getTopologicalOrder()) {
+				position++;
+				Stmt stmt = (Stmt) u;
+				if (!stmt.containsInvokeExpr())
+					continue;
+				
+				List<IInvokeStmtHandler> handlers = handlersByName.get(
+						stmt.getInvokeExpr().getMethod().getName());
+				if (handlers == null)
+					handlers = Collections.emptyList();
+				for (IInvokeStmtHandler handler : handlers)
+					handler.handleInvokeStmt(m, g, stmt, position);
+				for (IInvokeStmtHandler handler : genericHandlers)
+					handler.handleInvokeStmt(m, g, stmt, position);
+			}
+		}
+		NUDisplay.debug("Scanned " + methodCnt + " methods for " + allHandlers.size() + " handlers in "
+				+ (System.nanoTime() - beforeScan) / 1E9 + " seconds", "InvokeStmtScanner");
+		
+		for (IInvokeStmtHandler handler : allHandlers)
+			handler.finish();
+	}
+
+}
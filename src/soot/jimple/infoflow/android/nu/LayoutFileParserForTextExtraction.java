@@ -1,11 +1,8 @@
 package soot.jimple.infoflow.android.nu;
 
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -19,16 +16,10 @@ import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
 
 import pxb.android.axml.AxmlVisitor;
 import soot.PackManager;
-import soot.Scene;
 import soot.SceneTransformer;
 import soot.SootClass;
 import soot.Transform;
@@ -36,15 +27,15 @@ import soot.jimple.infoflow.android.axml.AXmlAttribute;
 import soot.jimple.infoflow.android.axml.AXmlHandler;
 import soot.jimple.infoflow.android.axml.AXmlNode;
 import soot.jimple.infoflow.android.axml.parsers.AXML20Parser;
-import soot.jimple.infoflow.android.nu.LayoutTextTreeNode.ViewText;
-import soot.jimple.infoflow.android.nu.LayoutTextTreeNode.ViewTextType;
+import soot.jimple.infoflow.android.data.IntMap;
 import soot.jimple.infoflow.android.resources.ARSCFileParser;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.ResConfig;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.ResType;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.StringResource;
 import soot.jimple.infoflow.android.resources.AbstractResourceParser;
-import soot.jimple.infoflow.android.resources.IResourceHandler;
+import soot.jimple.infoflow.android.resources.IResourceProcessor;
+import soot.jimple.infoflow.android.resources.LayoutClassResolver;
 import soot.jimple.infoflow.android.resources.LayoutControl;
 
 /**
@@ -58,9 +49,9 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 	private static final boolean DEBUG = true;
 	
 	//id -> [text1,text2, ...]
-	private final Map<Integer, List<String>> id2Texts = new HashMap<Integer, List<String>>();
-	private final Map<Integer, String> id2Type = new HashMap<Integer, String>();
-	private final Map<Integer, LayoutTextTreeNode> id2Node = new HashMap<Integer, LayoutTextTreeNode>();
+	private final IntMap<List<String>> id2Texts = new IntMap<List<String>>();
+	private final IntMap<String> id2Type = new IntMap<String>();
+	private final IntMap<LayoutTextTreeNode> id2Node = new IntMap<LayoutTextTreeNode>();
 	//filename -> LayoutTextTree
 	private final Map<String, LayoutTextTreeNode> textTreeMap = new HashMap<String, LayoutTextTreeNode>();
 	private final Map<String, Set<Integer>> xmlEventHandler2ViewIds = new HashMap<String, Set<Integer>>();
@@ -81,6 +72,22 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 	private final static int TYPE_TEXT_VARIATION_VISIBLE_PASSWORD = 0x00000090;
 	private final static int TYPE_TEXT_VARIATION_WEB_PASSWORD = 0x000000e0;
 	
+	private int threads = 1;
+	
+	/**
+	 * Results of parsing a single layout file
+	 */
+	private static class TextLayoutResult {
+		private final String entryClass;
+		private final LayoutTextTreeNode textTreeNode = new LayoutTextTreeNode("", null);
+		private final Map<String, Set<Integer>> xmlEventHandler2ViewIds = new HashMap<String, Set<Integer>>();
+		private boolean complete = false;
+		
+		private TextLayoutResult(String entryClass) {
+			this.entryClass = entryClass;
+		}
+	}
+	
 	public LayoutFileParserForTextExtraction(String packageName, ARSCFileParser resParser,String apkToolPath, String tmppath) {
 		this.packageName = packageName;
 		this.resParser = resParser;
@@ -90,74 +97,14 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 		
 	}
 	
-	private boolean isRealClass(SootClass sc) {
-		if (sc == null)
-			return false;
-		return !(sc.isPhantom() && sc.getMethodCount() == 0 && sc.getFieldCount() == 0);
-	}
-	
-	private SootClass getLayoutClass(String className) {
-		// Cut off some junk returned by the parser
-		if (className.startsWith(";"))
-			className = className.substring(1);
-		
-		if (className.contains("(") || className.contains("<") || className.contains("/")) {
-			System.err.println("Invalid class name " + className);
-			return null;
-		}
-		
-		
-		SootClass sc = Scene.v().forceResolve(className, SootClass.BODIES);
-		if ((sc == null || sc.isPhantom()) && !packageName.isEmpty())
-			sc = Scene.v().forceResolve(packageName + "." + className, SootClass.BODIES);
-		if (!isRealClass(sc))
-			sc = Scene.v().forceResolve("android.view." + className, SootClass.BODIES);
-		if (!isRealClass(sc))
-			sc = Scene.v().forceResolve("android.widget." + className, SootClass.BODIES);
-		if (!isRealClass(sc))
-			sc = Scene.v().forceResolve("android.webkit." + className, SootClass.BODIES);
-		if (!isRealClass(sc)) {
-   			System.err.println("Could not find layout class " + className);
-   			return null;
-		}
-		
-		return sc;		
-	}
-	
-	private boolean isLayoutClass(SootClass theClass) {
-		if (theClass == null)
-			return false;
-		
-   		// To make sure that nothing all wonky is going on here, we
-   		// check the hierarchy to find the android view class
-   		boolean found = false;
-   		for (SootClass parent : Scene.v().getActiveHierarchy().getSuperclassesOf(theClass))
-   			if (parent.getName().equals("android.view.ViewGroup")) {
-   				found = true;
-   				break;
-   			}
-   		return found;
-	}
-	
-	private boolean isViewClass(SootClass theClass) {
-		if (theClass == null)
-			return false;
-		
-		// To make sure that nothing all wonky is going on here, we
-   		// check the hierarchy to find the android view class
-   		boolean found = false;
-   		for (SootClass parent : Scene.v().getActiveHierarchy().getSuperclassesOfIncluding(theClass))
-   			if (parent.getName().equals("android.view.View")
-   					|| parent.getName().equals("android.webkit.WebView")) {
-   				found = true;
-   				break;
-   			}
-   		if (!found) {
-   			System.err.println("Layout class " + theClass.getName() + " is not derived from "
-   					+ "android.view.View");
-   			return false;
-   		}
-   		return true;
+	/**
+	 * Sets the number of threads to use for parsing the layout files and
+	 * building their text trees
+	 * @param threads The number of threads to use. Values smaller than or
+	 * equal to one parse all files sequentially.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
 	}
 	
 	/**
@@ -180,151 +127,83 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 	 * Parses all layout XML files in the given APK file and extract the text attributes.
 	 */
 	public void parseLayoutFileForTextExtraction(final String fileName) {
-		handleAndroidResourceFiles(fileName, /*classes,*/ null, new IResourceHandler() {
+		final LayoutClassResolver resolver = new LayoutClassResolver(packageName);
+		List<TextLayoutResult> results = processAndroidResourceFiles(fileName, "res/layout",
+				threads, new IResourceProcessor<TextLayoutResult>() {
 				
 			@Override
-			public void handleResourceFile(final String fileName, Set<String> fileNameFilter, InputStream stream) {
+			public TextLayoutResult processResourceFile(String fileName, InputStream stream, long size) {
 				// We only process valid layout XML files
 				if (!fileName.startsWith("res/layout"))
-					return;
+					return null;
 				if (!fileName.endsWith(".xml")) {
 					System.err.println("Skipping file " + fileName + " in layout folder...");
-					return;
+					return null;
 				}
 				
-				// Get the fully-qualified class name
-				String entryClass = fileName.substring(0, fileName.lastIndexOf("."));
-				
-				
 				// We are dealing with resource files
 				if (!fileName.startsWith("res/layout/"))
-					return;
+					return null;
+				
+				// Get the fully-qualified class name
+				String entryClass = fileName.substring(0, fileName.lastIndexOf("."));
 				entryClass = entryClass.substring(entryClass.lastIndexOf('/')+1);
-				if (fileNameFilter != null) {
-					boolean found = false;
-					for (String s : fileNameFilter)
-						if (s.equalsIgnoreCase(entryClass)) {
-							found = true;
-							break;
-						}
-					if (!found)
-						return;
+				
+				AXmlHandler handler;
+				try {
+					handler = new AXmlHandler(stream, size, new AXML20Parser());
+				}
+				catch (Exception ex) {
+					System.err.println("Could not read binary XML file: " + ex.getMessage());
+					ex.printStackTrace();
+					return null;
 				}
 				
+				//System.err.println("DEBUG parseLayoutFileForTextExtraction: parsing "+entryClass);
+				TextLayoutResult result = new TextLayoutResult(entryClass);
 				try {
-					AXmlHandler handler = new AXmlHandler(stream, new AXML20Parser());
-					//System.err.println("DEBUG parseLayoutFileForTextExtraction: parsing "+entryClass);
-					
-					LayoutTextTreeNode textTreeNode = new LayoutTextTreeNode("", null);
-					textTreeMap.put(entryClass, textTreeNode);
-					parseLayoutNode(entryClass, handler.getDocument().getRootNode(), textTreeNode, textTreeNode);
+					parseLayoutNode(entryClass, handler.getDocument().getRootNode(), result.textTreeNode,
+							result.textTreeNode, resolver, result.xmlEventHandler2ViewIds);
 					
-					updateNodeAllTextsAndId2XX(entryClass);
-					updateNodeViewTextField(entryClass);
+					// The texts only depend on the tree of this file
+					result.textTreeNode.computeTexts();
+					result.complete = true;
 				}
 				catch (Exception ex) {
 					System.err.println("Could not read binary XML file: " + ex.getMessage());
 					ex.printStackTrace();
 				}
+				return result;
 			}
 		});
+		
+		// Merge the results in the order of the files. Later files overwrite
+		// the nodes of earlier ones with the same IDs.
+		for (TextLayoutResult result : results) {
+			textTreeMap.put(result.entryClass, result.textTreeNode);
+			if (result.complete)
+				updateId2XX(result.textTreeNode);
+			for (Entry<String, Set<Integer>> entry : result.xmlEventHandler2ViewIds.entrySet()) {
+				Set<Integer> ids = xmlEventHandler2ViewIds.get(entry.getKey());
+				if (ids == null)
+					xmlEventHandler2ViewIds.put(entry.getKey(), entry.getValue());
+				else
+					ids.addAll(entry.getValue());
+			}
+		}
 	}
 
+	/**
+	 * Fills the map from resource names to resource IDs. The data is taken
+	 * from the resources.arsc file that has already been parsed, the APK file
+	 * no longer needs to be decoded.
+	 * @param filename The full path of the APK file
+	 */
 	public void extractNameIDPairsFromCompiledValueResources(String filename){
 		File apkF = new File(filename);
 		if (!apkF.exists())
 			throw new RuntimeException("file '" + filename + "' does not exist!");
-
-		try {
-			String fname = filename.toLowerCase();
-			if(fname.contains(File.separator)){
-				int idx = fname.lastIndexOf(File.separator);
-				fname = fname.substring(idx+1, fname.length());
-			}
-			if(fname.endsWith(".apk"))
-				fname = fname.substring(0, fname.length()-4);
-			String path = tmpDirPath+fname;
-			String cmd = apkToolPath+" d "+filename +" -o "+path;
-			System.out.println("Execute cmd: "+cmd);
-			Process p = Runtime.getRuntime().exec(cmd);
-		    p.waitFor(); 
-		    BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-		    String line = "";
-		    while((line = reader.readLine()) != null)
-		    	System.out.print("Decompiling APK: "+line + "\n");
-
-		    path = path + "/res/values/";
-		    File f = new File(path);
-		    if(!f.isDirectory()){
-		    	System.err.println("Error compiling: value folder doesn't exist");
-		    	return ;
-		    }
-		    
-		    SAXParserFactory factory = SAXParserFactory.newInstance();
-			SAXParser saxParser = factory.newSAXParser();
-			DefaultHandler handler = getValueResouceHandler();
-		    for(String xmlFile : f.list()){
-		    	xmlFile = f.getAbsolutePath()+"/"+xmlFile;
-		    	if(!xmlFile.toLowerCase().endsWith(".xml"))
-		    		continue;
-		    	InputStream is = new FileInputStream(xmlFile);
-		    	System.out.println("analyzing file "+xmlFile);
-		    	try{
-		    		saxParser.parse(is, handler);
-		    	}
-		    	catch(Exception e){
-		    		System.out.println("Error analyzing file."+e.toString());
-		    	}
-		    }
-
-		}
-		catch (Exception e) {
-			System.err.println("Error extractNameIDPairsFromCompiledValueResources in apk "
-					+ filename + ": " + e);
-			e.printStackTrace();
-			if (e instanceof RuntimeException)
-				throw (RuntimeException) e;
-			else
-				throw new RuntimeException(e);
-		}
-	}
-	
-	private DefaultHandler getValueResouceHandler(){
-		DefaultHandler handler = new DefaultHandler() {
-			public void startElement(String uri, String localName,String qName,
-		                Attributes attributes) throws SAXException {
-				String name = attributes.getValue("name");
-				String id = attributes.getValue("id");
-				if(name!=null && id!=null){
-					try{
-						name = name.trim();
-						Integer idInt = null;
-						if(id.toLowerCase().startsWith("0x")){
-							Long tt = Long.parseLong(id.substring(2, id.length()), 16);
-							idInt = tt.intValue();
-						}
-						else
-							idInt = Integer.valueOf(id);
-						
-						decompiledValuesNameIDMap.put(name, idInt);
-					}
-					catch(Exception e){
-						System.err.println("Error in converting integer: "+name+" "+id+" "+e.toString());
-					}
-				}
-				//System.out.println("Start Element :" + qName+" N:"+name+" ID:"+id);
-			}
-
-			public void endElement(String uri, String localName,
-				String qName) throws SAXException {
-
-			}
-
-			public void characters(char ch[], int start, int length) throws SAXException {
-
-			}
-		};
-		   return handler;
+		decompiledValuesNameIDMap.putAll(new ValueResourceResolver(resParser).getNameIDMap());
 	}
 	
 	/**
@@ -332,7 +211,8 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 	 * @param layoutFile The full path and file name of the file being parsed
 	 * @param rootNode The root node from where to start parsing
 	 */
-	private void parseLayoutNode(String layoutFile, AXmlNode rootNode, LayoutTextTreeNode textTreeNode, LayoutTextTreeNode root) {
+	private void parseLayoutNode(String layoutFile, AXmlNode rootNode, LayoutTextTreeNode textTreeNode, LayoutTextTreeNode root,
+			LayoutClassResolver resolver, Map<String, Set<Integer>> xmlEventHandler2ViewIds) {
 		if (rootNode.getTag() == null || rootNode.getTag().isEmpty()) {
 			System.err.println("Encountered a null or empty node name "
 					+ "in file " + layoutFile + ", skipping node...");
@@ -362,13 +242,13 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 			else {
 				if (attr.getType() != AxmlVisitor.TYPE_STRING)
 					System.err.println("Invalid targer resource "+attr.getValue()+"for fragment class value");
-				getLayoutClass(attr.getValue().toString());
+				resolver.getLayoutClass(attr.getValue().toString());
 			}
 		}
 		else {
-			final SootClass childClass = getLayoutClass(tname);
-			if (childClass != null && (isLayoutClass(childClass) || isViewClass(childClass))){
-				parseLayoutAttributes(layoutFile, childClass, rootNode, textTreeNode, root);
+			final SootClass childClass = resolver.getLayoutClass(tname);
+			if (childClass != null && resolver.isLayoutOrViewClass(childClass)){
+				parseLayoutAttributes(layoutFile, childClass, rootNode, textTreeNode, root, xmlEventHandler2ViewIds);
 			}
 		}
 
@@ -376,7 +256,7 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 		for (AXmlNode childNode : rootNode.getChildren()){
 			LayoutTextTreeNode childTextTreeNode = new LayoutTextTreeNode("null", textTreeNode);
 			textTreeNode.addChildNode(childTextTreeNode);
-			parseLayoutNode(layoutFile, childNode, childTextTreeNode, root);
+			parseLayoutNode(layoutFile, childNode, childTextTreeNode, root, resolver, xmlEventHandler2ViewIds);
 		}
 	}
 	
@@ -421,7 +301,8 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 	 * @param rootNode The AXml node containing the attributes
 	 */
 	private void parseLayoutAttributes(String layoutFile, SootClass layoutClass, AXmlNode rootNode, 
-			LayoutTextTreeNode textTreeNode, LayoutTextTreeNode root) {
+			LayoutTextTreeNode textTreeNode, LayoutTextTreeNode root,
+			Map<String, Set<Integer>> xmlEventHandler2ViewIds) {
 		boolean isSensitive = false;
 		int id = -1;
 //		System.out.println("Parsing Layout:"+layoutFile+" "+rootNode.getAttribute("id"));
@@ -635,88 +516,30 @@ public class LayoutFileParserForTextExtraction extends AbstractResourceParser {
 		return xmlEventHandler2ViewIds;
 	}
 	
-	private void updateNodeViewTextField(String filename){
-		if(!textTreeMap.containsKey(filename)){
-			System.err.println("Error: no text tree for file: "+filename);
-			return;
-		}
-		traverseTextTreeToUpdateViewTextField(textTreeMap.get(filename));
-	}
-	private void traverseTextTreeToUpdateViewTextField(LayoutTextTreeNode node){
-		if(node.text.length() > 0){
-			//ViewTextType textType, String viewType, String texts
-			ViewText viewText = node.new ViewText(ViewTextType.VIEW_TEXT, node.nodeType, node.text);
-			node.textObj = viewText;
-		}
-		else if(node.allTexts.length() > 0){
-			ViewText viewText = node.new ViewText(ViewTextType.VIEW_TEXT, node.nodeType, node.allTexts);
-			node.textObj = viewText;
-		}
-		else {
-			LayoutTextTreeNode parent = node.parent;
-			ViewText viewText = null;
-			while(parent != null){
-				if(parent.allTexts.length() > 0){
-					if(parent.parent==null)
-						viewText = node.new ViewText(ViewTextType.LAYOUT_TEXT, node.nodeType, parent.allTexts);
-					else
-						viewText = node.new ViewText(ViewTextType.PARENT_TEXT, node.nodeType, parent.allTexts);
-					break;
-				}
-				parent = parent.parent;
-			}
-			if(viewText == null)
-				viewText = node.new ViewText(ViewTextType.NO_TEXT, node.nodeType, "");
-			node.textObj = viewText;
-		}
-		if(node.children != null)
-			for(LayoutTextTreeNode child : node.children)
-				traverseTextTreeToUpdateViewTextField(child);
-	}
-	
-	private void updateNodeAllTextsAndId2XX(String filename){
-		if(!textTreeMap.containsKey(filename)){
-			System.err.println("Error: no text tree for file: "+filename);
-			return;
-		}
-		//System.out.println("DEBUG traverseTextTree: "+filename);
-		traverseTextTreeHelper(textTreeMap.get(filename), 0);
-	}
-	
-	private void traverseTextTreeHelper(LayoutTextTreeNode node, int level){
+	/**
+	 * Registers the nodes of the given text tree in the ID maps, in the same
+	 * pre-order in which the texts of the tree have been computed
+	 * @param node The root of the text tree
+	 */
+	private void updateId2XX(LayoutTextTreeNode node){
 		if(node.nodeID != 0){
 			id2Type.put(node.nodeID, node.nodeType);
 			id2Node.put(node.nodeID, node);
 		}
 		
-		List<String> texts = null;
-	
 		if(node.nodeID!=0 && node.text.length()!=0){
-			if (id2Texts.containsKey(node.nodeID)){
-				texts = id2Texts.get(node.nodeID);
-			}
-			else{
+			List<String> texts = id2Texts.get(node.nodeID);
+			if (texts == null){
 				texts = new ArrayList<String>(1);
 				id2Texts.put(node.nodeID, texts);
 			}
 			texts.add(node.text);	
 		}
-		String space = new String(new char[level*2]).replace('\0', ' ');
-		//System.out.println("DEBUG: "+space+node.toString());
-		String allTexts = node.text;
-		if(node.children != null){
-			for(LayoutTextTreeNode child : node.children){
-				traverseTextTreeHelper(child, level+1);
-				if(child.allTexts.length() > 0){
-					if(allTexts.length() > 0) allTexts += " || ";
-					allTexts += child.allTexts;
-				}
-			}
-		}
-		node.allTexts = allTexts;
+		if(node.children != null)
+			for(LayoutTextTreeNode child : node.children)
+				updateId2XX(child);
 	}
 	
-	
 
 	
 	
@@ -16,8 +16,8 @@ public class LayoutTextTreeNode {
 	public class ViewText {
 		public ViewTextType textType;
 		public String viewType;
-		public String texts; //seperated by ||
-		public ViewText(ViewTextType textType, String viewType, String texts){
+		public CharSequence texts; //seperated by ||
+		public ViewText(ViewTextType textType, String viewType, CharSequence texts){
 			this.textType = textType;
 			this.viewType = viewType;
 			this.texts = texts;
@@ -36,7 +36,12 @@ public class LayoutTextTreeNode {
 	public int nodeID = 0;
 	public String text = "";
 	
-	public String allTexts = "";
+	/**
+	 * The texts of this node and all its descendants in pre-order, separated
+	 * by " || ". After {@link #computeTexts()}, this is a {@link TextSpan}
+	 * shared with the other nodes of the tree.
+	 */
+	public CharSequence allTexts = "";
 	public ViewText textObj = null;
 	
 	public LayoutTextTreeNode parent = null;
@@ -58,6 +63,61 @@ public class LayoutTextTreeNode {
 		return "<"+nodeType+", id:"+nodeID+", Text:"+text+" >";
 	}
 	
+	/**
+	 * Computes the aggregated texts of all nodes in the tree rooted at this
+	 * node and assigns their view texts. Nodes without texts of their own
+	 * get the texts of their nearest ancestor which has any.
+	 */
+	public void computeTexts(){
+		StringBuilder sb = new StringBuilder();
+		TextSpan.Buffer buffer = new TextSpan.Buffer();
+		aggregateTextsHelper(this, sb, buffer);
+		buffer.setText(sb.toString());
+		updateViewTextHelper(this, null);
+	}
+	
+	/**
+	 * Appends the texts of the given subtree to the shared buffer. Since the
+	 * texts of every subtree are contiguous, each node only records where its
+	 * texts start and end, which keeps the aggregation linear in the size of
+	 * the texts.
+	 */
+	private void aggregateTextsHelper(LayoutTextTreeNode node, StringBuilder sb, TextSpan.Buffer buffer){
+		int start = sb.length();
+		sb.append(node.text);
+		if(node.children != null){
+			for(LayoutTextTreeNode child : node.children){
+				int mark = sb.length();
+				if(mark > start) sb.append(" || ");
+				int childStart = sb.length();
+				aggregateTextsHelper(child, sb, buffer);
+				// Drop the separator again if the child has no texts
+				if(sb.length() == childStart)
+					sb.setLength(mark);
+			}
+		}
+		node.allTexts = new TextSpan(buffer, start, sb.length());
+	}
+	
+	private void updateViewTextHelper(LayoutTextTreeNode node, LayoutTextTreeNode textAncestor){
+		if(node.text.length() > 0)
+			node.textObj = node.new ViewText(ViewTextType.VIEW_TEXT, node.nodeType, node.text);
+		else if(node.allTexts.length() > 0)
+			node.textObj = node.new ViewText(ViewTextType.VIEW_TEXT, node.nodeType, node.allTexts);
+		else if(textAncestor == null)
+			node.textObj = node.new ViewText(ViewTextType.NO_TEXT, node.nodeType, "");
+		else if(textAncestor.parent == null)
+			node.textObj = node.new ViewText(ViewTextType.LAYOUT_TEXT, node.nodeType, textAncestor.allTexts);
+		else
+			node.textObj = node.new ViewText(ViewTextType.PARENT_TEXT, node.nodeType, textAncestor.allTexts);
+		
+		if(node.children != null){
+			LayoutTextTreeNode childTextAncestor = node.allTexts.length() > 0 ? node : textAncestor;
+			for(LayoutTextTreeNode child : node.children)
+				updateViewTextHelper(child, childTextAncestor);
+		}
+	}
+	
 	public String toStringTree(int initSpace, String logo){
 		StringBuilder sb = new StringBuilder();
 		traverseTextTreeHelper(this, initSpace, sb, logo);
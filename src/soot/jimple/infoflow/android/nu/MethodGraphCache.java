@@ -0,0 +1,257 @@
+package soot.jimple.infoflow.android.nu;
+
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import soot.Body;
+import soot.SootMethod;
+import soot.Unit;
+import soot.toolkits.graph.ExceptionalUnitGraph;
+import soot.toolkits.graph.PseudoTopologicalOrderer;
+import soot.toolkits.graph.UnitGraph;
+import soot.toolkits.scalar.LocalDefs;
+import soot.toolkits.scalar.SimpleLiveLocals;
+import soot.toolkits.scalar.SmartLocalDefs;
+
+/**
+ * Cache for the intra-procedural graphs of method bodies. Building an
+ * ExceptionalUnitGraph is expensive and the NU analyses used to rebuild it
+ * for the same method over and over again. The cache is bounded by the total
+ * number of units of the cached bodies and evicts the least recently used
+ * methods first. The graphs are only softly referenced, so the garbage
+ * collector can reclaim them when the heap runs low.
+ *
+ * The cache must be cleared whenever Soot is reset, since the methods of the
+ * old scene are of no use afterwards.
+ */
+public class MethodGraphCache {
+
+	/**
+	 * Default maximum number of units in all cached bodies together
+	 */
+	public static final int DEFAULT_MAX_WEIGHT = 500000;
+
+	/**
+	 * The graphs computed for a single method body. The local definitions
+	 * and the topological order are computed on first use.
+	 */
+	public static class MethodGraph {
+		private final Body body;
+		private final UnitGraph graph;
+		private LocalDefs localDefs = null;
+		private List<Unit> topologicalOrder = null;
+
+		private MethodGraph(Body body) {
+			this.body = body;
+			this.graph = new ExceptionalUnitGraph(body);
+		}
+
+		public UnitGraph getGraph() {
+			return this.graph;
+		}
+
+		/**
+		 * Gets the reaching definitions of the locals in the method body
+		 * @return The local definitions for the method body
+		 */
+		public synchronized LocalDefs getLocalDefs() {
+			if (localDefs == null)
+				localDefs = new SmartLocalDefs(graph, new SimpleLiveLocals(graph));
+			return localDefs;
+		}
+
+		/**
+		 * Gets the units of the method body in pseudo-topological order
+		 * @return The units of the method body in pseudo-topological order
+		 */
+		public synchronized List<Unit> getTopologicalOrder() {
+			if (topologicalOrder == null)
+				topologicalOrder = Collections.unmodifiableList(
+						new PseudoTopologicalOrderer<Unit>().newList(graph, false));
+			return topologicalOrder;
+		}
+	}
+
+	private static class CacheEntry {
+		private final SoftReference<MethodGraph> ref;
+		private final int weight;
+
+		private CacheEntry(MethodGraph graph, int weight) {
+			this.ref = new SoftReference<MethodGraph>(graph);
+			this.weight = weight;
+		}
+	}
+
+	private static MethodGraphCache instance = null;
+
+	public static synchronized MethodGraphCache getInstance() {
+		if (instance == null)
+			instance = new MethodGraphCache();
+		return instance;
+	}
+
+	// Access order, so that the eldest entry is the least recently used one
+	private final LinkedHashMap<SootMethod, CacheEntry> entries =
+			new LinkedHashMap<SootMethod, CacheEntry>(1024, 0.75f, true);
+	private int maxWeight = DEFAULT_MAX_WEIGHT;
+	private int currentWeight = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long collected = 0;
+
+	MethodGraphCache() {
+	}
+
+	/**
+	 * Sets the maximum size of the cache
+	 * @param maxWeight The maximum number of units in all cached method
+	 * bodies together. A value smaller than or equal to zero disables the
+	 * cache.
+	 */
+	public synchronized void setMaxWeight(int maxWeight) {
+		this.maxWeight = maxWeight;
+		evict();
+	}
+
+	/**
+	 * Gets the graphs for the active body of the given method
+	 * @param method The method for which to get the graphs. The method must
+	 * have an active body.
+	 * @return The graphs for the active body of the given method
+	 */
+	public MethodGraph getMethodGraph(SootMethod method) {
+		Body body = method.getActiveBody();
+		synchronized (this) {
+			CacheEntry entry = entries.get(method);
+			if (entry != null) {
+				MethodGraph graph = entry.ref.get();
+				if (graph != null && graph.body == body) {
+					hits++;
+					return graph;
+				}
+				// Either reclaimed by the garbage collector or the body has
+				// been replaced in the meantime
+				if (graph == null)
+					collected++;
+				entries.remove(method);
+				currentWeight -= entry.weight;
+			}
+			misses++;
+		}
+
+		// Build the graph outside the lock, other threads may use the cache
+		// in the meantime
+		MethodGraph graph = new MethodGraph(body);
+		int weight = body.getUnits().size();
+		synchronized (this) {
+			if (weight > 0 && weight <= maxWeight) {
+				CacheEntry old = entries.put(method, new CacheEntry(graph, weight));
+				if (old != null)
+					currentWeight -= old.weight;
+				currentWeight += weight;
+				evict();
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * Shortcut for getting the unit graph of the given method
+	 * @param method The method for which to get the unit graph. The method
+	 * must have an active body.
+	 * @return The unit graph of the active body of the given method
+	 */
+	public UnitGraph getGraph(SootMethod method) {
+		return getMethodGraph(method).getGraph();
+	}
+
+	private void evict() {
+		Iterator<CacheEntry> it = entries.values().iterator();
+		while (currentWeight > maxWeight && it.hasNext()) {
+			CacheEntry entry = it.next();
+			it.remove();
+			currentWeight -= entry.weight;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes all graphs from the cache. This must be called whenever Soot
+	 * is reset.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		currentWeight = 0;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Gets the number of graphs that have been removed to keep the cache
+	 * within its size limit
+	 * @return The number of graphs evicted because of the size limit
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Gets the number of graphs that have been reclaimed by the garbage
+	 * collector before they could be used again
+	 * @return The number of graphs reclaimed by the garbage collector
+	 */
+	public synchronized long getCollected() {
+		return collected;
+	}
+
+	/**
+	 * Gets a human-readable summary of the cache statistics
+	 * @return A summary of the cache statistics
+	 */
+	public synchronized String getStatistics() {
+		long requests = hits + misses;
+		return "MethodGraphCache: " + hits + " hits, " + misses + " misses ("
+				+ (requests == 0 ? 0 : hits * 100 / requests) + "% hit rate), "
+				+ evictions + " evicted, " + collected + " collected, "
+				+ entries.size() + " methods / " + currentWeight + " units cached";
+	}
+
+	/**
+	 * Resets the hit and miss counters
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		collected = 0;
+	}
+
+	/**
+	 * Gets the number of methods currently in the cache
+	 * @return The number of methods currently in the cache
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of units of all method bodies currently in the cache
+	 * @return The number of units of all cached method bodies
+	 */
+	public synchronized int getCurrentWeight() {
+		return currentWeight;
+	}
+
+}
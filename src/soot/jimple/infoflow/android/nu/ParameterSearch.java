@@ -1,11 +1,16 @@
 package soot.jimple.infoflow.android.nu;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.Stack;
@@ -15,7 +20,6 @@ import nu.NUDisplay;
 import com.sun.xml.internal.bind.v2.runtime.reflect.opt.Const;
 
 import soot.Local;
-import soot.MethodOrMethodContext;
 import soot.PrimType;
 import soot.Scene;
 import soot.SootClass;
@@ -52,6 +56,7 @@ import soot.jimple.StringConstant;
 import soot.jimple.ThisRef;
 import soot.jimple.UnopExpr;
 import soot.jimple.VirtualInvokeExpr;
+import soot.jimple.infoflow.android.AnalysisBudget;
 import soot.jimple.infoflow.android.manifest.ProcessManifest;
 import soot.jimple.infoflow.android.resources.ARSCFileParser;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
@@ -67,17 +72,15 @@ import soot.jimple.toolkits.callgraph.Edge;
 import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
 import soot.tagkit.IntegerConstantValueTag;
 import soot.tagkit.Tag;
-import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.graph.Orderer;
-import soot.toolkits.graph.PseudoTopologicalOrderer;
 import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.scalar.LocalDefs;
-import soot.util.queue.QueueReader;
 
 public class ParameterSearch {
 	final String FIND_VIEW_BY_ID = "findViewById";
 	final String SET_CONTENT_VIEW = "setContentView";
 	final String SET_BACKGROUND_RESOURCE= "setBackgroundResource";
+	final String SET_TEXT_API = "setText";
+	final String SET_TITLE_API = "setTitle";
 	
 	final String GET_IDENTIFIER_SIGNATURE = 
 			"<android.content.res.Resources: int getIdentifier(java.lang.String,java.lang.String,java.lang.String)>";
@@ -85,7 +88,19 @@ public class ParameterSearch {
 	List<ARSCFileParser.ResPackage> resourcePackages;
 	String appPackageName;
 	BiDiInterproceduralCFG<Unit, SootMethod> cfg;
-	long startingTime;
+	/**
+	 * The time limit in seconds for extracting the dynamic texts if no budget
+	 * with limits has been set
+	 */
+	static final long DEFAULT_TEXT_EXTRACTION_TIMEOUT = 300;
+	
+	AnalysisBudget budget = AnalysisBudget.unlimited();
+	ResourceConstantPropagation constantPropagation = null;
+	/**
+	 * The resource IDs found by ToolSet.findLastResIDAssignment, keyed by
+	 * statement, argument and caller tag. Null results are cached as well.
+	 */
+	final Map<List<Object>, Integer> resIDCache = new HashMap<List<Object>, Integer>();
 	
 	public ParameterSearch(List<ARSCFileParser.ResPackage> resourcePackages,String appPackageName,
 			BiDiInterproceduralCFG<Unit, SootMethod> cfg){
@@ -93,472 +108,601 @@ public class ParameterSearch {
 		this.appPackageName = appPackageName;
 		this.resourcePackages = resourcePackages;
 		this.cfg = cfg;
-		this.startingTime = System.currentTimeMillis();
 	}
 	
-	public Set<Stmt> findViewByIdParamSearch(){
-		//first search all findViewById statements
-		Set<Stmt> rs = new HashSet<Stmt>();
+	/**
+	 * Sets the budget for the searches. All searches stop scanning further
+	 * methods once the budget is exhausted and return what they have found
+	 * so far.
+	 * @param budget The budget of the current app
+	 */
+	public void setBudget(AnalysisBudget budget){
+		this.budget = budget;
+	}
+	
+	/**
+	 * Sets whether the searches shall fall back to an interprocedural
+	 * constant propagation for the resource IDs and texts they cannot find
+	 * by looking for the last assignment. The propagation finds all possible
+	 * constants, e.g. if an ID is passed as a parameter or read from a field.
+	 * @param enabled True to enable the constant propagation, otherwise false
+	 */
+	public void setUseConstantPropagation(boolean enabled){
+		if(!enabled)
+			this.constantPropagation = null;
+		else if(this.constantPropagation == null)
+			this.constantPropagation = new ResourceConstantPropagation(cfg);
+	}
+	
+	/**
+	 * Gets the possible resource IDs of the given argument using the
+	 * constant propagation. The propagation may also find other integers,
+	 * e.g. 0 or -1 for "no resource", so only the constants that are
+	 * declared in the app's resources are kept.
+	 * @return The possible resource IDs, or an empty set if the constant
+	 * propagation is disabled
+	 */
+	private Set<Integer> propagateIntegers(Stmt stmt, Value arg){
+		if(constantPropagation == null)
+			return Collections.emptySet();
+		Set<Integer> ids = new LinkedHashSet<Integer>();
+		for(Integer id : constantPropagation.getValues(stmt, arg).getIntegers())
+			if(isResourceId(id))
+				ids.add(id);
+		return ids;
+	}
+	
+	/**
+	 * Checks whether the given integer is the ID of a resource declared in
+	 * the app's resource packages
+	 */
+	private boolean isResourceId(int id){
+		for(ARSCFileParser.ResPackage pkg : resourcePackages){
+			if(pkg.getPackageId() != ((id >>> 24) & 0xFF))
+				continue;
+			ARSCFileParser.ResType type = pkg.getType((id >> 16) & 0xFF);
+			if(type != null && type.getFirstResource(id) != null)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Gets the budget for extracting the dynamic texts. If the budget of the
+	 * app has no time limit, the extraction still stops after
+	 * DEFAULT_TEXT_EXTRACTION_TIMEOUT seconds.
+	 * @return The budget for extracting the dynamic texts
+	 */
+	private AnalysisBudget getTextExtractionBudget(){
+		if(budget.getRemainingMillis() != Long.MAX_VALUE)
+			return budget;
+		return budget.withTimeLimit(DEFAULT_TEXT_EXTRACTION_TIMEOUT);
+	}
+	
+	/**
+	 * Finds the last resource ID assigned to the given argument of the given
+	 * statement using ToolSet. The results are memoized, so that the same
+	 * arguments are not resolved again by the different searches.
+	 * @param tag The caller tag passed on to ToolSet, which selects the
+	 * heuristics to apply
+	 * @return The resource ID, or null if it could not be found
+	 */
+	private Integer findLastResIDAssignment(Stmt stmt, Value arg, String tag){
+		List<Object> key = Arrays.<Object>asList(stmt, arg, tag);
+		if(resIDCache.containsKey(key))
+			return resIDCache.get(key);
+		Integer id = ToolSet.findLastResIDAssignment(stmt, arg, cfg, new HashSet<Stmt>(), tag);
+		resIDCache.put(key, id);
+		return id;
+	}
+	
+	private static boolean isBudgetExhausted(AnalysisBudget budget, String tag){
+		if(!budget.isExhausted())
+			return false;
+		NUDisplay.alert("analysis budget exhausted ("+budget.getExhaustedReason()+"), stop early", tag);
+		return true;
+	}
+	
+	/**
+	 * Base class for the searches. During the scan, a search only records
+	 * the statements it is interested in. The expensive resolution of the
+	 * arguments is deferred until the scan is complete, so that the searches
+	 * update the global data in the same order as separate scans would.
+	 */
+	private abstract class DeferredSearch implements IInvokeStmtHandler {
+		private final String tag;
+		final AnalysisBudget searchBudget;
+		private final List<SootMethod> methods = new ArrayList<SootMethod>();
+		private final List<Stmt> stmts = new ArrayList<Stmt>();
+		private int[] positions = new int[16];
+		
+		DeferredSearch(String tag){
+			this(tag, budget);
+		}
+		
+		DeferredSearch(String tag, AnalysisBudget searchBudget){
+			this.tag = tag;
+			this.searchBudget = searchBudget;
+		}
+		
+		@Override
+		public void handleInvokeStmt(SootMethod m, UnitGraph g, Stmt stmt, int position){
+			if(!accept(m, stmt)) return;
+			//do not keep the graph, it is taken from the cache again if needed
+			if(stmts.size() == positions.length)
+				positions = Arrays.copyOf(positions, positions.length * 2);
+			positions[stmts.size()] = position;
+			methods.add(m);
+			stmts.add(stmt);
+		}
+		
+		@Override
+		public void finish(){
+			for(int i=0; i<stmts.size(); i++){
+				if(isBudgetExhausted(searchBudget, tag))
+					break;
+				process(methods.get(i), stmts.get(i), positions[i]);
+			}
+			done();
+		}
+		
+		/**
+		 * Quickly checks whether the given statement is relevant for this search
+		 */
+		abstract boolean accept(SootMethod m, Stmt stmt);
+		
+		/**
+		 * Processes a statement that has been accepted during the scan. The
+		 * graph of the method can be taken from the MethodGraphCache.
+		 */
+		abstract void process(SootMethod m, Stmt stmt, int position);
+		
+		void done(){}
+	}
+	
+	private class FindViewByIdSearch extends DeferredSearch {
+		final Set<Stmt> rs = new HashSet<Stmt>();
 		int solvedCnt = 0;
 		int unsolvedCnt = 0;
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody()) continue;
+		
+		FindViewByIdSearch(){
+			super("findViewByIdParamSearch");
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			return !(s.getInvokeExpr().getArg(0) instanceof Constant);
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt s, int cnt){
+			Value v = s.getInvokeExpr().getArg(0);
+			s.addTag(new StmtPosTag(cnt, m));
+			rs.add(s);
 			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    int cnt = 0;
-		    for (Unit u : orderer.newList(g, false)) {
-		    	cnt++;
-		    	Stmt s = (Stmt)u;
-		    	if(!s.containsInvokeExpr()) continue;
-		    	
-		    	InvokeExpr ie = s.getInvokeExpr();
-		    	if(ie.getMethod().getName().equals(FIND_VIEW_BY_ID)){
-		    		Value v = ie.getArg(0);
-		    		if(v instanceof Constant)
-		    			continue;
-		    		s.addTag(new StmtPosTag(cnt, m));
-		    		rs.add(s);
-		    		
-		    		//v2
-		    		Integer id = ToolSet.findLastResIDAssignment(s, v, cfg, new HashSet<Stmt>(), FIND_VIEW_BY_ID);
-		    		if(id == null) unsolvedCnt++;
-		    		else {
-		    			solvedCnt++;
-		    			GlobalData global = GlobalData.getInstance();
-		    			global.addViewID(s, cfg, id);
-		    		}
-		    	}
-		    }
+			//v2
+			Integer id = findLastResIDAssignment(s, v, FIND_VIEW_BY_ID);
+			Set<Integer> ids = id == null ? propagateIntegers(s, v) : Collections.singleton(id);
+			if(ids.isEmpty()) unsolvedCnt++;
+			else {
+				solvedCnt++;
+				GlobalData global = GlobalData.getInstance();
+				for(Integer i : ids)
+					global.addViewID(s, cfg, i);
+			}
+		}
+		
+		@Override
+		void done(){
+			NUDisplay.debug("findViewById SolvedCnt:"+solvedCnt+" UnsolvedCnt:"+unsolvedCnt, "findViewByIdParamSearch");
 		}
-		NUDisplay.debug("findViewById SolvedCnt:"+solvedCnt+" UnsolvedCnt:"+unsolvedCnt, "findViewByIdParamSearch");
-		return rs;
 	}
 	
-	public Set<Stmt> setContentViewSearch(){
-		//first search all setContent statements
-		Set<Stmt> rs = new HashSet<Stmt>();
+	private class SetContentViewSearch extends DeferredSearch {
+		final Set<Stmt> rs = new HashSet<Stmt>();
+		final GlobalData global = GlobalData.getInstance();
 		int solvedCnt = 0;
 		int unsolvedCnt = 0;
-		GlobalData global = GlobalData.getInstance();
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody()) continue;
+		
+		SetContentViewSearch(){
+			super("setContentViewSearch");
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			return true;
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt s, int cnt){
+			Value v = s.getInvokeExpr().getArg(0);
+			if(v instanceof Constant){
+				try{
+					int id = Integer.valueOf(v.toString());
+					global.addLayoutID(s, cfg, id);
+					solvedCnt++;
+				}
+				catch(Exception e){}
+				return;
+			}
+			String clsName = m.getDeclaringClass().getName(); 
+			if(clsName.startsWith("com.google.android") && 
+					clsName.contains("internal")){
+				NUDisplay.debug("Ignore ocm.google.android setContentView:"+clsName, null);
+				return;
+			}
+			s.addTag(new StmtPosTag(cnt, m));
+			rs.add(s);
+			//v2
 			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    int cnt = 0;
-		    for (Unit u : orderer.newList(g, false)) {
-		    	cnt++;
-		    	Stmt s = (Stmt)u;
-		    	if(!s.containsInvokeExpr()) continue;
-		    	
-		    	InvokeExpr ie = s.getInvokeExpr();
-		    	if(ie.getMethod().getName().equals(SET_CONTENT_VIEW)){
-		    		Value v = ie.getArg(0);
-		    		if(v instanceof Constant){
-		    			try{
-		    				int id = Integer.valueOf(v.toString());
-			    			global.addLayoutID(s, cfg, id);
-			    			solvedCnt++;
-		    			}
-		    			catch(Exception e){}
-		    			continue;
-		    		}
-		    		String clsName = m.getDeclaringClass().getName(); 
-		    		if(clsName.startsWith("com.google.android") && 
-		    				clsName.contains("internal")){
-		    			NUDisplay.debug("Ignore ocm.google.android setContentView:"+clsName, null);
-		    			continue;
-		    		}
-		    		s.addTag(new StmtPosTag(cnt, m));
-		    		rs.add(s);
-		    		//v2
-		    		
-		    		Integer id = ToolSet.findLastResIDAssignment(s, v, cfg, new HashSet<Stmt>(), SET_CONTENT_VIEW);
-		    		if(id == null){ 
-		    			unsolvedCnt++;
-		    			global.addClassWithUnsolvedLayout(FlowPathSet.getStmtSignatureForDynamicCombination(s, cfg.getMethodOf(s)));
-		    		}
-		    		else{
-		    			solvedCnt++;
-		    			global.addLayoutID(s, cfg, id);
-		    		}
-		    	}
-		    }
+			Integer id = findLastResIDAssignment(s, v, SET_CONTENT_VIEW);
+			Set<Integer> ids = id == null ? propagateIntegers(s, v) : Collections.singleton(id);
+			if(ids.isEmpty()){ 
+				unsolvedCnt++;
+				global.addClassWithUnsolvedLayout(FlowPathSet.getStmtSignatureForDynamicCombination(s, cfg.getMethodOf(s)));
+			}
+			else{
+				solvedCnt++;
+				for(Integer i : ids)
+					global.addLayoutID(s, cfg, i);
+			}
+		}
+		
+		@Override
+		void done(){
+			NUDisplay.debug("SetContentBackground SolvedCnt:"+solvedCnt+" UnsolvedCnt:"+unsolvedCnt, "setContentViewSearch");
 		}
-		NUDisplay.debug("SetContentBackground SolvedCnt:"+solvedCnt+" UnsolvedCnt:"+unsolvedCnt, "setContentViewSearch");
-		return rs;
 	}
 	
-	public void setBackgroundResourceProcessing(){
-		GlobalData gData = GlobalData.getInstance();
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody()) continue;
+	private class SetBackgroundResourceSearch extends DeferredSearch {
+		final GlobalData gData = GlobalData.getInstance();
+		
+		SetBackgroundResourceSearch(){
+			super("setBackgroundResourceProcessing");
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			return s.getInvokeExpr() instanceof VirtualInvokeExpr;
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt s, int cnt){
+			VirtualInvokeExpr vie = (VirtualInvokeExpr)s.getInvokeExpr();
+			Value v = vie.getArg(0);
+			if(v instanceof IntConstant){
+				Value base = vie.getBase();
+				if(base instanceof FieldRef)
+					gData.addFieldID( ((FieldRef)base).getField(), ((IntConstant)v).value);
+				else if(base instanceof Local){
+					Set<SootField> ssf = resolveLocalBase(MethodGraphCache.getInstance().getGraph(m), s, (Local)base);
+					for(SootField sf : ssf)
+						gData.addFieldID(sf, ((IntConstant)v).value);
+				}
+				return;
+			}
 			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
-		    	Stmt s = (Stmt)u;
-		    	if(!s.containsInvokeExpr()) continue;
-		    	
-		    	InvokeExpr ie = s.getInvokeExpr();
-		    	if(ie.getMethod().getName().equals(SET_BACKGROUND_RESOURCE)){
-		    		if(! (ie instanceof VirtualInvokeExpr)) continue;
-		    		
-		    		Value v = ie.getArg(0);
-		    		if(v instanceof IntConstant){
-		    			VirtualInvokeExpr vie = (VirtualInvokeExpr)ie;
-		    			Value base = vie.getBase();
-		    			if(base instanceof FieldRef)
-		    				gData.addFieldID( ((FieldRef)base).getField(), ((IntConstant)v).value);
-		    			else if(base instanceof Local){
-		    				Set<SootField> ssf = resolveLocalBase(g, s, (Local)base);
-		    				for(SootField sf : ssf)
-		    					gData.addFieldID(sf, ((IntConstant)v).value);
-		    			}
-		    			continue;
-		    		}
-		    		
-		    		Integer id = ToolSet.findLastResIDAssignment(s, v, cfg, new HashSet<Stmt>(), SET_BACKGROUND_RESOURCE);
-		    		if(id == null) continue;
-		    		else{
-		    			VirtualInvokeExpr vie = (VirtualInvokeExpr)ie;
-		    			Value base = vie.getBase();
-		    			if(base instanceof FieldRef){
-		    				gData.addFieldID( ((FieldRef)base).getField(), id);
-		    			}
-		    			else if(base instanceof Local){
-		    				Set<SootField> ssf = resolveLocalBase(g, s, (Local)base);
-		    				for(SootField sf : ssf)
-		    					gData.addFieldID(sf, id);
-		    			}
-		    		}
-		    	}
-		    }
+			Integer id = findLastResIDAssignment(s, v, SET_BACKGROUND_RESOURCE);
+			Set<Integer> ids = id == null ? propagateIntegers(s, v) : Collections.singleton(id);
+			if(ids.isEmpty()) return;
+			Value base = vie.getBase();
+			if(base instanceof FieldRef){
+				for(Integer i : ids)
+					gData.addFieldID( ((FieldRef)base).getField(), i);
+			}
+			else if(base instanceof Local){
+				Set<SootField> ssf = resolveLocalBase(MethodGraphCache.getInstance().getGraph(m), s, (Local)base);
+				for(SootField sf : ssf)
+					for(Integer i : ids)
+						gData.addFieldID(sf, i);
+			}
 		}
 	}
 	
-	public void searchMethodCall(String methodName, String className){
-		GlobalData gd = GlobalData.getInstance();
-		//first search all findViewById statements
-		System.out.println("SearchMethodCall:"+methodName+"@"+className);
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody()) continue;
-			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    int cnt = 0;
-		    for (Unit u : orderer.newList(g, false)) {
-		    	cnt++;
-		    	Stmt s = (Stmt)u;
-		    	if(!s.containsInvokeExpr()) continue;
-		    	
-		    	InvokeExpr ie = s.getInvokeExpr();
-		    	if(ie.getMethod().getName().equals(methodName) && 
-		    			(className==null || ie.getMethod().getDeclaringClass().getName().equals(className)) ){
-		    		Value v = ie.getArg(0);
-		    		if(v instanceof Constant){
-		    			//TODO: add constant to map
-		    			continue;
-		    		}
-		    		System.out.println("Found one instance: "+s+" CLASS:"+ie.getMethod().getDeclaration());
-		    		System.out.println("  "+gd.getViewID(s, cfg));	
-		    	}
-		    }
+	private class MethodCallSearch extends DeferredSearch {
+		final GlobalData gd = GlobalData.getInstance();
+		final String className;
+		
+		MethodCallSearch(String className){
+			super("searchMethodCall");
+			this.className = className;
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			InvokeExpr ie = s.getInvokeExpr();
+			if(className!=null && !ie.getMethod().getDeclaringClass().getName().equals(className))
+				return false;
+			//TODO: add constant to map
+			return !(ie.getArg(0) instanceof Constant);
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt s, int cnt){
+			System.out.println("Found one instance: "+s+" CLASS:"+s.getInvokeExpr().getMethod().getDeclaration());
+			System.out.println("  "+gd.getViewID(s, cfg));	
 		}
 	}
 	
-	//class name cannot be null and method name can be a part
-	public void searchMethodCallVaguely(String methodName, String className){
-		GlobalData gd = GlobalData.getInstance();
-		//first search all findViewById statements
-		System.out.println("SearchMethodCall:"+methodName+"@"+className);
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody()) continue;
-			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    int cnt = 0;
-		    for (Unit u : orderer.newList(g, false)) {
-		    	cnt++;
-		    	Stmt s = (Stmt)u;
-		    	if(!s.containsInvokeExpr()) continue;
-		    	
-		    	InvokeExpr ie = s.getInvokeExpr();
-		    	if(ie.getMethod().getName().contains(methodName) && ie.getMethod().getDeclaringClass().getName().equals(className) ){
-//		    		Value v = ie.getArg(0);
-//		    		if(v instanceof Constant){
-//		    			//TODO: add constant to map
-//		    			continue;
-//		    		}
-		    		
-		    		System.out.println("NULIST Found one instance: "+s+" CLASS:"+ie.getMethod().getDeclaringClass().getName());
-		    		//System.out.println("  "+gd.getViewID(s, cfg));	
-		    	}
-		    }
+	private class MethodCallVaguelySearch extends DeferredSearch {
+		final String methodName;
+		final String className;
+		
+		MethodCallVaguelySearch(String methodName, String className){
+			super("searchMethodCallVaguely");
+			this.methodName = methodName;
+			this.className = className;
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			SootMethod callee = s.getInvokeExpr().getMethod();
+			return callee.getName().contains(methodName) && callee.getDeclaringClass().getName().equals(className);
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt s, int cnt){
+			System.out.println("NULIST Found one instance: "+s+" CLASS:"+s.getInvokeExpr().getMethod().getDeclaringClass().getName());
 		}
 	}
 	
-	public void findPreferenceSetMethods(){
-		//first search all findViewById statements
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody()) continue;
-			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
-		    	Stmt s = (Stmt)u;
-		    	if(!s.containsInvokeExpr()) continue;
-		    	
-		    	InvokeExpr ie = s.getInvokeExpr();
-		    	SootMethod method = ie.getMethod();
-		    	if(method.getSignature().contains("android.content.SharedPreferences$Editor") &&
-		    			method.getName().contains("put")){
-		    		System.out.println("PreferenceSetMethod:" + ie);
-		    	}
-		    }
+	private class PreferenceSetMethodSearch extends DeferredSearch {
+		PreferenceSetMethodSearch(){
+			super("findPreferenceSetMethods");
 		}
-	}
-	public void debugFunctionCall(){
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody())
-				continue;
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-			GlobalData gData = GlobalData.getInstance();
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
-		    	Stmt stmt = (Stmt)u;
-		    	if(!stmt.containsInvokeExpr())
-		    		continue;
-		    	InvokeExpr ie = stmt.getInvokeExpr();
-		    	if(ie instanceof InstanceInvokeExpr){
-		    		if(ie.getMethod().getName().equals("run") || 
-		    				ie.getMethod().getName().equals("start")){
-		    			System.out.println("UWUW: "+stmt);
-		    		}
-		    	}
-		    }
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			SootMethod method = s.getInvokeExpr().getMethod();
+			return method.getSignature().contains("android.content.SharedPreferences$Editor") &&
+					method.getName().contains("put");
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt s, int cnt){
+			System.out.println("PreferenceSetMethod:" + s.getInvokeExpr());
 		}
 	}
 	
-	public void extractDynamicTexts(){
-		startingTime = System.currentTimeMillis();
-		final String SET_TEXT_API = "setText";
-		final String SET_TITLE_API = "setTitle";
-		ResourceManager resMgr = ResourceManager.getInstance();
-		long startingTime = System.currentTimeMillis();
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			long now = System.currentTimeMillis();
-			if((now-startingTime)/1000 > 300){
-				NUDisplay.debug("spent more than 10 mins in extractDyanmicTexts, quit", "extractDynamicTexts");
-				return ;
-			}
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody())
-				continue;
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-			GlobalData gData = GlobalData.getInstance();
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
-		    	Stmt stmt = (Stmt)u;
-		    	if(!stmt.containsInvokeExpr())
-		    		continue;
-		    	InvokeExpr ie = stmt.getInvokeExpr();
-		    	if(ie.getMethod().getName().equals(SET_TEXT_API) ||
-		    			ie.getMethod().getName().equals(SET_TITLE_API)){
-		    		if(! (ie instanceof InstanceInvokeExpr) ) continue;
-		    		String texts = null;
-		    		if(ie.getMethod().getParameterCount() >= 1){
-		    			Type t = ie.getMethod().getParameterType(0);
-		    			if(t.getEscapedName().equals("int")){
-		    				//int id = Integer.valueOf(ie.getArg(0).toString());
-		    				Integer id = null;
-		    				Value arg = ie.getArg(0);
-		    				if(arg instanceof IntConstant)
-		    					id = ((IntConstant)arg).value;
-		    				
-		    				else if(arg instanceof Local)
-		    					id = ToolSet.findLastResIDAssignment(stmt, arg, cfg, new HashSet<Stmt>(), cfg.getMethodOf(stmt).getName());
-		    				
-		    				if(id != null)
-		    					texts = resMgr.getStringById(id);
-		    				NUDisplay.debug("extract texts1: "+id+" "+texts,"extractDynamicTexts");
-		    			}
-		    			else if(t.getEscapedName().equals("java.lang.CharSequence") ||
-		    					t.getEscapedName().equals("java.lang.String")){//String
-		    				Value arg = ie.getArg(0);
-		    				if(arg instanceof StringConstant){
-		    					texts = ((StringConstant) arg).value;
-		    				}
-		    				else if(arg instanceof Local)
-		    					texts = extractArgTextsHelper(stmt, arg);
-		    				
-		    				NUDisplay.debug("extract texts2: "+texts,"extractDynamicTexts");
-		    			}
-		    		}//get texts
-		    		else{
-		    			NUDisplay.debug("cannot resolve string","extractDynamicTexts");
-		    			continue;
-		    		}
-		    		
-		    		InstanceInvokeExpr iie = (InstanceInvokeExpr)ie;
-		    		Set<Stmt> rs = new HashSet<Stmt>();
-		    		NUDisplay.debug("DEBUGTEST: target: "+stmt +"@"+cfg.getMethodOf(stmt), null);
-		    		long time1 = System.currentTimeMillis();
-		    		ToolSet.setCFGStartingTime();
-		    		ToolSet.findViewDefStmt(stmt, iie.getBase(), new ArrayList<NUAccessPath>(),
-		    				cfg, new HashSet<Stmt>(), rs);
-		    		long diff = (System.currentTimeMillis()-time1)/1000;
-		    		NUDisplay.debug("Done in "+diff+"s", null);
-		    		for(Stmt r : rs){
-		    			NUDisplay.debug("DEBUGTEST: origin: "+r+"@"+cfg.getMethodOf(stmt), null);
-		    			if(texts!=null && texts.trim().length()>0)
-		    			gData.addTextToDyanmicView(r, texts, cfg);
-		    		}
-		    		NUDisplay.debug("", null);
-		    	}
-		    }
+	private class DebugFunctionCallSearch extends DeferredSearch {
+		DebugFunctionCallSearch(){
+			super("debugFunctionCall");
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt s){
+			return s.getInvokeExpr() instanceof InstanceInvokeExpr;
 		}
 		
+		@Override
+		void process(SootMethod m, Stmt stmt, int cnt){
+			System.out.println("UWUW: "+stmt);
+		}
 	}
 	
-	public void extractDynamicTextsFast(){
-		startingTime = System.currentTimeMillis();
-		final String SET_TEXT_API = "setText";
-		final String SET_TITLE_API = "setTitle";
-		ResourceManager resMgr = ResourceManager.getInstance();
-		long startingTime = System.currentTimeMillis();
-		GlobalData gData = GlobalData.getInstance();
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			long now = System.currentTimeMillis();
-			if((now-startingTime)/1000 > 300){
-				NUDisplay.debug("spent more than 10 mins in extractDyanmicTextsFast, quit", "extractDynamicTextsFast");
-				return ;
+	/**
+	 * Extracts the texts set via setText or setTitle. In the precise mode,
+	 * the texts are associated with the view the method is called on, in the
+	 * fast mode with the class containing the call.
+	 */
+	private class DynamicTextSearch extends DeferredSearch {
+		final ResourceManager resMgr = ResourceManager.getInstance();
+		final GlobalData gData = GlobalData.getInstance();
+		final boolean fast;
+		
+		DynamicTextSearch(boolean fast){
+			super(fast ? "extractDynamicTextsFast" : "extractDynamicTexts", getTextExtractionBudget());
+			this.fast = fast;
+		}
+		
+		@Override
+		boolean accept(SootMethod m, Stmt stmt){
+			return stmt.getInvokeExpr() instanceof InstanceInvokeExpr;
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt stmt, int cnt){
+			InvokeExpr ie = stmt.getInvokeExpr();
+			String texts = null;
+			if(fast)
+				NUDisplay.debug("TextsExtraction: "+stmt+"@"+m.getSignature(), null);
+			if(ie.getMethod().getParameterCount() >= 1){
+				Type t = ie.getMethod().getParameterType(0);
+				if(t.getEscapedName().equals("int")){
+					//int id = Integer.valueOf(ie.getArg(0).toString());
+					Integer id = null;
+					Value arg = ie.getArg(0);
+					if(arg instanceof IntConstant)
+						id = ((IntConstant)arg).value;
+					else if(arg instanceof Local)
+						id = findLastResIDAssignment(stmt, arg, cfg.getMethodOf(stmt).getName());
+					
+					if(id != null)
+						texts = resMgr.getStringById(id);
+					else if(arg instanceof Local)
+						texts = joinTexts(getStringsByIds(propagateIntegers(stmt, arg)));
+					NUDisplay.debug("extract texts1: "+id+" "+texts,"extractDynamicTexts");
+				}
+				else if(t.getEscapedName().equals("java.lang.CharSequence") ||
+						t.getEscapedName().equals("java.lang.String")){//String
+					Value arg = ie.getArg(0);
+					if(arg instanceof StringConstant)
+						texts = ((StringConstant) arg).value;
+					else if(arg instanceof Local)
+						texts = extractArgTextsHelper(stmt, arg);
+					if(texts == null && arg instanceof Local && constantPropagation != null)
+						texts = joinTexts(constantPropagation.getValues(stmt, arg).getStrings());
+					
+					NUDisplay.debug("extract texts2: "+texts,"extractDynamicTexts");
+				}
+			}//get texts
+			else{
+				NUDisplay.debug("cannot resolve string","extractDynamicTexts");
+				return;
 			}
-			SootMethod m = rdr.next().method();
-			SootClass cls = m.getDeclaringClass();
-			if(!m.hasActiveBody())
-				continue;
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
-		    	Stmt stmt = (Stmt)u;
-		    	if(!stmt.containsInvokeExpr())
-		    		continue;
-		    	InvokeExpr ie = stmt.getInvokeExpr();
-		    	if(ie.getMethod().getName().equals(SET_TEXT_API) ||
-		    			ie.getMethod().getName().equals(SET_TITLE_API)){
-		    		if(! (ie instanceof InstanceInvokeExpr) ) continue;
-		    		String texts = null;
-		    		NUDisplay.debug("TextsExtraction: "+stmt+"@"+m.getSignature(), null);
-		    		if(ie.getMethod().getParameterCount() >= 1){
-		    			Type t = ie.getMethod().getParameterType(0);
-		    			if(t.getEscapedName().equals("int")){
-		    				//int id = Integer.valueOf(ie.getArg(0).toString());
-		    				Integer id = null;
-		    				Value arg = ie.getArg(0);
-		    				if(arg instanceof IntConstant)
-		    					id = ((IntConstant)arg).value;
-		    				else if(arg instanceof Local)
-		    					id = ToolSet.findLastResIDAssignment(stmt, arg, cfg, new HashSet<Stmt>(), cfg.getMethodOf(stmt).getName());
-		    				
-		    				if(id != null)
-		    					texts = resMgr.getStringById(id);
-		    				NUDisplay.debug("extract texts1: "+id+" "+texts,"extractDynamicTexts");
-		    			}
-		    			else if(t.getEscapedName().equals("java.lang.CharSequence") ||
-		    					t.getEscapedName().equals("java.lang.String")){//String
-		    				Value arg = ie.getArg(0);
-		    				if(arg instanceof StringConstant)
-		    					texts = ((StringConstant) arg).value;
-		    				else if(arg instanceof Local)
-		    					texts = extractArgTextsHelper(stmt, arg);
-		    				
-		    				NUDisplay.debug("extract texts2: "+texts,"extractDynamicTexts");
-		    			}
-		    		}//get texts
-		    		else{
-		    			NUDisplay.debug("cannot resolve string","extractDynamicTexts");
-		    			continue;
-		    		}
-		    		
-		    		if(texts != null){
-		    			NUDisplay.debug("ExtractedDynamicTexts:"+texts, null);
-		    			gData.addStringToCls(cls.getName(), texts);
-		    		}
-		    		else{
-		    			NUDisplay.debug("Cannot resolve string:"+stmt+"@"+m.getSignature(), null);
-		    		}
-		    		
-		    		NUDisplay.debug("", null);
-		    	}
-		    }
+			
+			if(fast){
+				if(texts != null){
+					NUDisplay.debug("ExtractedDynamicTexts:"+texts, null);
+					gData.addStringToCls(m.getDeclaringClass().getName(), texts);
+				}
+				else{
+					NUDisplay.debug("Cannot resolve string:"+stmt+"@"+m.getSignature(), null);
+				}
+				NUDisplay.debug("", null);
+				return;
+			}
+			
+			InstanceInvokeExpr iie = (InstanceInvokeExpr)ie;
+			Set<Stmt> rs = new HashSet<Stmt>();
+			NUDisplay.debug("DEBUGTEST: target: "+stmt +"@"+cfg.getMethodOf(stmt), null);
+			long time1 = System.currentTimeMillis();
+			ToolSet.setCFGStartingTime();
+			ToolSet.findViewDefStmt(stmt, iie.getBase(), new ArrayList<NUAccessPath>(),
+					cfg, new HashSet<Stmt>(), rs);
+			long diff = (System.currentTimeMillis()-time1)/1000;
+			NUDisplay.debug("Done in "+diff+"s", null);
+			for(Stmt r : rs){
+				NUDisplay.debug("DEBUGTEST: origin: "+r+"@"+cfg.getMethodOf(stmt), null);
+				if(texts!=null && texts.trim().length()>0)
+				gData.addTextToDyanmicView(r, texts, cfg);
+			}
+			NUDisplay.debug("", null);
+		}
+	}
+	
+	private class URLAddressSearch extends DeferredSearch {
+		URLAddressSearch(){
+			super("extractURLAddress");
 		}
 		
-//		for(String clsName : gData.getClsNameWithStrings()){
-//			NUDisplay.debug("CLASS STRS:"+clsName+" ",null);
-//			for(String vals : gData.getClsStrings(clsName))
-//				NUDisplay.debug("  "+vals, null);
-//		}
+		@Override
+		boolean accept(SootMethod m, Stmt stmt){
+			return ToolSet.isInternetSinkStmt(stmt);
+		}
+		
+		@Override
+		void process(SootMethod m, Stmt stmt, int cnt){
+			NUDisplay.debug("Found one sink--:"+stmt +" @"+m.getName(), null);
+			GraphTool.displayGraph(MethodGraphCache.getInstance().getGraph(m), m);
+			InvokeExpr ie = stmt.getInvokeExpr();
+			if(ie.getMethod().getName().equals("<init>")){
+				handleURLInitMethod(stmt);
+			}
+			else if(ie.getMethod().getName().equals("execute") &&
+					ie.getMethod().getDeclaringClass().getName().equals("org.apache.http.client.HttpClient")){
+				Value arg = null;
+				try{
+					arg = stmt.getInvokeExpr().getArg(0);
+				}
+				catch(Exception e){
+					NUDisplay.error("failed to extract execute arg:"+stmt, "extractURLAddress");
+					return ;
+				}
+				hanldeHttpClientExecuteMethod(stmt, arg, HttpClientExecuteArgPhase.FIND_HTTPHOST, 
+						new HashSet<Stmt>(),new HashSet<Stmt>());
+			}
+			NUDisplay.debug("", null);
+		}
+	}
+	
+	private void scan(String calleeName, IInvokeStmtHandler handler){
+		InvokeStmtScanner scanner = new InvokeStmtScanner(budget);
+		if(calleeName == null)
+			scanner.addHandler(handler);
+		else
+			scanner.addHandler(calleeName, handler);
+		scanner.scan();
+	}
+	
+	/**
+	 * Runs all searches needed before the data flow analysis in a single
+	 * scan over the reachable methods. This is equivalent to calling
+	 * setBackgroundResourceProcessing, findViewByIdParamSearch,
+	 * setContentViewSearch, debugFunctionCall, extractURLAddress and
+	 * extractDynamicTextsFast one after the other.
+	 * @return The findViewById statements with non-constant arguments
+	 */
+	public Set<Stmt> keyInvokeExprSearch(){
+		FindViewByIdSearch findViewById = new FindViewByIdSearch();
+		DebugFunctionCallSearch debugFunctionCall = new DebugFunctionCallSearch();
+		DynamicTextSearch dynamicTexts = new DynamicTextSearch(true);
 		
+		InvokeStmtScanner scanner = new InvokeStmtScanner(budget);
+		scanner.addHandler(SET_BACKGROUND_RESOURCE, new SetBackgroundResourceSearch());
+		scanner.addHandler(FIND_VIEW_BY_ID, findViewById);
+		scanner.addHandler(SET_CONTENT_VIEW, new SetContentViewSearch());
+		scanner.addHandler("run", debugFunctionCall);
+		scanner.addHandler("start", debugFunctionCall);
+		scanner.addHandler(new URLAddressSearch());
+		scanner.addHandler(SET_TEXT_API, dynamicTexts);
+		scanner.addHandler(SET_TITLE_API, dynamicTexts);
+		scanner.scan();
+		return findViewById.rs;
+	}
+	
+	public Set<Stmt> findViewByIdParamSearch(){
+		//first search all findViewById statements
+		FindViewByIdSearch search = new FindViewByIdSearch();
+		scan(FIND_VIEW_BY_ID, search);
+		return search.rs;
+	}
+	
+	public Set<Stmt> setContentViewSearch(){
+		//first search all setContent statements
+		SetContentViewSearch search = new SetContentViewSearch();
+		scan(SET_CONTENT_VIEW, search);
+		return search.rs;
+	}
+	
+	public void setBackgroundResourceProcessing(){
+		scan(SET_BACKGROUND_RESOURCE, new SetBackgroundResourceSearch());
+	}
+	
+	public void searchMethodCall(String methodName, String className){
+		System.out.println("SearchMethodCall:"+methodName+"@"+className);
+		scan(methodName, new MethodCallSearch(className));
+	}
+	
+	//class name cannot be null and method name can be a part
+	public void searchMethodCallVaguely(String methodName, String className){
+		System.out.println("SearchMethodCall:"+methodName+"@"+className);
+		scan(null, new MethodCallVaguelySearch(methodName, className));
+	}
+	
+	public void findPreferenceSetMethods(){
+		scan(null, new PreferenceSetMethodSearch());
+	}
+	
+	public void debugFunctionCall(){
+		InvokeStmtScanner scanner = new InvokeStmtScanner(budget);
+		DebugFunctionCallSearch search = new DebugFunctionCallSearch();
+		scanner.addHandler("run", search);
+		scanner.addHandler("start", search);
+		scanner.scan();
+	}
+	
+	public void extractDynamicTexts(){
+		DynamicTextSearch search = new DynamicTextSearch(false);
+		InvokeStmtScanner scanner = new InvokeStmtScanner(search.searchBudget);
+		scanner.addHandler(SET_TEXT_API, search);
+		scanner.addHandler(SET_TITLE_API, search);
+		scanner.scan();
+	}
+	
+	public void extractDynamicTextsFast(){
+		DynamicTextSearch search = new DynamicTextSearch(true);
+		InvokeStmtScanner scanner = new InvokeStmtScanner(search.searchBudget);
+		scanner.addHandler(SET_TEXT_API, search);
+		scanner.addHandler(SET_TITLE_API, search);
+		scanner.scan();
 	}
 	
 	public void extractURLAddress(){
 		NUDisplay.debug("start extracting url's addresses", "extractURLAddress");
-		//GraphTool.displayAllMethodGraph();
-		for (QueueReader<MethodOrMethodContext> rdr =
-				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
-			SootMethod m = rdr.next().method();
-			if(!m.hasActiveBody())
-				continue;
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-			GlobalData gData = GlobalData.getInstance();
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
-		    	Stmt stmt = (Stmt)u;
-		    	if(!stmt.containsInvokeExpr())
-		    		continue;
-		    	if(ToolSet.isInternetSinkStmt(stmt)){
-		    		NUDisplay.debug("Found one sink--:"+stmt +" @"+m.getName(), null);
-		    		GraphTool.displayGraph(g, m);
-		    		InvokeExpr ie = stmt.getInvokeExpr();
-		    		if(ie.getMethod().getName().equals("<init>")){
-		    			handleURLInitMethod(stmt);
-		    		}
-		    		else if(ie.getMethod().getName().equals("execute") &&
-		    				ie.getMethod().getDeclaringClass().getName().equals("org.apache.http.client.HttpClient")){
-		    			Value arg = null;
-		    			try{
-		    				arg = stmt.getInvokeExpr().getArg(0);
-		    			}
-		    			catch(Exception e){
-		    				NUDisplay.error("failed to extract execute arg:"+stmt, "extractURLAddress");
-		    				continue ;
-		    			}
-		    			hanldeHttpClientExecuteMethod(stmt, arg, HttpClientExecuteArgPhase.FIND_HTTPHOST, 
-		    					new HashSet<Stmt>(),new HashSet<Stmt>());
-		    		}
-		    		NUDisplay.debug("", null);
-		    	}
-		    }
-		}
+		scan(null, new URLAddressSearch());
 	}
+	
 	enum HttpClientExecuteArgPhase {
 		FIND_HTTPHOST,
 		FIND_HTTPHOST_INIT,
@@ -622,7 +766,7 @@ public class ParameterSearch {
 							NUDisplay.error("method:"+ie.getMethod()+" doesn't have body", "hanldeHttpClientExecuteMethod");
 							continue;
 						}
-						UnitGraph g = new ExceptionalUnitGraph(ie.getMethod().getActiveBody());
+						UnitGraph g = MethodGraphCache.getInstance().getGraph(ie.getMethod());
 						GraphTool.displayGraph(g, ie.getMethod());
 						List<Unit> tails = g.getTails();
 						for(Unit t : tails){
@@ -665,7 +809,7 @@ public class ParameterSearch {
 							target = ie.getArg(0);
 							phase = HttpClientExecuteArgPhase.FIND_HTTPHOST_INIT_ARG;
 							if(sm.hasActiveBody())
-								GraphTool.displayGraph(new ExceptionalUnitGraph(sm.getActiveBody()), ie.getMethod());
+								GraphTool.displayGraph(MethodGraphCache.getInstance().getGraph(sm), ie.getMethod());
 							String str = null;
 							if(target instanceof StringConstant)
 								str = ((StringConstant) target).value;
@@ -697,7 +841,7 @@ public class ParameterSearch {
 			//predecessor or successor
 			if(!cfg.getMethodOf(stmt).hasActiveBody())
 				continue;
-			UnitGraph g = new ExceptionalUnitGraph(cfg.getMethodOf(stmt).getActiveBody());
+			UnitGraph g = MethodGraphCache.getInstance().getGraph(cfg.getMethodOf(stmt));
 			if(phase==HttpClientExecuteArgPhase.FIND_HTTPHOST_INIT ){
 				for(Unit u : g.getSuccsOf(stmt))
 					queue.add((Stmt)u);
@@ -801,6 +945,33 @@ public class ParameterSearch {
 		return ToolSet.findLastResStringAssignmentSingle(stmt, arg, cfg, new HashSet<Stmt>());
 	}
 	
+	private List<String> getStringsByIds(Set<Integer> ids){
+		List<String> texts = new ArrayList<String>();
+		for(Integer id : ids){
+			String text = ResourceManager.getInstance().getStringById(id);
+			if(text != null)
+				texts.add(text);
+		}
+		return texts;
+	}
+	
+	/**
+	 * Joins the possible texts found by the constant propagation the same
+	 * way the texts of a layout are joined
+	 * @return The joined texts, or null if there are no texts
+	 */
+	private String joinTexts(Collection<String> texts){
+		if(texts.isEmpty())
+			return null;
+		StringBuilder sb = new StringBuilder();
+		for(String text : texts){
+			if(sb.length() > 0)
+				sb.append(" || ");
+			sb.append(text);
+		}
+		return sb.toString();
+	}
+	
 //	private void findViewDefStmt(Stmt stmt, Value target, List<NUAccessPath> bases,
 //			BiDiInterproceduralCFG<Unit, SootMethod> cfg, Set<Stmt> visited, Set<Stmt> rs){
 //		long timeDiffSeconds = (System.currentTimeMillis() - startingTime)/1000;
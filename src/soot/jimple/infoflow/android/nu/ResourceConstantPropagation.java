@@ -0,0 +1,598 @@
+package soot.jimple.infoflow.android.nu;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.IntType;
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.CastExpr;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.FieldRef;
+import soot.jimple.IdentityStmt;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.NullConstant;
+import soot.jimple.ParameterRef;
+import soot.jimple.ReturnStmt;
+import soot.jimple.Stmt;
+import soot.jimple.StringConstant;
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+import soot.tagkit.IntegerConstantValueTag;
+import soot.tagkit.StringConstantValueTag;
+import soot.tagkit.Tag;
+import soot.util.queue.QueueReader;
+
+/**
+ * Interprocedural constant propagation for the integer and string constants
+ * passed to methods such as <code>findViewById</code>, <code>setContentView</code>
+ * or <code>setText</code>.
+ *
+ * The propagation is sparse. Instead of propagating facts along the control
+ * flow, it follows the def-use chains backwards from the value in question:
+ * locals to their definitions, parameters to the arguments at all call
+ * sites, call results to the return statements of all callees, and field
+ * reads to all writes of the same field. Every definition, parameter,
+ * return value and field is a node in a graph whose values are the union of
+ * the constants of its successors. The nodes are resolved with Tarjan's
+ * algorithm, so every node is expanded at most once, and all nodes of a
+ * strongly connected component, e.g. a loop or a recursion, share the same
+ * result. Results are memoized across queries.
+ *
+ * The propagation is context- and field-base-insensitive. If a value depends
+ * on anything other than constants, e.g. arithmetic, array contents or
+ * library methods, its result is marked as incomplete.
+ */
+public class ResourceConstantPropagation {
+
+	public static final int DEFAULT_MAX_VALUES = 64;
+
+	/**
+	 * The possible constant values of an expression
+	 */
+	public static class ConstantValues {
+
+		private final Set<Object> values;
+		private final boolean complete;
+
+		private ConstantValues(Set<Object> values, boolean complete) {
+			this.values = values;
+			this.complete = complete;
+		}
+
+		/**
+		 * Gets all possible constant values, i.e., Integers and Strings
+		 * @return The possible constant values
+		 */
+		public Set<Object> getValues() {
+			return values;
+		}
+
+		/**
+		 * Gets the possible integer constants, e.g. resource IDs
+		 * @return The possible integer constants
+		 */
+		public Set<Integer> getIntegers() {
+			Set<Integer> ints = new LinkedHashSet<Integer>();
+			for (Object value : values)
+				if (value instanceof Integer)
+					ints.add((Integer) value);
+			return ints;
+		}
+
+		/**
+		 * Gets the possible string constants
+		 * @return The possible string constants
+		 */
+		public Set<String> getStrings() {
+			Set<String> strings = new LinkedHashSet<String>();
+			for (Object value : values)
+				if (value instanceof String)
+					strings.add((String) value);
+			return strings;
+		}
+
+		/**
+		 * Gets whether the expression can only take the values in this set.
+		 * If not, the set only contains the constants that have been found.
+		 * @return True if the values are complete, otherwise false
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
+		public boolean isEmpty() {
+			return values.isEmpty();
+		}
+
+		@Override
+		public String toString() {
+			return values + (complete ? "" : " (incomplete)");
+		}
+
+	}
+
+	private static final ConstantValues NO_VALUES = new ConstantValues(
+			Collections.emptySet(), true);
+	private static final ConstantValues UNKNOWN = new ConstantValues(
+			Collections.emptySet(), false);
+
+	/**
+	 * The value of a parameter of a method, i.e., the arguments at all call
+	 * sites
+	 */
+	private static class ParameterNode {
+		private final SootMethod method;
+		private final int index;
+
+		private ParameterNode(SootMethod method, int index) {
+			this.method = method;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ParameterNode))
+				return false;
+			ParameterNode other = (ParameterNode) o;
+			return method == other.method && index == other.index;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * method.hashCode() + index;
+		}
+	}
+
+	/**
+	 * The return value of a method, i.e., the operands of all its return
+	 * statements
+	 */
+	private static class ReturnNode {
+		private final SootMethod method;
+
+		private ReturnNode(SootMethod method) {
+			this.method = method;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ReturnNode && method == ((ReturnNode) o).method;
+		}
+
+		@Override
+		public int hashCode() {
+			return method.hashCode();
+		}
+	}
+
+	/**
+	 * The state of a node while Tarjan's algorithm is running
+	 */
+	private static class Frame {
+		private final Object node;
+		private final int index;
+		private int lowLink;
+		private final List<Object> successors = new ArrayList<Object>();
+		private int nextSuccessor = 0;
+
+		// The values found so far. As long as the node has no constants of
+		// its own and only a single distinct successor result, that result
+		// is shared instead of being copied.
+		private ConstantValues shared = null;
+		private Set<Object> values = null;
+		private boolean complete = true;
+
+		private Frame(Object node, int index) {
+			this.node = node;
+			this.index = index;
+			this.lowLink = index;
+		}
+
+		private void materialize() {
+			if (values != null)
+				return;
+			values = new HashSet<Object>();
+			if (shared != null) {
+				values.addAll(shared.values);
+				complete &= shared.complete;
+				shared = null;
+			}
+		}
+
+		private void addConstant(Object value) {
+			materialize();
+			values.add(value);
+		}
+
+		private void markIncomplete() {
+			materialize();
+			complete = false;
+		}
+
+		private void merge(ConstantValues result) {
+			if (result == NO_VALUES || result == shared)
+				return;
+			if (values == null && shared == null) {
+				shared = result;
+				return;
+			}
+			materialize();
+			values.addAll(result.values);
+			complete &= result.complete;
+		}
+	}
+
+	private final BiDiInterproceduralCFG<Unit, SootMethod> cfg;
+	private final MethodGraphCache graphCache = MethodGraphCache.getInstance();
+	private int maxValues = DEFAULT_MAX_VALUES;
+
+	private final Map<Object, ConstantValues> results = new HashMap<Object, ConstantValues>();
+	private Map<SootField, List<AssignStmt>> fieldWrites = null;
+
+	/**
+	 * Creates a new constant propagation
+	 * @param cfg The interprocedural control flow graph of the app
+	 */
+	public ResourceConstantPropagation(BiDiInterproceduralCFG<Unit, SootMethod> cfg) {
+		this.cfg = cfg;
+	}
+
+	/**
+	 * Sets the maximum number of values tracked per node. Nodes with more
+	 * possible values are treated like values that are not constant.
+	 * @param maxValues The maximum number of values per node
+	 */
+	public void setMaxValues(int maxValues) {
+		this.maxValues = maxValues;
+	}
+
+	/**
+	 * Gets the possible constant values of the given value at the given
+	 * statement
+	 * @param stmt The statement at which the value is used
+	 * @param value The value, usually an argument of the invocation in the
+	 * given statement
+	 * @return The possible constant values
+	 */
+	public ConstantValues getValues(Stmt stmt, Value value) {
+		Frame query = new Frame(null, -1);
+		Set<Object> successors = new LinkedHashSet<Object>();
+		addOperand(query, successors, stmt, value);
+		for (Object successor : successors)
+			query.merge(resolve(successor));
+		return toResult(query);
+	}
+
+	/**
+	 * Gets the possible constant values of the given argument of the
+	 * invocation in the given statement
+	 * @param stmt The statement containing the invocation
+	 * @param argIndex The index of the argument
+	 * @return The possible constant values
+	 */
+	public ConstantValues getArgumentValues(Stmt stmt, int argIndex) {
+		return getValues(stmt, stmt.getInvokeExpr().getArg(argIndex));
+	}
+
+	private ConstantValues toResult(Frame frame) {
+		if (frame.values == null) {
+			if (frame.shared != null)
+				return frame.shared;
+			return frame.complete ? NO_VALUES : UNKNOWN;
+		}
+		if (frame.values.isEmpty())
+			return frame.complete ? NO_VALUES : UNKNOWN;
+		return new ConstantValues(Collections.unmodifiableSet(frame.values), frame.complete);
+	}
+
+	/**
+	 * Resolves the given node and all nodes reachable from it using an
+	 * iterative version of Tarjan's algorithm for strongly connected
+	 * components
+	 * @param root The node to resolve
+	 * @return The possible constant values of the given node
+	 */
+	private ConstantValues resolve(Object root) {
+		ConstantValues rootResult = results.get(root);
+		if (rootResult != null)
+			return rootResult;
+
+		Map<Object, Frame> frames = new HashMap<Object, Frame>();
+		Deque<Frame> callStack = new ArrayDeque<Frame>();
+		Deque<Frame> componentStack = new ArrayDeque<Frame>();
+		int index = 0;
+
+		Frame rootFrame = expand(root, index++);
+		frames.put(root, rootFrame);
+		callStack.push(rootFrame);
+		componentStack.push(rootFrame);
+
+		while (!callStack.isEmpty()) {
+			Frame frame = callStack.peek();
+			if (frame.nextSuccessor < frame.successors.size()) {
+				Object successor = frame.successors.get(frame.nextSuccessor++);
+				ConstantValues result = results.get(successor);
+				if (result != null) {
+					frame.merge(result);
+					continue;
+				}
+				Frame successorFrame = frames.get(successor);
+				if (successorFrame == null) {
+					successorFrame = expand(successor, index++);
+					frames.put(successor, successorFrame);
+					callStack.push(successorFrame);
+					componentStack.push(successorFrame);
+				}
+				else
+					frame.lowLink = Math.min(frame.lowLink, successorFrame.index);
+				continue;
+			}
+
+			// All successors are done
+			callStack.pop();
+			Frame parent = callStack.peek();
+			if (frame.lowLink < frame.index) {
+				// The node is part of a larger component whose root is
+				// further up the stack
+				parent.lowLink = Math.min(parent.lowLink, frame.lowLink);
+				continue;
+			}
+
+			// The node is the root of a component, which is now complete
+			List<Frame> component = new ArrayList<Frame>();
+			Frame member;
+			do {
+				member = componentStack.pop();
+				component.add(member);
+			} while (member != frame);
+
+			ConstantValues result;
+			if (component.size() == 1)
+				result = toResult(frame);
+			else {
+				Frame union = new Frame(null, -1);
+				for (Frame f : component) {
+					union.merge(toResult(f));
+					if (union.values != null && union.values.size() > maxValues)
+						break;
+				}
+				result = toResult(union);
+			}
+			if (result.values.size() > maxValues)
+				result = UNKNOWN;
+			for (Frame f : component) {
+				results.put(f.node, result);
+				frames.remove(f.node);
+			}
+			if (parent != null)
+				parent.merge(result);
+			else
+				rootResult = result;
+		}
+		return rootResult;
+	}
+
+	/**
+	 * Creates the frame for the given node. The constants of the node are
+	 * added to the frame directly, the nodes it depends on become its
+	 * successors.
+	 */
+	private Frame expand(Object node, int index) {
+		Frame frame = new Frame(node, index);
+		Set<Object> successors = new LinkedHashSet<Object>();
+		if (node instanceof ParameterNode)
+			expandParameter(frame, successors, (ParameterNode) node);
+		else if (node instanceof ReturnNode)
+			expandReturn(frame, successors, (ReturnNode) node);
+		else if (node instanceof SootField)
+			expandField(frame, successors, (SootField) node);
+		else
+			expandDefinition(frame, successors, (DefinitionStmt) node);
+		frame.successors.addAll(successors);
+		return frame;
+	}
+
+	private void expandDefinition(Frame frame, Set<Object> successors, DefinitionStmt def) {
+		if (def instanceof IdentityStmt) {
+			Value rop = def.getRightOp();
+			if (rop instanceof ParameterRef)
+				successors.add(new ParameterNode(cfg.getMethodOf(def),
+						((ParameterRef) rop).getIndex()));
+			else
+				frame.markIncomplete();
+			return;
+		}
+
+		Value rop = def.getRightOp();
+		if (rop instanceof CastExpr)
+			rop = ((CastExpr) rop).getOp();
+		if (rop instanceof FieldRef)
+			successors.add(((FieldRef) rop).getField());
+		else if (rop instanceof InvokeExpr)
+			expandInvocation(frame, successors, def, (InvokeExpr) rop);
+		else
+			addOperand(frame, successors, def, rop);
+	}
+
+	private void expandInvocation(Frame frame, Set<Object> successors, Stmt stmt, InvokeExpr ie) {
+		// Boxing and unboxing do not change the value
+		Value operand = getPassThroughOperand(ie);
+		if (operand != null) {
+			addOperand(frame, successors, stmt, operand);
+			return;
+		}
+
+		Collection<SootMethod> callees = cfg.getCalleesOfCallAt(stmt);
+		if (callees == null || callees.isEmpty()) {
+			frame.markIncomplete();
+			return;
+		}
+		for (SootMethod target : callees) {
+			if (target.isConcrete() && target.hasActiveBody())
+				successors.add(new ReturnNode(target));
+			else
+				frame.markIncomplete();
+		}
+	}
+
+	/**
+	 * Gets the operand of a call that returns its operand unchanged. These
+	 * are Integer.valueOf(int), Integer.intValue(), and String.valueOf(Object)
+	 * and toString() on strings. Conversions between integers and strings,
+	 * e.g., String.valueOf(int) or Integer.valueOf(String), change the kind
+	 * of the value and are thus not passed through.
+	 * @param ie The invocation
+	 * @return The operand whose value is returned by the call, or null if
+	 * the call is not known to return its operand
+	 */
+	private static Value getPassThroughOperand(InvokeExpr ie) {
+		SootMethod callee = ie.getMethod();
+		String className = callee.getDeclaringClass().getName();
+		String returnType = callee.getReturnType().toString();
+		if (className.equals("java.lang.Integer")) {
+			if (callee.getName().equals("valueOf") && callee.isStatic()
+					&& callee.getParameterCount() == 1
+					&& callee.getParameterType(0) instanceof IntType
+					&& returnType.equals("java.lang.Integer"))
+				return ie.getArg(0);
+			if (callee.getName().equals("intValue") && ie instanceof InstanceInvokeExpr
+					&& callee.getParameterCount() == 0
+					&& callee.getReturnType() instanceof IntType)
+				return ((InstanceInvokeExpr) ie).getBase();
+		}
+		else if (className.equals("java.lang.String") && returnType.equals("java.lang.String")) {
+			if (callee.getName().equals("valueOf") && callee.isStatic()
+					&& callee.getParameterCount() == 1
+					&& callee.getParameterType(0).toString().equals("java.lang.Object")
+					&& ie.getArg(0).getType().toString().equals("java.lang.String"))
+				return ie.getArg(0);
+			if (callee.getName().equals("toString") && ie instanceof InstanceInvokeExpr
+					&& callee.getParameterCount() == 0)
+				return ((InstanceInvokeExpr) ie).getBase();
+		}
+		return null;
+	}
+
+	private void expandParameter(Frame frame, Set<Object> successors, ParameterNode node) {
+		Collection<Unit> callers = cfg.getCallersOf(node.method);
+		if (callers == null || callers.isEmpty()) {
+			// Entry points and callbacks are called by the framework
+			frame.markIncomplete();
+			return;
+		}
+		for (Unit caller : callers) {
+			Stmt callStmt = (Stmt) caller;
+			if (!callStmt.containsInvokeExpr())
+				continue;
+			InvokeExpr ie = callStmt.getInvokeExpr();
+			if (node.index < ie.getArgCount())
+				addOperand(frame, successors, callStmt, ie.getArg(node.index));
+			else
+				frame.markIncomplete();
+		}
+	}
+
+	private void expandReturn(Frame frame, Set<Object> successors, ReturnNode node) {
+		for (Unit u : node.method.getActiveBody().getUnits())
+			if (u instanceof ReturnStmt)
+				addOperand(frame, successors, (Stmt) u, ((ReturnStmt) u).getOp());
+	}
+
+	private void expandField(Frame frame, Set<Object> successors, SootField field) {
+		boolean hasConstant = false;
+		for (Tag tag : field.getTags()) {
+			if (tag instanceof IntegerConstantValueTag) {
+				frame.addConstant(((IntegerConstantValueTag) tag).getIntValue());
+				hasConstant = true;
+			}
+			else if (tag instanceof StringConstantValueTag) {
+				frame.addConstant(((StringConstantValueTag) tag).getStringValue());
+				hasConstant = true;
+			}
+		}
+
+		List<AssignStmt> writes = getFieldWrites().get(field);
+		if (writes != null)
+			for (AssignStmt write : writes)
+				addOperand(frame, successors, write, write.getRightOp());
+		else if (!hasConstant)
+			frame.markIncomplete();
+	}
+
+	/**
+	 * Adds the given operand to the node. Constants are added to the node's
+	 * values directly, locals are followed to their definitions.
+	 */
+	private void addOperand(Frame frame, Set<Object> successors, Stmt stmt, Value value) {
+		if (value instanceof IntConstant)
+			frame.addConstant(((IntConstant) value).value);
+		else if (value instanceof StringConstant)
+			frame.addConstant(((StringConstant) value).value);
+		else if (value instanceof NullConstant)
+			return;
+		else if (value instanceof Local) {
+			SootMethod m = cfg.getMethodOf(stmt);
+			if (m == null || !m.hasActiveBody()) {
+				frame.markIncomplete();
+				return;
+			}
+			List<Unit> defs = graphCache.getMethodGraph(m).getLocalDefs()
+					.getDefsOfAt((Local) value, stmt);
+			if (defs.isEmpty())
+				frame.markIncomplete();
+			successors.addAll(defs);
+		}
+		else
+			frame.markIncomplete();
+	}
+
+	/**
+	 * Indexes the writes to fields in all reachable methods. The index is
+	 * only built once the first field is resolved.
+	 */
+	private Map<SootField, List<AssignStmt>> getFieldWrites() {
+		if (fieldWrites != null)
+			return fieldWrites;
+
+		fieldWrites = new HashMap<SootField, List<AssignStmt>>();
+		for (QueueReader<MethodOrMethodContext> rdr =
+				Scene.v().getReachableMethods().listener(); rdr.hasNext(); ) {
+			SootMethod m = rdr.next().method();
+			if (!m.hasActiveBody())
+				continue;
+			for (Unit u : m.getActiveBody().getUnits()) {
+				if (!(u instanceof AssignStmt))
+					continue;
+				AssignStmt assign = (AssignStmt) u;
+				if (!(assign.getLeftOp() instanceof FieldRef))
+					continue;
+				SootField field = ((FieldRef) assign.getLeftOp()).getField();
+				List<AssignStmt> writes = fieldWrites.get(field);
+				if (writes == null) {
+					writes = new ArrayList<AssignStmt>();
+					fieldWrites.put(field, writes);
+				}
+				writes.add(assign);
+			}
+		}
+		return fieldWrites;
+	}
+
+}
@@ -1,23 +1,12 @@
 package soot.jimple.infoflow.android.nu;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
 import nu.NUDisplay;
 import nu.NUSootConfig;
 import soot.MethodOrMethodContext;
@@ -31,7 +20,10 @@ import soot.jimple.InvokeExpr;
 import soot.jimple.InvokeStmt;
 import soot.jimple.Stmt;
 import soot.jimple.StringConstant;
+import soot.jimple.infoflow.android.AnalysisSession;
+import soot.jimple.infoflow.android.data.IntMap;
 import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.android.nu.ResourceModelCache.ResourceSnapshot;
 import soot.jimple.infoflow.android.resources.ARSCFileParser;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
 import soot.jimple.infoflow.nu.IResourceManager;
@@ -42,36 +34,87 @@ import soot.util.queue.QueueReader;
 public class ResourceManager implements IResourceManager{
 	final static boolean debug = true;
 	private static ResourceManager resMgr = null;
+	private static ResourceModelCache resourceCache = null;
+	private static int layoutParserThreads = 1;
+	private static AnalysisSession session = null;
 	public static ResourceManager getInstance(){
 		if(resMgr == null)
 			resMgr = new ResourceManager();
 		return resMgr;
 	}
 	
+	/**
+	 * Sets the on-disk cache from which the resources are loaded instead of
+	 * parsing the APK file again. Must be called before the first call to
+	 * getInstance().
+	 * @param cache The cache to use, or null to always parse the APK file
+	 */
+	public static void setResourceModelCache(ResourceModelCache cache){
+		resourceCache = cache;
+	}
+	
+	/**
+	 * Sets the number of threads to use for parsing the layout files. Must be
+	 * called before the first call to getInstance().
+	 * @param threads The number of threads, values smaller than or equal to
+	 * one parse all layout files sequentially
+	 */
+	public static void setLayoutParserThreads(int threads){
+		layoutParserThreads = threads;
+	}
+	
+	/**
+	 * Sets the session of the app from which the manifest and the resources
+	 * are taken instead of parsing the APK file again. Must be called before
+	 * the first call to getInstance().
+	 * @param analysisSession The session of the app, or null to parse the
+	 * APK file
+	 */
+	public static void setAnalysisSession(AnalysisSession analysisSession){
+		session = analysisSession;
+	}
+	
 	private ARSCFileParser resParser;
 	private ValueResourceParser valResParser;
 	private Map<Integer, LayoutTextTreeNode> id2Node;
 	private Map<String, LayoutTextTreeNode> layouts;
 	private Map<String, Set<Integer>> xmlEventHandler2ViewIds;
 	private List<ARSCFileParser.ResPackage> resourcePackages;
+	//only used if the resources have been loaded from the cache
+	private Map<String, Integer> qualifiedNameIDMap;
 	private String appPackageName;
 	
 	private class ValueResourceParser {
 		private final Map<String, Integer> decompiledValuesNameIDMap = new HashMap<String, Integer>();
-		private final Map<Integer, String> decompiledIDNameMap = new HashMap<Integer, String>();
-		private final Map<Integer, String> decompiledIDStringMap = new HashMap<Integer, String>();
+		private final IntMap<String> decompiledIDNameMap = new IntMap<String>();
+		private final IntMap<String> decompiledIDStringMap = new IntMap<String>();
 		private final Map<String, String> decompiledNameStringMap = new HashMap<String, String>();
 		private final Map<String, Set<String>> clsStringMap = new HashMap<String, Set<String>>();
-		private final String tmpDirPath;
-		private final String apkToolPath;
-		private final String apkFileLocation;
 		
-		public ValueResourceParser(String apkFileLocation, String apkToolPath, String tmpDirPath){
-			this.apkToolPath = apkToolPath;
-			this.tmpDirPath = tmpDirPath;
-			this.apkFileLocation = apkFileLocation;
-			extractDataFromCompiledValueResources(this.apkFileLocation);
-			//getAllStrings();
+		public ValueResourceParser(ARSCFileParser resParser){
+			ValueResourceResolver resolver = new ValueResourceResolver(resParser);
+			decompiledValuesNameIDMap.putAll(resolver.getNameIDMap());
+			decompiledIDNameMap.putAll(resolver.getIDNameMap());
+			decompiledIDStringMap.putAll(resolver.getIDStringMap());
+			decompiledNameStringMap.putAll(resolver.getNameStringMap());
+		}
+		
+		public ValueResourceParser(ResourceSnapshot snapshot){
+			decompiledValuesNameIDMap.putAll(snapshot.nameIDMap);
+			decompiledIDNameMap.putAll(snapshot.idNameMap);
+			decompiledIDStringMap.putAll(snapshot.idStringMap);
+			decompiledNameStringMap.putAll(snapshot.nameStringMap);
+		}
+		
+		public void fillSnapshot(ResourceSnapshot snapshot){
+			snapshot.nameIDMap.putAll(decompiledValuesNameIDMap);
+			snapshot.idNameMap.putAll(decompiledIDNameMap);
+			snapshot.idStringMap.putAll(decompiledIDStringMap);
+			snapshot.nameStringMap.putAll(decompiledNameStringMap);
+		}
+		
+		public String getResourceName(int id){
+			return decompiledIDNameMap.get(id);
 		}
 		
 		public Integer getResourceIDFromValueResourceFile(String key){
@@ -82,7 +125,7 @@ public class ResourceManager implements IResourceManager{
 			String val = decompiledIDStringMap.get(id);
 			String name = decompiledIDNameMap.get(id);
 			String val2 = decompiledNameStringMap.get(name);
-			if(val2 == null)
+			if(val2 == null || val2.equals(val))
 				return val;
 			else if(val == null)
 				return val2;
@@ -96,79 +139,6 @@ public class ResourceManager implements IResourceManager{
 						"displayDecompiledValueIDPairs");
 		}
 		
-		private String getCompiledPackagePath(String filename){
-			String fname = filename.toLowerCase();
-			if(fname.contains(File.separator)){
-				int idx = fname.lastIndexOf(File.separator);
-				fname = fname.substring(idx+1, fname.length());
-			}
-			if(fname.endsWith(".apk"))
-				fname = fname.substring(0, fname.length()-4);
-			String path = tmpDirPath+fname;
-			return path;
-		}
-		
-		private void decompileApk(String filename, String path){
-			try{
-				String cmd = apkToolPath+" d "+filename +" -o "+path;
-				NUDisplay.debug("Execute cmd: "+cmd, "decompileApk");
-				Process p = Runtime.getRuntime().exec(cmd);
-			    p.waitFor(); 
-			    BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			    String line = "";
-			    while((line = reader.readLine()) != null)
-			    	NUDisplay.debug("Decompiling APK: "+line,"decompileApk");
-			}
-			catch(Exception e){
-				NUDisplay.error("Error in compiling apk:"+e.toString(), "decompileApk");
-			}
-		}
-		
-		private void extractDataFromCompiledValueResources(String filename){
-			File apkF = new File(filename);
-			if (!apkF.exists())
-				throw new RuntimeException("file '" + filename + "' does not exist!");
-			try {
-				String path = getCompiledPackagePath(filename);
-				String valuePath = path + "/res/values/";
-				File f = new File(path);
-				if(!f.exists() || !f.isDirectory())
-					decompileApk(filename, path);
-				f = new File(valuePath);
-				if(!f.exists() || !f.isDirectory()){
-					System.out.println("failed to compile apk file: "+filename);
-					return ;
-				}
-			    
-			    SAXParserFactory factory = SAXParserFactory.newInstance();
-				SAXParser saxParser = factory.newSAXParser();
-				DefaultHandler handler = getValueResouceHandler();
-			    for(String xmlFile : f.list()){
-			    	xmlFile = f.getAbsolutePath()+"/"+xmlFile;
-			    	if(!xmlFile.toLowerCase().endsWith(".xml"))
-			    		continue;
-			    	InputStream is = new FileInputStream(xmlFile);
-			    	System.out.println("analyzing file "+xmlFile);
-			    	try{
-			    		saxParser.parse(is, handler);
-			    	}
-			    	catch(Exception e){
-			    		System.out.println("Error analyzing file."+e.toString());
-			    	}
-			    }
-
-			}
-			catch (Exception e) {
-				System.err.println("Error extractNameIDPairsFromCompiledValueResources in apk "
-						+ filename + ": " + e);
-				e.printStackTrace();
-				if (e instanceof RuntimeException)
-					throw (RuntimeException) e;
-				else
-					throw new RuntimeException(e);
-			}
-		}
-		
 		public void extractStringsFromCodes(){
 			try{
 				for (QueueReader<MethodOrMethodContext> rdr =
@@ -246,70 +216,6 @@ public class ResourceManager implements IResourceManager{
 		public Set<String> getStringsInCode(String clsName){
 			return clsStringMap.get(clsName);
 		}
-		
-		private DefaultHandler getValueResouceHandler(){
-			DefaultHandler handler = new DefaultHandler() {
-				String nameField = "";
-				Integer idField = -1;
-				public void startElement(String uri, String localName,String qName,
-			                Attributes attributes) throws SAXException {
-					String name = attributes.getValue("name");
-					String id = attributes.getValue("id");
-					Integer idInt = null;
-					if(id!=null){
-						try{
-							name = name.trim();
-							if(id.toLowerCase().startsWith("0x")){
-								Long tt = Long.parseLong(id.substring(2, id.length()), 16);
-								idInt = tt.intValue();
-							}
-							else
-								idInt = Integer.valueOf(id);
-							idField = idInt;
-						}
-						catch(Exception e){
-							System.err.println("Error in converting integer: "+name+" "+id+" "+e.toString());
-						}
-					}
-					if(name!=null && idInt!=null){
-						decompiledValuesNameIDMap.put(name, idInt);
-						decompiledIDNameMap.put(idInt, name);
-					}
-					String qNameField = qName;
-					nameField = name;
-				}
-
-				public void endElement(String uri, String localName,
-					String qName) throws SAXException {}
-
-				public void characters(char ch[], int start, int length) throws SAXException {
-					try{
-						
-						String str = new String(ch, start, length);
-						str = str.trim();
-						if(str.length()>0 && str.startsWith("@")){
-							NUDisplay.debug("ignore @ str:"+str+" id/name"+":"+nameField+"|"+idField, null);
-							str = "";
-						}
-						
-						if(str.length()>0 && idField!=-1){
-							decompiledIDStringMap.put(idField, str);
-							idField = -1;
-						}
-						else if(str.length()>0 && nameField!=null){
-							decompiledNameStringMap.put(nameField, str);
-							nameField = null;
-						}
-						
-					}
-					catch(Exception e){
-						System.out.println("Error in parsing values."+e);
-					}
-					
-				}
-			};
-			   return handler;
-		}
 	}
 	
 	private ResourceManager(){
@@ -318,8 +224,12 @@ public class ResourceManager implements IResourceManager{
 		ResourceManager resMgr = null;
 		this.appPackageName = null;
 		try{
-			processMan = new ProcessManifest(nuConfig.getFullAPKFilePath());
-			this.appPackageName = processMan.getPackageName();
+			if(session != null)
+				this.appPackageName = session.getAppPackageName();
+			else{
+				processMan = new ProcessManifest(nuConfig.getFullAPKFilePath());
+				this.appPackageName = processMan.getPackageName();
+			}
 		}
 		catch(Exception e){
 			NUDisplay.error("failed to extract app package name: "+e, "ResourceManager");
@@ -350,27 +260,80 @@ public class ResourceManager implements IResourceManager{
 			NUDisplay.error("failed to initialize RespirceManager: null parameter", "init");
 			System.exit(1);
 		}
-		resParser = new ARSCFileParser();
+		String digest = null;
+		if(resourceCache != null){
+			try{
+				digest = resourceCache.getDigest(apkFileLocation);
+				ResourceSnapshot snapshot = resourceCache.loadResources(digest);
+				if(snapshot != null){
+					NUDisplay.info("loaded resources of "+apkFileLocation+" from cache "+digest, "init");
+					valResParser = new ValueResourceParser(snapshot);
+					qualifiedNameIDMap = snapshot.qualifiedNameIDMap;
+					id2Node = snapshot.id2Node;
+					layouts = snapshot.layouts;
+					xmlEventHandler2ViewIds = snapshot.xmlEventHandler2ViewIds;
+					displayResources();
+					return;
+				}
+			}
+			catch(IOException e){
+				NUDisplay.error("failed to compute digest of "+apkFileLocation+": "+e, "init");
+			}
+		}
+		
 		try {
-			resParser.parse(apkFileLocation);
+			if(session != null)
+				resParser = session.getResourceParser();
+			else{
+				resParser = new ARSCFileParser();
+				resParser.parse(apkFileLocation);
+			}
 		} catch (Exception e) {
 			System.err.println("NULIST: failed to init FlowTriggerEventAnalyzer: ARSCFileParser");
 			e.printStackTrace();
+			if(resParser == null)
+				resParser = new ARSCFileParser();
 		}
 		resourcePackages = resParser.getPackages();
-		valResParser = new ValueResourceParser(apkFileLocation, apkToolPath, tmpDirPath);
+		valResParser = new ValueResourceParser(resParser);
 		valResParser.displayDecompiledValueIDPairs();
 		
 		LayoutFileParserForTextExtraction lfpTE = new LayoutFileParserForTextExtraction(appPackageName, resParser, apkToolPath, tmpDirPath);
+		lfpTE.setThreads(layoutParserThreads);
 		lfpTE.parseLayoutFileForTextExtraction(apkFileLocation);
 		
 		id2Node = lfpTE.getId2Node();
 		layouts = lfpTE.getTextTreeMap();
 		xmlEventHandler2ViewIds = lfpTE.getXmlEventHandler2ViewIds();
 		
+		if(digest != null)
+			resourceCache.storeResources(digest, createSnapshot());
+		
 		displayResources();
 	}
 	
+	private ResourceSnapshot createSnapshot(){
+		ResourceSnapshot snapshot = new ResourceSnapshot();
+		valResParser.fillSnapshot(snapshot);
+		for(ARSCFileParser.ResPackage pkg : resourcePackages)
+			for(ARSCFileParser.ResType type : pkg.getDeclaredTypes())
+				for(ARSCFileParser.ResConfig config : type.getConfigurations())
+					for(AbstractResource res : config.getResources()){
+						String key = getQualifiedName(pkg.getPackageName(), type.getTypeName(), res.getResourceName());
+						//same as findResource: the first package and configuration wins
+						if(!snapshot.qualifiedNameIDMap.containsKey(key))
+							snapshot.qualifiedNameIDMap.put(key, res.getResourceID());
+					}
+		snapshot.layouts.putAll(layouts);
+		snapshot.id2Node.putAll(id2Node);
+		snapshot.xmlEventHandler2ViewIds.putAll(xmlEventHandler2ViewIds);
+		return snapshot;
+	}
+	
+	private String getQualifiedName(String packageName, String type, String name){
+		return packageName+":"+type+"/"+name;
+	}
+	
 	public LayoutTextTreeNode getNodeById(int id){
 		return id2Node.get(id);
 	}
@@ -392,9 +355,15 @@ public class ResourceManager implements IResourceManager{
 		return node.textObj.toString();
 	}
 	public LayoutTextTreeNode getLayoutById(int id){
-		AbstractResource ar = resParser.findResource(id);
-		if (ar == null) return null;
-		String layoutName = ar.getResourceName();
+		String layoutName;
+		if(resParser == null)
+			layoutName = valResParser.getResourceName(id);
+		else{
+			AbstractResource ar = resParser.findResource(id);
+			if (ar == null) return null;
+			layoutName = ar.getResourceName();
+		}
+		if (layoutName == null) return null;
 		return layouts.get(layoutName);
 	}
 	public String getStringById(int id){
@@ -420,6 +389,11 @@ public class ResourceManager implements IResourceManager{
 
 	@Override
 	public Integer getResourceId(String resName, String resID, String packageName) {
+		if(qualifiedNameIDMap != null){
+			if(packageName == null || packageName.isEmpty())
+				packageName = this.appPackageName;
+			return qualifiedNameIDMap.get(getQualifiedName(packageName, resID, resName));
+		}
 		AbstractResource res = findResource(resName, resID, packageName);
 		if(res != null){
 			return res.getResourceID();
@@ -438,11 +412,9 @@ public class ResourceManager implements IResourceManager{
 				continue;
 
 			// We have found a suitable package, now look for the resource
-			for (ARSCFileParser.ResType type : pkg.getDeclaredTypes())
-				if (type.getTypeName().equals(resID)) {
-					AbstractResource res = type.getFirstResource(resName);
-					return res;
-				}
+			ARSCFileParser.ResType type = pkg.getType(resID);
+			if (type != null)
+				return type.getFirstResource(resName);
 		}
 		return null;
 	}
@@ -0,0 +1,499 @@
+package soot.jimple.infoflow.android.nu;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import nu.NUDisplay;
+import soot.jimple.infoflow.android.data.AndroidMethod;
+import soot.jimple.infoflow.android.data.IntMap;
+import soot.jimple.infoflow.android.resources.LayoutControl;
+import soot.jimple.infoflow.data.SootMethodAndClass;
+
+/**
+ * On-disk cache for the models that are derived from the resources of an APK
+ * file. Entries are keyed by the SHA-256 digest of the APK file, so the same
+ * app is recognized regardless of its file name and location, and different
+ * versions of an app with the same file name never collide.
+ *
+ * Two kinds of snapshots are stored in a compact binary format:
+ * <ul>
+ * <li>{@link ResourceSnapshot}: the value resource tables, the layout text
+ * trees and the XML event handlers used by the {@link ResourceManager}</li>
+ * <li>{@link EntryPointSnapshot}: the entry points and callback methods
+ * found by the callback analysis and the user controls of the layout files.
+ * These also depend on the callback configuration, which therefore is part
+ * of the key.</li>
+ * </ul>
+ * Files are written to a temporary file first and then atomically moved
+ * into place, so that several worker processes can share the same cache
+ * directory.
+ */
+public class ResourceModelCache {
+
+	private static final int MAGIC = 0x4E55524D; // "NURM"
+	private static final int VERSION = 3;
+
+	private static final String RESOURCE_SUFFIX = ".res";
+	private static final String ENTRYPOINT_SUFFIX = ".cb";
+
+	/**
+	 * The resource data of an app
+	 */
+	public static class ResourceSnapshot {
+		public final Map<String, Integer> nameIDMap = new HashMap<String, Integer>();
+		public final Map<Integer, String> idNameMap = new IntMap<String>();
+		public final Map<Integer, String> idStringMap = new IntMap<String>();
+		public final Map<String, String> nameStringMap = new HashMap<String, String>();
+		/** package:type/name => resource ID */
+		public final Map<String, Integer> qualifiedNameIDMap = new HashMap<String, Integer>();
+		public final Map<String, LayoutTextTreeNode> layouts = new HashMap<String, LayoutTextTreeNode>();
+		public final Map<Integer, LayoutTextTreeNode> id2Node = new IntMap<LayoutTextTreeNode>();
+		public final Map<String, Set<Integer>> xmlEventHandler2ViewIds = new HashMap<String, Set<Integer>>();
+	}
+
+	/**
+	 * The results of the entry point and callback analysis of an app
+	 */
+	public static class EntryPointSnapshot {
+		public String appPackageName;
+		public final Set<String> entrypoints = new HashSet<String>();
+		public final Map<String, Set<SootMethodAndClass>> callbackMethods =
+				new HashMap<String, Set<SootMethodAndClass>>();
+		public final Map<Integer, LayoutControl> userControls = new IntMap<LayoutControl>();
+	}
+
+	private final File cacheDir;
+	private final Map<String, String> digests = new HashMap<String, String>();
+
+	/**
+	 * Creates a new cache
+	 * @param cacheDir The directory in which to store the cache files. The
+	 * directory is created if it does not exist yet.
+	 */
+	public ResourceModelCache(File cacheDir) {
+		this.cacheDir = cacheDir;
+		if (!cacheDir.exists() && !cacheDir.mkdirs())
+			NUDisplay.error("could not create resource cache directory " + cacheDir, "ResourceModelCache");
+	}
+
+	/**
+	 * Gets the SHA-256 digest of the given APK file. The digest is only
+	 * computed once per file as long as the file is not modified.
+	 * @param apkFile The full path of the APK file
+	 * @return The digest as a hex string
+	 * @throws IOException Thrown if the APK file could not be read
+	 */
+	public synchronized String getDigest(String apkFile) throws IOException {
+		File f = new File(apkFile);
+		String fileKey = f.getAbsolutePath() + "|" + f.length() + "|" + f.lastModified();
+		String digest = digests.get(fileKey);
+		if (digest == null) {
+			MessageDigest md = newDigest();
+			InputStream is = new BufferedInputStream(new FileInputStream(f));
+			try {
+				byte[] buffer = new byte[65536];
+				int len;
+				while ((len = is.read(buffer)) > 0)
+					md.update(buffer, 0, len);
+			}
+			finally {
+				is.close();
+			}
+			digest = toHex(md.digest());
+			digests.put(fileKey, digest);
+		}
+		return digest;
+	}
+
+	/**
+	 * Computes the SHA-256 digest of the given string, e.g., for building a
+	 * key from configuration options
+	 * @param data The string to hash
+	 * @return The digest as a hex string
+	 */
+	public static String digestOf(String data) {
+		try {
+			return toHex(newDigest().digest(data.getBytes("UTF-8")));
+		}
+		catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new RuntimeException("SHA-256 is not supported by this JVM", ex);
+		}
+	}
+
+	private static String toHex(byte[] data) {
+		StringBuilder sb = new StringBuilder(data.length * 2);
+		for (byte b : data)
+			sb.append(String.format("%02x", b & 0xFF));
+		return sb.toString();
+	}
+
+	/**
+	 * Loads the resource snapshot of the app with the given digest
+	 * @param digest The SHA-256 digest of the APK file
+	 * @return The resource snapshot, or null if the app is not in the cache
+	 */
+	public ResourceSnapshot loadResources(String digest) {
+		DataInputStream in = openForReading(digest + RESOURCE_SUFFIX);
+		if (in == null)
+			return null;
+		try {
+			ResourceSnapshot snapshot = new ResourceSnapshot();
+			readStringIntMap(in, snapshot.nameIDMap);
+			readIntStringMap(in, snapshot.idNameMap);
+			readIntStringMap(in, snapshot.idStringMap);
+			readStringStringMap(in, snapshot.nameStringMap);
+			readStringIntMap(in, snapshot.qualifiedNameIDMap);
+
+			// The layout trees in pre-order. Only the texts of the single
+			// nodes are stored, the aggregated texts are computed again.
+			List<LayoutTextTreeNode> nodes = new ArrayList<LayoutTextTreeNode>();
+			int layoutCnt = in.readInt();
+			for (int i = 0; i < layoutCnt; i++) {
+				String name = in.readUTF();
+				LayoutTextTreeNode root = readNode(in, null, nodes);
+				root.computeTexts();
+				snapshot.layouts.put(name, root);
+			}
+			int idCnt = in.readInt();
+			for (int i = 0; i < idCnt; i++)
+				snapshot.id2Node.put(in.readInt(), nodes.get(in.readInt()));
+
+			int handlerCnt = in.readInt();
+			for (int i = 0; i < handlerCnt; i++) {
+				String handler = in.readUTF();
+				int cnt = in.readInt();
+				Set<Integer> ids = new HashSet<Integer>(cnt);
+				for (int j = 0; j < cnt; j++)
+					ids.add(in.readInt());
+				snapshot.xmlEventHandler2ViewIds.put(handler, ids);
+			}
+			return snapshot;
+		}
+		catch (Exception ex) {
+			NUDisplay.error("could not read cached resources " + digest + ": " + ex, "loadResources");
+			return null;
+		}
+		finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Stores the resource snapshot of the app with the given digest
+	 * @param digest The SHA-256 digest of the APK file
+	 * @param snapshot The resource snapshot to store
+	 */
+	public void storeResources(String digest, ResourceSnapshot snapshot) {
+		File tmpFile = new File(cacheDir, digest + RESOURCE_SUFFIX + "." + System.nanoTime() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = openForWriting(tmpFile);
+			writeStringIntMap(out, snapshot.nameIDMap);
+			writeIntStringMap(out, snapshot.idNameMap);
+			writeIntStringMap(out, snapshot.idStringMap);
+			writeStringStringMap(out, snapshot.nameStringMap);
+			writeStringIntMap(out, snapshot.qualifiedNameIDMap);
+
+			Map<LayoutTextTreeNode, Integer> nodeIndices = new HashMap<LayoutTextTreeNode, Integer>();
+			out.writeInt(snapshot.layouts.size());
+			for (Entry<String, LayoutTextTreeNode> entry : snapshot.layouts.entrySet()) {
+				out.writeUTF(entry.getKey());
+				writeNode(out, entry.getValue(), nodeIndices);
+			}
+			// Nodes that are not part of a layout tree cannot be restored
+			int idCnt = 0;
+			for (LayoutTextTreeNode node : snapshot.id2Node.values())
+				if (nodeIndices.containsKey(node))
+					idCnt++;
+			out.writeInt(idCnt);
+			for (Entry<Integer, LayoutTextTreeNode> entry : snapshot.id2Node.entrySet()) {
+				Integer idx = nodeIndices.get(entry.getValue());
+				if (idx != null) {
+					out.writeInt(entry.getKey());
+					out.writeInt(idx);
+				}
+			}
+
+			out.writeInt(snapshot.xmlEventHandler2ViewIds.size());
+			for (Entry<String, Set<Integer>> entry : snapshot.xmlEventHandler2ViewIds.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (Integer id : entry.getValue())
+					out.writeInt(id);
+			}
+			out.close();
+			out = null;
+			publish(tmpFile, new File(cacheDir, digest + RESOURCE_SUFFIX));
+		}
+		catch (IOException ex) {
+			NUDisplay.error("could not write cached resources " + digest + ": " + ex, "storeResources");
+		}
+		finally {
+			close(out);
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * Loads the entry points and callbacks of an app
+	 * @param digest The SHA-256 digest of the APK file
+	 * @param configKey A key identifying the callback configuration
+	 * @return The entry point snapshot, or null if there is no entry for
+	 * the given app and configuration
+	 */
+	public EntryPointSnapshot loadEntryPoints(String digest, String configKey) {
+		String fileName = digest + "-" + configKey + ENTRYPOINT_SUFFIX;
+		DataInputStream in = openForReading(fileName);
+		if (in == null)
+			return null;
+		try {
+			EntryPointSnapshot snapshot = new EntryPointSnapshot();
+			snapshot.appPackageName = in.readUTF();
+			int epCnt = in.readInt();
+			for (int i = 0; i < epCnt; i++)
+				snapshot.entrypoints.add(in.readUTF());
+			int cbCnt = in.readInt();
+			for (int i = 0; i < cbCnt; i++) {
+				String component = in.readUTF();
+				int methodCnt = in.readInt();
+				Set<SootMethodAndClass> methods = new HashSet<SootMethodAndClass>(methodCnt);
+				for (int j = 0; j < methodCnt; j++) {
+					String methodName = in.readUTF();
+					String className = in.readUTF();
+					String returnType = in.readUTF();
+					int paramCnt = in.readInt();
+					List<String> params = new ArrayList<String>(paramCnt);
+					for (int k = 0; k < paramCnt; k++)
+						params.add(in.readUTF());
+					methods.add(new AndroidMethod(methodName, params, returnType, className));
+				}
+				snapshot.callbackMethods.put(component, methods);
+			}
+			int controlCnt = in.readInt();
+			for (int i = 0; i < controlCnt; i++) {
+				int id = in.readInt();
+				String viewClassName = in.readUTF();
+				snapshot.userControls.put(id, new LayoutControl(id, viewClassName, in.readBoolean()));
+			}
+			return snapshot;
+		}
+		catch (Exception ex) {
+			NUDisplay.error("could not read cached entry points " + fileName + ": " + ex, "loadEntryPoints");
+			return null;
+		}
+		finally {
+			close(in);
+		}
+	}
+
+	/**
+	 * Stores the entry points and callbacks of an app
+	 * @param digest The SHA-256 digest of the APK file
+	 * @param configKey A key identifying the callback configuration
+	 * @param snapshot The entry points and callbacks to store
+	 */
+	public void storeEntryPoints(String digest, String configKey, EntryPointSnapshot snapshot) {
+		String fileName = digest + "-" + configKey + ENTRYPOINT_SUFFIX;
+		File tmpFile = new File(cacheDir, fileName + "." + System.nanoTime() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = openForWriting(tmpFile);
+			out.writeUTF(snapshot.appPackageName);
+			out.writeInt(snapshot.entrypoints.size());
+			for (String ep : snapshot.entrypoints)
+				out.writeUTF(ep);
+			out.writeInt(snapshot.callbackMethods.size());
+			for (Entry<String, Set<SootMethodAndClass>> entry : snapshot.callbackMethods.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (SootMethodAndClass method : entry.getValue()) {
+					out.writeUTF(method.getMethodName());
+					out.writeUTF(method.getClassName());
+					out.writeUTF(method.getReturnType());
+					out.writeInt(method.getParameters().size());
+					for (String param : method.getParameters())
+						out.writeUTF(param);
+				}
+			}
+			out.writeInt(snapshot.userControls.size());
+			for (LayoutControl control : snapshot.userControls.values()) {
+				out.writeInt(control.getID());
+				out.writeUTF(control.getViewClassName());
+				out.writeBoolean(control.isSensitive());
+			}
+			out.close();
+			out = null;
+			publish(tmpFile, new File(cacheDir, fileName));
+		}
+		catch (IOException ex) {
+			NUDisplay.error("could not write cached entry points " + fileName + ": " + ex, "storeEntryPoints");
+		}
+		finally {
+			close(out);
+			tmpFile.delete();
+		}
+	}
+
+	private DataInputStream openForReading(String fileName) {
+		File f = new File(cacheDir, fileName);
+		if (!f.exists())
+			return null;
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				NUDisplay.alert("ignoring outdated cache file " + f, "ResourceModelCache");
+				close(in);
+				return null;
+			}
+			return in;
+		}
+		catch (IOException ex) {
+			NUDisplay.error("could not open cache file " + f + ": " + ex, "ResourceModelCache");
+			close(in);
+			return null;
+		}
+	}
+
+	private DataOutputStream openForWriting(File f) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		return out;
+	}
+
+	private void publish(File tmpFile, File target) throws IOException {
+		// Another worker may have stored the same entry in the meantime, in
+		// which case we atomically replace it with an equivalent one
+		Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void close(Closeable c) {
+		if (c != null)
+			try {
+				c.close();
+			}
+			catch (IOException ex) {
+				// ignore
+			}
+	}
+
+	private void writeNode(DataOutputStream out, LayoutTextTreeNode node,
+			Map<LayoutTextTreeNode, Integer> nodeIndices) throws IOException {
+		nodeIndices.put(node, nodeIndices.size());
+		writeNullableString(out, node.nodeType);
+		out.writeInt(node.nodeID);
+		writeNullableString(out, node.text);
+		out.writeInt(node.children == null ? 0 : node.children.size());
+		if (node.children != null)
+			for (LayoutTextTreeNode child : node.children)
+				writeNode(out, child, nodeIndices);
+	}
+
+	private LayoutTextTreeNode readNode(DataInputStream in, LayoutTextTreeNode parent,
+			List<LayoutTextTreeNode> nodes) throws IOException {
+		LayoutTextTreeNode node = new LayoutTextTreeNode(readNullableString(in), parent);
+		nodes.add(node);
+		node.nodeID = in.readInt();
+		node.text = readNullableString(in);
+		int childCnt = in.readInt();
+		for (int i = 0; i < childCnt; i++)
+			node.addChildNode(readNode(in, node, nodes));
+		return node;
+	}
+
+	/*
+	 * DataOutputStream.writeUTF is limited to 64 KB, texts of whole layouts
+	 * may be longer
+	 */
+	private void writeNullableString(DataOutputStream out, CharSequence s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] data = s.toString().getBytes("UTF-8");
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	private String readNullableString(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 0)
+			return null;
+		byte[] data = new byte[len];
+		in.readFully(data);
+		return new String(data, "UTF-8");
+	}
+
+	private void writeStringIntMap(DataOutputStream out, Map<String, Integer> map) throws IOException {
+		out.writeInt(map.size());
+		for (Entry<String, Integer> entry : map.entrySet()) {
+			writeNullableString(out, entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+	}
+
+	private void readStringIntMap(DataInputStream in, Map<String, Integer> map) throws IOException {
+		int cnt = in.readInt();
+		for (int i = 0; i < cnt; i++)
+			map.put(readNullableString(in), in.readInt());
+	}
+
+	private void writeIntStringMap(DataOutputStream out, Map<Integer, String> map) throws IOException {
+		out.writeInt(map.size());
+		for (Entry<Integer, String> entry : map.entrySet()) {
+			out.writeInt(entry.getKey());
+			writeNullableString(out, entry.getValue());
+		}
+	}
+
+	private void readIntStringMap(DataInputStream in, Map<Integer, String> map) throws IOException {
+		int cnt = in.readInt();
+		for (int i = 0; i < cnt; i++)
+			map.put(in.readInt(), readNullableString(in));
+	}
+
+	private void writeStringStringMap(DataOutputStream out, Map<String, String> map) throws IOException {
+		out.writeInt(map.size());
+		for (Entry<String, String> entry : map.entrySet()) {
+			writeNullableString(out, entry.getKey());
+			writeNullableString(out, entry.getValue());
+		}
+	}
+
+	private void readStringStringMap(DataInputStream in, Map<String, String> map) throws IOException {
+		int cnt = in.readInt();
+		for (int i = 0; i < cnt; i++)
+			map.put(readNullableString(in), readNullableString(in));
+	}
+
+}
@@ -0,0 +1,61 @@
+package soot.jimple.infoflow.android.nu;
+
+/**
+ * A part of the aggregated texts of a layout text tree. All nodes of a tree
+ * share one buffer holding the texts of the whole tree, so a node's texts
+ * take no additional memory until they are converted into a string.
+ */
+public class TextSpan implements CharSequence {
+
+	/**
+	 * The texts of a whole tree. The text is set once the tree has been
+	 * traversed, spans must not be read before.
+	 */
+	static class Buffer {
+		private String text;
+
+		void setText(String text) {
+			this.text = text;
+		}
+	}
+
+	private final Buffer buffer;
+	private final int start;
+	private final int end;
+
+	TextSpan(Buffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.start = start;
+		this.end = end;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length())
+			throw new IndexOutOfBoundsException("Index: " + index);
+		return buffer.text.charAt(start + index);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length() || start > end)
+			throw new IndexOutOfBoundsException("Range: " + start + " - " + end);
+		return new TextSpan(buffer, this.start + start, this.start + end);
+	}
+
+	/**
+	 * Converts this span into a string. The string is not kept, since
+	 * keeping the strings of all nodes of a tree would again take memory
+	 * quadratic in the depth of the tree.
+	 */
+	@Override
+	public String toString() {
+		return buffer.text.substring(start, end);
+	}
+
+}
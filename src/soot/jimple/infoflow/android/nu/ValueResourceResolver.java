@@ -0,0 +1,123 @@
+package soot.jimple.infoflow.android.nu;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import nu.NUDisplay;
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ComplexResource;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResConfig;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResPackage;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResType;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.StringResource;
+
+/**
+ * Builds the name/ID/string tables of the value resources directly from a
+ * parsed resources.arsc file. This replaces decoding the APK with apktool and
+ * parsing the generated res/values/*.xml files again.
+ *
+ * The tables contain the same information the decoded public.xml and
+ * strings.xml files used to provide:
+ * <ul>
+ * <li>resource name => resource ID for all resources of all types</li>
+ * <li>resource ID => resource name</li>
+ * <li>resource ID => text and resource name => text for string resources.
+ * For string arrays and plurals, the first item by key is used.</li>
+ * </ul>
+ * The parser does not expose the configurations, so if a string is defined
+ * for multiple configurations, the first one found is taken.
+ */
+public class ValueResourceResolver {
+
+	private final Map<String, Integer> nameIDMap = new HashMap<String, Integer>();
+	private final Map<Integer, String> idNameMap = new HashMap<Integer, String>();
+	private final Map<Integer, String> idStringMap = new HashMap<Integer, String>();
+	private final Map<String, String> nameStringMap = new HashMap<String, String>();
+
+	/**
+	 * Creates a new resolver and builds the tables
+	 * @param resParser The parser that has already parsed the resources.arsc
+	 * file of the app
+	 */
+	public ValueResourceResolver(ARSCFileParser resParser) {
+		for (ResPackage resPackage : resParser.getPackages())
+			for (ResType resType : resPackage.getDeclaredTypes())
+				processType(resType);
+		NUDisplay.debug("Resolved " + nameIDMap.size() + " resource names and "
+				+ idStringMap.size() + " strings", "ValueResourceResolver");
+	}
+
+	private void processType(ResType resType) {
+		Set<Integer> doneIDs = new HashSet<Integer>();
+		for (ResConfig config : resType.getConfigurations())
+			for (AbstractResource res : config.getResources()) {
+				// Only take the first configuration of every resource
+				if (!doneIDs.add(res.getResourceID()))
+					continue;
+				String name = res.getResourceName();
+				if (name == null)
+					continue;
+				name = name.trim();
+				nameIDMap.put(name, res.getResourceID());
+				idNameMap.put(res.getResourceID(), name);
+
+				String text = getText(res);
+				if (text != null) {
+					idStringMap.put(res.getResourceID(), text);
+					nameStringMap.put(name, text);
+				}
+			}
+	}
+
+	/**
+	 * Gets the text of the given resource
+	 * @param res The resource to get the text for
+	 * @return The text of the given resource, or null if the resource is not
+	 * a (non-empty) string resource
+	 */
+	private String getText(AbstractResource res) {
+		if (res instanceof StringResource)
+			return normalizeText(((StringResource) res).getValue());
+		if (res instanceof ComplexResource)
+			for (AbstractResource item : new TreeMap<String, AbstractResource>(
+					((ComplexResource) res).getValue()).values()) {
+				if (!(item instanceof StringResource))
+					break;
+				String text = normalizeText(((StringResource) item).getValue());
+				if (text != null)
+					return text;
+			}
+		return null;
+	}
+
+	private String normalizeText(String text) {
+		if (text == null)
+			return null;
+		text = text.trim();
+		// References to other resources are no texts
+		if (text.isEmpty() || text.startsWith("@"))
+			return null;
+		return text;
+	}
+
+	public Map<String, Integer> getNameIDMap() {
+		return nameIDMap;
+	}
+
+	public Map<Integer, String> getIDNameMap() {
+		return idNameMap;
+	}
+
+	public Map<Integer, String> getIDStringMap() {
+		return idStringMap;
+	}
+
+	public Map<String, String> getNameStringMap() {
+		return nameStringMap;
+	}
+
+}
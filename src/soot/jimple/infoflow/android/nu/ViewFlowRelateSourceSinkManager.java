@@ -99,9 +99,7 @@ public class ViewFlowRelateSourceSinkManager extends AccessPathBasedSourceSinkMa
 		
 		// This is a method-based source, so we need to obtain the correct
 		// access path
-		final String signature = methodToSignature.getUnchecked(
-				sCallSite.getInvokeExpr().getMethod());
-		SourceSinkDefinition def = sourceMethods.get(signature);
+		SourceSinkDefinition def = getSourceDefinition(sCallSite.getInvokeExpr().getMethod());
 				
 		// If we don't have any more precise source information, we take the
 		// default behavior of our parent implementation. We do the same if we
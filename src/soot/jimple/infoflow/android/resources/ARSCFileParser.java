@@ -10,19 +10,34 @@
  ******************************************************************************/
 package soot.jimple.infoflow.android.resources;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.zip.ZipEntry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import soot.jimple.infoflow.android.axml.ApkArchive;
 import soot.jimple.infoflow.nu.IAbstractResource;
 
 /**
@@ -238,13 +253,147 @@ public class ARSCFileParser extends AbstractResourceParser {
 	 */
 	public final static int FLAG_PUBLIC = 0x0002;
 
-	private final Map<Integer, String> stringTable = new HashMap<Integer, String>();
+	private static boolean memoryMappedByDefault = false;
+	
+	private StringPool stringTable = StringPool.EMPTY;
+	private boolean memoryMapped = memoryMappedByDefault;
+	
+	/**
+	 * String pool that only keeps the offsets of its strings. Every string is
+	 * decoded when it is accessed for the first time. Large apps have string
+	 * pools with hundreds of thousands of entries of which only few are ever
+	 * used by the analysis.
+	 */
+	private static class StringPool {
+		
+		private static final StringPool EMPTY = new StringPool(null, new int[0], false);
+		
+		private final ByteBuffer data;
+		private final int[] offsets;
+		private final boolean utf8;
+		private final String[] strings;
+		
+		private StringPool(ByteBuffer data, int[] offsets, boolean utf8) {
+			this.data = data;
+			this.offsets = offsets;
+			this.utf8 = utf8;
+			this.strings = new String[offsets.length];
+		}
+		
+		public int size() {
+			return this.offsets.length;
+		}
+		
+		/**
+		 * Gets the string with the given index
+		 * @param idx The index of the string in the pool
+		 * @return The string with the given index, or null if the index is
+		 * out of range
+		 */
+		public String get(int idx) {
+			if (idx < 0 || idx >= offsets.length)
+				return null;
+			
+			// Strings are immutable, so a concurrent decode of the same
+			// string is harmless
+			String str = strings[idx];
+			if (str == null) {
+				try {
+					if (utf8)
+						str = readStringUTF8(data, offsets[idx]).trim();
+					else
+						str = readString(data, offsets[idx]).trim();
+				}
+				catch (IOException | RuntimeException ex) {
+					throw new RuntimeException("Could not decode string " + idx
+							+ " of resource string pool", ex);
+				}
+				strings[idx] = str;
+			}
+			return str;
+		}
+		
+	}
+	
+	/**
+	 * Read-only map view on a string pool
+	 */
+	private static class StringPoolMap extends AbstractMap<Integer, String> {
+		
+		private final StringPool pool;
+		
+		private StringPoolMap(StringPool pool) {
+			this.pool = pool;
+		}
+		
+		@Override
+		public String get(Object key) {
+			return key instanceof Integer ? pool.get((Integer) key) : null;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Integer && (Integer) key >= 0
+					&& (Integer) key < pool.size();
+		}
+		
+		@Override
+		public int size() {
+			return pool.size();
+		}
+		
+		@Override
+		public Set<Map.Entry<Integer, String>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, String>>() {
+				
+				@Override
+				public Iterator<Map.Entry<Integer, String>> iterator() {
+					return new Iterator<Map.Entry<Integer, String>>() {
+						
+						private int idx = 0;
+						
+						@Override
+						public boolean hasNext() {
+							return idx < pool.size();
+						}
+						
+						@Override
+						public Map.Entry<Integer, String> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							Map.Entry<Integer, String> entry = new AbstractMap.SimpleImmutableEntry
+									<Integer, String>(idx, pool.get(idx));
+							idx++;
+							return entry;
+						}
+						
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+						
+					};
+				}
+				
+				@Override
+				public int size() {
+					return pool.size();
+				}
+				
+			};
+		}
+		
+	}
 	private final List<ResPackage> packages = new ArrayList<ResPackage>();
+	// Index for finding packages by ID, the first package with an ID wins
+	private final ResPackage[] packagesById = new ResPackage[256];
 	
 	public class ResPackage {
 		private int packageId;
 		private String packageName;
 		private List<ResType> types = new ArrayList<ResType>();
+		private final ResType[] typesById = new ResType[256];
+		private final Map<String, ResType> typesByName = new HashMap<String, ResType>();
 		
 		public int getPackageId() {
 			return this.packageId;
@@ -258,6 +407,35 @@ public class ARSCFileParser extends AbstractResourceParser {
 			return this.types;
 		}
 		
+		/**
+		 * Gets the first type with the given name declared in this package
+		 * @param typeName The name of the type, e.g., "string" or "layout"
+		 * @return The type with the given name if it exists, otherwise null
+		 */
+		public ResType getType(String typeName) {
+			return this.typesByName.get(typeName);
+		}
+		
+		/**
+		 * Gets the first type with the given ID declared in this package
+		 * @param typeId The numeric ID of the type
+		 * @return The type with the given ID if it exists, otherwise null
+		 */
+		public ResType getType(int typeId) {
+			if (typeId < 0 || typeId >= typesById.length)
+				return null;
+			return this.typesById[typeId];
+		}
+		
+		private void addType(ResType tp) {
+			this.types.add(tp);
+			int idx = tp.id & 0xFF;
+			if (this.typesById[idx] == null)
+				this.typesById[idx] = tp;
+			if (tp.typeName != null && !this.typesByName.containsKey(tp.typeName))
+				this.typesByName.put(tp.typeName, tp);
+		}
+		
 	}
 	
 	/**
@@ -268,6 +446,11 @@ public class ARSCFileParser extends AbstractResourceParser {
 		private int id;
 		private String typeName;
 		private List<ResConfig> configurations = new ArrayList<ResConfig>();
+		
+		// Indices over all configurations, the first configuration wins. The
+		// resources are indexed by the entry index of their IDs.
+		private AbstractResource[] resourcesByIndex = new AbstractResource[16];
+		private final Map<String, AbstractResource> resourcesByName = new HashMap<String, AbstractResource>();
 
 		public String getTypeName() {
 			return this.typeName;
@@ -300,11 +483,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 * resource exists
 		 */
 		public AbstractResource getResourceByName(String resourceName) {
-			for (ResConfig rc : this.configurations)
-				for (AbstractResource res : rc.getResources())
-					if (res.getResourceName().equals(resourceName))
-						return res;
-			return null;
+			return this.resourcesByName.get(resourceName);
 		}
 		
 		/**
@@ -314,11 +493,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 * null
 		 */
 		public AbstractResource getFirstResource(String resourceName) {
-			for (ResConfig rc : this.configurations)
-				for (AbstractResource res : rc.getResources())
-					if (res.resourceName.equals(resourceName))
-						return res;
-			return null;
+			return this.resourcesByName.get(resourceName);
 		}
 
 		/**
@@ -328,11 +503,29 @@ public class ARSCFileParser extends AbstractResourceParser {
 		 * null
 		 */
 		public AbstractResource getFirstResource(int resourceID) {
-			for (ResConfig rc : this.configurations)
-				for (AbstractResource res : rc.getResources())
-					if (res.resourceID == resourceID)
-						return res;
-			return null;
+			int idx = resourceID & 0xFFFF;
+			if (idx >= this.resourcesByIndex.length)
+				return null;
+			AbstractResource res = this.resourcesByIndex[idx];
+			return res != null && res.resourceID == resourceID ? res : null;
+		}
+		
+		/**
+		 * Adds a resource to the given configuration of this type and updates
+		 * the lookup indices
+		 * @param config The configuration to which the resource belongs
+		 * @param res The resource to add
+		 */
+		private void addResource(ResConfig config, AbstractResource res) {
+			config.resources.add(res);
+			int idx = res.resourceID & 0xFFFF;
+			if (idx >= this.resourcesByIndex.length)
+				this.resourcesByIndex = Arrays.copyOf(this.resourcesByIndex,
+						Math.max(idx + 1, this.resourcesByIndex.length * 2));
+			if (this.resourcesByIndex[idx] == null)
+				this.resourcesByIndex[idx] = res;
+			if (!this.resourcesByName.containsKey(res.resourceName))
+				this.resourcesByName.put(res.resourceName, res);
 		}
 		
 		@Override
@@ -410,18 +603,30 @@ public class ARSCFileParser extends AbstractResourceParser {
 	 */
 	public class StringResource extends AbstractResource {
 		private String value;
+		private final StringPool pool;
+		private final int index;
 		
 		public StringResource(String value) {
 			this.value = value;
+			this.pool = null;
+			this.index = -1;
+		}
+		
+		private StringResource(StringPool pool, int index) {
+			this.pool = pool;
+			this.index = index;
 		}
 		
 		public String getValue() {
+			// Strings from the global pool are only decoded when needed
+			if (this.value == null && this.pool != null)
+				this.value = this.pool.get(this.index);
 			return this.value;
 		}
 		
 		@Override
 		public String toString() {
-			return this.value;
+			return getValue();
 		}
 	}
 
@@ -985,37 +1190,128 @@ public class ARSCFileParser extends AbstractResourceParser {
 	public ARSCFileParser() {
 	}
 	
+	/**
+	 * Sets whether parsers created afterwards shall map the resource file
+	 * into memory
+	 * @param memoryMapped True to map the resource file into memory by
+	 * default, otherwise false
+	 * @see #setMemoryMapped(boolean)
+	 */
+	public static void setMemoryMappedByDefault(boolean memoryMapped) {
+		memoryMappedByDefault = memoryMapped;
+	}
+	
+	/**
+	 * Sets whether the resource file shall be memory-mapped instead of being
+	 * copied onto the heap. In this mode, the resources.arsc file is extracted
+	 * into a temporary file which is then mapped read-only. The strings of the
+	 * string pools are decoded lazily in either mode.
+	 * @param memoryMapped True to map the resource file into memory,
+	 * otherwise false
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+	
 	/**
 	 * Parses the resource definition file in the given APK 
 	 * @param apkFile The APK file in which to parse the resource definition file
 	 * @throws IOException Thrown if the given APK file cannot be opened
 	 */
 	public void parse(String apkFile) throws IOException {
-		this.handleAndroidResourceFiles(apkFile, null, new IResourceHandler() {
-			
-			@Override
-			public void handleResourceFile(String fileName, Set<String> fileNameFilter,
-					InputStream stream) {
-				try {
-					if (fileName.equals("resources.arsc"))
-						parse(stream);
-				}
-				catch (IOException ex) {
-					System.err.println("Could not read resource file: " + ex.getMessage());
-					ex.printStackTrace();
-				}
+		if (this.memoryMapped) {
+			parseMapped(apkFile);
+			return;
+		}
+		
+		InputStream stream = ApkArchive.getArchive(apkFile).getInputStream("resources.arsc");
+		if (stream == null)
+			return;
+		try {
+			parse(stream);
+		}
+		catch (IOException ex) {
+			System.err.println("Could not read resource file: " + ex.getMessage());
+			ex.printStackTrace();
+		}
+		finally {
+			stream.close();
+		}
+	}
+	
+	/**
+	 * Extracts the resource definition file from the given APK into a
+	 * temporary file, maps it into memory and parses it
+	 * @param apkFile The APK file in which to parse the resource definition file
+	 * @throws IOException Thrown if the given APK file cannot be opened
+	 */
+	private void parseMapped(String apkFile) throws IOException {
+		ApkArchive archive = ApkArchive.getArchive(apkFile);
+		ZipEntry entry = archive.getEntry("resources.arsc");
+		if (entry == null)
+			return;
+		
+		File tempFile = File.createTempFile("resources", ".arsc");
+		try {
+			InputStream is = archive.getInputStream(entry);
+			try {
+				Files.copy(is, tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			finally {
+				is.close();
 			}
 			
-		});
+			// The mapping stays valid after the channel has been closed
+			FileChannel channel = new RandomAccessFile(tempFile, "r").getChannel();
+			MappedByteBuffer buffer;
+			try {
+				buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			}
+			finally {
+				channel.close();
+			}
+			parse(buffer);
+		}
+		finally {
+			// Some platforms do not allow deleting mapped files
+			if (!tempFile.delete())
+				tempFile.deleteOnExit();
+		}
 	}
 	
 	public void parse(InputStream stream) throws IOException {
 		readResourceHeader(stream);
 	}
+	
+	/**
+	 * Parses the given resource definition file. The buffer is kept until the
+	 * parser is no longer used, because the strings in the string pools are
+	 * only decoded on demand.
+	 * @param buffer The buffer containing the complete resource definition
+	 * file
+	 * @throws IOException Thrown if the resource file is malformed
+	 */
+	public void parse(ByteBuffer buffer) throws IOException {
+		ResTable_Header resourceHeader = new ResTable_Header();
+		int offset = readChunkHeader(resourceHeader.header, buffer, 0);
+		resourceHeader.packageCount = readUInt32(buffer, offset);
+		if (DEBUG)
+			System.out.println("Package Groups (" + resourceHeader.packageCount + ")");
+		
+		// Do we have any packages to read?
+		int remainingSize = resourceHeader.header.size - resourceHeader.header.headerSize;
+		if (remainingSize <= 0)
+			return;
+		if (resourceHeader.header.size > buffer.limit())
+			throw new IOException("Resource file is truncated");
+		
+		ByteBuffer remainingData = buffer.duplicate();
+		remainingData.position(resourceHeader.header.headerSize);
+		remainingData.limit(resourceHeader.header.size);
+		readResourceTable(remainingData.slice(), remainingSize);
+	}
 
 	private void readResourceHeader(InputStream stream) throws IOException {
-		final int BLOCK_SIZE = 2048;
-		
 		ResTable_Header resourceHeader = new ResTable_Header();
 		readChunkHeader(stream, resourceHeader.header);
 		resourceHeader.packageCount = readUInt32(stream);
@@ -1031,23 +1327,27 @@ public class ARSCFileParser extends AbstractResourceParser {
 		byte[] remainingData = new byte[remainingSize];
 		int totalBytesRead = 0;
 		while (totalBytesRead < remainingSize) {
-			byte[] block = new byte[Math.min(BLOCK_SIZE, remainingSize - totalBytesRead)];
-			int bytesRead = stream.read(block);
+			int bytesRead = stream.read(remainingData, totalBytesRead,
+					remainingSize - totalBytesRead);
 			if (bytesRead < 0) {
 				System.err.println("Could not read block from resource file");
 				return;
 			}
-			System.arraycopy(block, 0, remainingData, totalBytesRead, bytesRead);
 			totalBytesRead += bytesRead;
 		}
+		readResourceTable(ByteBuffer.wrap(remainingData), remainingSize);
+	}
+	
+	private void readResourceTable(ByteBuffer remainingData, int remainingSize)
+			throws IOException {
 		int offset = 0;
 		int beforeBlock = 0;
 		
 		// Read the next chunk
 		int packageCtr = 0;
-		Map<Integer, String> keyStrings = new HashMap<Integer, String>();
-		Map<Integer, String> typeStrings = new HashMap<Integer, String>();
-		while (offset < remainingData.length - 1) {
+		StringPool keyStrings = StringPool.EMPTY;
+		StringPool typeStrings = StringPool.EMPTY;
+		while (offset < remainingData.limit() - 1) {
 			beforeBlock = offset;
 			ResChunk_Header nextChunkHeader = new ResChunk_Header();
 			offset = readChunkHeader(nextChunkHeader, remainingData, offset);
@@ -1058,9 +1358,9 @@ public class ARSCFileParser extends AbstractResourceParser {
 				offset = parseStringPoolHeader(stringPoolHeader, remainingData, offset);
 				
 				// Read the string data
-				offset = readStringTable(remainingData, offset, beforeBlock,
-						stringPoolHeader, this.stringTable);
-				assert this.stringTable.size() == stringPoolHeader.stringCount;
+				this.stringTable = readStringTable(remainingData, offset, beforeBlock,
+						stringPoolHeader);
+				offset += stringPoolHeader.stringCount * 4;
 			}
 			else if (nextChunkHeader.type == RES_TABLE_PACKAGE_TYPE) {
 				// Read the package header
@@ -1080,6 +1380,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 				ResPackage resPackage = new ResPackage();
 				this.packages.add(resPackage);
 				resPackage.packageId = packageTable.id;
+				if (this.packagesById[resPackage.packageId & 0xFF] == null)
+					this.packagesById[resPackage.packageId & 0xFF] = resPackage;
 				resPackage.packageName = packageTable.name;
 				
 				{
@@ -1097,8 +1399,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 				
 				// Attention: String offset starts at the beginning of the StringPool
 				// block, not the at the beginning of the Package block referring to it.
-				readStringTable(remainingData, typeStringsOffset, beforeStringBlock,
-						typePool, typeStrings);
+				typeStrings = readStringTable(remainingData, typeStringsOffset,
+						beforeStringBlock, typePool);
 				
 				// Find the key strings
 				int keyStringsOffset = beforeBlock + packageTable.keyStrings;
@@ -1114,8 +1416,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 				
 				// Attention: String offset starts at the beginning of the StringPool
 				// block, not the at the beginning of the Package block referring to it.
-				readStringTable(remainingData, keyStringsOffset, beforeStringBlock,
-						keyPool, keyStrings);
+				keyStrings = readStringTable(remainingData, keyStringsOffset,
+						beforeStringBlock, keyPool);
 
 				// Jump to the end of the string block
 				offset = beforeStringBlock + keyPoolHeader.size;
@@ -1137,7 +1439,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 						ResType tp = new ResType();
 						tp.id = typeSpecTable.id;
 						tp.typeName = typeStrings.get(typeSpecTable.id - 1);
-						resPackage.types.add(tp);
+						resPackage.addType(tp);
 
 						// Normally, we also have a set of configurations following, but
 						// we don't implement that at the moment
@@ -1204,9 +1506,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 							// Create the data object. For finding the correct ID, we
 							// must check whether the entry is really new - if so, it
 							// gets a new ID, otherwise, we reuse the old one
-							if (keyStrings.containsKey(entry.key))
-								res.resourceName = keyStrings.get(entry.key);
-							else
+							res.resourceName = keyStrings.get(entry.key);
+							if (res.resourceName == null)
 								res.resourceName = "<INVALID RESOURCE>";
 							
 							AbstractResource r = resType.getResourceByName(res.resourceName);
@@ -1215,7 +1516,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 							if (res.resourceID <= 0)
 								res.resourceID = (packageTable.id << 24)
 										+ (typeTable.id << 16) + resourceIdx;
-							config.resources.add(res);
+							resType.addResource(config, res);
 							resourceIdx++;
 						}
 					}
@@ -1289,7 +1590,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 				res = new AttributeResource(val.data);
 				break;
 			case TYPE_STRING :
-				res = new StringResource(stringTable.get(val.data));
+				res = new StringResource(stringTable, val.data);
 				break;
 			case TYPE_INT_DEC:
 			case TYPE_INT_HEX:
@@ -1329,7 +1630,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readComplexValue
 			(ResTable_Map map,
-			byte[] remainingData,
+			ByteBuffer remainingData,
 			int offset) throws IOException {
 		map.name = readUInt32(remainingData, offset);
 		offset += 4;
@@ -1339,7 +1640,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readValue
 			(Res_Value val,
-			byte[] remainingData,
+			ByteBuffer remainingData,
 			int offset) throws IOException {
 		int initialOffset = offset;
 		
@@ -1363,7 +1664,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private ResTable_Entry readEntryTable(byte[] data, int offset) throws IOException {
+	private ResTable_Entry readEntryTable(ByteBuffer data, int offset) throws IOException {
 		// The exact type of entry depends on the size
 		int size = readUInt16(data, offset);
 		offset += 2;
@@ -1397,7 +1698,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readTypeTable
 			(ResTable_Type typeTable,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		typeTable.id = readUInt8(data, offset);
 		offset += 1;
@@ -1423,7 +1724,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readConfigTable
 			(ResTable_Config config,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		config.size = readUInt32(data, offset);
 		offset += 4;
@@ -1434,12 +1735,12 @@ public class ARSCFileParser extends AbstractResourceParser {
 		config.mnc = readUInt16(data, offset);
 		offset += 2;
 
-		config.language[0] = (char) data[offset];
-		config.language[1] = (char) data[offset + 1];
+		config.language[0] = (char) data.get(offset);
+		config.language[1] = (char) data.get(offset + 1);
 		offset += 2;
 		
-		config.country[0] = (char) data[offset];
-		config.country[1] = (char) data[offset + 1];
+		config.country[0] = (char) data.get(offset);
+		config.country[1] = (char) data.get(offset + 1);
 		offset += 2;
 		
 		config.orientation = readUInt8(data, offset);
@@ -1487,13 +1788,13 @@ public class ARSCFileParser extends AbstractResourceParser {
 			return offset;
 
 		for (int i = 0; i < 4; i++)
-			config.localeScript[i] = (char) data[offset + i];
+			config.localeScript[i] = (char) data.get(offset + i);
 		offset += 4;
 		if (config.size <= 40)
 			return offset;
 		
 		for (int i = 0; i < 8; i++)
-			config.localeVariant[i] = (char) data[offset + i];
+			config.localeVariant[i] = (char) data.get(offset + i);
 		offset += 8;
 		if (config.size <= 48)
 			return offset;
@@ -1503,7 +1804,8 @@ public class ARSCFileParser extends AbstractResourceParser {
 		int remainingSize = config.size - 48;
 		if (remainingSize > 0) {
 			byte[] remainingBytes = new byte[remainingSize];
-			System.arraycopy(data, offset, remainingBytes, 0, remainingSize);
+			for (int i = 0; i < remainingSize; i++)
+				remainingBytes[i] = data.get(offset + i);
 			if (!(new BigInteger(1, remainingBytes).equals(BigInteger.ZERO))) {
 				logger.warn("Excessive non-null bytes in ResTable_Config ignored");
 				assert false;
@@ -1516,7 +1818,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 
 	private int readTypeSpecTable
 			(ResTable_TypeSpec typeSpecTable,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		typeSpecTable.id = readUInt8(data, offset);
 		offset += 1;
@@ -1537,32 +1839,39 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private int readStringTable
-			(byte[] remainingData,
+	/**
+	 * Reads the offset table of a string pool. The strings themselves are
+	 * only decoded when they are accessed for the first time.
+	 * @param remainingData The data array containing the string pool
+	 * @param offset The offset of the offset table
+	 * @param blockStart The offset at which the string pool block starts
+	 * @param stringPoolHeader The header of the string pool
+	 * @return The string pool
+	 * @throws IOException Thrown if the string pool is malformed
+	 */
+	private StringPool readStringTable
+			(ByteBuffer remainingData,
 			int offset,
 			int blockStart,
-			ResStringPool_Header stringPoolHeader,
-			Map<Integer, String> stringList) throws IOException {
-		// Read the strings
+			ResStringPool_Header stringPoolHeader) throws IOException {
+		if (stringPoolHeader.stringCount < 0
+				|| offset + stringPoolHeader.stringCount * 4L > remainingData.limit())
+			throw new IOException("Invalid string count " + stringPoolHeader.stringCount
+					+ " in string pool");
+		
+		int[] stringOffsets = new int[stringPoolHeader.stringCount];
 		for (int i = 0; i < stringPoolHeader.stringCount; i++) {
-			int stringIdx = readUInt32(remainingData, offset);
-			offset += 4;
-			
 			// Offset begins at block start
-			stringIdx += stringPoolHeader.stringsStart + blockStart;
-			String str = "";
-			if (stringPoolHeader.flagsUTF8)
-				str = readStringUTF8(remainingData, stringIdx).trim();
-			else
-				str = readString(remainingData, stringIdx).trim();
-			stringList.put(i, str);
+			stringOffsets[i] = readUInt32(remainingData, offset)
+					+ stringPoolHeader.stringsStart + blockStart;
+			offset += 4;
 		}
-		return offset;
+		return new StringPool(remainingData, stringOffsets, stringPoolHeader.flagsUTF8);
 	}
 
 	private int parsePackageTable
 			(ResTable_Package packageTable,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		packageTable.id = readUInt32(data, offset);
 		offset += 4;
@@ -1591,29 +1900,38 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private String readString(byte[] remainingData, int stringIdx) throws IOException {
+	private static String readString(ByteBuffer remainingData, int stringIdx) throws IOException {
 		int strLen = readUInt16(remainingData, stringIdx);
 		if (strLen == 0)
 			return "";
-		stringIdx += 2;
-		byte[] str = new byte[strLen * 2];
-		System.arraycopy(remainingData, stringIdx, str, 0, strLen * 2);
-		return new String(remainingData, stringIdx, strLen * 2, "UTF-16LE");
+		return decodeString(remainingData, stringIdx + 2, strLen * 2, "UTF-16LE");
 	}
 
-	private String readStringUTF8(byte[] remainingData, int stringIdx) throws IOException {
+	private static String readStringUTF8(ByteBuffer remainingData, int stringIdx) throws IOException {
 		// skip the length, will usually be 0x1A1A
 		// int strLen = readUInt16(remainingData, stringIdx);
 		// the length here is somehow weird
 		int strLen = readUInt8(remainingData, stringIdx + 1);
-		stringIdx += 2;
-		String str = new String(remainingData, stringIdx, strLen, "UTF-8");
-		return str;
+		return decodeString(remainingData, stringIdx + 2, strLen, "UTF-8");
+	}
+
+	private static String decodeString(ByteBuffer data, int offset, int length,
+			String charsetName) throws IOException {
+		if (data.hasArray())
+			return new String(data.array(), data.arrayOffset() + offset, length, charsetName);
+		
+		// Mapped buffers have no backing array. We copy only the bytes of the
+		// string and work on a duplicate to not touch the shared position.
+		byte[] str = new byte[length];
+		ByteBuffer view = data.duplicate();
+		view.position(offset);
+		view.get(str);
+		return new String(str, charsetName);
 	}
 
 	private int parseStringPoolHeader
 			(ResStringPool_Header stringPoolHeader,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		stringPoolHeader.stringCount = readUInt32(data, offset);
 		stringPoolHeader.styleCount = readUInt32(data, offset + 4);
@@ -1639,7 +1957,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 			ResChunk_Header nextChunkHeader) throws IOException {
 		byte[] header = new byte[8];
 		stream.read(header);
-		readChunkHeader(nextChunkHeader, header, 0);
+		readChunkHeader(nextChunkHeader, ByteBuffer.wrap(header), 0);
 	}
 
 	/**
@@ -1652,7 +1970,7 @@ public class ARSCFileParser extends AbstractResourceParser {
 	 */
 	private int readChunkHeader
 			(ResChunk_Header nextChunkHeader,
-			byte[] data,
+			ByteBuffer data,
 			int offset) throws IOException {
 		nextChunkHeader.type = readUInt16(data, offset);
 		offset += 2;
@@ -1666,34 +1984,37 @@ public class ARSCFileParser extends AbstractResourceParser {
 		return offset;
 	}
 
-	private int readUInt8(byte[] uint16, int offset) throws IOException {
-		int b0 = uint16[0 + offset] & 0x000000FF;
-		return b0;
+	private static int readUInt8(ByteBuffer data, int offset) {
+		return data.get(offset) & 0x000000FF;
 	}
 
-	private int readUInt16(byte[] uint16, int offset) throws IOException {
-		int b0 = uint16[0 + offset] & 0x000000FF;
-		int b1 = uint16[1 + offset] & 0x000000FF;
+	private static int readUInt16(ByteBuffer data, int offset) {
+		int b0 = data.get(offset) & 0x000000FF;
+		int b1 = data.get(offset + 1) & 0x000000FF;
 		return (b1 << 8) + b0;
 	}
 
 	private int readUInt32(InputStream stream) throws IOException {
 		byte[] uint32 = new byte[4];
 		stream.read(uint32);
-		return readUInt32(uint32, 0);
+		return readUInt32(ByteBuffer.wrap(uint32), 0);
 	}
 
-	private int readUInt32(byte[] uint32, int offset) throws IOException {
-		int b0 = uint32[0 + offset] & 0x000000FF;
-		int b1 = uint32[1 + offset] & 0x000000FF;
-		int b2 = uint32[2 + offset] & 0x000000FF;
-		int b3 = uint32[3 + offset] & 0x000000FF;
-		return (Math.abs(b3) << 24) + (Math.abs(b2) << 16)
-				+ (Math.abs(b1) << 8) + Math.abs(b0);
+	private static int readUInt32(ByteBuffer data, int offset) {
+		int b0 = data.get(offset) & 0x000000FF;
+		int b1 = data.get(offset + 1) & 0x000000FF;
+		int b2 = data.get(offset + 2) & 0x000000FF;
+		int b3 = data.get(offset + 3) & 0x000000FF;
+		return (b3 << 24) + (b2 << 16) + (b1 << 8) + b0;
 	}
 	
+	/**
+	 * Gets the global string pool of the resource file. The returned map is
+	 * a read-only view that decodes the strings on first access.
+	 * @return The global string pool, mapping string indices to strings
+	 */
 	public Map<Integer, String> getGlobalStringPool() {
-		return this.stringTable;
+		return new StringPoolMap(this.stringTable);
 	}
 	
 	public List<ResPackage> getPackages() {
@@ -1709,16 +2030,13 @@ public class ARSCFileParser extends AbstractResourceParser {
 	 * has been found, otherwise null.
 	 */
 	public AbstractResource findResource(int resourceId) {
-		ResourceId id = parseResourceId(resourceId);
-		for (ResPackage resPackage : this.packages)
-			if (resPackage.packageId == id.packageId) {
-				for (ResType resType : resPackage.types)
-					if (resType.id == id.typeId) {
-						return resType.getFirstResource(resourceId);
-					}
-				break;
-			}
-		return null;
+		ResPackage resPackage = this.packagesById[(resourceId >>> 24) & 0xFF];
+		if (resPackage == null)
+			return null;
+		ResType resType = resPackage.getType((resourceId >> 16) & 0xFF);
+		if (resType == null)
+			return null;
+		return resType.getFirstResource(resourceId);
 	}
 	
 	/**
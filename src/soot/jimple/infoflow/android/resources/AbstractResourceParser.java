@@ -11,10 +11,18 @@
 package soot.jimple.infoflow.android.resources;
 
 import java.io.File;
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+
+import soot.jimple.infoflow.android.axml.ApkArchive;
 
 /**
  * Common base class for all resource parser classes
@@ -33,27 +41,36 @@ public abstract class AbstractResourceParser {
 	 */
 	protected void handleAndroidResourceFiles(String apk, Set<String> fileNameFilter,
 			IResourceHandler handler) {
+		handleAndroidResourceFiles(apk, "", fileNameFilter, handler);
+	}
+
+	/**
+	 * Opens the given apk file and provides the given handler with a stream for
+	 * every file whose name starts with the given prefix. Streams are only
+	 * opened for matching files.
+	 * @param apk The apk file to process
+	 * @param prefix The prefix of the files to process, e.g.
+	 * <code>res/layout</code>. Pass an empty string to process all files.
+	 * @param fileNameFilter If this parameter is non-null, only files with a
+	 * name (excluding extension) in this set will be analyzed.
+	 * @param handler The handler for processing the apk file
+	 */
+	protected void handleAndroidResourceFiles(String apk, String prefix,
+			Set<String> fileNameFilter, IResourceHandler handler) {
 		File apkF = new File(apk);
 		if (!apkF.exists())
 			throw new RuntimeException("file '" + apk + "' does not exist!");
 
-		
 		try {
-			ZipFile archive = null;
-			try {
-				archive = new ZipFile(apkF);
-				Enumeration<?> entries = archive.entries();
-				
-				while (entries.hasMoreElements()) {
-					ZipEntry entry = (ZipEntry) entries.nextElement();
-					String entryName = entry.getName();
-					//System.out.println("ALL:"+entryName);
-					handler.handleResourceFile(entryName, fileNameFilter, archive.getInputStream(entry));
+			ApkArchive archive = ApkArchive.getArchive(apkF);
+			for (ZipEntry entry : archive.getEntries(prefix)) {
+				InputStream stream = archive.getInputStream(entry);
+				try {
+					handler.handleResourceFile(entry.getName(), fileNameFilter, stream);
+				}
+				finally {
+					stream.close();
 				}
-			}
-			finally {
-				if (archive != null)
-					archive.close();
 			}
 		}
 		catch (Exception e) {
@@ -67,4 +84,84 @@ public abstract class AbstractResourceParser {
 		}
 	}
 
+	/**
+	 * Opens the given apk file and computes a result for every file whose
+	 * name starts with the given prefix. If more than one thread is
+	 * requested, the files are decoded and processed on a fork-join pool.
+	 * The results are returned in the order in which the files appear in the
+	 * central directory of the apk file, so that the caller can merge them in
+	 * the same order as a sequential run.
+	 * @param apk The apk file to process
+	 * @param prefix The prefix of the files to process, e.g.
+	 * <code>res/layout</code>
+	 * @param threads The maximum number of files to process at the same time
+	 * @param processor The processor that computes the per-file results
+	 * @return The results of the processor, excluding null results
+	 */
+	protected <T> List<T> processAndroidResourceFiles(String apk, String prefix,
+			int threads, final IResourceProcessor<T> processor) {
+		File apkF = new File(apk);
+		if (!apkF.exists())
+			throw new RuntimeException("file '" + apk + "' does not exist!");
+
+		try {
+			final ApkArchive archive = ApkArchive.getArchive(apkF);
+			List<ZipEntry> entries = archive.getEntries(prefix);
+			List<T> results = new ArrayList<T>(entries.size());
+			if (threads <= 1 || entries.size() <= 1) {
+				for (ZipEntry entry : entries) {
+					T res = processEntry(archive, entry, processor);
+					if (res != null)
+						results.add(res);
+				}
+				return results;
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				List<Future<T>> futures = new ArrayList<Future<T>>(entries.size());
+				for (final ZipEntry entry : entries)
+					futures.add(pool.submit(new Callable<T>() {
+
+						@Override
+						public T call() throws Exception {
+							return processEntry(archive, entry, processor);
+						}
+
+					}));
+				for (Future<T> future : futures) {
+					T res = future.get();
+					if (res != null)
+						results.add(res);
+				}
+			}
+			finally {
+				pool.shutdownNow();
+			}
+			return results;
+		}
+		catch (Exception e) {
+			Throwable cause = e instanceof ExecutionException && e.getCause() != null
+					? e.getCause() : e;
+			System.err.println("Error when looking for XML resource files in apk "
+					+ apk + ": " + cause);
+			cause.printStackTrace();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else
+				throw new RuntimeException(cause);
+		}
+	}
+
+	private <T> T processEntry(ApkArchive archive, ZipEntry entry,
+			IResourceProcessor<T> processor) throws IOException {
+		InputStream stream = archive.getInputStream(entry);
+		try {
+			return processor.processResourceFile(entry.getName(), stream, entry.getSize());
+		}
+		finally {
+			stream.close();
+		}
+	}
+
 }
@@ -0,0 +1,24 @@
+package soot.jimple.infoflow.android.resources;
+
+import java.io.InputStream;
+
+/**
+ * Common interface for processors that compute a result for a single
+ * Android resource file. Other than {@link IResourceHandler}, processors may
+ * be called concurrently for different files and must thus not modify any
+ * shared state. The results are merged by the caller afterwards.
+ *
+ * @param <T> The type of the per-file results
+ */
+public interface IResourceProcessor<T> {
+
+	/**
+	 * Called when the contents of an Android resource file shall be processed
+	 * @param fileName The name of the file in the APK being processed
+	 * @param stream The stream through which the resource file can be accessed
+	 * @param size The uncompressed size of the file in bytes, or -1 if unknown
+	 * @return The result for the given file, or null if the file was skipped
+	 */
+	public T processResourceFile(String fileName, InputStream stream, long size);
+
+}
@@ -0,0 +1,122 @@
+package soot.jimple.infoflow.android.resources;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import soot.Scene;
+import soot.SootClass;
+
+/**
+ * Resolves the classes of the controls declared in layout XML files against
+ * the Soot scene. The scene is not thread-safe, so all lookups are
+ * synchronized on the scene object, which is also what the binary XML parser
+ * uses when it looks up attribute names. The results are memoized, since
+ * thousands of layout files usually only use a few dozen different widget
+ * classes.
+ */
+public class LayoutClassResolver {
+
+	private final String packageName;
+	private final Map<String, SootClass> layoutClasses = new HashMap<String, SootClass>();
+	private final Map<SootClass, Boolean> controlClasses = new HashMap<SootClass, Boolean>();
+
+	/**
+	 * Creates a new resolver
+	 * @param packageName The package name of the app, used for resolving
+	 * class names that are relative to the app package
+	 */
+	public LayoutClassResolver(String packageName) {
+		this.packageName = packageName;
+	}
+
+	private boolean isRealClass(SootClass sc) {
+		if (sc == null)
+			return false;
+		return !(sc.isPhantom() && sc.getMethodCount() == 0 && sc.getFieldCount() == 0);
+	}
+
+	/**
+	 * Gets the class for the given tag or class name from a layout file
+	 * @param className The tag or class name from the layout file
+	 * @return The class for the given name, or null if no such class could
+	 * be found
+	 */
+	public SootClass getLayoutClass(String className) {
+		synchronized (Scene.v()) {
+			if (layoutClasses.containsKey(className))
+				return layoutClasses.get(className);
+			SootClass sc = resolveLayoutClass(className);
+			layoutClasses.put(className, sc);
+			return sc;
+		}
+	}
+
+	private SootClass resolveLayoutClass(String className) {
+		// Cut off some junk returned by the parser
+		if (className.startsWith(";"))
+			className = className.substring(1);
+
+		if (className.contains("(") || className.contains("<") || className.contains("/")) {
+			System.err.println("Invalid class name " + className);
+			return null;
+		}
+
+		SootClass sc = Scene.v().forceResolve(className, SootClass.BODIES);
+		if ((sc == null || sc.isPhantom()) && !packageName.isEmpty())
+			sc = Scene.v().forceResolve(packageName + "." + className, SootClass.BODIES);
+		if (!isRealClass(sc))
+			sc = Scene.v().forceResolve("android.view." + className, SootClass.BODIES);
+		if (!isRealClass(sc))
+			sc = Scene.v().forceResolve("android.widget." + className, SootClass.BODIES);
+		if (!isRealClass(sc))
+			sc = Scene.v().forceResolve("android.webkit." + className, SootClass.BODIES);
+		if (!isRealClass(sc)) {
+			System.err.println("Could not find layout class " + className);
+			return null;
+		}
+		return sc;
+	}
+
+	/**
+	 * Checks whether the given class is a layout class or a view class, i.e.
+	 * whether it is derived from android.view.ViewGroup, android.view.View or
+	 * android.webkit.WebView
+	 * @param theClass The class to check
+	 * @return True if the given class is a layout or view class, otherwise
+	 * false
+	 */
+	public boolean isLayoutOrViewClass(SootClass theClass) {
+		if (theClass == null)
+			return false;
+		synchronized (Scene.v()) {
+			Boolean res = controlClasses.get(theClass);
+			if (res == null) {
+				res = isLayoutClass(theClass) || isViewClass(theClass);
+				controlClasses.put(theClass, res);
+			}
+			return res;
+		}
+	}
+
+	private boolean isLayoutClass(SootClass theClass) {
+		// To make sure that nothing all wonky is going on here, we
+		// check the hierarchy to find the android view class
+		for (SootClass parent : Scene.v().getActiveHierarchy().getSuperclassesOf(theClass))
+			if (parent.getName().equals("android.view.ViewGroup"))
+				return true;
+		return false;
+	}
+
+	private boolean isViewClass(SootClass theClass) {
+		// To make sure that nothing all wonky is going on here, we
+		// check the hierarchy to find the android view class
+		for (SootClass parent : Scene.v().getActiveHierarchy().getSuperclassesOfIncluding(theClass))
+			if (parent.getName().equals("android.view.View")
+					|| parent.getName().equals("android.webkit.WebView"))
+				return true;
+		System.err.println("Layout class " + theClass.getName() + " is not derived from "
+				+ "android.view.View");
+		return false;
+	}
+
+}
@@ -10,10 +10,14 @@
  ******************************************************************************/
 package soot.jimple.infoflow.android.resources;
 
+import soot.Scene;
 import soot.SootClass;
 
 /**
- * Data class representing a layout control on the android screen
+ * Data class representing a layout control on the android screen. The view
+ * class is kept by name only, so that layout controls can outlive the Soot
+ * scene in which they were found, e.g., when the results of the callback
+ * analysis are reused in a later analysis round or loaded from the cache.
  * 
  * @author Steven Arzt
  *
@@ -21,16 +25,20 @@ import soot.SootClass;
 public class LayoutControl {
 	
 	private final int id;
-	private final SootClass viewClass;
+	private final String viewClassName;
 	private boolean isSensitive;
 	
 	public LayoutControl(int id, SootClass viewClass) {
-		this.id = id;
-		this.viewClass = viewClass;
+		this(id, viewClass, false);
 	}
 	
 	public LayoutControl(int id, SootClass viewClass, boolean isSensitive) {
-		this(id, viewClass);
+		this(id, viewClass.getName(), isSensitive);
+	}
+	
+	public LayoutControl(int id, String viewClassName, boolean isSensitive) {
+		this.id = id;
+		this.viewClassName = viewClassName;
 		this.isSensitive = isSensitive;
 	}
 	
@@ -38,8 +46,19 @@ public class LayoutControl {
 		return this.id;
 	}
 	
+	/**
+	 * Gets the class of this control in the current Soot scene
+	 * @return The class of this control, or null if the current scene does
+	 * not contain it
+	 */
 	public SootClass getViewClass() {
-		return this.viewClass;
+		if (!Scene.v().containsClass(viewClassName))
+			return null;
+		return Scene.v().getSootClass(viewClassName);
+	}
+	
+	public String getViewClassName() {
+		return this.viewClassName;
 	}
 	
 	public void setIsSensitive(boolean isSensitive) {
@@ -52,7 +71,7 @@ public class LayoutControl {
 	
 	@Override
 	public String toString() {
-		return id + " - " + viewClass;
+		return id + " - " + viewClassName;
 	}
 
 	@Override
@@ -61,7 +80,7 @@ public class LayoutControl {
 		int result = 1;
 		result = prime * result + id;
 		result = prime * result + (isSensitive ? 1231 : 1237);
-		result = prime * result + ((viewClass == null) ? 0 : viewClass.hashCode());
+		result = prime * result + ((viewClassName == null) ? 0 : viewClassName.hashCode());
 		return result;
 	}
 	
@@ -78,10 +97,10 @@ public class LayoutControl {
 			return false;
 		if (isSensitive != other.isSensitive)
 			return false;
-		if (viewClass == null) {
-			if (other.viewClass != null)
+		if (viewClassName == null) {
+			if (other.viewClassName != null)
 				return false;
-		} else if (!viewClass.equals(other.viewClass))
+		} else if (!viewClassName.equals(other.viewClassName))
 			return false;
 		return true;
 	}
@@ -11,18 +11,20 @@
 package soot.jimple.infoflow.android.resources;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
 import pxb.android.axml.AxmlVisitor;
 import soot.PackManager;
-import soot.Scene;
 import soot.SceneTransformer;
 import soot.SootClass;
 import soot.Transform;
+import soot.jimple.infoflow.android.AnalysisMetrics;
 import soot.jimple.infoflow.android.axml.AXmlAttribute;
 import soot.jimple.infoflow.android.axml.AXmlHandler;
 import soot.jimple.infoflow.android.axml.AXmlNode;
@@ -51,77 +53,50 @@ public class LayoutFileParser extends AbstractResourceParser {
 	private final static int TYPE_TEXT_VARIATION_VISIBLE_PASSWORD = 0x00000090;
 	private final static int TYPE_TEXT_VARIATION_WEB_PASSWORD = 0x000000e0;
 	
-	public LayoutFileParser(String packageName, ARSCFileParser resParser) {
-		this.packageName = packageName;
-		this.resParser = resParser;
-	}
-	
-	private boolean isRealClass(SootClass sc) {
-		if (sc == null)
-			return false;
-		return !(sc.isPhantom() && sc.getMethodCount() == 0 && sc.getFieldCount() == 0);
-	}
+	private int threads = 1;
 	
-	private SootClass getLayoutClass(String className) {
-		// Cut off some junk returned by the parser
-		if (className.startsWith(";"))
-			className = className.substring(1);
+	/**
+	 * Callback or inclusion found in a layout file. When merging the results
+	 * of the single files, they are processed in the order in which they
+	 * were found.
+	 */
+	private static class LayoutReference {
+		private final boolean include;
+		private final String target;
 		
-		if (className.contains("(") || className.contains("<") || className.contains("/")) {
-			System.err.println("Invalid class name " + className);
-			return null;
+		private LayoutReference(boolean include, String target) {
+			this.include = include;
+			this.target = target;
 		}
+	}
+	
+	/**
+	 * Results of parsing a single layout file
+	 */
+	private static class LayoutFileResult {
+		private final String layoutFile;
+		private final List<LayoutControl> controls = new ArrayList<LayoutControl>();
+		private final List<LayoutReference> references = new ArrayList<LayoutReference>();
 		
-		SootClass sc = Scene.v().forceResolve(className, SootClass.BODIES);
-		if ((sc == null || sc.isPhantom()) && !packageName.isEmpty())
-			sc = Scene.v().forceResolve(packageName + "." + className, SootClass.BODIES);
-		if (!isRealClass(sc))
-			sc = Scene.v().forceResolve("android.view." + className, SootClass.BODIES);
-		if (!isRealClass(sc))
-			sc = Scene.v().forceResolve("android.widget." + className, SootClass.BODIES);
-		if (!isRealClass(sc))
-			sc = Scene.v().forceResolve("android.webkit." + className, SootClass.BODIES);
-		if (!isRealClass(sc)) {
-   			System.err.println("Could not find layout class " + className);
-   			return null;
+		private LayoutFileResult(String layoutFile) {
+			this.layoutFile = layoutFile;
 		}
-		return sc;		
 	}
 	
-	private boolean isLayoutClass(SootClass theClass) {
-		if (theClass == null)
-			return false;
-		
-   		// To make sure that nothing all wonky is going on here, we
-   		// check the hierarchy to find the android view class
-   		boolean found = false;
-   		for (SootClass parent : Scene.v().getActiveHierarchy().getSuperclassesOf(theClass))
-   			if (parent.getName().equals("android.view.ViewGroup")) {
-   				found = true;
-   				break;
-   			}
-   		return found;
+	public LayoutFileParser(String packageName, ARSCFileParser resParser) {
+		this.packageName = packageName;
+		this.resParser = resParser;
 	}
 	
-	private boolean isViewClass(SootClass theClass) {
-		if (theClass == null)
-			return false;
-		
-		// To make sure that nothing all wonky is going on here, we
-   		// check the hierarchy to find the android view class
-   		boolean found = false;
-   		for (SootClass parent : Scene.v().getActiveHierarchy().getSuperclassesOfIncluding(theClass))
-   			if (parent.getName().equals("android.view.View")
-   					|| parent.getName().equals("android.webkit.WebView")) {
-   				found = true;
-   				break;
-   			}
-   		if (!found) {
-   			System.err.println("Layout class " + theClass.getName() + " is not derived from "
-   					+ "android.view.View");
-   			return false;
-   		}
-   		return true;
+	/**
+	 * Sets the number of threads to use for parsing the layout files. The
+	 * classes of the controls are still resolved one at a time, since the
+	 * Soot scene is not thread-safe.
+	 * @param threads The number of threads to use. Values smaller than or
+	 * equal to one parse all files sequentially.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
 	}
 	
 	/**
@@ -165,6 +140,23 @@ public class LayoutFileParser extends AbstractResourceParser {
 				addCallbackMethod(target, callback);
 	}	
 	
+	/**
+	 * Adds an inclusion of another layout file found in an XML file
+	 * @param layoutFile The XML file in which the inclusion has been found
+	 * @param targetFile The included XML file
+	 */
+	private void addInclude(String layoutFile, String targetFile) {
+		// If we have already processed the target file, we can
+		// simply copy the callbacks we have found there
+		if (callbackMethods.containsKey(targetFile))
+			for (String callback : new ArrayList<String>(callbackMethods.get(targetFile)))
+				addCallbackMethod(layoutFile, callback);
+		else {
+			// We need to record a dependency to resolve later
+			addToMapSet(includeDependencies, targetFile, layoutFile);
+		}
+	}
+	
 	/**
 	 * Parses all layout XML files in the given APK file and loads the IDs of
 	 * the user controls in it. This method only registers a Soot phase that is
@@ -188,60 +180,68 @@ public class LayoutFileParser extends AbstractResourceParser {
 	 * @param fileName The APK file in which to look for user controls
 	 */
 	public void parseLayoutFileDirect(final String fileName) {
-		handleAndroidResourceFiles(fileName, /*classes,*/ null, new IResourceHandler() {
-				
-			@Override
-			public void handleResourceFile(final String fileName, Set<String> fileNameFilter, InputStream stream) {
-				// We only process valid layout XML files
-				if (!fileName.startsWith("res/layout"))
-					return;
-				if (!fileName.endsWith(".xml")) {
-					System.err.println("Skipping file " + fileName + " in layout folder...");
-					return;
-				}
+		final LayoutClassResolver resolver = new LayoutClassResolver(packageName);
+		AnalysisMetrics.Phase phase = AnalysisMetrics.getInstance().startPhase(AnalysisMetrics.LAYOUT);
+		List<LayoutFileResult> results;
+		try {
+			results = processAndroidResourceFiles(fileName, "res/layout",
+					threads, new IResourceProcessor<LayoutFileResult>() {
 				
-				// Get the fully-qualified class name
-				String entryClass = fileName.substring(0, fileName.lastIndexOf("."));
-				if (!packageName.isEmpty())
-					entryClass = packageName + "." + entryClass;
+				@Override
+				public LayoutFileResult processResourceFile(String fileName, InputStream stream, long size) {
+					// We only process valid layout XML files
+					if (!fileName.startsWith("res/layout"))
+						return null;
+					if (!fileName.endsWith(".xml")) {
+						System.err.println("Skipping file " + fileName + " in layout folder...");
+						return null;
+					}
 				
-				// We are dealing with resource files
-				if (!fileName.startsWith("res/layout"))
-					return;
-				if (fileNameFilter != null) {
-					boolean found = false;
-					for (String s : fileNameFilter)
-						if (s.equalsIgnoreCase(entryClass)) {
-							found = true;
-							break;
-						}
-					if (!found)
-						return;
-				}
-				
-				try {
-					AXmlHandler handler = new AXmlHandler(stream, new AXML20Parser());
-					parseLayoutNode(fileName, handler.getDocument().getRootNode());
-					System.out.println("Found " + userControls.size() + " layout controls in file "
-							+ fileName);
-				}
-				catch (Exception ex) {
-					System.err.println("Could not read binary XML file: " + ex.getMessage());
-					ex.printStackTrace();
+					// Parse errors keep the results found so far, just like
+					// they always did
+					LayoutFileResult result = new LayoutFileResult(fileName);
+					try {
+						AXmlHandler handler = new AXmlHandler(stream, size, new AXML20Parser());
+						parseLayoutNode(result, resolver, handler.getDocument().getRootNode());
+					}
+					catch (Exception ex) {
+						System.err.println("Could not read binary XML file: " + ex.getMessage());
+						ex.printStackTrace();
+					}
+					return result;
 				}
+			});
+		}
+		finally {
+			phase.stop();
+		}
+		
+		// Merge the results in the order of the files
+		for (LayoutFileResult result : results) {
+			for (LayoutReference ref : result.references) {
+				if (ref.include)
+					addInclude(result.layoutFile, ref.target);
+				else
+					addCallbackMethod(result.layoutFile, ref.target);
 			}
-		});
+			for (LayoutControl control : result.controls)
+				addToMapSet(this.userControls, result.layoutFile, control);
+			System.out.println("Found " + userControls.size() + " layout controls in file "
+					+ result.layoutFile);
+		}
 	}
 
 	/**
 	 * Parses the layout file with the given root node
-	 * @param layoutFile The full path and file name of the file being parsed
+	 * @param result The result object of the file being parsed
+	 * @param resolver The resolver for the classes of the controls
 	 * @param rootNode The root node from where to start parsing
 	 */
-	private void parseLayoutNode(String layoutFile, AXmlNode rootNode) {
+	private void parseLayoutNode(LayoutFileResult result, LayoutClassResolver resolver,
+			AXmlNode rootNode) {
 		if (rootNode.getTag() == null || rootNode.getTag().isEmpty()) {
 			System.err.println("Encountered a null or empty node name "
-					+ "in file " + layoutFile + ", skipping node...");
+					+ "in file " + result.layoutFile + ", skipping node...");
 			return;
 		}
 		
@@ -251,7 +251,7 @@ public class LayoutFileParser extends AbstractResourceParser {
 		}
 		// Check for inclusions
 		else if (tname.equals("include")) {
-			parseIncludeAttributes(layoutFile, rootNode);
+			parseIncludeAttributes(result, rootNode);
 		}
 		// The "merge" tag merges the next hierarchy level into the current
 		// one for flattening hierarchies.
@@ -266,26 +266,26 @@ public class LayoutFileParser extends AbstractResourceParser {
 			else {
 				if (attr.getType() != AxmlVisitor.TYPE_STRING)
 					System.err.println("Invalid targer resource "+attr.getValue()+"for fragment class value");
-				getLayoutClass(attr.getValue().toString());
+				resolver.getLayoutClass(attr.getValue().toString());
 			}
 		}
 		else {
-			final SootClass childClass = getLayoutClass(tname);
-			if (childClass != null && (isLayoutClass(childClass) || isViewClass(childClass)))
-				parseLayoutAttributes(layoutFile, childClass, rootNode);
+			final SootClass childClass = resolver.getLayoutClass(tname);
+			if (childClass != null && resolver.isLayoutOrViewClass(childClass))
+				parseLayoutAttributes(result, childClass, rootNode);
 		}
 
 		// Parse the child nodes
 		for (AXmlNode childNode : rootNode.getChildren())
-			parseLayoutNode(layoutFile, childNode);
+			parseLayoutNode(result, resolver, childNode);
 	}
 	
 	/**
 	 * Parses the attributes required for a layout file inclusion
-	 * @param layoutFile The full path and file name of the file being parsed
+	 * @param result The result object of the file being parsed
 	 * @param rootNode The AXml node containing the attributes
 	 */
-	private void parseIncludeAttributes(String layoutFile, AXmlNode rootNode) {
+	private void parseIncludeAttributes(LayoutFileResult result, AXmlNode rootNode) {
 		for (Entry<String, AXmlAttribute<?>> entry : rootNode.getAttributes().entrySet()) {
 			String attrName = entry.getKey().trim();
 			AXmlAttribute<?> attr = entry.getValue();
@@ -305,16 +305,7 @@ public class LayoutFileParser extends AbstractResourceParser {
     					return;
     				}
     				String targetFile = ((StringResource) targetRes).getValue();
-    				
-    				// If we have already processed the target file, we can
-    				// simply copy the callbacks we have found there
-        			if (callbackMethods.containsKey(targetFile))
-        				for (String callback : callbackMethods.get(targetFile))
-        					addCallbackMethod(layoutFile, callback);
-        			else {
-        				// We need to record a dependency to resolve later
-        				addToMapSet(includeDependencies, targetFile, layoutFile);
-        			}
+    				result.references.add(new LayoutReference(true, targetFile));
     			}
     		}
 		}
@@ -322,11 +313,11 @@ public class LayoutFileParser extends AbstractResourceParser {
 
 	/**
 	 * Parses the layout attributes in the given AXml node 
-	 * @param layoutFile The full path and file name of the file being parsed
+	 * @param result The result object of the file being parsed
 	 * @param layoutClass The class for the attributes are parsed
 	 * @param rootNode The AXml node containing the attributes
 	 */
-	private void parseLayoutAttributes(String layoutFile, SootClass layoutClass, AXmlNode rootNode) {
+	private void parseLayoutAttributes(LayoutFileResult result, SootClass layoutClass, AXmlNode rootNode) {
 		boolean isSensitive = false;
 		int id = -1;
 		
@@ -368,7 +359,7 @@ public class LayoutFileParser extends AbstractResourceParser {
 					&& attr.getType() == AxmlVisitor.TYPE_STRING
 					&& attr.getValue() instanceof String) {
 				String strData = ((String) attr.getValue()).trim();
-				addCallbackMethod(layoutFile, strData);
+				result.references.add(new LayoutReference(false, strData));
 			}
 			else if (attr.getType() == AxmlVisitor.TYPE_STRING && attrName.equals("text")) {
 				// To avoid unrecognized attribute for "text" field
@@ -379,7 +370,7 @@ public class LayoutFileParser extends AbstractResourceParser {
 		}
 		
 		// Register the new user control
-		addToMapSet(this.userControls, layoutFile, new LayoutControl(id, layoutClass, isSensitive));
+		result.controls.add(new LayoutControl(id, layoutClass, isSensitive));
 	}
 
 	/**
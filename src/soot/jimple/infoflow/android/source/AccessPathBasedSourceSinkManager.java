@@ -108,9 +108,7 @@ public class AccessPathBasedSourceSinkManager extends AndroidSourceSinkManager {
 		
 		// This is a method-based source, so we need to obtain the correct
 		// access path
-		final String signature = methodToSignature.getUnchecked(
-				sCallSite.getInvokeExpr().getMethod());
-		SourceSinkDefinition def = sourceMethods.get(signature);
+		SourceSinkDefinition def = getSourceDefinition(sCallSite.getInvokeExpr().getMethod());
 				
 		// If we don't have any more precise source information, we take the
 		// default behavior of our parent implementation. We do the same if we
@@ -186,18 +184,11 @@ public class AccessPathBasedSourceSinkManager extends AndroidSourceSinkManager {
 			return false;
 				
 		// Get the sink definition
-		final String methodSignature = methodToSignature.getUnchecked(
-				sCallSite.getInvokeExpr().getMethod());
-		SourceSinkDefinition def = sinkMethods.get(methodSignature);
+		SourceSinkDefinition def = getSinkDefinition(sCallSite.getInvokeExpr().getMethod());
 		if (def == null) {
 			// If we don't have a sink definition for the direct callee, we
 			// check the CFG.
-			for (SootMethod sm : cfg.getCalleesOfCallAt(sCallSite)) {
-				String signature = methodToSignature.getUnchecked(sm);
-				if (this.sinkMethods.containsKey(signature))
-					return true;
-			}
-			return false;
+			return getCallSiteFlags(sCallSite, cfg, SINK_CALLEE) != 0;
 		}
 		
 		// If we have no precise information, we conservatively assume that
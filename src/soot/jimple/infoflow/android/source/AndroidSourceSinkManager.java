@@ -24,14 +24,11 @@ import java.util.Set;
 import soot.Local;
 import soot.Scene;
 import soot.SootClass;
-import soot.SootField;
 import soot.SootMethod;
 import soot.Unit;
 import soot.Value;
 import soot.VoidType;
-import soot.jimple.AssignStmt;
 import soot.jimple.DefinitionStmt;
-import soot.jimple.FieldRef;
 import soot.jimple.IdentityStmt;
 import soot.jimple.InstanceInvokeExpr;
 import soot.jimple.IntConstant;
@@ -39,9 +36,7 @@ import soot.jimple.InvokeExpr;
 import soot.jimple.NewExpr;
 import soot.jimple.ParameterRef;
 import soot.jimple.Stmt;
-import soot.jimple.StringConstant;
 import soot.jimple.infoflow.android.resources.ARSCFileParser;
-import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
 import soot.jimple.infoflow.android.resources.ARSCFileParser.ResPackage;
 import soot.jimple.infoflow.android.source.AndroidSourceSinkManager.SourceType;
 import soot.jimple.infoflow.android.resources.LayoutControl;
@@ -56,8 +51,6 @@ import soot.jimple.infoflow.source.data.SourceSinkDefinition;
 import soot.jimple.infoflow.util.SystemClassHandler;
 import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
 import soot.jimple.toolkits.scalar.ConstantPropagatorAndFolder;
-import soot.tagkit.IntegerConstantValueTag;
-import soot.tagkit.Tag;
 
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -124,6 +117,40 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 		StringConstantSource
 	}
 
+	/**
+	 * Flags for classifying call sites: The callee is a source
+	 */
+	protected final static int SOURCE_METHOD = 0x01;
+	/**
+	 * The callee is a source through one of the interfaces of its class
+	 */
+	protected final static int SOURCE_INTERFACE = 0x02;
+	/**
+	 * One of the callees in the call graph is a source
+	 */
+	protected final static int SOURCE_CALLEE = 0x04;
+	/**
+	 * The callee is a sink
+	 */
+	protected final static int SINK_METHOD = 0x08;
+	/**
+	 * The callee is a sink through one of the interfaces of its class
+	 */
+	protected final static int SINK_INTERFACE = 0x10;
+	/**
+	 * One of the callees in the call graph is a sink
+	 */
+	protected final static int SINK_CALLEE = 0x20;
+	/**
+	 * The callee overrides a sink in one of the ICC base classes. This only
+	 * applies if a parameter of the call is tainted.
+	 */
+	protected final static int SINK_ICC = 0x40;
+	
+	protected final static int SOURCE_CALL_FLAGS = SOURCE_METHOD | SOURCE_INTERFACE | SOURCE_CALLEE;
+	protected final static int SINK_CALL_FLAGS = SINK_METHOD | SINK_INTERFACE | SINK_CALLEE | SINK_ICC;
+	protected final static int ALL_CALL_FLAGS = SOURCE_CALL_FLAGS | SINK_CALL_FLAGS;
+	
 	protected final static String Activity_FindViewById = "<android.app.Activity: android.view.View findViewById(int)>";
 	protected final static String View_FindViewById = "<android.app.View: android.view.View findViewById(int)>";
 
@@ -168,6 +195,12 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 		
 	});
 	
+	private volatile SourceSinkMethodIndex methodIndex = null;
+	private volatile SourceSinkClassificationTable classificationTable = null;
+	private int eagerClassificationThreads = 0;
+	private ResourceIDResolver resourceIDResolver = null;
+	private boolean resolveReturnedResourceIDs = false;
+	
 	/**
 	 * Creates a new instance of the {@link AndroidSourceSinkManager} class with
 	 * either strong or weak matching.
@@ -256,6 +289,31 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 		if (!SystemClassHandler.isTaintVisible(ap, callee))
 			return false;
 
+		final SootClass sc = callee.getDeclaringClass();
+		
+		// Do not consider ICC methods as sinks if only the base object is
+		// tainted
+		boolean isParamTainted = false;
+		if (!sc.isInterface() && !ap.isStaticFieldRef()) {
+			for (int i = 0; i < sCallSite.getInvokeExpr().getArgCount(); i++)
+				if (sCallSite.getInvokeExpr().getArg(i) == ap.getPlainValue()) {
+					isParamTainted = true;
+					break;
+				}
+		}
+		
+		int mask = SINK_CALL_FLAGS;
+		if (!isParamTainted)
+			mask &= ~SINK_ICC;
+		return getCallSiteFlags(sCallSite, cfg, mask) != 0;
+	}
+	
+	/**
+	 * Gets the base classes of the ICC methods
+	 * 
+	 * @return The base classes of the ICC methods
+	 */
+	protected SootClass[] getIccBaseClasses() {
 		// For ICC methods (e.g., startService), the classes name of these
 		// methods may change through user's definition. We match all the
 		// ICC methods through their base class name.
@@ -275,57 +333,284 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 																	// Activity
 																	// class
 			};
-		
-		final SootClass sc = callee.getDeclaringClass();
-		final String subSig = callee.getSubSignature();
-		
-		// Do not consider ICC methods as sinks if only the base object is
-		// tainted
-		boolean isParamTainted = false;
-		if (!sc.isInterface() && !ap.isStaticFieldRef()) {
-			for (int i = 0; i < sCallSite.getInvokeExpr().getArgCount(); i++)
-				if (sCallSite.getInvokeExpr().getArg(i) == ap.getPlainValue()) {
-					isParamTainted = true;
-					break;
-				}
+		return iccBaseClasses;
+	}
+	
+	/**
+	 * Sets the number of threads with which to classify all reachable call
+	 * sites as sources and sinks before the data flow analysis starts. If
+	 * this option is disabled, every call site is classified when the solver
+	 * asks for it.
+	 * 
+	 * @param threads
+	 *            The number of threads to use for the classification, or 0 to
+	 *            classify all call sites lazily
+	 */
+	public void setEagerClassificationThreads(int threads) {
+		this.eagerClassificationThreads = threads;
+	}
+	
+	/**
+	 * Gets the classification of the given call site, either from the eagerly
+	 * computed classification table, or by classifying the call site now
+	 * 
+	 * @param sCallSite
+	 *            The call site to classify
+	 * @param cfg
+	 *            The interprocedural control flow graph
+	 * @param mask
+	 *            The flags in which the caller is interested
+	 * @return The flags from the given mask that apply to the given call
+	 *         site. If the call site was not classified eagerly, this may
+	 *         only contain the first flag found.
+	 */
+	protected int getCallSiteFlags(Stmt sCallSite,
+			InterproceduralCFG<Unit, SootMethod> cfg, int mask) {
+		SourceSinkClassificationTable table = getClassificationTable(cfg);
+		if (table != null) {
+			int flags = table.getFlags(sCallSite);
+			if (flags >= 0)
+				return flags & mask;
 		}
-		
-		if (isParamTainted) {
-			for (SootClass clazz : iccBaseClasses) {
-				if (Scene.v().getOrMakeFastHierarchy().isSubclass(sc, clazz)) {
-					if (clazz.declaresMethod(subSig)) {
-						if (this.sinkMethods.containsKey(methodToSignature.getUnchecked(
-								clazz.getMethod(subSig))))
-							return true;
-						break;
-					}
+		return classifyCallSite(sCallSite, cfg, mask, false);
+	}
+	
+	private SourceSinkClassificationTable getClassificationTable(
+			InterproceduralCFG<Unit, SootMethod> cfg) {
+		if (eagerClassificationThreads <= 0 || cfg == null)
+			return null;
+		SourceSinkClassificationTable table = this.classificationTable;
+		if (table == null || !table.isValidFor(Scene.v(), cfg)) {
+			synchronized (this) {
+				table = this.classificationTable;
+				if (table == null || !table.isValidFor(Scene.v(), cfg)) {
+					table = SourceSinkClassificationTable.build(this, cfg,
+							eagerClassificationThreads);
+					this.classificationTable = table;
 				}
 			}
 		}
-
-		{
-		final String signature = methodToSignature.getUnchecked(
-				sCallSite.getInvokeExpr().getMethod());
-		if (this.sinkMethods.containsKey(signature))
-			return true;
+		return table;
+	}
+	
+	/**
+	 * Classifies the given call site as a source or sink
+	 * 
+	 * @param sCallSite
+	 *            The call site to classify
+	 * @param cfg
+	 *            The interprocedural control flow graph
+	 * @param mask
+	 *            The flags to check
+	 * @param all
+	 *            True to check all flags in the mask, false to stop after the
+	 *            first flag that applies
+	 * @return The flags from the given mask that apply to the given call site
+	 */
+	protected int classifyCallSite(Stmt sCallSite,
+			InterproceduralCFG<Unit, SootMethod> cfg, int mask, boolean all) {
+		final SootMethod callee = sCallSite.getInvokeExpr().getMethod();
+		int flags = 0;
+		
+		if ((mask & SINK_ICC) != 0 && isIccSinkMethod(callee)) {
+			flags |= SINK_ICC;
+			if (!all)
+				return flags;
 		}
-
+		
+		if ((mask & SOURCE_METHOD) != 0 && isSourceMethod(callee)) {
+			flags |= SOURCE_METHOD;
+			if (!all)
+				return flags;
+		}
+		if ((mask & SINK_METHOD) != 0 && isSinkMethod(callee)) {
+			flags |= SINK_METHOD;
+			if (!all)
+				return flags;
+		}
+		
 		// Check whether we have any of the interfaces on the list
-		for (SootClass i : interfacesOf.getUnchecked(sCallSite.getInvokeExpr().getMethod().getDeclaringClass())) {
-			if (i.declaresMethod(subSig))
-				if (this.sinkMethods.containsKey(methodToSignature.getUnchecked(i.getMethod(subSig))))
-					return true;
+		if ((mask & SOURCE_INTERFACE) != 0 && isDefinedInInterface(callee, false)) {
+			flags |= SOURCE_INTERFACE;
+			if (!all)
+				return flags;
+		}
+		if ((mask & SINK_INTERFACE) != 0 && isDefinedInInterface(callee, true)) {
+			flags |= SINK_INTERFACE;
+			if (!all)
+				return flags;
 		}
 		
 		// Ask the CFG in case we don't know any better
-		for (SootMethod sm : cfg.getCalleesOfCallAt(sCallSite)) {
-			String signature = methodToSignature.getUnchecked(sm);
-			if (this.sinkMethods.containsKey(signature))
-				return true;
-		}
+		if ((mask & (SOURCE_CALLEE | SINK_CALLEE)) != 0)
+			for (SootMethod sm : cfg.getCalleesOfCallAt(sCallSite)) {
+				if ((mask & SOURCE_CALLEE) != 0 && isSourceMethod(sm)) {
+					flags |= SOURCE_CALLEE;
+					if (!all)
+						return flags;
+				}
+				if ((mask & SINK_CALLEE) != 0 && isSinkMethod(sm)) {
+					flags |= SINK_CALLEE;
+					if (!all)
+						return flags;
+				}
+			}
+		return flags;
+	}
+	
+	/**
+	 * Checks whether the given method overrides a sink method of one of the
+	 * ICC base classes
+	 * 
+	 * @param callee
+	 *            The method to check
+	 * @return True if the given method is an ICC sink, otherwise false
+	 */
+	private boolean isIccSinkMethod(SootMethod callee) {
+		final SootClass sc = callee.getDeclaringClass();
+		if (sc.isInterface())
+			return false;
 		
+		final String subSig = callee.getSubSignature();
+		for (SootClass clazz : getIccBaseClasses()) {
+			if (Scene.v().getOrMakeFastHierarchy().isSubclass(sc, clazz)) {
+				if (clazz.declaresMethod(subSig))
+					return isSinkMethod(clazz.getMethod(subSig));
+			}
+		}
 		return false;
 	}
+	
+	/**
+	 * Gets the index of the source, sink and callback methods for the current
+	 * Soot scene. The index is built on first use, since the scene is usually
+	 * not yet loaded when this source/sink manager is created.
+	 * 
+	 * @return The method index for the current Soot scene
+	 */
+	protected SourceSinkMethodIndex getMethodIndex() {
+		SourceSinkMethodIndex index = this.methodIndex;
+		if (index == null || !index.isValidFor(Scene.v())) {
+			synchronized (this) {
+				index = this.methodIndex;
+				if (index == null || !index.isValidFor(Scene.v())) {
+					index = new SourceSinkMethodIndex(this.sourceMethods,
+							this.sinkMethods, this.callbackMethods.values());
+					this.methodIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+	
+	/**
+	 * Gets the source definition for the given method
+	 * 
+	 * @param sm
+	 *            The method for which to get the source definition
+	 * @return The source definition for the given method, or null if the
+	 *         method is not a source
+	 */
+	protected SourceSinkDefinition getSourceDefinition(SootMethod sm) {
+		SourceSinkMethodIndex index = getMethodIndex();
+		if (index.isIndexed(sm))
+			return index.isSource(sm) ? index.getSourceDefinition(sm) : null;
+		return this.sourceMethods.get(methodToSignature.getUnchecked(sm));
+	}
+	
+	/**
+	 * Gets the sink definition for the given method
+	 * 
+	 * @param sm
+	 *            The method for which to get the sink definition
+	 * @return The sink definition for the given method, or null if the method
+	 *         is not a sink
+	 */
+	protected SourceSinkDefinition getSinkDefinition(SootMethod sm) {
+		SourceSinkMethodIndex index = getMethodIndex();
+		if (index.isIndexed(sm))
+			return index.isSink(sm) ? index.getSinkDefinition(sm) : null;
+		return this.sinkMethods.get(methodToSignature.getUnchecked(sm));
+	}
+	
+	/**
+	 * Checks whether the given method is defined as a source
+	 * 
+	 * @param sm
+	 *            The method to check
+	 * @return True if the given method is a source, otherwise false
+	 */
+	protected boolean isSourceMethod(SootMethod sm) {
+		SourceSinkMethodIndex index = getMethodIndex();
+		if (index.isIndexed(sm))
+			return index.isSource(sm);
+		return this.sourceMethods.containsKey(methodToSignature.getUnchecked(sm));
+	}
+	
+	/**
+	 * Checks whether the given method is defined as a sink
+	 * 
+	 * @param sm
+	 *            The method to check
+	 * @return True if the given method is a sink, otherwise false
+	 */
+	protected boolean isSinkMethod(SootMethod sm) {
+		SourceSinkMethodIndex index = getMethodIndex();
+		if (index.isIndexed(sm))
+			return index.isSink(sm);
+		return this.sinkMethods.containsKey(methodToSignature.getUnchecked(sm));
+	}
+	
+	/**
+	 * Checks whether the given method is a callback method
+	 * 
+	 * @param sm
+	 *            The method to check
+	 * @return True if the given method is a callback, otherwise false
+	 */
+	protected boolean isCallbackMethod(SootMethod sm) {
+		SourceSinkMethodIndex index = getMethodIndex();
+		if (index.isIndexed(sm))
+			return index.isCallback(sm);
+		return this.callbackMethods.containsKey(methodToSignature.getUnchecked(sm));
+	}
+	
+	/**
+	 * Checks whether the given method is defined as a source or sink in one
+	 * of the interfaces of its declaring class. The result only depends on
+	 * the method, so it is memoized in the method index.
+	 * 
+	 * @param sm
+	 *            The method to check
+	 * @param sink
+	 *            True to check for sinks, false to check for sources
+	 * @return True if an interface declares the method as a source or sink,
+	 *         otherwise false
+	 */
+	private boolean isDefinedInInterface(SootMethod sm, boolean sink) {
+		SourceSinkMethodIndex index = getMethodIndex();
+		boolean indexed = index.isIndexed(sm);
+		if (indexed) {
+			Boolean res = index.getViaInterface(sm, sink);
+			if (res != null)
+				return res;
+		}
+		
+		boolean res = false;
+		final String subSig = sm.getSubSignature();
+		for (SootClass i : interfacesOf.getUnchecked(sm.getDeclaringClass())) {
+			if (i.declaresMethod(subSig)) {
+				SootMethod ifm = i.getMethod(subSig);
+				if (sink ? isSinkMethod(ifm) : isSourceMethod(ifm)) {
+					res = true;
+					break;
+				}
+			}
+		}
+		if (indexed)
+			index.setViaInterface(sm, sink, res);
+		return res;
+	}
 
 	@Override
 	public SourceInfo getSourceInfo(Stmt sCallSite, InterproceduralCFG<Unit, SootMethod> cfg) {
@@ -398,30 +683,8 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 		
 		// This might be a normal source method
 		if (sCallSite.containsInvokeExpr()) {
-			{
-			String signature = methodToSignature.getUnchecked(
-					sCallSite.getInvokeExpr().getMethod());
-
-			if (this.sourceMethods.containsKey(signature))
+			if (getCallSiteFlags(sCallSite, cfg, SOURCE_CALL_FLAGS) != 0)
 				return SourceType.MethodCall;
-			}
-
-			// Check whether we have any of the interfaces on the list
-			final String subSig = sCallSite.getInvokeExpr().getMethod().getSubSignature();
-			for (SootClass i : interfacesOf.getUnchecked(sCallSite.getInvokeExpr()
-					.getMethod().getDeclaringClass())) {
-				if (i.declaresMethod(subSig))
-					if (this.sourceMethods.containsKey(methodToSignature.getUnchecked(
-							i.getMethod(subSig))))
-						return SourceType.MethodCall;
-			}
-			
-			// Ask the CFG in case we don't know any better
-			for (SootMethod sm : cfg.getCalleesOfCallAt(sCallSite)) {
-				String signature = methodToSignature.getUnchecked(sm);
-				if (this.sourceMethods.containsKey(signature))
-					return SourceType.MethodCall;
-			}
 		}
 		else {
 			if(sCallSite instanceof DefinitionStmt){
@@ -455,11 +718,10 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 		// This statement might access a sensitive parameter in a callback
 		// method
 		if (enableCallbackSources) {
-			final String callSiteSignature = methodToSignature.getUnchecked(cfg.getMethodOf(sCallSite));
 			if (sCallSite instanceof IdentityStmt) {
 				IdentityStmt is = (IdentityStmt) sCallSite;
 				if (is.getRightOp() instanceof ParameterRef)
-					if (this.callbackMethods.containsKey(callSiteSignature)){
+					if (isCallbackMethod(cfg.getMethodOf(sCallSite))){
 						//System.out.println("CALBACKSOURCE  "+sCallSite+" @"+cfg.getMethodOf(sCallSite));
 						return SourceType.Callback;
 					}
@@ -515,7 +777,8 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 				if (ie.getArg(0) instanceof IntConstant)
 					id = ((IntConstant) ie.getArg(0)).value;
 				else if (ie.getArg(0) instanceof Local) {
-					Integer idVal = findLastResIDAssignment(sCallSite, (Local) ie.getArg(0), (BiDiInterproceduralCFG<Unit, SootMethod>) cfg, new HashSet<Stmt>(cfg.getMethodOf(sCallSite).getActiveBody().getUnits().size()));
+					Integer idVal = getResourceIDResolver().findLastResIDAssignment(sCallSite,
+							(Local) ie.getArg(0), (BiDiInterproceduralCFG<Unit, SootMethod>) cfg);
 					if (idVal == null) {
 						System.err.println("Could not find assignment to local "
 									+ ((Local) ie.getArg(0)).getName()
@@ -541,146 +804,6 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 		return false;
 	}
 
-	/**
-	 * Finds the last assignment to the given local representing a resource ID
-	 * by searching upwards from the given statement
-	 * 
-	 * @param stmt
-	 *            The statement from which to look backwards
-	 * @param local
-	 *            The variable for which to look for assignments
-	 * @return The last value assigned to the given variable
-	 */
-	private Integer findLastResIDAssignment(Stmt stmt, Local local, BiDiInterproceduralCFG<Unit, SootMethod> cfg, Set<Stmt> doneSet) {
-		if (!doneSet.add(stmt))
-			return null;
-
-		// If this is an assign statement, we need to check whether it changes
-		// the variable we're looking for
-		if (stmt instanceof AssignStmt) {
-			AssignStmt assign = (AssignStmt) stmt;
-			if (assign.getLeftOp() == local) {
-				// ok, now find the new value from the right side
-				if (assign.getRightOp() instanceof IntConstant)
-					return ((IntConstant) assign.getRightOp()).value;
-				else if (assign.getRightOp() instanceof FieldRef) {
-					SootField field = ((FieldRef) assign.getRightOp()).getField();
-					for (Tag tag : field.getTags())
-						if (tag instanceof IntegerConstantValueTag)
-							return ((IntegerConstantValueTag) tag).getIntValue();
-						else
-							System.err.println("Constant " + field + " was of unexpected type");
-				} else if (assign.getRightOp() instanceof InvokeExpr) {
-					InvokeExpr inv = (InvokeExpr) assign.getRightOp();
-					if (inv.getMethod().getName().equals("getIdentifier") && inv.getMethod().getDeclaringClass().getName().equals("android.content.res.Resources") && this.resourcePackages != null) {
-						// The right side of the assignment is a call into the
-						// well-known
-						// Android API method for resource handling
-						if (inv.getArgCount() != 3) {
-							System.err.println("Invalid parameter count for call to getIdentifier");
-							return null;
-						}
-
-						// Find the parameter values
-						String resName = "";
-						String resID = "";
-						String packageName = "";
-
-						// In the trivial case, these values are constants
-						if (inv.getArg(0) instanceof StringConstant)
-							resName = ((StringConstant) inv.getArg(0)).value;
-						if (inv.getArg(1) instanceof StringConstant)
-							resID = ((StringConstant) inv.getArg(1)).value;
-						if (inv.getArg(2) instanceof StringConstant)
-							packageName = ((StringConstant) inv.getArg(2)).value;
-						else if (inv.getArg(2) instanceof Local)
-							packageName = findLastStringAssignment(stmt, (Local) inv.getArg(2), cfg);
-						else {
-							System.err.println("Unknown parameter type in call to getIdentifier");
-							return null;
-						}
-
-						// Find the resource
-						ARSCFileParser.AbstractResource res = findResource(resName, resID, packageName);
-						if (res != null)
-							return res.getResourceID();
-					}
-				}
-			}
-		}
-
-		// Continue the search upwards
-		for (Unit pred : cfg.getPredsOf(stmt)) {
-			if (!(pred instanceof Stmt))
-				continue;
-			Integer lastAssignment = findLastResIDAssignment((Stmt) pred, local, cfg, doneSet);
-			if (lastAssignment != null)
-				return lastAssignment;
-		}
-		return null;
-	}
-
-	/**
-	 * Finds the given resource in the given package
-	 * 
-	 * @param resName
-	 *            The name of the resource to retrieve
-	 * @param resID
-	 * @param packageName
-	 *            The name of the package in which to look for the resource
-	 * @return The specified resource if available, otherwise null
-	 */
-	private AbstractResource findResource(String resName, String resID, String packageName) {
-		// Find the correct package
-		for (ARSCFileParser.ResPackage pkg : this.resourcePackages) {
-			// If we don't have any package specification, we pick the app's
-			// default package
-			boolean matches = (packageName == null || packageName.isEmpty()) && pkg.getPackageName().equals(this.appPackageName);
-			matches |= pkg.getPackageName().equals(packageName);
-			if (!matches)
-				continue;
-
-			// We have found a suitable package, now look for the resource
-			for (ARSCFileParser.ResType type : pkg.getDeclaredTypes())
-				if (type.getTypeName().equals(resID)) {
-					AbstractResource res = type.getFirstResource(resName);
-					return res;
-				}
-		}
-		return null;
-	}
-
-	/**
-	 * Finds the last assignment to the given String local by searching upwards
-	 * from the given statement
-	 * 
-	 * @param stmt
-	 *            The statement from which to look backwards
-	 * @param local
-	 *            The variable for which to look for assignments
-	 * @return The last value assigned to the given variable
-	 */
-	private String findLastStringAssignment(Stmt stmt, Local local, BiDiInterproceduralCFG<Unit, SootMethod> cfg) {
-		if (stmt instanceof AssignStmt) {
-			AssignStmt assign = (AssignStmt) stmt;
-			if (assign.getLeftOp() == local) {
-				// ok, now find the new value from the right side
-				if (assign.getRightOp() instanceof StringConstant)
-					return ((StringConstant) assign.getRightOp()).value;
-			}
-		}
-
-		// Continue the search upwards
-		for (Unit pred : cfg.getPredsOf(stmt)) {
-			if (!(pred instanceof Stmt))
-				continue;
-			String lastAssignment = findLastStringAssignment((Stmt) pred, local, cfg);
-			if (lastAssignment != null)
-				return lastAssignment;
-		}
-		return null;
-	}
-
 	/**
 	 * Adds a list of methods as sinks
 	 * 
@@ -688,8 +811,12 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 	 *            The methods to be added as sinks
 	 */
 	public void addSink(Set<SourceSinkDefinition> sinks) {
-		for (SourceSinkDefinition am : sinks)
-			this.sinkMethods.put(am.getMethod().getSignature(), am);
+		synchronized (this) {
+			for (SourceSinkDefinition am : sinks)
+				this.sinkMethods.put(am.getMethod().getSignature(), am);
+			this.methodIndex = null;
+			this.classificationTable = null;
+		}
 	}
 
 	/**
@@ -702,6 +829,7 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 	 */
 	public void setResourcePackages(List<ResPackage> resourcePackages) {
 		this.resourcePackages = resourcePackages;
+		this.resourceIDResolver = null;
 	}
 
 	/**
@@ -712,6 +840,37 @@ public class AndroidSourceSinkManager implements ISourceSinkManager {
 	 */
 	public void setAppPackageName(String appPackageName) {
 		this.appPackageName = appPackageName;
+		this.resourceIDResolver = null;
+	}
+	
+	/**
+	 * Sets whether resource IDs passed to findViewById() shall also be
+	 * resolved if they are returned by another method of the app that always
+	 * returns the same constant ID
+	 * 
+	 * @param resolveReturnedResourceIDs
+	 *            True to look into the methods returning resource IDs,
+	 *            otherwise false
+	 */
+	public void setResolveReturnedResourceIDs(boolean resolveReturnedResourceIDs) {
+		this.resolveReturnedResourceIDs = resolveReturnedResourceIDs;
+		this.resourceIDResolver = null;
+	}
+	
+	/**
+	 * Gets the resolver for the resource IDs passed to findViewById(). The
+	 * resolver memoizes its results, so it is shared by all queries until
+	 * the resource configuration changes.
+	 * 
+	 * @return The resolver for resource IDs
+	 */
+	protected synchronized ResourceIDResolver getResourceIDResolver() {
+		if (this.resourceIDResolver == null) {
+			this.resourceIDResolver = new ResourceIDResolver(this.resourcePackages,
+					this.appPackageName);
+			this.resourceIDResolver.setUseReturnSummaries(this.resolveReturnedResourceIDs);
+		}
+		return this.resourceIDResolver;
 	}
 	
 }
@@ -36,6 +36,7 @@ import soot.jimple.Stmt;
 import soot.jimple.StringConstant;
 import soot.jimple.ThisRef;
 import soot.jimple.UnopExpr;
+import soot.jimple.infoflow.android.nu.MethodGraphCache;
 import soot.jimple.infoflow.android.resources.LayoutControl;
 import soot.jimple.infoflow.android.source.AndroidSourceSinkManager.LayoutMatchingMode;
 import soot.jimple.infoflow.android.source.AndroidSourceSinkManager.SourceType;
@@ -47,10 +48,6 @@ import soot.jimple.infoflow.source.SourceInfo;
 import soot.jimple.infoflow.source.data.AccessPathTuple;
 import soot.jimple.infoflow.source.data.SourceSinkDefinition;
 import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
-import soot.toolkits.graph.ExceptionalUnitGraph;
-import soot.toolkits.graph.Orderer;
-import soot.toolkits.graph.PseudoTopologicalOrderer;
-import soot.toolkits.graph.UnitGraph;
 import soot.util.queue.QueueReader;
 
 public class ConstantPropogationSourceSinkManager extends AccessPathBasedSourceSinkManager {
@@ -224,9 +221,7 @@ public class ConstantPropogationSourceSinkManager extends AccessPathBasedSourceS
 			SootMethod m = rdr.next().method();
 			if(!m.hasActiveBody()) continue;
 			
-			UnitGraph g = new ExceptionalUnitGraph(m.getActiveBody());
-		    Orderer<Unit> orderer = new PseudoTopologicalOrderer<Unit>();
-		    for (Unit u : orderer.newList(g, false)) {
+		    for (Unit u : MethodGraphCache.getInstance().getMethodGraph(m).getTopologicalOrder()) {
 		    	SourceInfo si = getSourceInfo((Stmt)u, cfg);
 		    	if(si != null){
 		    		System.out.println("SOURCE STMT:"+u+" ||"+getSourceType((Stmt)u, cfg));
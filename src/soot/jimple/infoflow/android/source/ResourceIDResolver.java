@@ -0,0 +1,351 @@
+package soot.jimple.infoflow.android.source;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import soot.Local;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.FieldRef;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.ReturnStmt;
+import soot.jimple.Stmt;
+import soot.jimple.StringConstant;
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
+import soot.jimple.toolkits.ide.icfg.BiDiInterproceduralCFG;
+import soot.tagkit.IntegerConstantValueTag;
+import soot.tagkit.Tag;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.UnitGraph;
+
+/**
+ * Finds the resource IDs that are passed to methods such as
+ * <code>findViewById</code> by searching backwards from the call site for
+ * the last assignment to the respective local.
+ *
+ * The search is an iterative depth-first search over the predecessors of the
+ * call site, so long methods cannot overflow the stack. It visits the
+ * statements in the same order as the recursive search it replaces. The
+ * results are memoized per call site and local, since the same call sites
+ * are queried again and again during the data flow analysis.
+ *
+ * Optionally, the resolver also looks into the methods whose return values
+ * are assigned to the local. If all return statements of such a method
+ * return the same constant resource ID, this ID is used. The summaries of
+ * these methods are memoized as well.
+ */
+public class ResourceIDResolver {
+
+	private static final Object NO_ID = new Object();
+	private static final Object END_OF_PATH = new Object();
+
+	/**
+	 * Source for the predecessors of a statement during the backwards search
+	 */
+	private interface IPredecessorProvider {
+
+		public List<Unit> getPredsOf(Unit u);
+
+	}
+
+	private final List<ARSCFileParser.ResPackage> resourcePackages;
+	private final String appPackageName;
+	private boolean useReturnSummaries = false;
+
+	private final ConcurrentMap<Stmt, ConcurrentMap<Local, Object>> resolvedIDs =
+			new ConcurrentHashMap<Stmt, ConcurrentMap<Local, Object>>();
+	private final Map<SootMethod, Object> returnSummaries =
+			new ConcurrentHashMap<SootMethod, Object>();
+	private final Set<SootMethod> summariesInProgress =
+			Collections.newSetFromMap(new ConcurrentHashMap<SootMethod, Boolean>());
+
+	/**
+	 * Creates a new resolver
+	 * @param resourcePackages The resource packages of the app, or null if
+	 * calls to <code>getIdentifier</code> shall not be resolved
+	 * @param appPackageName The name of the app's base package
+	 */
+	public ResourceIDResolver(List<ARSCFileParser.ResPackage> resourcePackages,
+			String appPackageName) {
+		this.resourcePackages = resourcePackages;
+		this.appPackageName = appPackageName;
+	}
+
+	/**
+	 * Sets whether the resolver shall look into the methods whose return
+	 * values are assigned to the local being resolved
+	 * @param useReturnSummaries True to resolve the constant resource IDs
+	 * returned by other methods, otherwise false
+	 */
+	public void setUseReturnSummaries(boolean useReturnSummaries) {
+		this.useReturnSummaries = useReturnSummaries;
+	}
+
+	/**
+	 * Finds the last assignment of a resource ID to the given local by
+	 * searching upwards from the given statement
+	 * @param stmt The statement from which to look backwards
+	 * @param local The variable for which to look for assignments
+	 * @param cfg The bidirectional control flow graph
+	 * @return The last resource ID assigned to the given variable, or null if
+	 * no such ID could be found
+	 */
+	public Integer findLastResIDAssignment(Stmt stmt, Local local,
+			final BiDiInterproceduralCFG<Unit, SootMethod> cfg) {
+		ConcurrentMap<Local, Object> ids = resolvedIDs.get(stmt);
+		if (ids == null) {
+			ids = new ConcurrentHashMap<Local, Object>();
+			ConcurrentMap<Local, Object> oldIDs = resolvedIDs.putIfAbsent(stmt, ids);
+			if (oldIDs != null)
+				ids = oldIDs;
+		}
+		Object id = ids.get(local);
+		if (id == null) {
+			Integer res = findLastResIDAssignment(stmt, local, new IPredecessorProvider() {
+
+				@Override
+				public List<Unit> getPredsOf(Unit u) {
+					return cfg.getPredsOf(u);
+				}
+
+			});
+			id = res == null ? NO_ID : res;
+			ids.put(local, id);
+		}
+		return id == NO_ID ? null : (Integer) id;
+	}
+
+	private Integer findLastResIDAssignment(Stmt start, Local local,
+			IPredecessorProvider preds) {
+		Set<Stmt> doneSet = new HashSet<Stmt>();
+		Deque<Stmt> stack = new ArrayDeque<Stmt>();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			Stmt stmt = stack.pop();
+			if (!doneSet.add(stmt))
+				continue;
+
+			// If this is an assign statement, we need to check whether it
+			// changes the variable we're looking for
+			if (stmt instanceof AssignStmt) {
+				AssignStmt assign = (AssignStmt) stmt;
+				if (assign.getLeftOp() == local) {
+					Object id = getAssignedID(assign, preds);
+					if (id instanceof Integer)
+						return (Integer) id;
+					// Invalid calls to getIdentifier end the search on this
+					// path, but not on the other ones
+					if (id == END_OF_PATH)
+						continue;
+				}
+			}
+
+			// Continue the search upwards. The predecessors are pushed in
+			// reverse order, so that they are visited in their original order.
+			pushPredecessors(stack, preds.getPredsOf(stmt));
+		}
+		return null;
+	}
+
+	private void pushPredecessors(Deque<Stmt> stack, List<Unit> preds) {
+		for (int i = preds.size() - 1; i >= 0; i--) {
+			Unit pred = preds.get(i);
+			if (pred instanceof Stmt)
+				stack.push((Stmt) pred);
+		}
+	}
+
+	/**
+	 * Gets the resource ID from the right side of the given assignment
+	 * @param assign The assignment to the local being resolved
+	 * @param preds The predecessors to use for resolving further locals
+	 * @return The resource ID assigned in the given statement, null if it
+	 * cannot be determined, or END_OF_PATH if the search shall not continue
+	 * above the given statement
+	 */
+	private Object getAssignedID(AssignStmt assign, IPredecessorProvider preds) {
+		// ok, now find the new value from the right side
+		if (assign.getRightOp() instanceof IntConstant)
+			return ((IntConstant) assign.getRightOp()).value;
+		else if (assign.getRightOp() instanceof FieldRef) {
+			SootField field = ((FieldRef) assign.getRightOp()).getField();
+			for (Tag tag : field.getTags())
+				if (tag instanceof IntegerConstantValueTag)
+					return ((IntegerConstantValueTag) tag).getIntValue();
+				else
+					System.err.println("Constant " + field + " was of unexpected type");
+		} else if (assign.getRightOp() instanceof InvokeExpr) {
+			InvokeExpr inv = (InvokeExpr) assign.getRightOp();
+			if (inv.getMethod().getName().equals("getIdentifier")
+					&& inv.getMethod().getDeclaringClass().getName().equals("android.content.res.Resources")
+					&& this.resourcePackages != null)
+				return getIdentifier(assign, inv, preds);
+			if (useReturnSummaries)
+				return getReturnedResourceID(inv.getMethod());
+		}
+		return null;
+	}
+
+	private Object getIdentifier(Stmt stmt, InvokeExpr inv, IPredecessorProvider preds) {
+		// The right side of the assignment is a call into the well-known
+		// Android API method for resource handling
+		if (inv.getArgCount() != 3) {
+			System.err.println("Invalid parameter count for call to getIdentifier");
+			return END_OF_PATH;
+		}
+
+		// Find the parameter values
+		String resName = "";
+		String resID = "";
+		String packageName = "";
+
+		// In the trivial case, these values are constants
+		if (inv.getArg(0) instanceof StringConstant)
+			resName = ((StringConstant) inv.getArg(0)).value;
+		if (inv.getArg(1) instanceof StringConstant)
+			resID = ((StringConstant) inv.getArg(1)).value;
+		if (inv.getArg(2) instanceof StringConstant)
+			packageName = ((StringConstant) inv.getArg(2)).value;
+		else if (inv.getArg(2) instanceof Local)
+			packageName = findLastStringAssignment(stmt, (Local) inv.getArg(2), preds);
+		else {
+			System.err.println("Unknown parameter type in call to getIdentifier");
+			return END_OF_PATH;
+		}
+
+		// Find the resource
+		AbstractResource res = findResource(resName, resID, packageName);
+		if (res != null)
+			return res.getResourceID();
+		return null;
+	}
+
+	/**
+	 * Gets the resource ID that the given method always returns
+	 * @param sm The method whose return value to check
+	 * @return The resource ID that is returned by all return statements of
+	 * the given method, or null if there is no such ID
+	 */
+	private Integer getReturnedResourceID(SootMethod sm) {
+		Object id = returnSummaries.get(sm);
+		if (id == null) {
+			// Recursive methods do not return a constant ID we could find
+			if (!sm.isConcrete() || !sm.hasActiveBody() || !summariesInProgress.add(sm))
+				return null;
+			try {
+				Integer res = computeReturnedResourceID(sm);
+				id = res == null ? NO_ID : res;
+				returnSummaries.put(sm, id);
+			}
+			finally {
+				summariesInProgress.remove(sm);
+			}
+		}
+		return id == NO_ID ? null : (Integer) id;
+	}
+
+	private Integer computeReturnedResourceID(SootMethod sm) {
+		final UnitGraph graph = new BriefUnitGraph(sm.getActiveBody());
+		IPredecessorProvider preds = new IPredecessorProvider() {
+
+			@Override
+			public List<Unit> getPredsOf(Unit u) {
+				return graph.getPredsOf(u);
+			}
+
+		};
+
+		Integer id = null;
+		for (Unit u : sm.getActiveBody().getUnits()) {
+			if (!(u instanceof ReturnStmt))
+				continue;
+			Value op = ((ReturnStmt) u).getOp();
+			Integer curID = null;
+			if (op instanceof IntConstant)
+				curID = ((IntConstant) op).value;
+			else if (op instanceof Local)
+				curID = findLastResIDAssignment((Stmt) u, (Local) op, preds);
+			if (curID == null || (id != null && !id.equals(curID)))
+				return null;
+			id = curID;
+		}
+		return id;
+	}
+
+	/**
+	 * Finds the given resource in the given package
+	 *
+	 * @param resName
+	 *            The name of the resource to retrieve
+	 * @param resID
+	 * @param packageName
+	 *            The name of the package in which to look for the resource
+	 * @return The specified resource if available, otherwise null
+	 */
+	private AbstractResource findResource(String resName, String resID, String packageName) {
+		// Find the correct package
+		for (ARSCFileParser.ResPackage pkg : this.resourcePackages) {
+			// If we don't have any package specification, we pick the app's
+			// default package
+			boolean matches = (packageName == null || packageName.isEmpty()) && pkg.getPackageName().equals(this.appPackageName);
+			matches |= pkg.getPackageName().equals(packageName);
+			if (!matches)
+				continue;
+
+			// We have found a suitable package, now look for the resource
+			ARSCFileParser.ResType type = pkg.getType(resID);
+			if (type != null)
+				return type.getFirstResource(resName);
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the last assignment to the given String local by searching upwards
+	 * from the given statement
+	 *
+	 * @param start
+	 *            The statement from which to look backwards
+	 * @param local
+	 *            The variable for which to look for assignments
+	 * @param preds
+	 *            The source for the predecessors of the statements
+	 * @return The last value assigned to the given variable
+	 */
+	private String findLastStringAssignment(Stmt start, Local local, IPredecessorProvider preds) {
+		Set<Stmt> doneSet = new HashSet<Stmt>();
+		Deque<Stmt> stack = new ArrayDeque<Stmt>();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			Stmt stmt = stack.pop();
+			if (!doneSet.add(stmt))
+				continue;
+
+			if (stmt instanceof AssignStmt) {
+				AssignStmt assign = (AssignStmt) stmt;
+				if (assign.getLeftOp() == local) {
+					// ok, now find the new value from the right side
+					if (assign.getRightOp() instanceof StringConstant)
+						return ((StringConstant) assign.getRightOp()).value;
+				}
+			}
+
+			// Continue the search upwards
+			pushPredecessors(stack, preds.getPredsOf(stmt));
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,194 @@
+package soot.jimple.infoflow.android.source;
+
+import heros.InterproceduralCFG;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.Stmt;
+import soot.util.queue.QueueReader;
+
+/**
+ * Classification of all reachable call sites of the program as sources and
+ * sinks, computed once before the data flow analysis instead of lazily for
+ * every query of the IFDS solver. This moves the lookups through the
+ * interfaces of the callee, the ICC base classes and the callees in the
+ * call graph out of the solver, and performs them in parallel.
+ *
+ * Only call sites that are a source or sink in some way are stored. Call
+ * sites in methods that have been classified but are not contained in the
+ * table are neither. Call sites in other methods, e.g. methods that were not
+ * reachable when the table was built, are not covered and must be
+ * classified lazily.
+ */
+public class SourceSinkClassificationTable {
+
+	private final Scene scene;
+	private final InterproceduralCFG<Unit, SootMethod> cfg;
+	private final Map<Stmt, Integer> callSiteFlags;
+	private final Set<SootMethod> classifiedMethods;
+
+	private SourceSinkClassificationTable(InterproceduralCFG<Unit, SootMethod> cfg,
+			Map<Stmt, Integer> callSiteFlags, Set<SootMethod> classifiedMethods) {
+		this.scene = Scene.v();
+		this.cfg = cfg;
+		this.callSiteFlags = callSiteFlags;
+		this.classifiedMethods = classifiedMethods;
+	}
+
+	/**
+	 * Classifies all call sites in the methods reachable in the current
+	 * call graph
+	 * @param manager The source/sink manager that classifies the single call
+	 * sites
+	 * @param cfg The interprocedural control flow graph
+	 * @param threads The number of threads to use
+	 * @return The classification table for all reachable call sites
+	 */
+	public static SourceSinkClassificationTable build(final AndroidSourceSinkManager manager,
+			final InterproceduralCFG<Unit, SootMethod> cfg, int threads) {
+		long beforeClassification = System.nanoTime();
+
+		// Make sure that all shared data structures are created before we
+		// start working on them concurrently
+		Scene.v().getOrMakeFastHierarchy();
+		manager.getMethodIndex();
+		manager.getIccBaseClasses();
+
+		List<SootMethod> methods = new ArrayList<SootMethod>();
+		QueueReader<MethodOrMethodContext> reader = Scene.v().getReachableMethods().listener();
+		while (reader.hasNext()) {
+			SootMethod sm = reader.next().method();
+			if (sm.isConcrete() && sm.hasActiveBody())
+				methods.add(sm);
+		}
+
+		Map<Stmt, Integer> callSiteFlags = new HashMap<Stmt, Integer>();
+		int callSites = 0;
+		if (threads <= 1 || methods.size() <= 1) {
+			callSites = classifyMethods(manager, cfg, methods, callSiteFlags);
+		}
+		else {
+			// Split the methods into one chunk per thread. The chunks are
+			// interleaved, since the methods of the same class tend to be of
+			// similar size.
+			List<Future<Map<Stmt, Integer>>> futures = new ArrayList<Future<Map<Stmt, Integer>>>(threads);
+			final int[] chunkCallSites = new int[threads];
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				for (int i = 0; i < threads; i++) {
+					final int chunk = i;
+					final List<SootMethod> chunkMethods = new ArrayList<SootMethod>();
+					for (int j = i; j < methods.size(); j += threads)
+						chunkMethods.add(methods.get(j));
+					futures.add(pool.submit(new Callable<Map<Stmt, Integer>>() {
+
+						@Override
+						public Map<Stmt, Integer> call() throws Exception {
+							Map<Stmt, Integer> flags = new HashMap<Stmt, Integer>();
+							chunkCallSites[chunk] = classifyMethods(manager, cfg, chunkMethods, flags);
+							return flags;
+						}
+
+					}));
+				}
+				for (Future<Map<Stmt, Integer>> future : futures)
+					callSiteFlags.putAll(future.get());
+				for (int count : chunkCallSites)
+					callSites += count;
+			}
+			catch (InterruptedException e) {
+				throw new RuntimeException("Classification of sources and sinks was interrupted", e);
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new RuntimeException(cause);
+			}
+			finally {
+				pool.shutdownNow();
+			}
+		}
+
+		SourceSinkClassificationTable table = new SourceSinkClassificationTable(cfg,
+				callSiteFlags, new HashSet<SootMethod>(methods));
+		table.report(methods.size(), callSites,
+				(System.nanoTime() - beforeClassification) / 1E9, threads);
+		return table;
+	}
+
+	private static int classifyMethods(AndroidSourceSinkManager manager,
+			InterproceduralCFG<Unit, SootMethod> cfg, List<SootMethod> methods,
+			Map<Stmt, Integer> callSiteFlags) {
+		int callSites = 0;
+		for (SootMethod sm : methods)
+			for (Unit u : sm.getActiveBody().getUnits()) {
+				Stmt stmt = (Stmt) u;
+				if (!stmt.containsInvokeExpr())
+					continue;
+				callSites++;
+				int flags = manager.classifyCallSite(stmt, cfg,
+						AndroidSourceSinkManager.ALL_CALL_FLAGS, true);
+				if (flags != 0)
+					callSiteFlags.put(stmt, flags);
+			}
+		return callSites;
+	}
+
+	private void report(int methodCount, int callSites, double seconds, int threads) {
+		int sources = 0;
+		int sinks = 0;
+		int iccSinks = 0;
+		for (int flags : callSiteFlags.values()) {
+			if ((flags & AndroidSourceSinkManager.SOURCE_CALL_FLAGS) != 0)
+				sources++;
+			if ((flags & AndroidSourceSinkManager.SINK_CALL_FLAGS) != 0)
+				sinks++;
+			if ((flags & AndroidSourceSinkManager.SINK_ICC) != 0)
+				iccSinks++;
+		}
+		System.out.println("Classified " + callSites + " call sites in " + methodCount
+				+ " methods with " + threads + " threads in " + seconds + " seconds: "
+				+ sources + " sources, " + sinks + " sinks, " + iccSinks + " ICC sinks");
+	}
+
+	/**
+	 * Checks whether this table was built for the given scene and control
+	 * flow graph
+	 * @param scene The Soot scene
+	 * @param cfg The interprocedural control flow graph
+	 * @return True if this table was built for the given scene and control
+	 * flow graph, otherwise false
+	 */
+	public boolean isValidFor(Scene scene, InterproceduralCFG<Unit, SootMethod> cfg) {
+		return this.scene == scene && this.cfg == cfg;
+	}
+
+	/**
+	 * Gets the classification of the given call site
+	 * @param callSite The call site
+	 * @return The classification flags of the given call site as defined in
+	 * {@link AndroidSourceSinkManager}, or -1 if the call site has not been
+	 * classified
+	 */
+	public int getFlags(Stmt callSite) {
+		Integer flags = callSiteFlags.get(callSite);
+		if (flags != null)
+			return flags;
+		return classifiedMethods.contains(cfg.getMethodOf(callSite)) ? 0 : -1;
+	}
+
+}
@@ -0,0 +1,194 @@
+package soot.jimple.infoflow.android.source;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import soot.Scene;
+import soot.SootMethod;
+import soot.jimple.infoflow.data.SootMethodAndClass;
+import soot.jimple.infoflow.source.data.SourceSinkDefinition;
+
+/**
+ * Index of the source, sink and callback methods by the numbers Soot assigns
+ * to all methods in the scene. The source/sink managers are queried for
+ * every statement the IFDS solver visits, so looking up a method must not
+ * build its signature string and probe a hash map every time.
+ *
+ * The index is built once per scene by resolving the signatures of all
+ * definitions. Methods that were not numbered when the index was built (e.g.
+ * methods created later on) are not covered and must be looked up by their
+ * signature instead, see {@link #isIndexed(SootMethod)}.
+ *
+ * Apart from the membership bitsets, the index memoizes per method whether
+ * the method is defined as a source or sink through one of the interfaces of
+ * its declaring class. These entries are written concurrently without
+ * locking. This is safe since every entry only ever changes from unknown to
+ * a fixed value, and a thread that does not see the value of another thread
+ * just computes it again.
+ */
+public class SourceSinkMethodIndex {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte NO = 1;
+	private static final byte YES = 2;
+
+	private final Scene scene;
+	private final int size;
+
+	private final BitSet sources;
+	private final BitSet sinks;
+	private final BitSet callbacks;
+
+	private final int[] sourceNumbers;
+	private final SourceSinkDefinition[] sourceDefinitions;
+	private final int[] sinkNumbers;
+	private final SourceSinkDefinition[] sinkDefinitions;
+
+	private final byte[] sourceViaInterface;
+	private final byte[] sinkViaInterface;
+
+	/**
+	 * Creates a new index for the current Soot scene
+	 * @param sourceMethods The source definitions by method signature
+	 * @param sinkMethods The sink definitions by method signature
+	 * @param callbackMethods The callback methods
+	 */
+	public SourceSinkMethodIndex(Map<String, SourceSinkDefinition> sourceMethods,
+			Map<String, SourceSinkDefinition> sinkMethods,
+			Collection<SootMethodAndClass> callbackMethods) {
+		this.scene = Scene.v();
+		this.size = scene.getMethodNumberer().size();
+
+		TreeMap<Integer, SourceSinkDefinition> sourceDefs = resolve(sourceMethods);
+		this.sources = toBitSet(sourceDefs);
+		this.sourceNumbers = toNumbers(sourceDefs);
+		this.sourceDefinitions = sourceDefs.values().toArray(new SourceSinkDefinition[sourceDefs.size()]);
+
+		TreeMap<Integer, SourceSinkDefinition> sinkDefs = resolve(sinkMethods);
+		this.sinks = toBitSet(sinkDefs);
+		this.sinkNumbers = toNumbers(sinkDefs);
+		this.sinkDefinitions = sinkDefs.values().toArray(new SourceSinkDefinition[sinkDefs.size()]);
+
+		this.callbacks = new BitSet(size + 1);
+		for (SootMethodAndClass am : callbackMethods) {
+			SootMethod sm = scene.grabMethod(am.getSignature());
+			if (sm != null && isIndexed(sm))
+				this.callbacks.set(sm.getNumber());
+		}
+
+		this.sourceViaInterface = new byte[size + 1];
+		this.sinkViaInterface = new byte[size + 1];
+	}
+
+	private TreeMap<Integer, SourceSinkDefinition> resolve(Map<String, SourceSinkDefinition> methods) {
+		TreeMap<Integer, SourceSinkDefinition> defs = new TreeMap<Integer, SourceSinkDefinition>();
+		for (Entry<String, SourceSinkDefinition> entry : methods.entrySet()) {
+			SootMethod sm = scene.grabMethod(entry.getKey());
+			if (sm != null && isIndexed(sm))
+				defs.put(sm.getNumber(), entry.getValue());
+		}
+		return defs;
+	}
+
+	private BitSet toBitSet(TreeMap<Integer, SourceSinkDefinition> defs) {
+		BitSet bs = new BitSet(size + 1);
+		for (int number : defs.keySet())
+			bs.set(number);
+		return bs;
+	}
+
+	private int[] toNumbers(TreeMap<Integer, SourceSinkDefinition> defs) {
+		int[] numbers = new int[defs.size()];
+		int i = 0;
+		for (int number : defs.keySet())
+			numbers[i++] = number;
+		return numbers;
+	}
+
+	/**
+	 * Checks whether this index was built for the given scene
+	 * @param scene The scene to check
+	 * @return True if this index was built for the given scene, otherwise
+	 * false
+	 */
+	public boolean isValidFor(Scene scene) {
+		return this.scene == scene;
+	}
+
+	/**
+	 * Checks whether the given method is covered by this index. If not, the
+	 * method must be looked up by its signature.
+	 * @param sm The method to check
+	 * @return True if the given method is covered by this index, otherwise
+	 * false
+	 */
+	public boolean isIndexed(SootMethod sm) {
+		int number = sm.getNumber();
+		return number > 0 && number <= size;
+	}
+
+	public boolean isSource(SootMethod sm) {
+		return sources.get(sm.getNumber());
+	}
+
+	public boolean isSink(SootMethod sm) {
+		return sinks.get(sm.getNumber());
+	}
+
+	public boolean isCallback(SootMethod sm) {
+		return callbacks.get(sm.getNumber());
+	}
+
+	/**
+	 * Gets the source definition for the given indexed method
+	 * @param sm The method for which to get the source definition
+	 * @return The source definition for the given method, or null if the
+	 * method is no source
+	 */
+	public SourceSinkDefinition getSourceDefinition(SootMethod sm) {
+		int idx = Arrays.binarySearch(sourceNumbers, sm.getNumber());
+		return idx < 0 ? null : sourceDefinitions[idx];
+	}
+
+	/**
+	 * Gets the sink definition for the given indexed method
+	 * @param sm The method for which to get the sink definition
+	 * @return The sink definition for the given method, or null if the
+	 * method is no sink
+	 */
+	public SourceSinkDefinition getSinkDefinition(SootMethod sm) {
+		int idx = Arrays.binarySearch(sinkNumbers, sm.getNumber());
+		return idx < 0 ? null : sinkDefinitions[idx];
+	}
+
+	/**
+	 * Gets whether the given indexed method is a source or sink through one
+	 * of the interfaces of its declaring class
+	 * @param sm The method to check
+	 * @param sink True to check for sinks, false to check for sources
+	 * @return True if the method is a source or sink through one of its
+	 * interfaces, false if it is not, and null if this has not been computed
+	 * yet
+	 */
+	public Boolean getViaInterface(SootMethod sm, boolean sink) {
+		byte state = (sink ? sinkViaInterface : sourceViaInterface)[sm.getNumber()];
+		return state == UNKNOWN ? null : state == YES;
+	}
+
+	/**
+	 * Records whether the given indexed method is a source or sink through
+	 * one of the interfaces of its declaring class
+	 * @param sm The method for which to record the result
+	 * @param sink True to record the result for sinks, false for sources
+	 * @param value True if the method is a source or sink through one of its
+	 * interfaces, otherwise false
+	 */
+	public void setViaInterface(SootMethod sm, boolean sink, boolean value) {
+		(sink ? sinkViaInterface : sourceViaInterface)[sm.getNumber()] = value ? YES : NO;
+	}
+
+}
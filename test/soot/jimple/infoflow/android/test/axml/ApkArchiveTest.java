@@ -0,0 +1,92 @@
+package soot.jimple.infoflow.android.test.axml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.axml.ApkArchive;
+import soot.jimple.infoflow.android.axml.ApkHandler;
+
+public class ApkArchiveTest {
+
+	private static final String APK = "testAPKs/enriched1.apk";
+
+	@After
+	public void closeArchives() {
+		ApkArchive.closeAll();
+	}
+
+	@Test
+	public void testArchiveIsShared() throws IOException {
+		ApkArchive archive = ApkArchive.getArchive(APK);
+		Assert.assertSame(archive, ApkArchive.getArchive(APK));
+
+		ApkArchive.closeAll();
+		Assert.assertNotSame(archive, ApkArchive.getArchive(APK));
+	}
+
+	@Test
+	public void testPrefixLookup() throws IOException {
+		List<String> expected = new ArrayList<String>();
+		ZipFile zip = new ZipFile(APK);
+		try {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				if (name.startsWith("res/layout"))
+					expected.add(name);
+			}
+		}
+		finally {
+			zip.close();
+		}
+		Assert.assertFalse(expected.isEmpty());
+
+		List<String> actual = new ArrayList<String>();
+		for (ZipEntry entry : ApkArchive.getArchive(APK).getEntries("res/layout"))
+			actual.add(entry.getName());
+		Assert.assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testHandlerCloseKeepsSharedArchive() throws IOException {
+		ApkArchive archive = ApkArchive.getArchive(APK);
+		ApkHandler handler = new ApkHandler(APK);
+		handler.getInputStream("AndroidManifest.xml").close();
+		handler.close();
+
+		Assert.assertSame(archive, ApkArchive.getArchive(APK));
+		InputStream is = archive.getInputStream("AndroidManifest.xml");
+		try {
+			Assert.assertTrue(is.read() >= 0);
+		}
+		finally {
+			is.close();
+		}
+	}
+
+	@Test
+	public void testEntryByName() throws IOException {
+		ApkArchive archive = ApkArchive.getArchive(APK);
+		Assert.assertNotNull(archive.getEntry("AndroidManifest.xml"));
+		Assert.assertNull(archive.getEntry("does/not/exist.xml"));
+		Assert.assertNull(archive.getInputStream("does/not/exist.xml"));
+
+		InputStream is = archive.getInputStream("AndroidManifest.xml");
+		try {
+			Assert.assertTrue(is.read() >= 0);
+		}
+		finally {
+			is.close();
+		}
+	}
+
+}
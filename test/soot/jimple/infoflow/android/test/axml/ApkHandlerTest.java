@@ -0,0 +1,146 @@
+package soot.jimple.infoflow.android.test.axml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.axml.ApkHandler;
+
+public class ApkHandlerTest {
+
+	private static final String APK = "testAPKs/enriched1.apk";
+
+	private File apk;
+	private File manifest;
+	private File asset;
+
+	@Before
+	public void copyApk() throws IOException {
+		apk = File.createTempFile("apkhandler", ".apk");
+		copy(new FileInputStream(APK), new FileOutputStream(apk));
+
+		manifest = File.createTempFile("manifest", ".xml");
+		write(manifest, "<manifest/>".getBytes("UTF-8"));
+		asset = File.createTempFile("asset", ".txt");
+		byte[] data = new byte[100000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i % 7);
+		write(asset, data);
+	}
+
+	@After
+	public void deleteFiles() {
+		apk.delete();
+		manifest.delete();
+		asset.delete();
+	}
+
+	@Test
+	public void testRawCopy() throws IOException {
+		rewrite(true);
+		checkRewrittenApk(true);
+	}
+
+	@Test
+	public void testRecompression() throws IOException {
+		rewrite(false);
+		checkRewrittenApk(false);
+	}
+
+	private void rewrite(boolean rawCopy) throws IOException {
+		ApkHandler handler = new ApkHandler(apk);
+		handler.setRawCopy(rawCopy);
+		Map<String, String> paths = new HashMap<String, String>();
+		paths.put(manifest.getPath(), "AndroidManifest.xml");
+		paths.put(asset.getPath(), "assets/data.bin");
+		handler.addFilesToApk(Arrays.asList(manifest, asset), paths);
+		handler.close();
+	}
+
+	private void checkRewrittenApk(boolean rawCopy) throws IOException {
+		ZipFile original = new ZipFile(APK);
+		ZipFile rewritten = new ZipFile(apk);
+		try {
+			List<String> expected = new ArrayList<String>();
+			Enumeration<? extends ZipEntry> entries = original.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if (name.equals("AndroidManifest.xml") || name.endsWith(".RSA") || name.endsWith(".SF")) {
+					Assert.assertTrue(name.equals("AndroidManifest.xml") || rewritten.getEntry(name) == null);
+					continue;
+				}
+				expected.add(name);
+
+				ZipEntry copied = rewritten.getEntry(name);
+				Assert.assertNotNull(name, copied);
+				Assert.assertEquals(name, entry.getCrc(), copied.getCrc());
+				Assert.assertEquals(name, entry.getMethod(), copied.getMethod());
+				if (rawCopy)
+					Assert.assertEquals(name, entry.getCompressedSize(), copied.getCompressedSize());
+				Assert.assertArrayEquals(name, read(original, entry), read(rewritten, copied));
+			}
+			Assert.assertEquals(expected.size() + 2, rewritten.size());
+
+			Assert.assertEquals("<manifest/>",
+					new String(read(rewritten, rewritten.getEntry("AndroidManifest.xml")), "UTF-8"));
+			Assert.assertArrayEquals(read(new FileInputStream(asset)),
+					read(rewritten, rewritten.getEntry("assets/data.bin")));
+		}
+		finally {
+			original.close();
+			rewritten.close();
+		}
+	}
+
+	private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+		return read(zip.getInputStream(entry));
+	}
+
+	private static byte[] read(InputStream is) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		copy(is, bos);
+		return bos.toByteArray();
+	}
+
+	private static void write(File file, byte[] data) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(data);
+		}
+		finally {
+			os.close();
+		}
+	}
+
+	private static void copy(InputStream is, OutputStream os) throws IOException {
+		try {
+			byte[] buf = new byte[8192];
+			int len;
+			while ((len = is.read(buf)) > 0)
+				os.write(buf, 0, len);
+		}
+		finally {
+			is.close();
+			os.close();
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package soot.jimple.infoflow.android.test.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.AnalysisMetrics;
+import soot.jimple.infoflow.android.AnalysisMetrics.PhaseStatistics;
+
+public class AnalysisMetricsTest {
+
+	@Test
+	public void testPhasesAreAggregated() throws InterruptedException {
+		AnalysisMetrics metrics = AnalysisMetrics.getInstance();
+		metrics.reset("app.apk");
+
+		AnalysisMetrics.Phase outer = metrics.startPhase(AnalysisMetrics.TAINT_ROUND_1);
+		for (int i = 0; i < 3; i++) {
+			AnalysisMetrics.Phase inner = metrics.startPhase(AnalysisMetrics.CALLBACK_ITERATION);
+			Thread.sleep(5);
+			inner.stop();
+			inner.stop();
+		}
+		outer.stop();
+
+		PhaseStatistics iterations = metrics.getPhase(AnalysisMetrics.CALLBACK_ITERATION);
+		Assert.assertEquals(3, iterations.getCount());
+		Assert.assertTrue(iterations.getWallNanos() >= 15000000L);
+		PhaseStatistics taint = metrics.getPhase(AnalysisMetrics.TAINT_ROUND_1);
+		Assert.assertEquals(1, taint.getCount());
+		Assert.assertTrue(taint.getWallNanos() >= iterations.getWallNanos());
+		Assert.assertTrue(taint.getPeakHeapBytes() >= iterations.getPeakHeapBytes());
+
+		// Phases from before a reset must not leak into the next app
+		AnalysisMetrics.Phase stale = metrics.startPhase(AnalysisMetrics.ARSC);
+		metrics.reset("other.apk");
+		stale.stop();
+		Assert.assertNull(metrics.getPhase(AnalysisMetrics.ARSC));
+		Assert.assertTrue(metrics.getPhases().isEmpty());
+	}
+
+	@Test
+	public void testPeakHeapInsidePhase() throws InterruptedException {
+		AnalysisMetrics metrics = AnalysisMetrics.getInstance();
+		metrics.reset("app.apk");
+
+		// The garbage is neither live at the start nor at the end of the
+		// phase, only the collection in between can see it
+		AnalysisMetrics.Phase phase = metrics.startPhase(AnalysisMetrics.CALLGRAPH);
+		byte[][] garbage = new byte[64][];
+		for (int i = 0; i < garbage.length; i++)
+			garbage[i] = new byte[1024 * 1024];
+		garbage = null;
+		System.gc();
+		Thread.sleep(500);
+		phase.stop();
+
+		Assert.assertTrue(metrics.getPhase(AnalysisMetrics.CALLGRAPH).getPeakHeapBytes()
+				>= 64L * 1024 * 1024);
+	}
+
+	@Test
+	public void testReports() throws IOException {
+		AnalysisMetrics metrics = AnalysisMetrics.getInstance();
+		metrics.reset("/apps/my \"app\".apk");
+		metrics.startPhase(AnalysisMetrics.MANIFEST).stop();
+		metrics.startPhase(AnalysisMetrics.ARSC).stop();
+
+		String json = metrics.toJSON();
+		Assert.assertTrue(json.contains("\"apk\": \"/apps/my \\\"app\\\".apk\""));
+		Assert.assertTrue(json.indexOf("\"name\": \"manifest\"") < json.indexOf("\"name\": \"arsc\""));
+
+		String prom = metrics.toPrometheus();
+		Assert.assertTrue(prom.contains("# TYPE flowcog_phase_wall_seconds gauge"));
+		Assert.assertTrue(prom.contains("flowcog_phase_count{apk=\"/apps/my \\\"app\\\".apk\",phase=\"arsc\"} 1\n"));
+
+		File dir = File.createTempFile("metrics", "");
+		dir.delete();
+		try {
+			metrics.writeReports(dir);
+			Assert.assertTrue(new File(dir, "my \"app\".apk.metrics.json").exists());
+			Assert.assertTrue(new File(dir, "my \"app\".apk.prom").exists());
+			Assert.assertEquals(2, dir.listFiles().length);
+		}
+		finally {
+			File[] files = dir.listFiles();
+			if (files != null)
+				for (File f : files)
+					f.delete();
+			dir.delete();
+		}
+	}
+
+}
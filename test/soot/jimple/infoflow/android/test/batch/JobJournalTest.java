@@ -0,0 +1,41 @@
+package soot.jimple.infoflow.android.test.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.TestApps.JobJournal;
+import soot.jimple.infoflow.android.TestApps.JobJournal.JobState;
+
+public class JobJournalTest {
+
+	@Test
+	public void testJournalSurvivesRestart() throws IOException {
+		File journalFile = File.createTempFile("journal", ".txt");
+		journalFile.delete();
+		try {
+			JobJournal journal = new JobJournal(journalFile);
+			journal.record("a.apk", JobState.STARTED, 1);
+			journal.record("a.apk", JobState.DONE, 1);
+			journal.record("b.apk", JobState.STARTED, 1);
+			journal.record("b.apk", JobState.OOM, 1);
+			journal.record("c.apk", JobState.STARTED, 1);
+			
+			JobJournal reloaded = new JobJournal(journalFile);
+			Assert.assertTrue(reloaded.isFinished("a.apk"));
+			Assert.assertFalse(reloaded.isFinished("b.apk"));
+			Assert.assertEquals(JobState.OOM, reloaded.getEntry("b.apk").getState());
+			Assert.assertEquals(1, reloaded.getAttempts("b.apk"));
+			
+			// Jobs that were running when the scheduler died must be retried
+			Assert.assertFalse(reloaded.isFinished("c.apk"));
+			Assert.assertEquals(0, reloaded.getAttempts("d.apk"));
+		}
+		finally {
+			journalFile.delete();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package soot.jimple.infoflow.android.test.cache;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.data.AndroidMethod;
+import soot.jimple.infoflow.android.nu.LayoutTextTreeNode;
+import soot.jimple.infoflow.android.nu.LayoutTextTreeNode.ViewTextType;
+import soot.jimple.infoflow.android.nu.ResourceModelCache;
+import soot.jimple.infoflow.android.nu.ResourceModelCache.EntryPointSnapshot;
+import soot.jimple.infoflow.android.nu.ResourceModelCache.ResourceSnapshot;
+import soot.jimple.infoflow.android.resources.LayoutControl;
+import soot.jimple.infoflow.data.SootMethodAndClass;
+
+public class ResourceModelCacheTest {
+
+	private File createTempDir() throws IOException {
+		File dir = File.createTempFile("rescache", "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	private void deleteDir(File dir) {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testDigestDependsOnContentOnly() throws IOException {
+		File dir = createTempDir();
+		try {
+			File a = new File(dir, "a.apk");
+			File b = new File(dir, "b.apk");
+			File c = new File(dir, "c.apk");
+			write(a, "same content");
+			write(b, "same content");
+			write(c, "other content");
+			ResourceModelCache cache = new ResourceModelCache(dir);
+			Assert.assertEquals(cache.getDigest(a.getPath()), cache.getDigest(b.getPath()));
+			Assert.assertFalse(cache.getDigest(a.getPath()).equals(cache.getDigest(c.getPath())));
+			Assert.assertEquals(64, cache.getDigest(a.getPath()).length());
+		}
+		finally {
+			deleteDir(dir);
+		}
+	}
+
+	@Test
+	public void testResourceSnapshotRoundTrip() throws IOException {
+		File dir = createTempDir();
+		try {
+			ResourceSnapshot snapshot = new ResourceSnapshot();
+			snapshot.nameIDMap.put("app_name", 0x7f050000);
+			snapshot.idNameMap.put(0x7f050000, "app_name");
+			snapshot.idStringMap.put(0x7f050000, "My App");
+			snapshot.nameStringMap.put("app_name", "My App");
+			snapshot.qualifiedNameIDMap.put("com.example:string/app_name", 0x7f050000);
+
+			LayoutTextTreeNode root = new LayoutTextTreeNode("LinearLayout", null);
+			LayoutTextTreeNode child = new LayoutTextTreeNode("Button", root);
+			child.nodeID = 0x7f070001;
+			child.text = "Login";
+			root.addChildNode(child);
+			LayoutTextTreeNode footer = new LayoutTextTreeNode("TextView", root);
+			footer.text = "Help";
+			root.addChildNode(footer);
+			root.computeTexts();
+			snapshot.layouts.put("res/layout/main", root);
+			snapshot.id2Node.put(child.nodeID, child);
+			snapshot.xmlEventHandler2ViewIds.put("onLogin", Collections.singleton(child.nodeID));
+
+			ResourceModelCache cache = new ResourceModelCache(dir);
+			Assert.assertNull(cache.loadResources("0123"));
+			cache.storeResources("0123", snapshot);
+			ResourceSnapshot loaded = new ResourceModelCache(dir).loadResources("0123");
+
+			Assert.assertNotNull(loaded);
+			Assert.assertEquals(snapshot.nameIDMap, loaded.nameIDMap);
+			Assert.assertEquals(snapshot.idNameMap, loaded.idNameMap);
+			Assert.assertEquals(snapshot.idStringMap, loaded.idStringMap);
+			Assert.assertEquals(snapshot.nameStringMap, loaded.nameStringMap);
+			Assert.assertEquals(snapshot.qualifiedNameIDMap, loaded.qualifiedNameIDMap);
+			Assert.assertEquals(snapshot.xmlEventHandler2ViewIds, loaded.xmlEventHandler2ViewIds);
+
+			LayoutTextTreeNode loadedRoot = loaded.layouts.get("res/layout/main");
+			Assert.assertEquals(root.toStringTree(0, ""), loadedRoot.toStringTree(0, ""));
+			LayoutTextTreeNode loadedChild = loaded.id2Node.get(0x7f070001);
+			Assert.assertSame(loadedRoot, loadedChild.parent);
+			Assert.assertSame(loadedChild, loadedRoot.children.get(0));
+			Assert.assertEquals("Login", loadedChild.allTexts.toString());
+			Assert.assertEquals("Login || Help", loadedRoot.allTexts.toString());
+			Assert.assertEquals(ViewTextType.VIEW_TEXT, loadedRoot.textObj.textType);
+		}
+		finally {
+			deleteDir(dir);
+		}
+	}
+
+	@Test
+	public void testEntryPointSnapshotRoundTrip() throws IOException {
+		File dir = createTempDir();
+		try {
+			EntryPointSnapshot snapshot = new EntryPointSnapshot();
+			snapshot.appPackageName = "com.example";
+			snapshot.entrypoints.add("com.example.MainActivity");
+			Set<SootMethodAndClass> callbacks = new HashSet<SootMethodAndClass>();
+			callbacks.add(new AndroidMethod("onClick", Collections.singletonList("android.view.View"),
+					"void", "com.example.MainActivity"));
+			snapshot.callbackMethods.put("com.example.MainActivity", callbacks);
+			snapshot.userControls.put(0x7f070001, new LayoutControl(0x7f070001, "android.widget.EditText", true));
+
+			ResourceModelCache cache = new ResourceModelCache(dir);
+			cache.storeEntryPoints("0123", "cfg", snapshot);
+			Assert.assertNull(cache.loadEntryPoints("0123", "othercfg"));
+			EntryPointSnapshot loaded = cache.loadEntryPoints("0123", "cfg");
+
+			Assert.assertNotNull(loaded);
+			Assert.assertEquals("com.example", loaded.appPackageName);
+			Assert.assertEquals(snapshot.entrypoints, loaded.entrypoints);
+			SootMethodAndClass method = loaded.callbackMethods.get("com.example.MainActivity").iterator().next();
+			Assert.assertEquals("<com.example.MainActivity: void onClick(android.view.View)>", method.getSignature());
+			LayoutControl control = loaded.userControls.get(0x7f070001);
+			Assert.assertEquals("android.widget.EditText", control.getViewClassName());
+			Assert.assertTrue(control.isSensitive());
+		}
+		finally {
+			deleteDir(dir);
+		}
+	}
+
+	private void write(File f, String content) throws IOException {
+		FileWriter wr = new FileWriter(f);
+		try {
+			wr.write(content);
+		}
+		finally {
+			wr.close();
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package soot.jimple.infoflow.android.test.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.data.IntMap;
+import soot.jimple.infoflow.android.data.IntSet;
+
+public class IntMapTest {
+
+	@Test
+	public void testBehavesLikeHashMap() {
+		Random rnd = new Random(42);
+		IntMap<String> map = new IntMap<String>();
+		Map<Integer, String> expected = new HashMap<Integer, String>();
+		for (int i = 0; i < 100000; i++) {
+			// Resource IDs share their upper bits, so use a narrow key range
+			// to get many collisions, removals and reinsertions
+			int key = 0x7f010000 + rnd.nextInt(2000);
+			switch (rnd.nextInt(4)) {
+			case 0:
+			case 1:
+				String value = rnd.nextInt(10) == 0 ? null : "v" + i;
+				Assert.assertEquals(expected.put(key, value), map.put(key, value));
+				break;
+			case 2:
+				Assert.assertEquals(expected.remove(key), map.remove(key));
+				break;
+			default:
+				Assert.assertEquals(expected.get(key), map.get(key));
+				Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+			}
+			Assert.assertEquals(expected.size(), map.size());
+		}
+		Assert.assertEquals(expected, map);
+		Assert.assertEquals(map, expected);
+		Assert.assertEquals(expected.hashCode(), map.hashCode());
+		Assert.assertEquals(expected, new IntMap<String>(expected));
+
+		Assert.assertNull(map.get("0x7f010000"));
+		Assert.assertNull(map.get(null));
+		Assert.assertFalse(map.containsKey(null));
+	}
+
+	@Test
+	public void testIteratorRemoval() {
+		IntMap<Integer> map = new IntMap<Integer>();
+		for (int i = 0; i < 1000; i++)
+			map.put(i * 31, Integer.valueOf(i));
+
+		Set<Integer> seen = new HashSet<Integer>();
+		for (Iterator<Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext(); ) {
+			Entry<Integer, Integer> entry = it.next();
+			Assert.assertTrue(seen.add(entry.getKey()));
+			if (entry.getValue() % 2 == 0)
+				it.remove();
+			else
+				entry.setValue(-entry.getValue());
+		}
+		Assert.assertEquals(1000, seen.size());
+		Assert.assertEquals(500, map.size());
+		for (int i = 0; i < 1000; i++)
+			Assert.assertEquals(i % 2 == 0 ? null : Integer.valueOf(-i), map.get(i * 31));
+
+		map.clear();
+		Assert.assertTrue(map.isEmpty());
+		Assert.assertFalse(map.entrySet().iterator().hasNext());
+	}
+
+	@Test
+	public void testIntSet() {
+		IntSet set = new IntSet();
+		Assert.assertTrue(set.add(0x7f030000));
+		Assert.assertFalse(set.add(Integer.valueOf(0x7f030000)));
+		Assert.assertTrue(set.add(0));
+		Assert.assertTrue(set.add(-1));
+		Assert.assertEquals(3, set.size());
+		Assert.assertTrue(set.contains(0));
+		Assert.assertTrue(set.contains(Integer.valueOf(-1)));
+		Assert.assertFalse(set.contains("0"));
+
+		Set<Integer> expected = new HashSet<Integer>();
+		expected.add(0x7f030000);
+		expected.add(0);
+		expected.add(-1);
+		Assert.assertEquals(expected, set);
+		Assert.assertEquals(set, expected);
+
+		Assert.assertTrue(set.remove(0));
+		Assert.assertFalse(set.remove(Integer.valueOf(0)));
+		Assert.assertEquals(2, set.size());
+	}
+
+}
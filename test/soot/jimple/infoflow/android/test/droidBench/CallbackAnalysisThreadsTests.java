@@ -0,0 +1,65 @@
+package soot.jimple.infoflow.android.test.droidBench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import soot.jimple.infoflow.android.SetupApplication;
+import soot.jimple.infoflow.data.SootMethodAndClass;
+
+/**
+ * Checks that the parallel callback analysis finds the same callbacks as the
+ * sequential one
+ */
+public class CallbackAnalysisThreadsTests {
+
+	private Map<String, Set<SootMethodAndClass>> findCallbacks(String fileName, int threads,
+			boolean incremental) throws IOException, XmlPullParserException {
+		String androidJars = System.getenv("ANDROID_JARS");
+		if (androidJars == null)
+			androidJars = System.getProperty("ANDROID_JARS");
+		if (androidJars == null)
+			throw new RuntimeException("Android JAR dir not set");
+
+		String droidBenchDir = System.getenv("DROIDBENCH");
+		if (droidBenchDir == null)
+			droidBenchDir = System.getProperty("DROIDBENCH");
+		if (droidBenchDir == null)
+			throw new RuntimeException("DroidBench dir not set");
+
+		SetupApplication setupApplication = new SetupApplication(androidJars,
+				droidBenchDir + File.separator + fileName);
+		setupApplication.getConfig().setCallbackAnalysisThreads(threads);
+		setupApplication.getConfig().setIncrementalCallbackAnalysis(incremental);
+		setupApplication.calculateSourcesSinksEntrypoints("SourcesAndSinks.txt");
+		return setupApplication.getEntryPointResult().getCallbackMethods();
+	}
+
+	private void compareCallbacks(String fileName) throws IOException, XmlPullParserException {
+		for (boolean incremental : new boolean[] { false, true })
+			Assert.assertEquals(fileName + (incremental ? " (incremental)" : ""),
+					findCallbacks(fileName, 1, incremental),
+					findCallbacks(fileName, 4, incremental));
+	}
+
+	@Test(timeout=600000)
+	public void runTestAnonymousClass1() throws IOException, XmlPullParserException {
+		compareCallbacks("Callbacks/AnonymousClass1.apk");
+	}
+
+	@Test(timeout=600000)
+	public void runTestMultiHandlers1() throws IOException, XmlPullParserException {
+		compareCallbacks("Callbacks/MultiHandlers1.apk");
+	}
+
+	@Test(timeout=600000)
+	public void runTestRegisterGlobal2() throws IOException, XmlPullParserException {
+		compareCallbacks("Callbacks/RegisterGlobal2.apk");
+	}
+
+}
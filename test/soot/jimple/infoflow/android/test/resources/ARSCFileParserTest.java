@@ -0,0 +1,98 @@
+package soot.jimple.infoflow.android.test.resources;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.AbstractResource;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResConfig;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResPackage;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.ResType;
+import soot.jimple.infoflow.android.resources.ARSCFileParser.StringResource;
+
+public class ARSCFileParserTest {
+
+	/**
+	 * Checks that the lookup indices return the same resources as a linear
+	 * search over all configurations
+	 */
+	@Test
+	public void testIndexMatchesLinearSearch() throws IOException {
+		ARSCFileParser parser = new ARSCFileParser();
+		parser.parse("insecureBank" + File.separator + "InsecureBank.apk");
+		Assert.assertFalse(parser.getPackages().isEmpty());
+
+		int resCnt = 0;
+		for (ResPackage pkg : parser.getPackages())
+			for (ResType type : pkg.getDeclaredTypes()) {
+				Assert.assertSame(type, pkg.getType(type.getTypeName()));
+				for (ResConfig config : type.getConfigurations())
+					for (AbstractResource res : config.getResources()) {
+						Assert.assertSame(findLinear(type, res.getResourceID()),
+								parser.findResource(res.getResourceID()));
+						Assert.assertSame(findLinear(type, res.getResourceName()),
+								type.getFirstResource(res.getResourceName()));
+						resCnt++;
+					}
+			}
+		Assert.assertTrue(resCnt > 0);
+
+		Assert.assertNull(parser.findResource(0x7fff0000));
+		Assert.assertNull(parser.findResource(0x01010000));
+		Assert.assertNull(parser.getPackages().get(0).getType("nosuchtype"));
+	}
+
+	/**
+	 * Checks that the memory-mapped mode yields the same resources and strings
+	 * as reading the resource file from the stream
+	 */
+	@Test
+	public void testMemoryMappedMatchesStream() throws IOException {
+		String apk = "insecureBank" + File.separator + "InsecureBank.apk";
+		ARSCFileParser streamParser = new ARSCFileParser();
+		streamParser.parse(apk);
+		ARSCFileParser mappedParser = new ARSCFileParser();
+		mappedParser.setMemoryMapped(true);
+		mappedParser.parse(apk);
+
+		Assert.assertEquals(streamParser.getGlobalStringPool(),
+				mappedParser.getGlobalStringPool());
+		Assert.assertEquals(streamParser.getPackages().size(), mappedParser.getPackages().size());
+		int strCnt = 0;
+		for (ResPackage pkg : streamParser.getPackages())
+			for (ResType type : pkg.getDeclaredTypes())
+				for (ResConfig config : type.getConfigurations())
+					for (AbstractResource res : config.getResources()) {
+						AbstractResource mappedRes = mappedParser.findResource(res.getResourceID());
+						Assert.assertNotNull(mappedRes);
+						Assert.assertEquals(res.getResourceName(), mappedRes.getResourceName());
+						if (res instanceof StringResource
+								&& streamParser.findResource(res.getResourceID()) == res) {
+							Assert.assertEquals(((StringResource) res).getValue(),
+									((StringResource) mappedRes).getValue());
+							strCnt++;
+						}
+					}
+		Assert.assertTrue(strCnt > 0);
+	}
+
+	private AbstractResource findLinear(ResType type, int resourceID) {
+		for (ResConfig config : type.getConfigurations())
+			for (AbstractResource res : config.getResources())
+				if (res.getResourceID() == resourceID)
+					return res;
+		return null;
+	}
+
+	private AbstractResource findLinear(ResType type, String resourceName) {
+		for (ResConfig config : type.getConfigurations())
+			for (AbstractResource res : config.getResources())
+				if (res.getResourceName().equals(resourceName))
+					return res;
+		return null;
+	}
+
+}
@@ -0,0 +1,141 @@
+package soot.jimple.infoflow.android.test.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.nu.LayoutTextTreeNode;
+import soot.jimple.infoflow.android.nu.LayoutTextTreeNode.ViewTextType;
+
+public class LayoutTextTreeNodeTest {
+
+	@Test
+	public void testTextsMatchPairwiseAggregation() {
+		// Mixes nodes with and without texts at every level, including
+		// subtrees without any texts
+		LayoutTextTreeNode root = node("LinearLayout", null, "");
+		LayoutTextTreeNode form = node("LinearLayout", root, "");
+		node("TextView", form, "User");
+		node("EditText", form, "");
+		LayoutTextTreeNode empty = node("FrameLayout", form, "");
+		node("View", empty, "");
+		node("Button", form, "Login");
+		LayoutTextTreeNode footer = node("RelativeLayout", root, "Footer");
+		LayoutTextTreeNode nested = node("LinearLayout", footer, "");
+		node("ImageView", nested, "");
+		node("TextView", root, "Help");
+
+		LayoutTextTreeNode expected = copy(root, null);
+		aggregateTexts(expected);
+		updateViewTexts(expected);
+		root.computeTexts();
+
+		Assert.assertEquals(expected.toStringTree(0, ""), root.toStringTree(0, ""));
+		Assert.assertEquals(expected.extractTexts("##"), root.extractTexts("##"));
+		assertSameTexts(expected, root);
+
+		Assert.assertEquals("User || Login || Footer || Help", root.allTexts.toString());
+		Assert.assertEquals(ViewTextType.PARENT_TEXT, empty.textObj.textType);
+		Assert.assertEquals("User || Login", empty.textObj.texts.toString());
+		Assert.assertEquals(ViewTextType.PARENT_TEXT, nested.children.get(0).textObj.textType);
+		Assert.assertEquals("Footer", nested.children.get(0).textObj.texts.toString());
+	}
+
+	@Test
+	public void testLayoutWithoutTexts() {
+		LayoutTextTreeNode root = node("LinearLayout", null, "");
+		LayoutTextTreeNode child = node("View", root, "");
+		root.computeTexts();
+		Assert.assertEquals(0, root.allTexts.length());
+		Assert.assertEquals(ViewTextType.NO_TEXT, child.textObj.textType);
+		Assert.assertEquals("", child.textObj.texts.toString());
+	}
+
+	@Test
+	public void testSharedSpans() {
+		LayoutTextTreeNode root = node("ListView", null, "");
+		for (int i = 0; i < 1000; i++) {
+			LayoutTextTreeNode row = node("LinearLayout", root, "");
+			node("TextView", row, "Item " + i);
+			node("ImageView", row, "");
+		}
+		root.computeTexts();
+
+		LayoutTextTreeNode row = root.children.get(42);
+		Assert.assertEquals("Item 42", row.allTexts.toString());
+		Assert.assertEquals(ViewTextType.PARENT_TEXT, row.children.get(1).textObj.textType);
+		Assert.assertSame(row.allTexts, row.children.get(1).textObj.texts);
+		Assert.assertEquals("em 4", row.allTexts.subSequence(2, 6).toString());
+		Assert.assertTrue(root.allTexts.toString().endsWith("Item 998 || Item 999"));
+	}
+
+	private static LayoutTextTreeNode node(String type, LayoutTextTreeNode parent, String text) {
+		LayoutTextTreeNode node = new LayoutTextTreeNode(type, parent);
+		node.text = text;
+		if (parent != null)
+			parent.addChildNode(node);
+		return node;
+	}
+
+	private static LayoutTextTreeNode copy(LayoutTextTreeNode node, LayoutTextTreeNode parent) {
+		LayoutTextTreeNode copy = node(node.nodeType, parent, node.text);
+		if (node.children != null)
+			for (LayoutTextTreeNode child : node.children)
+				copy(child, copy);
+		return copy;
+	}
+
+	private static void assertSameTexts(LayoutTextTreeNode expected, LayoutTextTreeNode actual) {
+		Assert.assertEquals(expected.allTexts.toString(), actual.allTexts.toString());
+		Assert.assertEquals(expected.textObj.textType, actual.textObj.textType);
+		Assert.assertEquals(expected.textObj.texts.toString(), actual.textObj.texts.toString());
+		List<LayoutTextTreeNode> expectedChildren = expected.children == null
+				? new ArrayList<LayoutTextTreeNode>() : expected.children;
+		List<LayoutTextTreeNode> actualChildren = actual.children == null
+				? new ArrayList<LayoutTextTreeNode>() : actual.children;
+		Assert.assertEquals(expectedChildren.size(), actualChildren.size());
+		for (int i = 0; i < expectedChildren.size(); i++)
+			assertSameTexts(expectedChildren.get(i), actualChildren.get(i));
+	}
+
+	/*
+	 * The original aggregation which concatenates the texts level by level
+	 */
+	private static void aggregateTexts(LayoutTextTreeNode node) {
+		String allTexts = node.text;
+		if (node.children != null)
+			for (LayoutTextTreeNode child : node.children) {
+				aggregateTexts(child);
+				if (child.allTexts.length() > 0) {
+					if (allTexts.length() > 0)
+						allTexts += " || ";
+					allTexts += child.allTexts;
+				}
+			}
+		node.allTexts = allTexts;
+	}
+
+	private static void updateViewTexts(LayoutTextTreeNode node) {
+		if (node.text.length() > 0)
+			node.textObj = node.new ViewText(ViewTextType.VIEW_TEXT, node.nodeType, node.text);
+		else if (node.allTexts.length() > 0)
+			node.textObj = node.new ViewText(ViewTextType.VIEW_TEXT, node.nodeType, node.allTexts);
+		else {
+			LayoutTextTreeNode parent = node.parent;
+			while (parent != null && parent.allTexts.length() == 0)
+				parent = parent.parent;
+			if (parent == null)
+				node.textObj = node.new ViewText(ViewTextType.NO_TEXT, node.nodeType, "");
+			else if (parent.parent == null)
+				node.textObj = node.new ViewText(ViewTextType.LAYOUT_TEXT, node.nodeType, parent.allTexts);
+			else
+				node.textObj = node.new ViewText(ViewTextType.PARENT_TEXT, node.nodeType, parent.allTexts);
+		}
+		if (node.children != null)
+			for (LayoutTextTreeNode child : node.children)
+				updateViewTexts(child);
+	}
+
+}
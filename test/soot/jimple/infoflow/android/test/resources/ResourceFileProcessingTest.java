@@ -0,0 +1,75 @@
+package soot.jimple.infoflow.android.test.resources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.resources.AbstractResourceParser;
+import soot.jimple.infoflow.android.resources.IResourceProcessor;
+
+public class ResourceFileProcessingTest {
+
+	private static class SizeParser extends AbstractResourceParser {
+
+		private List<String> process(String apk, int threads) {
+			return processAndroidResourceFiles(apk, "res/", threads,
+					new IResourceProcessor<String>() {
+
+				@Override
+				public String processResourceFile(String fileName, InputStream stream, long entrySize) {
+					// Skip some files to check that null results are dropped
+					if (fileName.endsWith(".png"))
+						return null;
+					try {
+						int size = 0;
+						while (stream.read() >= 0)
+							size++;
+						Assert.assertEquals(entrySize, size);
+						return fileName + ":" + size;
+					}
+					catch (IOException ex) {
+						throw new RuntimeException(ex);
+					}
+				}
+
+			});
+		}
+
+	}
+
+	/**
+	 * Checks that processing the files in parallel yields the same results
+	 * in the same order as processing them sequentially
+	 */
+	@Test
+	public void testParallelMatchesSequential() {
+		SizeParser parser = new SizeParser();
+		List<String> sequential = parser.process("testAPKs/enriched1.apk", 1);
+		List<String> parallel = parser.process("testAPKs/enriched1.apk", 4);
+		Assert.assertFalse(sequential.isEmpty());
+		Assert.assertEquals(sequential, parallel);
+		for (String res : sequential)
+			Assert.assertTrue(res.startsWith("res/") && !res.contains(".png:"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testProcessorExceptionIsPropagated() {
+		new AbstractResourceParser() {
+			{
+				processAndroidResourceFiles("testAPKs/enriched1.apk", "res/", 4,
+						new IResourceProcessor<Object>() {
+
+					@Override
+					public Object processResourceFile(String fileName, InputStream stream, long size) {
+						throw new IllegalStateException("test");
+					}
+
+				});
+			}
+		};
+	}
+
+}
@@ -0,0 +1,52 @@
+package soot.jimple.infoflow.android.test.session;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParserException;
+
+import soot.jimple.infoflow.android.AnalysisSession;
+import soot.jimple.infoflow.android.InfoflowAndroidConfiguration;
+import soot.jimple.infoflow.android.manifest.ProcessManifest;
+import soot.jimple.infoflow.android.resources.ARSCFileParser;
+
+public class AnalysisSessionTest {
+
+	private static final String APK = "testAPKs/enriched1.apk";
+
+	@Test
+	public void testManifestAndResourcesParsedOnce() throws IOException, XmlPullParserException {
+		AnalysisSession session = new AnalysisSession(APK, "android.jar",
+				new InfoflowAndroidConfiguration(), null);
+		try {
+			ProcessManifest manifest = session.getManifest();
+			Assert.assertSame(manifest, session.getManifest());
+			Assert.assertEquals(manifest.getPackageName(), session.getAppPackageName());
+
+			ARSCFileParser resParser = session.getResourceParser();
+			Assert.assertSame(resParser, session.getResourceParser());
+			Assert.assertSame(resParser.getPackages(), session.getResourcePackages());
+			Assert.assertFalse(session.getResourcePackages().isEmpty());
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	@Test
+	public void testCloseReleasesResults() throws IOException, XmlPullParserException {
+		AnalysisSession session = new AnalysisSession(APK, "android.jar",
+				new InfoflowAndroidConfiguration(), null);
+		ProcessManifest manifest = session.getManifest();
+		ARSCFileParser resParser = session.getResourceParser();
+		session.close();
+
+		Assert.assertNull(session.getEntryPointResult());
+		Assert.assertNull(session.getTaintWrapper());
+		Assert.assertNotSame(manifest, session.getManifest());
+		Assert.assertNotSame(resParser, session.getResourceParser());
+		session.close();
+	}
+
+}
@@ -0,0 +1,55 @@
+package soot.jimple.infoflow.android.test.sourceToSinks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import soot.jimple.infoflow.android.data.parsers.PermissionMethodParser;
+import soot.jimple.infoflow.android.data.parsers.SourceSinkBundle;
+
+public class SourceSinkBundleTest {
+
+	/**
+	 * Checks that a compiled bundle contains exactly the definitions of the
+	 * text file it was compiled from
+	 */
+	@Test
+	public void bundleMatchesTextFile() throws IOException {
+		PermissionMethodParser parser = PermissionMethodParser.fromFile("SourcesAndSinks.txt");
+		File bundleFile = File.createTempFile("SourcesAndSinks", SourceSinkBundle.FILE_EXTENSION);
+		try {
+			SourceSinkBundle.compile(parser, bundleFile);
+			SourceSinkBundle bundle = SourceSinkBundle.fromFile(bundleFile.getPath());
+
+			Assert.assertFalse(parser.getSources().isEmpty());
+			Assert.assertFalse(parser.getSinks().isEmpty());
+			Assert.assertEquals(parser.getSources(), bundle.getSources());
+			Assert.assertEquals(parser.getSinks(), bundle.getSinks());
+			Assert.assertEquals(parser.getAllMethods(), bundle.getAllMethods());
+		}
+		finally {
+			bundleFile.delete();
+		}
+	}
+
+	/**
+	 * Checks that loading the same bundle again reuses the loaded definitions
+	 */
+	@Test
+	public void bundleIsShared() throws IOException {
+		PermissionMethodParser parser = PermissionMethodParser.fromFile("SourcesAndSinks.txt");
+		File bundleFile = File.createTempFile("SourcesAndSinks", SourceSinkBundle.FILE_EXTENSION);
+		try {
+			SourceSinkBundle.compile(parser, bundleFile);
+			SourceSinkBundle bundle = SourceSinkBundle.fromFile(bundleFile.getPath());
+			Assert.assertSame(bundle, SourceSinkBundle.fromFile(bundleFile.getPath()));
+			Assert.assertSame(bundle.getSources(), SourceSinkBundle.fromFile(bundleFile.getPath()).getSources());
+		}
+		finally {
+			bundleFile.delete();
+		}
+	}
+
+}